@@ -44,9 +44,69 @@ public class GossipSettings {
   private double convictThreshold = 10;
   
   private String distribution = "normal";
+
+  private String failureDetectorClass = "org.apache.gossip.accrual.FailureDetector";
+
+  /** feed the failure detector with local arrival times instead of remote heartbeat values */
+  private boolean recordArrivalTime = false;
+
+  /** load a snapshot of the cluster state from a startup member before gossiping */
+  private boolean fastJoin = false;
+
+  /** hand data off to peers and announce a leave rather than a failure on shutdown */
+  private boolean gracefulLeave = false;
+
+  private long leaveTimeout = 2000;
+
+  /** remove members that have been down this many milliseconds, 0 keeps them forever */
+  private long deadMemberReapTime = 0;
+
+  private long tombstoneTime = 300000;
+
+  /** approximate serialized bytes of user data this node stores, 0 for no limit */
+  private long maxDataBytes = 0;
+
+  /** approximate serialized bytes of user data written by any single node, 0 for no limit */
+  private long maxDataBytesPerNode = 0;
+
+  private Map<String, Long> dataPrefixQuotas = new HashMap<>();
+
+  private String dataEvictionPolicy = "none";
+
+  private int dataBatchParallelThreshold = 256;
+
+  /** keep large shared data payloads encoded in direct memory instead of on the heap */
+  private boolean offHeapSharedData = false;
+
+  private int offHeapMinPayloadBytes = 4096;
+
+  private int offHeapSlabBytes = 4 * 1024 * 1024;
+
+  private int offHeapCacheEntries = 64;
+
+  private long offHeapMaxBytes = 256L * 1024 * 1024;
+
+  /** deliver membership events to listeners in order per member, without dropping any */
+  private boolean orderedListenerEvents = false;
+
+  private int listenerQueueSize = 1024;
+
+  private int listenerThreads = 1;
+
+  /** deliver data events to handlers in order per key, without dropping any */
+  private boolean orderedDataEvents = false;
+
+  private int dataEventLanes = 4;
+
+  private int dataEventLaneCapacity = 1024;
+
+  /** changes kept in the change log, 0 for no change log */
+  private int changeLogCapacity = 0;
   
   private String activeGossipClass = "org.apache.gossip.manager.SimpleActiveGossiper";
 
+  private String partnerSelectorClass = "org.apache.gossip.manager.ShuffledRoundRobinPartnerSelector";
+
   private String transportManagerClass = "org.apache.gossip.transport.udp.UdpTransportManager";
   private String protocolManagerClass = "org.apache.gossip.protocol.json.JacksonProtocolManager";
   
@@ -172,6 +232,299 @@ public class GossipSettings {
     this.distribution = distribution;
   }
 
+  public String getFailureDetectorClass() {
+    return failureDetectorClass;
+  }
+
+  /**
+   * @param failureDetectorClass an {@link org.apache.gossip.accrual.AccrualFailureDetector}, e.g.
+   * org.apache.gossip.accrual.RingBufferFailureDetector
+   */
+  public void setFailureDetectorClass(String failureDetectorClass) {
+    this.failureDetectorClass = failureDetectorClass;
+  }
+
+  public boolean isRecordArrivalTime() {
+    return recordArrivalTime;
+  }
+
+  /**
+   * @param recordArrivalTime when true, the failure detector of a member records our own clock
+   * whenever that member's heartbeat advances. Heartbeats are the remote System.nanoTime(), which is
+   * not comparable across hosts, so local arrival times give much tighter interval statistics.
+   */
+  public void setRecordArrivalTime(boolean recordArrivalTime) {
+    this.recordArrivalTime = recordArrivalTime;
+  }
+
+  public boolean isFastJoin() {
+    return fastJoin;
+  }
+
+  /**
+   * @param fastJoin when true, a starting node asks its startup members in turn for a snapshot of
+   * members, shared data and per-node data, and loads it before the active gossiper starts
+   */
+  public void setFastJoin(boolean fastJoin) {
+    this.fastJoin = fastJoin;
+  }
+
+  public boolean isGracefulLeave() {
+    return gracefulLeave;
+  }
+
+  /**
+   * @param gracefulLeave when true, shutdown first pushes the shared data this node wrote and its
+   * per-node data to a few live peers and waits for their acknowledgement, and the shutdown notice
+   * tells peers the node left rather than failed
+   */
+  public void setGracefulLeave(boolean gracefulLeave) {
+    this.gracefulLeave = gracefulLeave;
+  }
+
+  public long getLeaveTimeout() {
+    return leaveTimeout;
+  }
+
+  /**
+   * @param leaveTimeout milliseconds a graceful leave waits for peers to acknowledge the handoff
+   */
+  public void setLeaveTimeout(long leaveTimeout) {
+    this.leaveTimeout = leaveTimeout;
+  }
+
+  public long getDeadMemberReapTime() {
+    return deadMemberReapTime;
+  }
+
+  /**
+   * @param deadMemberReapTime milliseconds a member has to be down before it is removed along with
+   * its per-node data, 0 to never remove members. Startup members are never removed.
+   */
+  public void setDeadMemberReapTime(long deadMemberReapTime) {
+    this.deadMemberReapTime = deadMemberReapTime;
+  }
+
+  public long getTombstoneTime() {
+    return tombstoneTime;
+  }
+
+  /**
+   * @param tombstoneTime milliseconds a removed member is remembered, so that stale membership lists
+   * do not add it back
+   */
+  public void setTombstoneTime(long tombstoneTime) {
+    this.tombstoneTime = tombstoneTime;
+  }
+
+  public long getMaxDataBytes() {
+    return maxDataBytes;
+  }
+
+  /**
+   * @param maxDataBytes cap on the approximate serialized size of all shared and per-node data held
+   * by this node, 0 for no limit. A write over the cap evicts entries according to
+   * {@link #setDataEvictionPolicy(String)}, or is refused when the policy is none.
+   */
+  public void setMaxDataBytes(long maxDataBytes) {
+    this.maxDataBytes = maxDataBytes;
+  }
+
+  public long getMaxDataBytesPerNode() {
+    return maxDataBytesPerNode;
+  }
+
+  /**
+   * @param maxDataBytesPerNode cap on the data written by one node id, counting its per-node data
+   * and the shared data it last wrote, 0 for no limit. Writes over the cap are refused.
+   */
+  public void setMaxDataBytesPerNode(long maxDataBytesPerNode) {
+    this.maxDataBytesPerNode = maxDataBytesPerNode;
+  }
+
+  public Map<String, Long> getDataPrefixQuotas() {
+    return dataPrefixQuotas;
+  }
+
+  /**
+   * @param dataPrefixQuotas caps in bytes for keys starting with a prefix. A key counts against the
+   * longest prefix it matches. Writes over the cap are refused.
+   */
+  public void setDataPrefixQuotas(Map<String, Long> dataPrefixQuotas) {
+    this.dataPrefixQuotas = dataPrefixQuotas;
+  }
+
+  public String getDataEvictionPolicy() {
+    return dataEvictionPolicy;
+  }
+
+  /**
+   * @param dataEvictionPolicy what makes room when {@link #getMaxDataBytes()} is reached: none
+   * (refuse the write), lru (least recently read or written first) or earliest_expiring. Evicted
+   * values gossiped back are refused until they expire; a newer value is admitted.
+   */
+  public void setDataEvictionPolicy(String dataEvictionPolicy) {
+    this.dataEvictionPolicy = dataEvictionPolicy;
+  }
+
+  public int getDataBatchParallelThreshold() {
+    return dataBatchParallelThreshold;
+  }
+
+  /**
+   * @param dataBatchParallelThreshold batches of received data this large are applied in parallel
+   * across keys, 0 to always apply them on the receiving thread
+   */
+  public void setDataBatchParallelThreshold(int dataBatchParallelThreshold) {
+    this.dataBatchParallelThreshold = dataBatchParallelThreshold;
+  }
+
+  public boolean isOffHeapSharedData() {
+    return offHeapSharedData;
+  }
+
+  /**
+   * @param offHeapSharedData when true, shared data payloads of at least
+   * {@link #getOffHeapMinPayloadBytes()} are stored encoded in direct memory and decoded when read
+   */
+  public void setOffHeapSharedData(boolean offHeapSharedData) {
+    this.offHeapSharedData = offHeapSharedData;
+  }
+
+  public int getOffHeapMinPayloadBytes() {
+    return offHeapMinPayloadBytes;
+  }
+
+  /**
+   * @param offHeapMinPayloadBytes with off-heap shared data, payloads whose encoding is smaller stay
+   * on the heap
+   */
+  public void setOffHeapMinPayloadBytes(int offHeapMinPayloadBytes) {
+    this.offHeapMinPayloadBytes = offHeapMinPayloadBytes;
+  }
+
+  public int getOffHeapSlabBytes() {
+    return offHeapSlabBytes;
+  }
+
+  /**
+   * @param offHeapSlabBytes size of the direct buffers off-heap payloads are appended to. Payloads
+   * over half this size get a buffer of their own.
+   */
+  public void setOffHeapSlabBytes(int offHeapSlabBytes) {
+    this.offHeapSlabBytes = offHeapSlabBytes;
+  }
+
+  public int getOffHeapCacheEntries() {
+    return offHeapCacheEntries;
+  }
+
+  /**
+   * @param offHeapCacheEntries number of recently read off-heap payloads kept decoded
+   */
+  public void setOffHeapCacheEntries(int offHeapCacheEntries) {
+    this.offHeapCacheEntries = offHeapCacheEntries;
+  }
+
+  public long getOffHeapMaxBytes() {
+    return offHeapMaxBytes;
+  }
+
+  /**
+   * @param offHeapMaxBytes most direct memory held by off-heap slabs. Payloads that would need more
+   * stay on the heap until collected slabs free some.
+   */
+  public void setOffHeapMaxBytes(long offHeapMaxBytes) {
+    this.offHeapMaxBytes = offHeapMaxBytes;
+  }
+
+  public boolean isOrderedListenerEvents() {
+    return orderedListenerEvents;
+  }
+
+  /**
+   * @param orderedListenerEvents when true, membership events are never dropped, events of a member
+   * reach listeners in the order they happened, and a transition superseded before delivery is
+   * coalesced with the newer one. State updates never wait for the listeners.
+   */
+  public void setOrderedListenerEvents(boolean orderedListenerEvents) {
+    this.orderedListenerEvents = orderedListenerEvents;
+  }
+
+  public int getListenerQueueSize() {
+    return listenerQueueSize;
+  }
+
+  /**
+   * @param listenerQueueSize with ordered listener events, the number of members with an
+   * undelivered event above which the over-capacity meter is marked. Events are never dropped.
+   */
+  public void setListenerQueueSize(int listenerQueueSize) {
+    this.listenerQueueSize = listenerQueueSize;
+  }
+
+  public int getListenerThreads() {
+    return listenerThreads;
+  }
+
+  /**
+   * @param listenerThreads with ordered listener events, the number of threads calling listeners
+   */
+  public void setListenerThreads(int listenerThreads) {
+    this.listenerThreads = listenerThreads;
+  }
+
+  public boolean isOrderedDataEvents() {
+    return orderedDataEvents;
+  }
+
+  /**
+   * @param orderedDataEvents when true, data events are never dropped, events of a key reach each
+   * handler one at a time in the order they were raised, and changes of a key not yet delivered
+   * are coalesced into one from the oldest to the newest value. The threads applying data never wait
+   * for the handlers.
+   */
+  public void setOrderedDataEvents(boolean orderedDataEvents) {
+    this.orderedDataEvents = orderedDataEvents;
+  }
+
+  public int getDataEventLanes() {
+    return dataEventLanes;
+  }
+
+  /**
+   * @param dataEventLanes with ordered data events, the number of threads calling handlers; keys
+   * are assigned to them by hash
+   */
+  public void setDataEventLanes(int dataEventLanes) {
+    this.dataEventLanes = dataEventLanes;
+  }
+
+  public int getDataEventLaneCapacity() {
+    return dataEventLaneCapacity;
+  }
+
+  /**
+   * @param dataEventLaneCapacity with ordered data events, the number of keys with an undelivered
+   * event per lane above which the over-capacity meter is marked. Events are never dropped.
+   */
+  public void setDataEventLaneCapacity(int dataEventLaneCapacity) {
+    this.dataEventLaneCapacity = dataEventLaneCapacity;
+  }
+
+  public int getChangeLogCapacity() {
+    return changeLogCapacity;
+  }
+
+  /**
+   * @param changeLogCapacity the number of data changes kept for consumers polling the change log,
+   * rounded up to a power of two; 0 disables the log. Every change kept holds on to the messages it
+   * replaced.
+   */
+  public void setChangeLogCapacity(int changeLogCapacity) {
+    this.changeLogCapacity = changeLogCapacity;
+  }
+
   public String getActiveGossipClass() {
     return activeGossipClass;
   }
@@ -180,6 +533,18 @@ public class GossipSettings {
     this.activeGossipClass = activeGossipClass;
   }
 
+  public String getPartnerSelectorClass() {
+    return partnerSelectorClass;
+  }
+
+  /**
+   * @param partnerSelectorClass a {@link org.apache.gossip.manager.PartnerSelector} with a no
+   * argument constructor, used by the active gossiper to pick the members it contacts
+   */
+  public void setPartnerSelectorClass(String partnerSelectorClass) {
+    this.partnerSelectorClass = partnerSelectorClass;
+  }
+
   public Map<String, String> getActiveGossipProperties() {
     return activeGossipProperties;
   }
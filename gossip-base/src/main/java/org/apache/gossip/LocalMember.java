@@ -18,9 +18,13 @@
 package org.apache.gossip;
 
 import java.net.URI;
+import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.gossip.accrual.AccrualFailureDetector;
 import org.apache.gossip.accrual.FailureDetector;
+import org.apache.gossip.utils.ReflectionUtils;
 
 /**
  * This object represent a gossip member with the properties known locally. These objects are stored
@@ -29,7 +33,17 @@ import org.apache.gossip.accrual.FailureDetector;
  */
 public class LocalMember extends Member {
   /** The failure detector for this member */
-  private transient FailureDetector detector;
+  private transient AccrualFailureDetector detector;
+  /** smoothed round trip time in nanoseconds, 0 until the first sample */
+  private transient volatile long roundTripTime;
+  /** smoothed mean deviation of the round trip time in nanoseconds */
+  private transient volatile long roundTripVariation;
+  /** System.nanoTime() when the member was last seen going down, 0 while up or not known */
+  private transient volatile long downSince;
+  /** true if the member announced a graceful leave before going down */
+  private transient volatile boolean left;
+  /** the properties as of the current properties version, only used for the local node */
+  private transient Map<String,String> advertisedProperties;
 
   /**
    * 
@@ -46,9 +60,38 @@ public class LocalMember extends Member {
     detector = new FailureDetector(minSamples, windowSize, distribution);
   }
 
+  /**
+   * Creates a member whose failure detector is the one configured in the settings.
+   */
+  public LocalMember(String clusterName, URI uri, String id,
+          long heartbeat, Map<String,String> properties, GossipSettings settings) {
+    super(clusterName, uri, id, heartbeat, properties );
+    detector = ReflectionUtils.constructWithReflection(settings.getFailureDetectorClass(),
+            new Class<?>[] { long.class, int.class, String.class },
+            new Object[] { (long) settings.getMinimumSamples(), settings.getWindowSize(),
+                    settings.getDistribution() });
+  }
+
   protected LocalMember(){
     
   }
+
+  /**
+   * For the local node: raises the properties version if the properties changed since the last call.
+   * The first call starts the version at the wall clock, so a restarted node is ahead of whatever
+   * version the cluster remembers for it.
+   * @return the current properties version
+   */
+  public synchronized long advertiseProperties() {
+    if (advertisedProperties == null) {
+      propertiesVersion = Math.max(propertiesVersion, System.currentTimeMillis());
+      advertisedProperties = new HashMap<>(properties);
+    } else if (!advertisedProperties.equals(properties)) {
+      propertiesVersion++;
+      advertisedProperties = new HashMap<>(properties);
+    }
+    return propertiesVersion;
+  }
   
   public void recordHeartbeat(long now){
     detector.recordHeartbeat(now);
@@ -58,6 +101,66 @@ public class LocalMember extends Member {
     return detector.computePhiMeasure(now);
   }
 
+  /**
+   * @see AccrualFailureDetector#convictionTime(long, double)
+   */
+  public Long convictionTime(long now, double threshold) {
+    return detector.convictionTime(now, threshold);
+  }
+
+  /**
+   * Adds a round trip sample, smoothed the way TCP estimates its retransmission timer (RFC 6298):
+   * the mean with gain 1/8 and the mean deviation with gain 1/4.
+   * @param nanos time between sending a request to this member and receiving its response
+   */
+  public synchronized void recordRoundTrip(long nanos) {
+    if (roundTripTime == 0) {
+      roundTripTime = nanos;
+      roundTripVariation = nanos / 2;
+    } else {
+      roundTripVariation = (3 * roundTripVariation + Math.abs(roundTripTime - nanos)) / 4;
+      roundTripTime = (7 * roundTripTime + nanos) / 8;
+    }
+  }
+
+  /**
+   * @return the smoothed round trip time in nanoseconds, 0 if no round trip was measured
+   */
+  @JsonIgnore
+  public long getRoundTripTime() {
+    return roundTripTime;
+  }
+
+  /**
+   * @return the smoothed mean deviation of the round trip time in nanoseconds
+   */
+  @JsonIgnore
+  public long getRoundTripVariation() {
+    return roundTripVariation;
+  }
+
+  @JsonIgnore
+  public long getDownSince() {
+    return downSince;
+  }
+
+  public void setDownSince(long downSince) {
+    this.downSince = downSince;
+  }
+
+  /**
+   * @return true if the member is down because it left the cluster on purpose, false if it failed
+   * or is up
+   */
+  @JsonIgnore
+  public boolean hasLeft() {
+    return left;
+  }
+
+  public void setLeft(boolean left) {
+    this.left = left;
+  }
+
   @Override
   public String toString() {
     Double d = null;
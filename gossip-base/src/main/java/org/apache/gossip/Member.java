@@ -43,6 +43,12 @@ public abstract class Member implements Comparable<Member> {
 
   /* properties provided at startup time */
   protected Map<String,String> properties;
+
+  /**
+   * The version of the properties, raised by the member itself whenever it changes them. Membership
+   * gossip carries the version and the properties are only fetched by nodes holding an older one.
+   */
+  protected volatile long propertiesVersion;
   
   /**
    * Constructor.
@@ -118,6 +124,14 @@ public abstract class Member implements Comparable<Member> {
     this.properties = properties;
   }
 
+  public long getPropertiesVersion() {
+    return propertiesVersion;
+  }
+
+  public void setPropertiesVersion(long propertiesVersion) {
+    this.propertiesVersion = propertiesVersion;
+  }
+
   public String toString() {
     return "Member [address=" + computeAddress() + ", id=" + id + ", heartbeat=" + heartbeat + "]";
   }
@@ -202,6 +202,16 @@ public class StartupSettings {
     String protocolClass = jsonObject.has("protocol_manager_class") ? 
         jsonObject.get("protocol_manager_class").textValue() : 
         null;
+    String partnerSelectorClass = jsonObject.has("partner_selector_class") ?
+        jsonObject.get("partner_selector_class").textValue() :
+        null;
+    String failureDetectorClass = jsonObject.has("failure_detector_class") ?
+        jsonObject.get("failure_detector_class").textValue() :
+        null;
+    boolean recordArrivalTime = jsonObject.has("record_arrival_time") &&
+        jsonObject.get("record_arrival_time").booleanValue();
+    boolean orderedListenerEvents = jsonObject.has("ordered_listener_events") &&
+        jsonObject.get("ordered_listener_events").booleanValue();
     URI uri2 = new URI(uri);
     GossipSettings gossipSettings = new GossipSettings(gossipInterval, cleanupInterval, windowSize,
             minSamples, convictThreshold, distribution, bulkTransfer);
@@ -212,6 +222,82 @@ public class StartupSettings {
     if (protocolClass != null) {
       gossipSettings.setProtocolManagerClass(protocolClass);
     }
+    if (partnerSelectorClass != null) {
+      gossipSettings.setPartnerSelectorClass(partnerSelectorClass);
+    }
+    if (failureDetectorClass != null) {
+      gossipSettings.setFailureDetectorClass(failureDetectorClass);
+    }
+    gossipSettings.setRecordArrivalTime(recordArrivalTime);
+    gossipSettings.setOrderedListenerEvents(orderedListenerEvents);
+    if (jsonObject.has("listener_queue_size")) {
+      gossipSettings.setListenerQueueSize(jsonObject.get("listener_queue_size").intValue());
+    }
+    if (jsonObject.has("fast_join")) {
+      gossipSettings.setFastJoin(jsonObject.get("fast_join").booleanValue());
+    }
+    if (jsonObject.has("graceful_leave")) {
+      gossipSettings.setGracefulLeave(jsonObject.get("graceful_leave").booleanValue());
+    }
+    if (jsonObject.has("leave_timeout")) {
+      gossipSettings.setLeaveTimeout(jsonObject.get("leave_timeout").longValue());
+    }
+    if (jsonObject.has("dead_member_reap_time")) {
+      gossipSettings.setDeadMemberReapTime(jsonObject.get("dead_member_reap_time").longValue());
+    }
+    if (jsonObject.has("tombstone_time")) {
+      gossipSettings.setTombstoneTime(jsonObject.get("tombstone_time").longValue());
+    }
+    if (jsonObject.has("listener_threads")) {
+      gossipSettings.setListenerThreads(jsonObject.get("listener_threads").intValue());
+    }
+    if (jsonObject.has("max_data_bytes")) {
+      gossipSettings.setMaxDataBytes(jsonObject.get("max_data_bytes").longValue());
+    }
+    if (jsonObject.has("max_data_bytes_per_node")) {
+      gossipSettings.setMaxDataBytesPerNode(jsonObject.get("max_data_bytes_per_node").longValue());
+    }
+    if (jsonObject.has("data_prefix_quotas")) {
+      Iterator<Entry<String, JsonNode>> quotas = jsonObject.get("data_prefix_quotas").fields();
+      while (quotas.hasNext()) {
+        Entry<String, JsonNode> quota = quotas.next();
+        gossipSettings.getDataPrefixQuotas().put(quota.getKey(), quota.getValue().longValue());
+      }
+    }
+    if (jsonObject.has("data_eviction_policy")) {
+      gossipSettings.setDataEvictionPolicy(jsonObject.get("data_eviction_policy").textValue());
+    }
+    if (jsonObject.has("data_batch_parallel_threshold")) {
+      gossipSettings.setDataBatchParallelThreshold(
+              jsonObject.get("data_batch_parallel_threshold").intValue());
+    }
+    if (jsonObject.has("off_heap_shared_data")) {
+      gossipSettings.setOffHeapSharedData(jsonObject.get("off_heap_shared_data").booleanValue());
+    }
+    if (jsonObject.has("off_heap_min_payload_bytes")) {
+      gossipSettings.setOffHeapMinPayloadBytes(jsonObject.get("off_heap_min_payload_bytes").intValue());
+    }
+    if (jsonObject.has("off_heap_slab_bytes")) {
+      gossipSettings.setOffHeapSlabBytes(jsonObject.get("off_heap_slab_bytes").intValue());
+    }
+    if (jsonObject.has("off_heap_cache_entries")) {
+      gossipSettings.setOffHeapCacheEntries(jsonObject.get("off_heap_cache_entries").intValue());
+    }
+    if (jsonObject.has("off_heap_max_bytes")) {
+      gossipSettings.setOffHeapMaxBytes(jsonObject.get("off_heap_max_bytes").longValue());
+    }
+    if (jsonObject.has("ordered_data_events")) {
+      gossipSettings.setOrderedDataEvents(jsonObject.get("ordered_data_events").booleanValue());
+    }
+    if (jsonObject.has("data_event_lanes")) {
+      gossipSettings.setDataEventLanes(jsonObject.get("data_event_lanes").intValue());
+    }
+    if (jsonObject.has("data_event_lane_capacity")) {
+      gossipSettings.setDataEventLaneCapacity(jsonObject.get("data_event_lane_capacity").intValue());
+    }
+    if (jsonObject.has("change_log_capacity")) {
+      gossipSettings.setChangeLogCapacity(jsonObject.get("change_log_capacity").intValue());
+    }
     StartupSettings settings = new StartupSettings(id, uri2, gossipSettings, cluster);
     String configMembersDetails = "Config-members [";
     JsonNode membersJSON = jsonObject.get("members");
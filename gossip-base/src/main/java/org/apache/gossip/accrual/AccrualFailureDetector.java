@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.accrual;
+
+/**
+ * Turns the heartbeat arrivals of one member into a suspicion level phi. Implementations need a
+ * public constructor taking (long minimumSamples, int windowSize, String distribution), see
+ * {@link org.apache.gossip.GossipSettings#setFailureDetectorClass(String)}.
+ */
+public interface AccrualFailureDetector {
+
+  /**
+   * @param now the arrival time of the heartbeat
+   */
+  void recordHeartbeat(long now);
+
+  /**
+   * @param now the current time, in the unit of {@link #recordHeartbeat(long)}
+   * @return phi, or null if not enough heartbeats were recorded yet
+   */
+  Double computePhiMeasure(long now);
+
+  /**
+   * Estimates when phi will exceed the threshold if no further heartbeat arrives, so a caller can
+   * sleep until then instead of polling. phi grows with time, so this searches exponentially and
+   * then by bisection down to about 2% of the remaining time. The estimate is never early.
+   * @param now the current time, in the unit of {@link #recordHeartbeat(long)}
+   * @param threshold the phi to reach
+   * @return the time phi exceeds the threshold, now if it already does, or null if phi is not
+   * available
+   */
+  default Long convictionTime(long now, double threshold) {
+    Double phi = computePhiMeasure(now);
+    if (phi == null) {
+      return null;
+    }
+    if (phi > threshold) {
+      return now;
+    }
+    long low = 0;
+    long high = 1;
+    while (computePhiMeasure(now + high) <= threshold) {
+      if (high > Long.MAX_VALUE / 4) {
+        return Long.MAX_VALUE;
+      }
+      low = high;
+      high *= 2;
+    }
+    while (high - low > Math.max(1, high / 64)) {
+      long middle = low + (high - low) / 2;
+      if (computePhiMeasure(now + middle) <= threshold) {
+        low = middle;
+      } else {
+        high = middle;
+      }
+    }
+    return now + high;
+  }
+}
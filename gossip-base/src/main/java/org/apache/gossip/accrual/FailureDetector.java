@@ -23,7 +23,7 @@ import org.apache.commons.math.distribution.NormalDistributionImpl;
 import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import org.apache.log4j.Logger;
 
-public class FailureDetector {
+public class FailureDetector implements AccrualFailureDetector {
 
   public static final Logger LOGGER = Logger.getLogger(FailureDetector.class);
   private final DescriptiveStatistics descriptiveStatistics;
@@ -43,6 +43,7 @@ public class FailureDetector {
    *
    * @param now the time of the heartbeat in milliseconds
    */
+  @Override
   public synchronized void recordHeartbeat(long now) {
     if (now <= latestHeartbeatMs) {
       return;
@@ -53,6 +54,7 @@ public class FailureDetector {
     latestHeartbeatMs = now;
   }
 
+  @Override
   public synchronized Double computePhiMeasure(long now) {
     if (latestHeartbeatMs == -1 || descriptiveStatistics.getN() < minimumSamples) {
       return null;
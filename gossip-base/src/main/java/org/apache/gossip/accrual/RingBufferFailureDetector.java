@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.accrual;
+
+/**
+ * A phi accrual detector that keeps the inter-arrival window in a primitive ring buffer and
+ * maintains the mean and variance incrementally, so recording a heartbeat and computing phi are O(1)
+ * and allocate nothing (apart from boxing in {@link #computePhiMeasure(long)}, use {@link #phi(long)}
+ * to avoid it). phi has a closed form for both the normal and the exponential distribution.
+ * 
+ * Writers are serialized with a lock. Readers never block: the writer publishes the window
+ * statistics under a sequence number and readers retry in the rare case they overlap a write.
+ */
+public class RingBufferFailureDetector implements AccrualFailureDetector {
+
+  private static final double MIN_STANDARD_DEVIATION = 0.1;
+  private static final double LN_10 = Math.log(10);
+  private static final double SQRT_2 = Math.sqrt(2);
+
+  private final double[] intervals;
+  private final long minimumSamples;
+  private final boolean normal;
+
+  // writer state, guarded by this
+  private int next;
+  private int count;
+  private double shift;
+  private double sum;
+  private double sumOfSquares;
+  private int writesSinceRecompute;
+
+  // published state: odd versions mean a write is in progress
+  private volatile long version;
+  private volatile long latestHeartbeat = -1;
+  private volatile int samples;
+  private volatile double mean;
+  private volatile double standardDeviation;
+
+  public RingBufferFailureDetector(long minimumSamples, int windowSize, String distribution) {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("windowSize must be positive " + windowSize);
+    }
+    intervals = new double[windowSize];
+    this.minimumSamples = minimumSamples;
+    normal = "normal".equals(distribution);
+  }
+
+  @Override
+  public synchronized void recordHeartbeat(long now) {
+    long latest = latestHeartbeat;
+    if (now <= latest) {
+      return;
+    }
+    if (latest != -1) {
+      add(now - latest);
+    }
+    // sums are kept relative to shift, which keeps them small and the variance precise
+    double relativeMean = count == 0 ? 0 : sum / count;
+    double variance = count > 1 ? (sumOfSquares - sum * relativeMean) / (count - 1) : 0;
+    version++;
+    latestHeartbeat = now;
+    samples = count;
+    mean = shift + relativeMean;
+    standardDeviation = Math.sqrt(Math.max(variance, 0));
+    version++;
+  }
+
+  private void add(double interval) {
+    if (count == 0) {
+      shift = interval;
+    }
+    if (count == intervals.length) {
+      double evicted = intervals[next] - shift;
+      sum -= evicted;
+      sumOfSquares -= evicted * evicted;
+    } else {
+      count++;
+    }
+    intervals[next] = interval;
+    next = next + 1 == intervals.length ? 0 : next + 1;
+    double x = interval - shift;
+    sum += x;
+    sumOfSquares += x * x;
+    if (++writesSinceRecompute >= intervals.length) {
+      recompute();
+    }
+  }
+
+  /** Recomputes the running sums from the window so rounding errors do not pile up. */
+  private void recompute() {
+    shift += sum / count;
+    sum = 0;
+    sumOfSquares = 0;
+    for (int i = 0; i < count; i++) {
+      double x = intervals[i] - shift;
+      sum += x;
+      sumOfSquares += x * x;
+    }
+    writesSinceRecompute = 0;
+  }
+
+  @Override
+  public Double computePhiMeasure(long now) {
+    double phi = phi(now);
+    return Double.isNaN(phi) ? null : phi;
+  }
+
+  /**
+   * @return phi, or NaN if not enough heartbeats were recorded yet
+   */
+  public double phi(long now) {
+    long latest;
+    int n;
+    double m;
+    double sd;
+    for (;;) {
+      long v = version;
+      if ((v & 1) != 0) {
+        continue;
+      }
+      latest = latestHeartbeat;
+      n = samples;
+      m = mean;
+      sd = standardDeviation;
+      if (version == v) {
+        break;
+      }
+    }
+    if (latest == -1 || n == 0 || n < minimumSamples) {
+      return Double.NaN;
+    }
+    double delta = now - latest;
+    if (normal) {
+      return phiNormal(delta, m, Math.max(sd, MIN_STANDARD_DEVIATION));
+    }
+    return m > 0 ? Math.max(delta, 0) / (m * LN_10) : Double.NaN;
+  }
+
+  /**
+   * -log10(1 - F(delta)) for the normal distribution, with 1 - F(delta) = erfc(z) / 2 and
+   * z = (delta - mean) / (sd * sqrt(2)). erfc uses the Chebyshev fit from Numerical Recipes, whose
+   * relative error is below 1.2e-7 everywhere. Above the mean the logarithm is taken analytically,
+   * so phi keeps growing instead of saturating when erfc underflows.
+   */
+  static double phiNormal(double delta, double mean, double standardDeviation) {
+    double z = (delta - mean) / (standardDeviation * SQRT_2);
+    double t = 1.0 / (1.0 + 0.5 * Math.abs(z));
+    // erfc(|z|) = t * e^exponent
+    double exponent = -z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+            + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+            + t * (-0.82215223 + t * 0.17087277))))))));
+    if (z >= 0) {
+      return -(Math.log10(0.5 * t) + exponent / LN_10);
+    }
+    return -Math.log10(1.0 - 0.5 * t * Math.exp(exponent));
+  }
+}
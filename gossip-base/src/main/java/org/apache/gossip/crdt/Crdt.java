@@ -36,4 +36,15 @@ public interface Crdt<SetType, MergeReturnType extends Crdt<SetType, MergeReturn
    */
   MergeReturnType optimize();
 
+  /**
+   * Tells whether other already holds everything this holds, so that merging this into other
+   * would not change it. Lets receivers skip the merge of state they have already seen. The
+   * default never claims so.
+   * @param other the state this would be merged into
+   * @return true if other.merge(this) would equal other in all of its internal state
+   */
+  default boolean isDominatedBy(MergeReturnType other) {
+    return false;
+  }
+
 }
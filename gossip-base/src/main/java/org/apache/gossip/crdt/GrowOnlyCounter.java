@@ -78,6 +78,17 @@ public class GrowOnlyCounter implements CrdtCounter<Long, GrowOnlyCounter> {
     return globalCount;
   }
   
+  @Override
+  public boolean isDominatedBy(GrowOnlyCounter other) {
+    for (Map.Entry<String, Long> entry : counters.entrySet()) {
+      Long otherValue = other.counters.get(entry.getKey());
+      if (otherValue == null || otherValue < entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
   @Override
   public GrowOnlyCounter optimize() {
     return new GrowOnlyCounter(counters);
@@ -61,6 +61,11 @@ public class GrowOnlySet<ElementType> implements CrdtSet<ElementType, Set<Elemen
     return Collections.unmodifiableSet(copy);
   }
   
+  @Override
+  public boolean isDominatedBy(GrowOnlySet<ElementType> other) {
+    return other.hidden.containsAll(hidden);
+  }
+  
   @Override
   public GrowOnlySet<ElementType> optimize() {
     return new GrowOnlySet<>(hidden);
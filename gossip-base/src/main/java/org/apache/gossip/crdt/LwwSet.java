@@ -84,6 +84,10 @@ public class LwwSet<ElementType> implements CrdtAddRemoveSet<ElementType, Set<El
       return new Timestamps(latestAdd, clock.nanoTime());
     }
 
+    boolean isDominatedBy(Timestamps other){
+      return other != null && other.latestAdd >= latestAdd && other.latestRemove >= latestRemove;
+    }
+
     Timestamps merge(Timestamps other){
       if (other == null){
         return this;
@@ -159,6 +163,12 @@ public class LwwSet<ElementType> implements CrdtAddRemoveSet<ElementType, Set<El
         .collect(Collectors.toSet());
   }
 
+  @Override
+  public boolean isDominatedBy(LwwSet<ElementType> other){
+    return struct.entrySet().stream()
+        .allMatch(entry -> entry.getValue().isDominatedBy(other.struct.get(entry.getKey())));
+  }
+
   @Override
   public LwwSet<ElementType> optimize(){
     return this;
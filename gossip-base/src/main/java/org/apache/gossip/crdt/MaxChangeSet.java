@@ -105,6 +105,12 @@ public class MaxChangeSet<ElementType> implements CrdtAddRemoveSet<ElementType,
         .collect(Collectors.toSet());
   }
 
+  @Override
+  public boolean isDominatedBy(MaxChangeSet<ElementType> other){
+    return struct.entrySet().stream()
+        .allMatch(entry -> other.struct.getOrDefault(entry.getKey(), 0) >= entry.getValue());
+  }
+
   @Override
   public MaxChangeSet<ElementType> optimize(){
     return this;
@@ -18,6 +18,7 @@
 package org.apache.gossip.crdt;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.Map.Entry;
 import java.util.function.BiConsumer;
 
@@ -133,7 +134,9 @@ public class OrSet<E>  implements CrdtAddRemoveSet<E, Set<E>, OrSet<E>> {
   
   private void internalAdd(E element) {
     Set<UUID> toMerge = new HashSet<>();
-    toMerge.add(UUID.randomUUID());
+    // tags only need to be unique, not unpredictable, so skip the SecureRandom behind randomUUID
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    toMerge.add(new UUID(random.nextLong(), random.nextLong()));
     internalSetMerge(elements, element, toMerge);
   }
   
@@ -161,6 +164,21 @@ public class OrSet<E>  implements CrdtAddRemoveSet<E, Set<E>, OrSet<E>> {
     return val;
   }
 
+  @Override
+  public boolean isDominatedBy(OrSet<E> other) {
+    return containsAll(other.elements, elements) && containsAll(other.tombstones, tombstones);
+  }
+
+  private static <E> boolean containsAll(Map<E, Set<UUID>> container, Map<E, Set<UUID>> items) {
+    for (Entry<E, Set<UUID>> item : items.entrySet()) {
+      Set<UUID> ids = container.get(item.getKey());
+      if (ids == null ? !item.getValue().isEmpty() : !ids.containsAll(item.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public OrSet<E> optimize() {
     return this;
@@ -68,6 +68,11 @@ public class PNCounter implements CrdtCounter<Long, PNCounter> {
     return pValue - nValue;
   }
 
+  @Override
+  public boolean isDominatedBy(PNCounter other) {
+    return pCount.isDominatedBy(other.pCount) && nCount.isDominatedBy(other.nCount);
+  }
+
   @Override
   public PNCounter optimize() {
     return new PNCounter(pCount.getCounters(), nCount.getCounters());
@@ -103,6 +103,11 @@ public class TwoPhaseSet<ElementType> implements CrdtAddRemoveSet<ElementType, S
     return added.stream().filter(e -> !removed.contains(e)).collect(Collectors.toSet());
   }
 
+  @Override
+  public boolean isDominatedBy(TwoPhaseSet<ElementType> other){
+    return other.added.containsAll(added) && other.removed.containsAll(removed);
+  }
+
   @Override
   public TwoPhaseSet<ElementType> optimize(){
     return new TwoPhaseSet<>(value(), removed);
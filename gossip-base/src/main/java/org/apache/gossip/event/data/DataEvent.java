@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.event.data;
+
+/**
+ * A change of a shared or per-node data item, as delivered to the data event handlers.
+ */
+public class DataEvent {
+
+  private final String nodeId;
+  private final String key;
+  private final Object oldValue;
+  private final Object newValue;
+
+  /**
+   * @param nodeId the node of per-node data, null for shared data
+   */
+  public DataEvent(String nodeId, String key, Object oldValue, Object newValue) {
+    this.nodeId = nodeId;
+    this.key = key;
+    this.oldValue = oldValue;
+    this.newValue = newValue;
+  }
+
+  /**
+   * @return the node of per-node data, null for shared data
+   */
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public Object getOldValue() {
+    return oldValue;
+  }
+
+  public Object getNewValue() {
+    return newValue;
+  }
+
+  @Override
+  public String toString() {
+    return "DataEvent [nodeId=" + nodeId + ", key=" + key + ", oldValue=" + oldValue
+            + ", newValue=" + newValue + "]";
+  }
+}
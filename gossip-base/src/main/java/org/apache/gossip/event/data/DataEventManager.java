@@ -19,26 +19,42 @@ package org.apache.gossip.event.data;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class DataEventManager {
   
-  private final List<UpdateNodeDataEventHandler> perNodeDataHandlers;
+  private final SubscriberIndex<UpdateNodeDataEventHandler> perNodeDataHandlers;
   private final BlockingQueue<Runnable> perNodeDataHandlerQueue;
   private final ExecutorService perNodeDataEventExecutor;
-  private final List<UpdateSharedDataEventHandler> sharedDataHandlers;
+  private final SubscriberIndex<UpdateSharedDataEventHandler> sharedDataHandlers;
+  /** the snapshot subscriptions registered for each handler */
+  private final ConcurrentHashMap<UpdateSharedDataEventHandler, Set<SnapshotSubscription>>
+          sharedDataSubscriptions = new ConcurrentHashMap<>();
   private final BlockingQueue<Runnable> sharedDataHandlerQueue;
   private final ExecutorService sharedDataEventExecutor;
+  /** null unless data events are delivered in order */
+  private final OrderedDataEventDispatcher<UpdateNodeDataEventHandler> orderedPerNodeData;
+  private final OrderedDataEventDispatcher<UpdateSharedDataEventHandler> orderedSharedData;
   
   public DataEventManager(MetricRegistry metrics) {
-    perNodeDataHandlers = new CopyOnWriteArrayList<>();
+    this(new GossipSettings(), metrics);
+  }
+  
+  public DataEventManager(GossipSettings settings, MetricRegistry metrics) {
+    perNodeDataHandlers = new SubscriberIndex<>();
     perNodeDataHandlerQueue = new ArrayBlockingQueue<>(DataEventConstants.PER_NODE_DATA_QUEUE_SIZE);
     perNodeDataEventExecutor = new ThreadPoolExecutor(
             DataEventConstants.PER_NODE_DATA_CORE_POOL_SIZE,
@@ -46,7 +62,7 @@ public class DataEventManager {
             DataEventConstants.PER_NODE_DATA_KEEP_ALIVE_TIME_SECONDS, TimeUnit.SECONDS,
             perNodeDataHandlerQueue, new ThreadPoolExecutor.DiscardOldestPolicy());
     
-    sharedDataHandlers = new CopyOnWriteArrayList<>();
+    sharedDataHandlers = new SubscriberIndex<>();
     sharedDataHandlerQueue = new ArrayBlockingQueue<>(DataEventConstants.SHARED_DATA_QUEUE_SIZE);
     sharedDataEventExecutor = new ThreadPoolExecutor(DataEventConstants.SHARED_DATA_CORE_POOL_SIZE,
             DataEventConstants.SHARED_DATA_MAX_POOL_SIZE,
@@ -62,23 +78,134 @@ public class DataEventManager {
     metrics.register(DataEventConstants.SHARED_DATA_SUBSCRIBERS_QUEUE_SIZE,
             (Gauge<Integer>) () -> sharedDataHandlerQueue.size());
     
+    if (settings.isOrderedDataEvents()) {
+      orderedPerNodeData = new OrderedDataEventDispatcher<>("pernode",
+              (handler, event) -> handler.onUpdate(event.getNodeId(), event.getKey(),
+                      event.getOldValue(), event.getNewValue()),
+              settings.getDataEventLanes(), settings.getDataEventLaneCapacity(), metrics);
+      orderedSharedData = new OrderedDataEventDispatcher<>("shared",
+              (handler, event) -> handler.onUpdate(event.getKey(), event.getOldValue(),
+                      event.getNewValue()),
+              settings.getDataEventLanes(), settings.getDataEventLaneCapacity(), metrics);
+    } else {
+      orderedPerNodeData = null;
+      orderedSharedData = null;
+    }
   }
   
   public void notifySharedData(final String key, final Object newValue, final Object oldValue) {
-    sharedDataHandlers.forEach(handler -> sharedDataEventExecutor
+    if (orderedSharedData != null) {
+      orderedSharedData.dispatch(new DataEvent(null, key, oldValue, newValue),
+              sharedDataHandlers.match(key));
+      return;
+    }
+    sharedDataHandlers.match(key).forEach(handler -> sharedDataEventExecutor
             .execute(() -> handler.onUpdate(key, oldValue, newValue)));
   }
   
   public void notifyPerNodeData(final String nodeId, final String key, final Object newValue,
           final Object oldValue) {
-    perNodeDataHandlers.forEach(handler -> perNodeDataEventExecutor
+    if (orderedPerNodeData != null) {
+      orderedPerNodeData.dispatch(new DataEvent(nodeId, key, oldValue, newValue),
+              perNodeDataHandlers.match(key));
+      return;
+    }
+    perNodeDataHandlers.match(key).forEach(handler -> perNodeDataEventExecutor
             .execute(() -> handler.onUpdate(nodeId, key, oldValue, newValue)));
   }
   
+  /**
+   * Delivers a batch of shared data changes with one task per interested handler, in the order
+   * given.
+   */
+  public void notifySharedData(final List<DataEvent> events) {
+    if (orderedSharedData != null) {
+      events.forEach(event -> orderedSharedData.dispatch(event, sharedDataHandlers.match(event.getKey())));
+      return;
+    }
+    byHandler(sharedDataHandlers, events).forEach((handler, matched) ->
+            sharedDataEventExecutor.execute(() -> {
+              for (DataEvent event : matched) {
+                handler.onUpdate(event.getKey(), event.getOldValue(), event.getNewValue());
+              }
+            }));
+  }
+  
+  /**
+   * Delivers a batch of per-node data changes with one task per interested handler, in the order
+   * given.
+   */
+  public void notifyPerNodeData(final List<DataEvent> events) {
+    if (orderedPerNodeData != null) {
+      events.forEach(event -> orderedPerNodeData.dispatch(event, perNodeDataHandlers.match(event.getKey())));
+      return;
+    }
+    byHandler(perNodeDataHandlers, events).forEach((handler, matched) ->
+            perNodeDataEventExecutor.execute(() -> {
+              for (DataEvent event : matched) {
+                handler.onUpdate(event.getNodeId(), event.getKey(), event.getOldValue(),
+                        event.getNewValue());
+              }
+            }));
+  }
+  
+  private static <H> Map<H, List<DataEvent>> byHandler(SubscriberIndex<H> handlers,
+          List<DataEvent> events) {
+    Map<H, List<DataEvent>> matched = new IdentityHashMap<>();
+    for (DataEvent event : events) {
+      for (H handler : handlers.match(event.getKey())) {
+        matched.computeIfAbsent(handler, h -> new ArrayList<>()).add(event);
+      }
+    }
+    return matched;
+  }
+  
+  /**
+   * @return true if events are delivered in order per key. They then have to be passed on in the
+   * order the changes were made, rather than collected for a batch.
+   */
+  public boolean isOrdered() {
+    return orderedSharedData != null;
+  }
+  
+  /**
+   * @return true if a per-node data handler is interested in the key
+   */
+  public boolean hasPerNodeDataSubscribers(String key) {
+    return perNodeDataHandlers.matchesAny(key);
+  }
+  
+  /**
+   * @return true if a shared data handler is interested in the key
+   */
+  public boolean hasSharedDataSubscribers(String key) {
+    return sharedDataHandlers.matchesAny(key);
+  }
+  
   public void registerPerNodeDataSubscriber(UpdateNodeDataEventHandler handler) {
-    perNodeDataHandlers.add(handler);
+    perNodeDataHandlers.add("", handler);
   }
   
+  /**
+   * Registers a handler that is only told about keys starting with the prefix. Other changes are
+   * never scheduled for it.
+   */
+  public void registerPerNodeDataSubscriber(String keyPrefix, UpdateNodeDataEventHandler handler) {
+    perNodeDataHandlers.add(keyPrefix, handler);
+  }
+  
+  /**
+   * Registers a handler that is only told about keys accepted by the filter. The filter runs on
+   * the thread applying the change, so it has to be cheap.
+   */
+  public void registerPerNodeDataSubscriber(Predicate<String> keyFilter,
+          UpdateNodeDataEventHandler handler) {
+    perNodeDataHandlers.add(keyFilter, handler);
+  }
+  
+  /**
+   * Removes every registration of the handler.
+   */
   public void unregisterPerNodeDataSubscriber(UpdateNodeDataEventHandler handler) {
     perNodeDataHandlers.remove(handler);
   }
@@ -88,15 +215,69 @@ public class DataEventManager {
   }
   
   public void registerSharedDataSubscriber(UpdateSharedDataEventHandler handler) {
-    sharedDataHandlers.add(handler);
+    sharedDataHandlers.add("", handler);
+  }
+  
+  /**
+   * Registers a handler that is only told about keys starting with the prefix. Other changes are
+   * never scheduled for it.
+   */
+  public void registerSharedDataSubscriber(String keyPrefix, UpdateSharedDataEventHandler handler) {
+    sharedDataHandlers.add(keyPrefix, handler);
+  }
+  
+  /**
+   * Registers a handler that is only told about keys accepted by the filter. The filter runs on
+   * the thread applying the change, so it has to be cheap.
+   */
+  public void registerSharedDataSubscriber(Predicate<String> keyFilter,
+          UpdateSharedDataEventHandler handler) {
+    sharedDataHandlers.add(keyFilter, handler);
+  }
+  
+  /**
+   * Registers a subscription that is only told about keys starting with the prefix. Unregistering
+   * the handler it wraps removes it.
+   */
+  public void registerSharedDataSubscription(String keyPrefix, SnapshotSubscription subscription) {
+    sharedDataSubscriptions.computeIfAbsent(subscription.getHandler(),
+            h -> ConcurrentHashMap.newKeySet()).add(subscription);
+    sharedDataHandlers.add(keyPrefix, subscription);
   }
   
+  public void unregisterSharedDataSubscription(SnapshotSubscription subscription) {
+    sharedDataSubscriptions.computeIfPresent(subscription.getHandler(), (h, subscriptions) -> {
+      subscriptions.remove(subscription);
+      return subscriptions.isEmpty() ? null : subscriptions;
+    });
+    sharedDataHandlers.remove(subscription);
+  }
+  
+  /**
+   * Removes every registration of the handler, its snapshot subscriptions included.
+   */
   public void unregisterSharedDataSubscriber(UpdateSharedDataEventHandler handler) {
     sharedDataHandlers.remove(handler);
+    Set<SnapshotSubscription> subscriptions = sharedDataSubscriptions.remove(handler);
+    if (subscriptions != null) {
+      subscriptions.forEach(sharedDataHandlers::remove);
+    }
   }
   
   public int getSharedDataSubscribersSize() {
     return sharedDataHandlers.size();
   }
   
+  /**
+   * Stops delivering events.
+   */
+  public void shutdown() {
+    if (orderedSharedData != null) {
+      orderedSharedData.shutdown();
+      orderedPerNodeData.shutdown();
+    }
+    sharedDataEventExecutor.shutdown();
+    perNodeDataEventExecutor.shutdown();
+  }
+  
 }
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.event.data;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Delivers data events to handlers without losing them and in order per key.
+ * <ul>
+ * <li>Keys are assigned to lanes by hash, and each lane has a single thread, so the events of a
+ * key are never delivered concurrently or out of order.</li>
+ * <li>A key has at most one pending event. A newer change of the key is merged into it,
+ * keeping the old value of the pending event and the new value of the newer one.</li>
+ * <li>{@link #dispatch(DataEvent, List)} never waits, so it is called with the lock of the key
+ * held, in the order the changes were made, and from handlers. A lane cannot outgrow the data,
+ * since a key has at most one pending event; a lane longer than the capacity is only reported.</li>
+ * </ul>
+ */
+class OrderedDataEventDispatcher<H> {
+
+  public static final Logger LOGGER = Logger.getLogger(OrderedDataEventDispatcher.class);
+
+  private final class Pending {
+    private DataEvent event;
+    private final Set<H> handlers = new LinkedHashSet<>();
+
+    Pending(DataEvent event) {
+      this.event = event;
+    }
+  }
+
+  private final class Lane {
+    /** by node id and key */
+    private final LinkedHashMap<Map.Entry<String, String>, Pending> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Thread worker;
+
+    Lane(String threadName) {
+      worker = new Thread(() -> work(this), threadName);
+      worker.setDaemon(true);
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return pending.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private final BiConsumer<H, DataEvent> deliver;
+  private final int capacity;
+  private final List<Lane> lanes = new ArrayList<>();
+  private final Meter delivered;
+  private final Meter coalesced;
+  private final Meter overCapacity;
+  private volatile boolean running = true;
+
+  /**
+   * @param kind names the threads and metrics, e.g. shared or pernode
+   * @param deliver calls a handler with an event
+   * @param lanes number of lanes, each with one thread
+   * @param capacity number of keys with a pending event per lane above which the lane is reported
+   * as over capacity
+   */
+  OrderedDataEventDispatcher(String kind, BiConsumer<H, DataEvent> deliver, int lanes, int capacity,
+          MetricRegistry registry) {
+    this.deliver = deliver;
+    this.capacity = capacity;
+    delivered = registry.meter(name(OrderedDataEventDispatcher.class, kind, "delivered"));
+    coalesced = registry.meter(name(OrderedDataEventDispatcher.class, kind, "coalesced"));
+    overCapacity = registry.meter(name(OrderedDataEventDispatcher.class, kind, "over-capacity"));
+    for (int i = 0; i < lanes; i++) {
+      Lane lane = new Lane("gossip-" + kind + "-data-event-" + i);
+      this.lanes.add(lane);
+      registry.register(name(OrderedDataEventDispatcher.class, kind, "lane-" + i, "depth"),
+              (Gauge<Integer>) lane::size);
+    }
+    for (Lane lane : this.lanes) {
+      lane.worker.start();
+    }
+  }
+
+  private Lane lane(Map.Entry<String, String> slot) {
+    int h = slot.hashCode();
+    return lanes.get(((h ^ (h >>> 16)) & Integer.MAX_VALUE) % lanes.size());
+  }
+
+  /**
+   * Queues an event for the handlers without waiting.
+   */
+  void dispatch(DataEvent event, List<H> handlers) {
+    if (handlers.isEmpty()) {
+      return;
+    }
+    Map.Entry<String, String> slot = new SimpleImmutableEntry<>(event.getNodeId(), event.getKey());
+    Lane lane = lane(slot);
+    lane.lock.lock();
+    try {
+      if (!running) {
+        return;
+      }
+      Pending pending = lane.pending.get(slot);
+      if (pending == null) {
+        pending = new Pending(event);
+        lane.pending.put(slot, pending);
+        if (lane.pending.size() > capacity) {
+          overCapacity.mark();
+        }
+        lane.available.signal();
+      } else {
+        pending.event = new DataEvent(event.getNodeId(), event.getKey(),
+                pending.event.getOldValue(), event.getNewValue());
+        coalesced.mark();
+      }
+      pending.handlers.addAll(handlers);
+    } finally {
+      lane.lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of keys with a pending event
+   */
+  int size() {
+    int size = 0;
+    for (Lane lane : lanes) {
+      size += lane.size();
+    }
+    return size;
+  }
+
+  private Pending take(Lane lane) {
+    lane.lock.lock();
+    try {
+      while (running) {
+        Iterator<Pending> it = lane.pending.values().iterator();
+        if (it.hasNext()) {
+          Pending next = it.next();
+          it.remove();
+          return next;
+        }
+        lane.available.awaitUninterruptibly();
+      }
+      return null;
+    } finally {
+      lane.lock.unlock();
+    }
+  }
+
+  private void work(Lane lane) {
+    Pending pending;
+    while ((pending = take(lane)) != null) {
+      for (H handler : pending.handlers) {
+        try {
+          deliver.accept(handler, pending.event);
+        } catch (RuntimeException ex) {
+          LOGGER.warn("handler failed on " + pending.event, ex);
+        }
+      }
+      delivered.mark();
+    }
+  }
+
+  /**
+   * Stops the lanes. Events still pending are dropped.
+   */
+  void shutdown() {
+    running = false;
+    for (Lane lane : lanes) {
+      lane.lock.lock();
+      try {
+        lane.available.signalAll();
+      } finally {
+        lane.lock.unlock();
+      }
+    }
+    for (Lane lane : lanes) {
+      if (lane.worker == Thread.currentThread()) {
+        continue;
+      }
+      try {
+        lane.worker.join(5000);
+      } catch (InterruptedException e) {
+        LOGGER.debug("Issue during shutdown", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.event.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Wraps a shared data handler that first receives the data already stored. It is registered before
+ * the stored data is read, so no change is missed: changes arriving while the snapshot is delivered
+ * are held back and passed on after it. A held change of a key is skipped when the snapshot, or a
+ * later held change of the key, already delivered its value.
+ * The handler is never called concurrently with itself until the snapshot is done. The
+ * {@link DataEventManager} keeps track of the subscriptions of a handler, so unregistering the
+ * handler removes them.
+ */
+public class SnapshotSubscription implements UpdateSharedDataEventHandler {
+
+  private final UpdateSharedDataEventHandler handler;
+  /** guarded by this, null once live */
+  private List<DataEvent> held = new ArrayList<>();
+  /** guarded by this, the value delivered per key, null once live */
+  private Map<String, Object> delivered = new HashMap<>();
+
+  public SnapshotSubscription(UpdateSharedDataEventHandler handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * @return the handler this subscription delivers to
+   */
+  public UpdateSharedDataEventHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * Delivers a batch of stored data as changes from no value.
+   * @param batch key to value
+   */
+  public synchronized void snapshot(Map<String, ?> batch) {
+    for (Map.Entry<String, ?> entry : batch.entrySet()) {
+      delivered.put(entry.getKey(), entry.getValue());
+      handler.onUpdate(entry.getKey(), null, entry.getValue());
+    }
+  }
+
+  /**
+   * Ends the snapshot: passes on the changes held back, then every change as it arrives.
+   */
+  public synchronized void live() {
+    // the last held change of a key carrying the value the snapshot read, and all before it, were
+    // made before the snapshot read the key
+    Map<String, Integer> seenUpTo = new HashMap<>();
+    for (int i = held.size() - 1; i >= 0; i--) {
+      DataEvent event = held.get(i);
+      if (!seenUpTo.containsKey(event.getKey()) && delivered.containsKey(event.getKey())
+              && Objects.equals(delivered.get(event.getKey()), event.getNewValue())) {
+        seenUpTo.put(event.getKey(), i);
+      }
+    }
+    for (int i = 0; i < held.size(); i++) {
+      DataEvent event = held.get(i);
+      if (i > seenUpTo.getOrDefault(event.getKey(), -1)) {
+        handler.onUpdate(event.getKey(), event.getOldValue(), event.getNewValue());
+      }
+    }
+    held = null;
+    delivered = null;
+  }
+
+  @Override
+  public void onUpdate(String key, Object oldValue, Object newValue) {
+    synchronized (this) {
+      if (held != null) {
+        held.add(new DataEvent(null, key, oldValue, newValue));
+        return;
+      }
+    }
+    handler.onUpdate(key, oldValue, newValue);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.event.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Finds the handlers interested in a key without asking every handler. Handlers registered for a
+ * key prefix are found by looking up the leading characters of the key, once per distinct prefix
+ * length; handlers with a key predicate are tested one by one. Registration replaces an immutable
+ * snapshot, so lookups take no lock.
+ */
+class SubscriberIndex<H> {
+
+  private static final class Filtered<H> {
+    private final Predicate<String> filter;
+    private final H handler;
+
+    Filtered(Predicate<String> filter, H handler) {
+      this.filter = filter;
+      this.handler = handler;
+    }
+  }
+
+  private static final class Snapshot<H> {
+    private final Map<String, List<H>> byPrefix;
+    /** the distinct prefix lengths, ascending */
+    private final int[] prefixLengths;
+    private final List<Filtered<H>> filtered;
+    private final int size;
+
+    Snapshot(Map<String, List<H>> byPrefix, List<Filtered<H>> filtered) {
+      this.byPrefix = byPrefix;
+      this.filtered = filtered;
+      TreeSet<Integer> lengths = new TreeSet<>();
+      int count = filtered.size();
+      for (Map.Entry<String, List<H>> entry : byPrefix.entrySet()) {
+        lengths.add(entry.getKey().length());
+        count += entry.getValue().size();
+      }
+      prefixLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+      size = count;
+    }
+  }
+
+  private volatile Snapshot<H> snapshot =
+          new Snapshot<>(Collections.emptyMap(), Collections.emptyList());
+
+  /**
+   * @param prefix the key prefix, empty for every key
+   */
+  synchronized void add(String prefix, H handler) {
+    Map<String, List<H>> byPrefix = new HashMap<>(snapshot.byPrefix);
+    List<H> handlers = new ArrayList<>(byPrefix.getOrDefault(prefix, Collections.emptyList()));
+    handlers.add(handler);
+    byPrefix.put(prefix, handlers);
+    snapshot = new Snapshot<>(byPrefix, snapshot.filtered);
+  }
+
+  synchronized void add(Predicate<String> filter, H handler) {
+    List<Filtered<H>> filtered = new ArrayList<>(snapshot.filtered);
+    filtered.add(new Filtered<>(filter, handler));
+    snapshot = new Snapshot<>(snapshot.byPrefix, filtered);
+  }
+
+  /**
+   * Removes every registration of the handler.
+   */
+  synchronized void remove(H handler) {
+    Map<String, List<H>> byPrefix = new HashMap<>();
+    for (Map.Entry<String, List<H>> entry : snapshot.byPrefix.entrySet()) {
+      List<H> handlers = new ArrayList<>(entry.getValue());
+      handlers.remove(handler);
+      if (!handlers.isEmpty()) {
+        byPrefix.put(entry.getKey(), handlers);
+      }
+    }
+    List<Filtered<H>> filtered = new ArrayList<>(snapshot.filtered);
+    filtered.removeIf(f -> f.handler.equals(handler));
+    snapshot = new Snapshot<>(byPrefix, filtered);
+  }
+
+  /**
+   * @return the handlers interested in the key, each once
+   */
+  List<H> match(String key) {
+    Snapshot<H> current = snapshot;
+    List<H> matched = new ArrayList<>();
+    for (int length : current.prefixLengths) {
+      if (length > key.length()) {
+        break;
+      }
+      List<H> handlers = current.byPrefix.get(key.substring(0, length));
+      if (handlers != null) {
+        addAll(matched, handlers);
+      }
+    }
+    for (Filtered<H> f : current.filtered) {
+      if (f.filter.test(key)) {
+        addAll(matched, Collections.singletonList(f.handler));
+      }
+    }
+    return matched;
+  }
+
+  private static <H> void addAll(List<H> matched, List<H> handlers) {
+    for (H handler : handlers) {
+      // a handler registered under several prefixes is notified once
+      if (!matched.contains(handler)) {
+        matched.add(handler);
+      }
+    }
+  }
+
+  boolean matchesAny(String key) {
+    Snapshot<H> current = snapshot;
+    if (current.size == 0) {
+      return false;
+    }
+    for (int length : current.prefixLengths) {
+      if (length > key.length()) {
+        break;
+      }
+      if (current.byPrefix.containsKey(key.substring(0, length))) {
+        return true;
+      }
+    }
+    for (Filtered<H> f : current.filtered) {
+      if (f.filter.test(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number of registrations
+   */
+  int size() {
+    return snapshot.size;
+  }
+}
@@ -37,7 +37,6 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -52,10 +51,10 @@ public class LockManager {
   private final LockManagerSettings lockSettings;
   private final ScheduledExecutorService voteService;
   private final AtomicInteger numberOfNodes;
-  private final Set<String> lockKeys;
   // For MetricRegistry
   public static final String LOCK_KEY_SET_SIZE = "gossip.lock.key_set_size";
   public static final String LOCK_TIME = "gossip.lock.time";
+  private static final String LOCK_KEY_PREFIX = "lock/";
   private final Timer lockTimeMetric;
 
   public LockManager(GossipManager gossipManager, final LockManagerSettings lockManagerSettings,
@@ -63,15 +62,9 @@ public class LockManager {
     this.gossipManager = gossipManager;
     this.lockSettings = lockManagerSettings;
     this.numberOfNodes = new AtomicInteger(lockSettings.getNumberOfNodes());
-    this.lockKeys = new CopyOnWriteArraySet<>();
-    metrics.register(LOCK_KEY_SET_SIZE, (Gauge<Integer>) lockKeys::size);
+    metrics.register(LOCK_KEY_SET_SIZE,
+            (Gauge<Integer>) () -> gossipManager.countSharedGossipDataByPrefix(LOCK_KEY_PREFIX));
     lockTimeMetric = metrics.timer(LOCK_TIME);
-    // Register listener for lock keys
-    gossipManager.registerSharedDataSubscriber((key, oldValue, newValue) -> {
-      if (key.contains("lock/")) {
-        lockKeys.add(key);
-      }
-    });
     voteService = Executors.newScheduledThreadPool(2);
     voteService.scheduleAtFixedRate(this::updateVotes, 0, lockSettings.getVoteUpdateInterval(),
             TimeUnit.MILLISECONDS);
@@ -157,9 +150,8 @@ public class LockManager {
 
   // This method will run periodically to vote the other nodes
   private void updateVotes() {
-    for (String lockKey : lockKeys) {
-      SharedDataMessage message = gossipManager.findSharedGossipData(lockKey);
-      if (message == null || !(message.getPayload() instanceof MajorityVote)) {
+    for (SharedDataMessage message : gossipManager.findSharedGossipDataByPrefix(LOCK_KEY_PREFIX).values()) {
+      if (!(message.getPayload() instanceof MajorityVote)) {
         continue;
       }
       MajorityVote majorityVote = (MajorityVote) message.getPayload();
@@ -287,7 +279,7 @@ public class LockManager {
   }
 
   private String generateLockKey(String key){
-    return "lock/" + key;
+    return LOCK_KEY_PREFIX + key;
   }
 
   public void shutdown(){
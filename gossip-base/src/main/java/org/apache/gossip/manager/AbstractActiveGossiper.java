@@ -18,10 +18,8 @@
 package org.apache.gossip.manager;
 
 import java.util.Map.Entry;
-import java.util.List;
-import java.util.Random;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import org.apache.gossip.GossipSettings;
@@ -33,6 +31,7 @@ import org.apache.gossip.model.Response;
 import org.apache.gossip.model.SharedDataMessage;
 import org.apache.gossip.model.ShutdownMessage;
 import org.apache.gossip.udp.*;
+import org.apache.gossip.utils.ReflectionUtils;
 import org.apache.log4j.Logger;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -49,7 +48,7 @@ public abstract class AbstractActiveGossiper {
   private final Histogram sharedDataHistogram;
   private final Histogram sendPerNodeDataHistogram;
   private final Histogram sendMembershipHistogram;
-  private final Random random;
+  private final Histogram roundTripHistogram;
   private final GossipSettings gossipSettings;
 
   public AbstractActiveGossiper(GossipManager gossipManager, GossipCore gossipCore, MetricRegistry registry) {
@@ -58,7 +57,7 @@ public abstract class AbstractActiveGossiper {
     sharedDataHistogram = registry.histogram(name(AbstractActiveGossiper.class, "sharedDataHistogram-time"));
     sendPerNodeDataHistogram = registry.histogram(name(AbstractActiveGossiper.class, "sendPerNodeDataHistogram-time"));
     sendMembershipHistogram = registry.histogram(name(AbstractActiveGossiper.class, "sendMembershipHistogram-time"));
-    random = new Random();
+    roundTripHistogram = registry.histogram(name(AbstractActiveGossiper.class, "activeGossipRoundTrip-micros"));
     gossipSettings = gossipManager.getSettings();
   }
 
@@ -77,6 +76,7 @@ public abstract class AbstractActiveGossiper {
     ShutdownMessage m = new ShutdownMessage();
     m.setNodeId(me.getId());
     m.setShutdownAtNanos(gossipManager.getClock().nanoTime());
+    m.setLeft(gossipSettings.isGracefulLeave());
     gossipCore.sendOneWay(m, target.getUri());
   }
 
@@ -101,7 +101,7 @@ public abstract class AbstractActiveGossiper {
         continue;
       }
       UdpSharedDataMessage message = new UdpSharedDataMessage();
-      message.setUuid(UUID.randomUUID().toString());
+      message.setUuid(gossipCore.nextMessageId());
       message.setUriFrom(me.getId());
       copySharedDataMessage(innerEntry.getValue(), message);
       gossipCore.sendOneWay(message, member.getUri());
@@ -111,7 +111,7 @@ public abstract class AbstractActiveGossiper {
   /** Send shared data by batching together several entries. */
   private void sendSharedDataInBulkInternal(LocalMember me, LocalMember member) {
     UdpSharedDataBulkMessage udpMessage = new UdpSharedDataBulkMessage();
-    udpMessage.setUuid(UUID.randomUUID().toString());
+    udpMessage.setUuid(gossipCore.nextMessageId());
     udpMessage.setUriFrom(me.getId());
     for (Entry<String, SharedDataMessage> innerEntry : gossipCore.getSharedData().entrySet()) {
       if (innerEntry.getValue().getReplicable() != null && !innerEntry.getValue().getReplicable()
@@ -124,7 +124,7 @@ public abstract class AbstractActiveGossiper {
       if (udpMessage.getMessages().size() == gossipSettings.getBulkTransferSize()) {
         gossipCore.sendOneWay(udpMessage, member.getUri());
         udpMessage = new UdpSharedDataBulkMessage();
-        udpMessage.setUuid(UUID.randomUUID().toString());
+        udpMessage.setUuid(gossipCore.nextMessageId());
         udpMessage.setUriFrom(me.getId());
       }
     }
@@ -138,7 +138,7 @@ public abstract class AbstractActiveGossiper {
     copy.setKey(original.getKey());
     copy.setNodeId(original.getNodeId());
     copy.setTimestamp(original.getTimestamp());
-    copy.setPayload(original.getPayload());
+    copy.setRawPayload(original.getRawPayload());
     copy.setReplicable(original.getReplicable());
   }
 
@@ -164,7 +164,7 @@ public abstract class AbstractActiveGossiper {
           continue;
         }
         UdpPerNodeDataMessage message = new UdpPerNodeDataMessage();
-        message.setUuid(UUID.randomUUID().toString());
+        message.setUuid(gossipCore.nextMessageId());
         message.setUriFrom(me.getId());
         copyPerNodeDataMessage(innerEntry.getValue(), message);
         gossipCore.sendOneWay(message, member.getUri());
@@ -177,7 +177,7 @@ public abstract class AbstractActiveGossiper {
   private void sendPerNodeDataInBulkInternal(LocalMember me, LocalMember member) {
     for (Entry<String, ConcurrentHashMap<String, PerNodeDataMessage>> entry : gossipCore.getPerNodeData().entrySet()){
       UdpPerNodeDataBulkMessage udpMessage = new UdpPerNodeDataBulkMessage();
-      udpMessage.setUuid(UUID.randomUUID().toString());
+      udpMessage.setUuid(gossipCore.nextMessageId());
       udpMessage.setUriFrom(me.getId());
       for (Entry<String, PerNodeDataMessage> innerEntry : entry.getValue().entrySet()){
         if (innerEntry.getValue().getReplicable() != null && !innerEntry.getValue().getReplicable()
@@ -190,7 +190,7 @@ public abstract class AbstractActiveGossiper {
         if (udpMessage.getMessages().size() == gossipSettings.getBulkTransferSize()) {
           gossipCore.sendOneWay(udpMessage, member.getUri());
           udpMessage = new UdpPerNodeDataBulkMessage();
-          udpMessage.setUuid(UUID.randomUUID().toString());
+          udpMessage.setUuid(gossipCore.nextMessageId());
           udpMessage.setUriFrom(me.getId());
         }
       }
@@ -205,7 +205,7 @@ public abstract class AbstractActiveGossiper {
     copy.setKey(original.getKey());
     copy.setNodeId(original.getNodeId());
     copy.setTimestamp(original.getTimestamp());
-    copy.setPayload(original.getPayload());
+    copy.setRawPayload(original.getRawPayload());
     copy.setReplicable(original.getReplicable());
   }
 
@@ -220,42 +220,52 @@ public abstract class AbstractActiveGossiper {
     me.setHeartbeat(System.nanoTime());
     UdpActiveGossipMessage message = new UdpActiveGossipMessage();
     message.setUriFrom(gossipManager.getMyself().getUri().toASCIIString());
-    message.setUuid(UUID.randomUUID().toString());
+    message.setUuid(gossipCore.nextMessageId());
+    me.advertiseProperties();
     message.getMembers().add(convert(me));
     for (LocalMember other : gossipManager.getMembers().keySet()) {
       message.getMembers().add(convert(other));
     }
+    long sentAt = gossipManager.getClock().nanoTime();
     Response r = gossipCore.send(message, member.getUri());
     if (r instanceof ActiveGossipOk){
-      //maybe count metrics here
+      long roundTrip = gossipManager.getClock().nanoTime() - sentAt;
+      member.recordRoundTrip(roundTrip);
+      roundTripHistogram.update(TimeUnit.NANOSECONDS.toMicros(roundTrip));
     } else {
       LOGGER.debug("Message " + message + " generated response " + r);
     }
     sendMembershipHistogram.update(System.currentTimeMillis() - startTime);
   }
 
+  /**
+   * Converts a member for the membership list. Only the properties version is sent, receivers that
+   * are behind fetch the properties with a {@link org.apache.gossip.udp.UdpMemberPropertiesRequest}.
+   * Properties that are not versioned, those of nodes predating versioned properties, are still
+   * sent, as those nodes send them themselves.
+   * <p>
+   * During a rolling upgrade, a node predating versioned properties takes the missing properties
+   * of a versioned member as none, until it is upgraded too.
+   */
   protected final Member convert(LocalMember member){
     Member gm = new Member();
     gm.setCluster(member.getClusterName());
     gm.setHeartbeat(member.getHeartbeat());
     gm.setUri(member.getUri().toASCIIString());
     gm.setId(member.getId());
-    gm.setProperties(member.getProperties());
+    gm.setPropertiesVersion(member.getPropertiesVersion());
+    if (member.getPropertiesVersion() == 0) {
+      gm.setProperties(member.getProperties());
+    }
     return gm;
   }
 
   /**
-   *
-   * @param memberList
-   *          An immutable list
-   * @return The chosen LocalGossipMember to gossip with.
+   * @return a new selector of the class configured in the settings. Use one selector per kind of
+   * contact so that each of them gets its own round.
    */
-  protected LocalMember selectPartner(List<LocalMember> memberList) {
-    LocalMember member = null;
-    if (memberList.size() > 0) {
-      int randomNeighborIndex = random.nextInt(memberList.size());
-      member = memberList.get(randomNeighborIndex);
-    }
-    return member;
+  protected final PartnerSelector newPartnerSelector() {
+    return ReflectionUtils.constructWithReflection(gossipSettings.getPartnerSelectorClass(),
+            new Class<?>[0], new Object[0]);
   }
 }
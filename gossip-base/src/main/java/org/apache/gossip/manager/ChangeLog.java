@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.gossip.model.Base;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A bounded, sequenced log of the changes to shared and per-node data, for consumers that want to
+ * pull every change rather than be pushed events. The {@link DataStore} records each accepted
+ * write and each removal under the lock stripe of the key, together with the value it replaced,
+ * so the changes of one key are logged in the order the map went through them and applying the
+ * log in sequence always ends at the value stored.
+ * <p>
+ * The log is a ring: once more changes than its capacity were made, the oldest are overwritten and
+ * a consumer behind them is told to start over from a snapshot.
+ */
+public class ChangeLog {
+
+  /**
+   * One change. For shared data the node id is null.
+   */
+  public static final class Change {
+    private final long sequence;
+    private final String nodeId;
+    private final String key;
+    private final long timestamp;
+    private final Base previous;
+    private final Base current;
+
+    Change(long sequence, String nodeId, String key, long timestamp, Base previous, Base current) {
+      this.sequence = sequence;
+      this.nodeId = nodeId;
+      this.key = key;
+      this.timestamp = timestamp;
+      this.previous = previous;
+      this.current = current;
+    }
+
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return the node of per-node data, null for shared data
+     */
+    public String getNodeId() {
+      return nodeId;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * @return the timestamp of the data written, or of the data removed
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /**
+     * @return the message replaced or removed, null if there was none
+     */
+    public Base getPrevious() {
+      return previous;
+    }
+
+    /**
+     * @return the message stored, null if the data was removed
+     */
+    public Base getCurrent() {
+      return current;
+    }
+
+    @Override
+    public String toString() {
+      return "Change [sequence=" + sequence + ", nodeId=" + nodeId + ", key=" + key
+              + ", timestamp=" + timestamp + ", removed=" + (current == null) + "]";
+    }
+  }
+
+  /**
+   * The result of a {@link ChangeLog#poll(long, int)}.
+   */
+  public static final class Batch {
+    private final List<Change> changes;
+    private final long nextSequence;
+    private final boolean overflow;
+
+    Batch(List<Change> changes, long nextSequence, boolean overflow) {
+      this.changes = changes;
+      this.nextSequence = nextSequence;
+      this.overflow = overflow;
+    }
+
+    /**
+     * @return the changes, in sequence, empty on overflow
+     */
+    public List<Change> getChanges() {
+      return changes;
+    }
+
+    /**
+     * @return the sequence to poll from next
+     */
+    public long getNextSequence() {
+      return nextSequence;
+    }
+
+    /**
+     * @return true if changes after the polled sequence were already overwritten. The consumer has
+     * to read the current data again; getNextSequence() is a sequence to continue from after that.
+     */
+    public boolean isOverflow() {
+      return overflow;
+    }
+  }
+
+  private final AtomicReferenceArray<Change> ring;
+  private final int mask;
+  private final AtomicLong next = new AtomicLong();
+  private final Meter overflows;
+
+  /**
+   * @param capacity the number of changes kept, rounded up to a power of two
+   */
+  public ChangeLog(int capacity, MetricRegistry registry) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    ring = new AtomicReferenceArray<>(size);
+    mask = size - 1;
+    overflows = registry.meter(name(ChangeLog.class, "overflow"));
+    registry.register(name(ChangeLog.class, "head"), (Gauge<Long>) () -> next.get());
+  }
+
+  void record(String nodeId, String key, long timestamp, Base previous, Base current) {
+    long sequence = next.getAndIncrement();
+    ring.set((int) (sequence & mask), new Change(sequence, nodeId, key, timestamp, previous, current));
+  }
+
+  /**
+   * @return the sequence the next change will get. A consumer starting from a snapshot reads this
+   * before taking the snapshot and polls from it afterwards.
+   */
+  public long headSequence() {
+    return next.get();
+  }
+
+  /**
+   * @return the number of changes kept
+   */
+  public int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Reads the changes from a sequence on. Returns fewer than asked for when it reaches a change
+   * that is still being written; polling again from getNextSequence() picks it up.
+   * @param fromSequence the first sequence to return
+   * @param max the most changes to return
+   */
+  public Batch poll(long fromSequence, int max) {
+    if (max <= 0) {
+      throw new IllegalArgumentException("max must be positive, was " + max);
+    }
+    long head = next.get();
+    if (fromSequence < 0 || fromSequence > head) {
+      throw new IllegalArgumentException("No sequence " + fromSequence + ", head is " + head);
+    }
+    if (head - fromSequence > capacity()) {
+      return overflow(head);
+    }
+    List<Change> changes = new ArrayList<>(Math.min(max, (int) (head - fromSequence)));
+    long sequence = fromSequence;
+    while (sequence < head && changes.size() < max) {
+      Change change = ring.get((int) (sequence & mask));
+      if (change == null || change.sequence < sequence) {
+        // reserved, not yet written
+        break;
+      }
+      if (change.sequence > sequence) {
+        // overwritten while reading
+        return overflow(next.get());
+      }
+      changes.add(change);
+      sequence++;
+    }
+    return new Batch(changes, sequence, false);
+  }
+
+  private Batch overflow(long head) {
+    overflows.mark();
+    return new Batch(Collections.emptyList(), head, true);
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.model.LazyPayload;
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Accounts the approximate serialized size of shared and per-node data and enforces the caps from
+ * {@link GossipSettings}: per writing node id, per key prefix and in total. Sizes are charged by
+ * the {@link DataStore} under the same per-key lock that writes the current value, so the
+ * footprint follows the data as it is written, replaced, expired, evicted or removed. A write is
+ * admitted by reserving its bytes on the counters it is capped by, so concurrent writes can not
+ * all fit in the same room; the reservation is released once the write is charged or lost. Until
+ * then a write counts twice, which may refuse a concurrent write close to a cap. Nothing is sized
+ * or accounted when no cap is set. Payloads still encoded are sized by their encoding.
+ * <p>
+ * Evicting replicated data only removes it here, and peers keep gossiping it back. An evicted key
+ * is therefore remembered: gossip of it that is not newer than the evicted value is refused until
+ * that value expires. A local write or a newer value is admitted again.
+ */
+public class DataQuota {
+
+  public static final Logger LOGGER = Logger.getLogger(DataQuota.class);
+
+  enum Eviction {
+    NONE, LRU, EARLIEST_EXPIRING;
+
+    static Eviction parse(String policy) {
+      return policy == null ? NONE : valueOf(policy.toUpperCase());
+    }
+  }
+
+  static final class Key {
+    /** null for shared data */
+    private final String nodeId;
+    private final String key;
+
+    Key(String nodeId, String key) {
+      this.nodeId = nodeId;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return Objects.equals(nodeId, other.nodeId) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(nodeId) * 31 + key.hashCode();
+    }
+  }
+
+  /** lastAccess of a charge that was replaced or released */
+  private static final long RETIRED = -1;
+
+  private static final class Charge {
+    private final String owner;
+    private final String prefix;
+    private final long bytes;
+    /** the position in the access order, see {@link #touch} */
+    private final AtomicLong lastAccess;
+
+    Charge(String owner, String prefix, long bytes, long lastAccess) {
+      this.owner = owner;
+      this.prefix = prefix;
+      this.bytes = bytes;
+      this.lastAccess = new AtomicLong(lastAccess);
+    }
+  }
+
+  /**
+   * The bytes a write holds on the counters it is capped by from its admission until it is charged
+   * or lost. Releasing it more than once has no effect.
+   */
+  final class Reservation {
+    /** null if the owner is not capped */
+    private final String owner;
+    /** null if the key has no prefix quota */
+    private final String prefix;
+    private final boolean total;
+    private final long bytes;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Reservation(String owner, String prefix, boolean total, long bytes) {
+      this.owner = owner;
+      this.prefix = prefix;
+      this.total = total;
+      this.bytes = bytes;
+    }
+
+    void release() {
+      if (bytes != 0 && released.compareAndSet(false, true)) {
+        add(ownerBytes, owner, -bytes);
+        add(prefixBytes, prefix, -bytes);
+        if (total) {
+          totalBytes.addAndGet(-bytes);
+        }
+      }
+    }
+  }
+
+  private static final class Evicted {
+    private final long timestamp;
+    /** null if the value never expires */
+    private final Long expireAt;
+
+    Evicted(long timestamp, Long expireAt) {
+      this.timestamp = timestamp;
+      this.expireAt = expireAt;
+    }
+  }
+
+  private static final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  /** charged when a payload cannot be serialized */
+  private static final long UNKNOWN_PAYLOAD_BYTES = 64;
+
+  private final long maxBytes;
+  private final long maxBytesPerNode;
+  private final Map<String, Long> prefixQuotas;
+  private final Eviction eviction;
+  private final boolean capped;
+  private final ConcurrentHashMap<Key, Evicted> evictedKeys = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Key, Charge> charges = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicLong> ownerBytes = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicLong> prefixBytes = new ConcurrentHashMap<>();
+  private final AtomicLong totalBytes = new AtomicLong();
+  /** the keys in the order they were last written or read, only kept for least recently used */
+  private final ConcurrentSkipListMap<Long, Key> accessOrder = new ConcurrentSkipListMap<>();
+  private final AtomicLong accessClock = new AtomicLong();
+  private final Reservation nothingReserved = new Reservation(null, null, false, 0);
+  private final Meter rejected;
+  private final Meter evicted;
+
+  public DataQuota(GossipSettings settings, MetricRegistry registry) {
+    maxBytes = settings.getMaxDataBytes();
+    maxBytesPerNode = settings.getMaxDataBytesPerNode();
+    prefixQuotas = settings.getDataPrefixQuotas();
+    eviction = Eviction.parse(settings.getDataEvictionPolicy());
+    capped = maxBytes > 0 || maxBytesPerNode > 0 || !prefixQuotas.isEmpty();
+    for (String prefix : prefixQuotas.keySet()) {
+      prefixBytes.put(prefix, new AtomicLong());
+    }
+    rejected = registry.meter(name(DataQuota.class, "rejected"));
+    evicted = registry.meter(name(DataQuota.class, "evicted"));
+    registry.register(name(DataQuota.class, "bytes"), (Gauge<Long>) () -> totalBytes.get());
+    registry.register(name(DataQuota.class, "entries"), (Gauge<Integer>) () -> charges.size());
+    registry.register(name(DataQuota.class, "evicted-keys"), (Gauge<Integer>) () -> evictedKeys.size());
+    if (capped) {
+      // the mapper's first write is slow, do it before any data arrives
+      sizeOf("", "");
+    }
+  }
+
+  /**
+   * @return the key length plus the length of the payload written as JSON, or of its encoding if
+   * it is still encoded
+   */
+  long sizeOf(String key, Object payload) {
+    if (payload instanceof LazyPayload && ((LazyPayload) payload).getEncodedLength() >= 0) {
+      return key.length() + ((LazyPayload) payload).getEncodedLength();
+    }
+    CountingOutputStream out = new CountingOutputStream();
+    try {
+      GossipManager.metdataObjectMapper.writeValue(out, payload);
+      return key.length() + out.count;
+    } catch (IOException | RuntimeException e) {
+      return key.length() + UNKNOWN_PAYLOAD_BYTES;
+    }
+  }
+
+  private String prefixOf(String key) {
+    String match = null;
+    for (String prefix : prefixQuotas.keySet()) {
+      if (key.startsWith(prefix) && (match == null || prefix.length() > match.length())) {
+        match = prefix;
+      }
+    }
+    return match;
+  }
+
+  private static long get(ConcurrentHashMap<String, AtomicLong> counters, String name) {
+    AtomicLong counter = name == null ? null : counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  private static void add(ConcurrentHashMap<String, AtomicLong> counters, String name, long delta) {
+    if (name != null) {
+      counters.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(delta);
+    }
+  }
+
+  /**
+   * Adds bytes to a counter unless that takes it over the cap.
+   * @param replaced the bytes of the value the write replaces, which leave the counter with it
+   */
+  private static boolean reserve(AtomicLong counter, long replaced, long bytes, long cap) {
+    while (true) {
+      long used = counter.get();
+      if (used - replaced + bytes > cap) {
+        return false;
+      }
+      if (counter.compareAndSet(used, used + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Decides whether a write fits and reserves its bytes. When only the total cap is exceeded and an
+   * eviction policy is set, other entries are evicted to make room. The caller releases the
+   * reservation once the write is charged or lost.
+   * @param nodeId the node of per-node data, null for shared data
+   * @param owner the node that wrote the data
+   * @param timestamp of gossiped data, null for a local write
+   * @param store used to evict entries
+   * @return null if the write must be refused
+   */
+  Reservation admit(String nodeId, String key, String owner, Object payload, Long timestamp,
+          DataStore store) {
+    if (!capped) {
+      return nothingReserved;
+    }
+    Key k = new Key(nodeId, key);
+    Evicted gone = evictedKeys.get(k);
+    if (gone != null) {
+      if (timestamp != null && timestamp <= gone.timestamp) {
+        return refuse(nodeId, key, "an evicted value");
+      }
+      evictedKeys.remove(k, gone);
+    }
+    String prefix = prefixOf(key);
+    boolean perNodeCapped = maxBytesPerNode > 0 && owner != null;
+    if (!perNodeCapped && prefix == null && maxBytes <= 0) {
+      return nothingReserved;
+    }
+    long bytes = sizeOf(key, payload);
+    Charge existing = charges.get(k);
+    long replaced = existing != null ? existing.bytes : 0;
+    if (perNodeCapped && !reserve(ownerBytes.computeIfAbsent(owner, o -> new AtomicLong()),
+            existing != null && owner.equals(existing.owner) ? replaced : 0, bytes, maxBytesPerNode)) {
+      return refuse(nodeId, key, "over the quota of node " + owner);
+    }
+    Reservation reservation = new Reservation(perNodeCapped ? owner : null, null, false, bytes);
+    if (prefix != null) {
+      if (!reserve(prefixBytes.get(prefix), replaced, bytes, prefixQuotas.get(prefix))) {
+        reservation.release();
+        return refuse(nodeId, key, "over the quota of prefix " + prefix);
+      }
+      reservation = new Reservation(reservation.owner, prefix, false, bytes);
+    }
+    if (maxBytes > 0) {
+      while (!reserve(totalBytes, replaced, bytes, maxBytes)) {
+        long over = totalBytes.get() - replaced + bytes - maxBytes;
+        // evicted room may be taken by a concurrent write, then evict again
+        if (eviction == Eviction.NONE || evict(store, k, over) < over) {
+          reservation.release();
+          return refuse(nodeId, key, "over the total quota");
+        }
+      }
+      reservation = new Reservation(reservation.owner, reservation.prefix, true, bytes);
+    }
+    return reservation;
+  }
+
+  private Reservation refuse(String nodeId, String key, String reason) {
+    rejected.mark();
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Refused " + (nodeId == null ? "shared" : nodeId) + " data " + key + " as "
+              + reason);
+    }
+    return null;
+  }
+
+  private long evict(DataStore store, Key exclude, long needed) {
+    if (eviction == Eviction.EARLIEST_EXPIRING) {
+      return store.evictEarliest(exclude.nodeId, exclude.key, needed);
+    }
+    long freed = 0;
+    // evicting a key retires its entry, the walk goes on from the next oldest one
+    for (Key k : accessOrder.values()) {
+      if (freed >= needed) {
+        break;
+      }
+      if (!k.equals(exclude)) {
+        long bytes = store.evict(k.nodeId, k.key);
+        if (bytes >= 0) {
+          freed += bytes;
+        }
+      }
+    }
+    return freed;
+  }
+
+  /**
+   * Remembers an evicted value, so it is not admitted again when gossiped back. Called by the
+   * {@link DataStore} with the key's lock held.
+   */
+  void evicted(String nodeId, String key, long timestamp, Long expireAt) {
+    evicted.mark();
+    evictedKeys.put(new Key(nodeId, key), new Evicted(timestamp, expireAt));
+  }
+
+  /**
+   * Forgets evicted values that expired before now; they would be refused as expired anyway.
+   */
+  void forgetEvicted(long now) {
+    evictedKeys.values().removeIf(gone -> gone.expireAt != null && gone.expireAt < now);
+  }
+
+  /**
+   * Records the size of the value now stored under a key. Called by the {@link DataStore} with the
+   * key's lock held.
+   */
+  void charge(String nodeId, String key, String owner, Object payload) {
+    if (!capped) {
+      return;
+    }
+    Key k = new Key(nodeId, key);
+    String prefix = prefixOf(key);
+    long access = accessClock.incrementAndGet();
+    Charge charge = new Charge(owner, prefix, sizeOf(key, payload), access);
+    if (eviction == Eviction.LRU) {
+      accessOrder.put(access, k);
+    }
+    Charge previous = charges.put(k, charge);
+    if (previous != null) {
+      debit(k, previous);
+    }
+    add(ownerBytes, owner, charge.bytes);
+    add(prefixBytes, prefix, charge.bytes);
+    totalBytes.addAndGet(charge.bytes);
+  }
+
+  /**
+   * Forgets the size of a key whose value was removed. Called by the {@link DataStore} with
+   * the key's lock held.
+   * @return the bytes released
+   */
+  long release(String nodeId, String key) {
+    if (!capped) {
+      return 0;
+    }
+    Charge previous = charges.remove(new Key(nodeId, key));
+    if (previous == null) {
+      return 0;
+    }
+    debit(new Key(nodeId, key), previous);
+    return previous.bytes;
+  }
+
+  private void debit(Key k, Charge charge) {
+    long access = charge.lastAccess.getAndSet(RETIRED);
+    if (access != RETIRED) {
+      accessOrder.remove(access, k);
+    }
+    add(ownerBytes, charge.owner, -charge.bytes);
+    add(prefixBytes, charge.prefix, -charge.bytes);
+    totalBytes.addAndGet(-charge.bytes);
+  }
+
+  /**
+   * Records a read, for least recently used eviction: the key moves to the newest end of the access
+   * order. The new position is taken before the old one is given up, so a charge retired meanwhile
+   * leaves no entry behind.
+   */
+  void touch(String nodeId, String key) {
+    if (eviction != Eviction.LRU) {
+      return;
+    }
+    Key k = new Key(nodeId, key);
+    Charge charge = charges.get(k);
+    if (charge == null) {
+      return;
+    }
+    long previous = charge.lastAccess.get();
+    if (previous == RETIRED) {
+      return;
+    }
+    long access = accessClock.incrementAndGet();
+    accessOrder.put(access, k);
+    if (charge.lastAccess.compareAndSet(previous, access)) {
+      accessOrder.remove(previous, k);
+    } else {
+      accessOrder.remove(access, k);
+    }
+  }
+
+  long getBytes() {
+    return totalBytes.get();
+  }
+
+  long getBytes(String owner) {
+    return get(ownerBytes, owner);
+  }
+
+  long getPrefixBytes(String prefix) {
+    return get(prefixBytes, prefix);
+  }
+}
@@ -17,62 +17,121 @@
  */
 package org.apache.gossip.manager;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.gossip.model.PerNodeDataMessage;
 import org.apache.gossip.model.SharedDataMessage;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
 /**
- * We wish to periodically sweep user data and remove entries past their timestamp. This
- * implementation periodically sweeps through the data and removes old entries. While it might make
- * sense to use a more specific high performance data-structure to handle eviction, keep in mind
- * that we are not looking to store a large quantity of data as we currently have to transmit this
- * data cluster wide.
+ * We wish to periodically sweep user data and remove entries past their timestamp. Rather than
+ * scanning all data, the reaper walks the {@link ExpiryIndex} of the {@link DataStore}, which
+ * only yields entries that are due, and then sleeps until the next expiration (bounded between
+ * {@link #MIN_DELAY_MILLIS} and {@link #MAX_DELAY_MILLIS}).
  */
 public class DataReaper {
 
+  static final long MIN_DELAY_MILLIS = 10;
+  static final long MAX_DELAY_MILLIS = 5000;
+
   private final GossipCore gossipCore;
   private final ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(1);
   private final Clock clock;
+  private final Meter reaped;
+  private final Histogram lag;
   
-  public DataReaper(GossipCore gossipCore, Clock clock){
+  public DataReaper(GossipCore gossipCore, Clock clock, MetricRegistry registry){
     this.gossipCore = gossipCore;
     this.clock = clock;
+    reaped = registry.meter(name(DataReaper.class, "reaped"));
+    lag = registry.histogram(name(DataReaper.class, "lag-millis"));
+    registry.register(name(DataReaper.class, "index-size"),
+            (Gauge<Integer>) () -> gossipCore.getDataStore().getExpiryIndex().size());
   }
   
   public void init(){
-    Runnable reapPerNodeData = () -> {
-      runPerNodeOnce();
-      runSharedOnce();
-    };
-    scheduledExecutor.scheduleAtFixedRate(reapPerNodeData, 0, 5, TimeUnit.SECONDS);
+    schedule(0);
+  }
+
+  private void schedule(long delayMillis){
+    try {
+      scheduledExecutor.schedule(() -> {
+        try {
+          runOnce();
+        } finally {
+          schedule(nextDelay());
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // closed
+    }
+  }
+
+  long nextDelay(){
+    Long next = gossipCore.getDataStore().getExpiryIndex().nextExpiry();
+    if (next == null){
+      return MAX_DELAY_MILLIS;
+    }
+    // entries expire once the clock is past expireAt
+    long delay = next - clock.currentTimeMillis() + 1;
+    return Math.max(MIN_DELAY_MILLIS, Math.min(MAX_DELAY_MILLIS, delay));
+  }
+
+  /**
+   * Removes shared and per node data that is due, using the expiry index, then compacts off-heap
+   * shared data.
+   * @return the number of entries removed
+   */
+  int runOnce(){
+    long now = clock.currentTimeMillis();
+    int count = gossipCore.getDataStore().expire(now, expireAt -> lag.update(now - expireAt));
+    reaped.mark(count);
+    gossipCore.compactSharedData();
+    return count;
   }
   
+  /**
+   * Full sweep of shared data, independent of the expiry index.
+   */
   void runSharedOnce(){
     for (Entry<String, SharedDataMessage> entry : gossipCore.getSharedData().entrySet()){
-      if (entry.getValue().getExpireAt() < clock.currentTimeMillis()){
-        gossipCore.getSharedData().remove(entry.getKey(), entry.getValue());
+      if (isExpired(entry.getValue().getExpireAt())){
+        gossipCore.getDataStore().remove(null, entry.getKey(), entry.getValue());
       }
     }
   }
   
+  /**
+   * Full sweep of per node data, independent of the expiry index.
+   */
   void runPerNodeOnce(){
     for (Entry<String, ConcurrentHashMap<String, PerNodeDataMessage>> node : gossipCore.getPerNodeData().entrySet()){
-      reapData(node.getValue());
+      reapData(node.getKey(), node.getValue());
     }
   }
   
-  void reapData(ConcurrentHashMap<String, PerNodeDataMessage> concurrentHashMap){
+  void reapData(String nodeId, ConcurrentHashMap<String, PerNodeDataMessage> concurrentHashMap){
     for (Entry<String, PerNodeDataMessage> entry : concurrentHashMap.entrySet()){
-      if (entry.getValue().getExpireAt() < clock.currentTimeMillis()){
-        concurrentHashMap.remove(entry.getKey(), entry.getValue());
+      if (isExpired(entry.getValue().getExpireAt())){
+        gossipCore.getDataStore().remove(nodeId, entry.getKey(), entry.getValue());
       }
     }
   }
+
+  private boolean isExpired(Long expireAt){
+    return expireAt != null && expireAt < clock.currentTimeMillis();
+  }
   
   public void close(){
     scheduledExecutor.shutdown();
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+import org.apache.gossip.model.Base;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+
+/**
+ * The write path of shared and per-node data. Every change of a key, whether a write, a removal,
+ * an expiration or an eviction, is applied to the data map under one of a fixed set of lock
+ * stripes. Under the same lock the change is reflected in the {@link ExpiryIndex}, the
+ * {@link KeyIndex} of shared data keys, the {@link PerNodeKeyIndex} and the {@link DataQuota}, and
+ * recorded in the {@link ChangeLog} with the exact value it replaced, and its events are
+ * dispatched, so handlers see the changes of a key in the order they were made. Readers use the
+ * maps directly.
+ */
+class DataStore {
+
+  private static final int STRIPES = 64;
+
+  private final Object[] stripes = new Object[STRIPES];
+  private final ConcurrentHashMap<String, SharedDataMessage> sharedData;
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, PerNodeDataMessage>> perNodeData;
+  private final DataQuota quota;
+  private final ExpiryIndex expiryIndex = new ExpiryIndex();
+  private final KeyIndex sharedKeys = new KeyIndex();
+  private final PerNodeKeyIndex perNodeKeys = new PerNodeKeyIndex();
+  /** null unless changes are logged */
+  private final ChangeLog changeLog;
+
+  DataStore(ConcurrentHashMap<String, SharedDataMessage> sharedData,
+          ConcurrentHashMap<String, ConcurrentHashMap<String, PerNodeDataMessage>> perNodeData,
+          DataQuota quota) {
+    this(sharedData, perNodeData, quota, null);
+  }
+
+  DataStore(ConcurrentHashMap<String, SharedDataMessage> sharedData,
+          ConcurrentHashMap<String, ConcurrentHashMap<String, PerNodeDataMessage>> perNodeData,
+          DataQuota quota, ChangeLog changeLog) {
+    this.sharedData = sharedData;
+    this.perNodeData = perNodeData;
+    this.quota = quota;
+    this.changeLog = changeLog;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Object();
+    }
+  }
+
+  private Object stripe(String nodeId, String key) {
+    int h = Objects.hashCode(nodeId) * 31 + key.hashCode();
+    return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+  }
+
+  /**
+   * @return the shared or per-node message stored under the key, or null
+   */
+  private Object current(String nodeId, String key) {
+    if (nodeId == null) {
+      return sharedData.get(key);
+    }
+    ConcurrentHashMap<String, PerNodeDataMessage> nodeMap = perNodeData.get(nodeId);
+    return nodeMap == null ? null : nodeMap.get(key);
+  }
+
+  private static Long expireAtOf(Object message) {
+    if (message instanceof SharedDataMessage) {
+      return ((SharedDataMessage) message).getExpireAt();
+    }
+    return message == null ? null : ((PerNodeDataMessage) message).getExpireAt();
+  }
+
+  private static long timestampOf(Object message) {
+    Long timestamp = message instanceof SharedDataMessage ? ((SharedDataMessage) message).getTimestamp()
+            : ((PerNodeDataMessage) message).getTimestamp();
+    return timestamp == null ? 0 : timestamp;
+  }
+
+  private void log(String nodeId, String key, Object previous, Object current) {
+    if (changeLog != null) {
+      changeLog.record(nodeId, key, timestampOf(current != null ? current : previous), (Base) previous,
+              (Base) current);
+    }
+  }
+
+  /**
+   * Stores a shared value if the key still holds previous, and logs the change.
+   * @param previous the value to replace, null if the key must be absent
+   * @param written run with the lock held once the value is stored, to dispatch the events of the
+   * change; null if there are none. It must not wait.
+   * @return false if the key held another value
+   */
+  boolean writeShared(String key, SharedDataMessage previous, SharedDataMessage value,
+          Runnable written) {
+    synchronized (stripe(null, key)) {
+      if (!swapShared(key, previous, value)) {
+        return false;
+      }
+      log(null, key, previous, value);
+      if (written != null) {
+        written.run();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Replaces a shared value with a copy holding the same data, such as when its payload was moved.
+   * Nothing is logged.
+   * @return false if the key held another value
+   */
+  boolean moveShared(String key, SharedDataMessage previous, SharedDataMessage copy) {
+    synchronized (stripe(null, key)) {
+      return swapShared(key, previous, copy);
+    }
+  }
+
+  private boolean swapShared(String key, SharedDataMessage previous, SharedDataMessage value) {
+    boolean swapped = previous == null ? sharedData.putIfAbsent(key, value) == null
+            : sharedData.replace(key, previous, value);
+    if (swapped) {
+      expiryIndex.update(null, key, expireAtOf(previous), value.getExpireAt());
+      sharedKeys.update(key, true);
+      quota.charge(null, key, value.getNodeId(), value.getRawPayload());
+    }
+    return swapped;
+  }
+
+  /**
+   * Stores a per-node value if the key of the node still holds previous, and logs the change.
+   * @param previous the value to replace, null if the key must be absent
+   * @param written see {@link #writeShared}
+   * @return false if the key held another value
+   */
+  boolean writePerNode(String nodeId, String key, PerNodeDataMessage previous, PerNodeDataMessage value,
+          Runnable written) {
+    synchronized (stripe(nodeId, key)) {
+      ConcurrentHashMap<String, PerNodeDataMessage> nodeMap =
+              perNodeData.computeIfAbsent(nodeId, k -> new ConcurrentHashMap<>());
+      boolean swapped = previous == null ? nodeMap.putIfAbsent(key, value) == null
+              : nodeMap.replace(key, previous, value);
+      if (!swapped) {
+        return false;
+      }
+      expiryIndex.update(nodeId, key, expireAtOf(previous), value.getExpireAt());
+      perNodeKeys.update(nodeId, key, true);
+      quota.charge(nodeId, key, nodeId, value.getRawPayload());
+      log(nodeId, key, previous, value);
+      if (written != null) {
+        written.run();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Removes the value stored under a key. Its index entry is dropped when it comes due.
+   * @param nodeId the node of per-node data, null for shared data
+   * @param expected only remove this value, or null for whatever is stored
+   * @return the bytes released from the quota, -1 if nothing was removed
+   */
+  long remove(String nodeId, String key, Object expected) {
+    synchronized (stripe(nodeId, key)) {
+      return removeLocked(nodeId, key, expected == null ? current(nodeId, key) : expected);
+    }
+  }
+
+  private long removeLocked(String nodeId, String key, Object value) {
+    if (value == null) {
+      return -1;
+    }
+    boolean removed;
+    if (nodeId == null) {
+      removed = sharedData.remove(key, value);
+      sharedKeys.update(key, sharedData.containsKey(key));
+    } else {
+      ConcurrentHashMap<String, PerNodeDataMessage> nodeMap = perNodeData.get(nodeId);
+      removed = nodeMap != null && nodeMap.remove(key, value);
+      perNodeKeys.update(nodeId, key, current(nodeId, key) != null);
+    }
+    if (!removed) {
+      return -1;
+    }
+    log(nodeId, key, value, null);
+    return quota.release(nodeId, key);
+  }
+
+  /**
+   * Removes all per-node data of a node.
+   */
+  void removeNode(String nodeId) {
+    ConcurrentHashMap<String, PerNodeDataMessage> nodeMap = perNodeData.remove(nodeId);
+    if (nodeMap == null) {
+      return;
+    }
+    for (String key : nodeMap.keySet()) {
+      synchronized (stripe(nodeId, key)) {
+        quota.release(nodeId, key);
+        PerNodeDataMessage removed = nodeMap.get(key);
+        if (removed != null) {
+          log(nodeId, key, removed, null);
+        }
+        // new data of the node may have arrived since its map was removed
+        perNodeKeys.update(nodeId, key, current(nodeId, key) != null);
+      }
+    }
+  }
+
+  /**
+   * Removes every value whose expiration is before now, visiting only index entries that are due.
+   * @param reaped receives the expiration time of each value removed
+   * @return the number of values removed
+   */
+  int expire(long now, LongConsumer reaped) {
+    int count = 0;
+    for (ExpiryIndex.Entry entry : expiryIndex.due(now)) {
+      synchronized (stripe(entry.getNodeId(), entry.getKey())) {
+        Object current = current(entry.getNodeId(), entry.getKey());
+        Long expireAt = expireAtOf(current);
+        if (expireAt != null && expireAt < now
+                && removeLocked(entry.getNodeId(), entry.getKey(), current) >= 0) {
+          reaped.accept(expireAt);
+          count++;
+        }
+        // a value that is still live has its own, later, entry
+        expiryIndex.remove(entry);
+      }
+    }
+    quota.forgetEvicted(now);
+    return count;
+  }
+
+  /**
+   * Evicts the values closest to expiring until enough bytes are released. Data without an
+   * expiration is not considered.
+   * @param excludeNodeId with excludeKey, the entry being written, which is never evicted
+   * @return the bytes released
+   */
+  long evictEarliest(String excludeNodeId, String excludeKey, long needed) {
+    long freed = 0;
+    for (ExpiryIndex.Entry entry : expiryIndex.entries()) {
+      if (freed >= needed) {
+        break;
+      }
+      if (Objects.equals(entry.getNodeId(), excludeNodeId) && entry.getKey().equals(excludeKey)) {
+        continue;
+      }
+      synchronized (stripe(entry.getNodeId(), entry.getKey())) {
+        Object current = current(entry.getNodeId(), entry.getKey());
+        if (current != null && Long.valueOf(entry.getExpireAt()).equals(expireAtOf(current))) {
+          long bytes = evictLocked(entry.getNodeId(), entry.getKey(), current);
+          if (bytes >= 0) {
+            freed += bytes;
+          }
+        }
+        expiryIndex.remove(entry);
+      }
+    }
+    return freed;
+  }
+
+  /**
+   * Evicts the value stored under a key to make room, see {@link DataQuota}.
+   * @return the bytes released, -1 if nothing was stored
+   */
+  long evict(String nodeId, String key) {
+    synchronized (stripe(nodeId, key)) {
+      return evictLocked(nodeId, key, current(nodeId, key));
+    }
+  }
+
+  private long evictLocked(String nodeId, String key, Object value) {
+    long bytes = removeLocked(nodeId, key, value);
+    if (bytes >= 0) {
+      quota.evicted(nodeId, key, timestampOf(value), expireAtOf(value));
+    }
+    return bytes;
+  }
+
+  ExpiryIndex getExpiryIndex() {
+    return expiryIndex;
+  }
+
+  KeyIndex getSharedKeys() {
+    return sharedKeys;
+  }
+
+  PerNodeKeyIndex getPerNodeKeys() {
+    return perNodeKeys;
+  }
+}
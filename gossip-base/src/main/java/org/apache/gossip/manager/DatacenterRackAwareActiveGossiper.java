@@ -18,12 +18,14 @@
 package org.apache.gossip.manager;
 
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +39,8 @@ import com.codahale.metrics.MetricRegistry;
  * There are two constructs Datacenter and Rack. It is assumed that bandwidth and latency is higher
  * in the rack than in the the datacenter. We can adjust the rate at which we send messages to each group.
  * 
+ * When the active gossip property weightedDatacenterSelection is true, cross datacenter gossip
+ * first picks a datacenter, favouring the ones contacted least recently, then a member inside it.
  */
 public class DatacenterRackAwareActiveGossiper extends AbstractActiveGossiper {
 
@@ -47,11 +51,28 @@ public class DatacenterRackAwareActiveGossiper extends AbstractActiveGossiper {
   private int sameDcGossipIntervalMs = 500;
   private int differentDatacenterGossipIntervalMs = 1000;
   private int randomDeadMemberSendIntervalMs = 250;
+  private boolean weightedDatacenterSelection = false;
+  
+  private volatile TopologyIndex topology;
+  private final Map<String, Long> datacenterLastContact = new HashMap<>();
+  private final long startedAt;
   
   private ScheduledExecutorService scheduledExecutorService;
   private final BlockingQueue<Runnable> workQueue;
   private ThreadPoolExecutor threadService;
   
+  private final PartnerSelector deadPartners;
+  private final PartnerSelector sameRackPartners;
+  private final PartnerSelector sameRackPerNodePartners;
+  private final PartnerSelector sameRackSharedPartners;
+  private final PartnerSelector sameDcPartners;
+  private final PartnerSelector sameDcPerNodePartners;
+  private final PartnerSelector sameDcSharedPartners;
+  private final PartnerSelector differentDcPartners;
+  private final PartnerSelector differentDcPerNodePartners;
+  private final PartnerSelector differentDcSharedPartners;
+  private final Map<String, PartnerSelector> datacenterPartners = new HashMap<>();
+  
   public DatacenterRackAwareActiveGossiper(GossipManager gossipManager, GossipCore gossipCore,
           MetricRegistry registry) {
     super(gossipManager, gossipCore, registry);
@@ -75,6 +96,22 @@ public class DatacenterRackAwareActiveGossiper extends AbstractActiveGossiper {
       randomDeadMemberSendIntervalMs = Integer.parseInt(gossipManager.getSettings()
               .getActiveGossipProperties().get("randomDeadMemberSendIntervalMs"));
     } catch (RuntimeException ex) { }
+    String weighted = gossipManager.getSettings().getActiveGossipProperties()
+            .get("weightedDatacenterSelection");
+    if (weighted != null) {
+      weightedDatacenterSelection = Boolean.parseBoolean(weighted);
+    }
+    startedAt = gossipManager.getClock().nanoTime();
+    deadPartners = newPartnerSelector();
+    sameRackPartners = newPartnerSelector();
+    sameRackPerNodePartners = newPartnerSelector();
+    sameRackSharedPartners = newPartnerSelector();
+    sameDcPartners = newPartnerSelector();
+    sameDcPerNodePartners = newPartnerSelector();
+    sameDcSharedPartners = newPartnerSelector();
+    differentDcPartners = newPartnerSelector();
+    differentDcPerNodePartners = newPartnerSelector();
+    differentDcSharedPartners = newPartnerSelector();
   }
 
   @Override
@@ -127,90 +164,120 @@ public class DatacenterRackAwareActiveGossiper extends AbstractActiveGossiper {
   }
 
   private void sendToDeadMember() {
-    sendMembershipList(gossipManager.getMyself(), selectPartner(gossipManager.getDeadMembers()));
+    sendMembershipList(gossipManager.getMyself(), deadPartners.select(gossipManager.getDeadMembers()));
   }
   
-  private List<LocalMember> differentDataCenter(){
-    String myDc = gossipManager.getMyself().getProperties().get(DATACENTER);
-    String rack = gossipManager.getMyself().getProperties().get(RACK);
-    if (myDc == null|| rack == null){
-      return Collections.emptyList();
-    }
-    List<LocalMember> notMyDc = new ArrayList<LocalMember>(10);
-    for (LocalMember i : gossipManager.getLiveMembers()){
-      if (!myDc.equals(i.getProperties().get(DATACENTER))){
-        notMyDc.add(i);
-      }
+  /**
+   * @return the topology index for the current live member snapshot, rebuilding it if membership,
+   * member state or properties changed since it was built
+   */
+  private TopologyIndex topology() {
+    TopologyIndex current = topology;
+    LocalMember me = gossipManager.getMyself();
+    List<LocalMember> live = gossipManager.getLiveMembers();
+    if (current == null || !current.isCurrent(me, live)) {
+      current = TopologyIndex.build(me, live);
+      topology = current;
     }
-    return notMyDc;
+    return current;
   }
-  
+
+  private List<LocalMember> differentDataCenter(){
+    return topology().differentDatacenter();
+  }
+
   private List<LocalMember> sameDatacenterDifferentRack(){
-    String myDc = gossipManager.getMyself().getProperties().get(DATACENTER);
-    String rack = gossipManager.getMyself().getProperties().get(RACK);
-    if (myDc == null|| rack == null){
-      return Collections.emptyList();
-    }
-    List<LocalMember> notMyDc = new ArrayList<LocalMember>(10);
-    for (LocalMember i : gossipManager.getLiveMembers()){
-      if (myDc.equals(i.getProperties().get(DATACENTER)) && !rack.equals(i.getProperties().get(RACK))){
-        notMyDc.add(i);
-      }
-    }
-    return notMyDc;
+    return topology().sameDatacenterDifferentRack();
   }
-    
+
   private List<LocalMember> sameRackNodes(){
-    String myDc = gossipManager.getMyself().getProperties().get(DATACENTER);
-    String rack = gossipManager.getMyself().getProperties().get(RACK);
-    if (myDc == null|| rack == null){
-      return Collections.emptyList();
+    return topology().sameRack();
+  }
+
+  /**
+   * @param selector used when datacenters are not weighted; weighted selection walks each
+   * datacenter with a selector of its own
+   */
+  private LocalMember selectDifferentDataCenterPartner(PartnerSelector selector) {
+    if (!weightedDatacenterSelection) {
+      return selector.select(differentDataCenter());
+    }
+    return selectLeastRecentlyContacted(topology().byOtherDatacenter());
+  }
+
+  /**
+   * Picks a datacenter with probability proportional to the time since we last picked it, so that
+   * datacenters we have not talked to for a while are favoured over ones we just contacted, then a
+   * member inside it.
+   */
+  private synchronized LocalMember selectLeastRecentlyContacted(
+          Map<String, List<LocalMember>> datacenters) {
+    if (datacenters.isEmpty()) {
+      return null;
+    }
+    long now = gossipManager.getClock().nanoTime();
+    List<String> names = new ArrayList<>(datacenters.keySet());
+    double[] weights = new double[names.size()];
+    double total = 0;
+    for (int i = 0; i < names.size(); i++) {
+      Long last = datacenterLastContact.get(names.get(i));
+      weights[i] = (double) (now - (last == null ? startedAt : last)) + 1;
+      total += weights[i];
     }
-    List<LocalMember> sameDcAndRack = new ArrayList<LocalMember>(10);
-    for (LocalMember i : gossipManager.getLiveMembers()){
-      if (myDc.equals(i.getProperties().get(DATACENTER))
-              && rack.equals(i.getProperties().get(RACK))){
-        sameDcAndRack.add(i);
+    double pick = ThreadLocalRandom.current().nextDouble() * total;
+    int chosen = names.size() - 1;
+    for (int i = 0; i < names.size(); i++) {
+      pick -= weights[i];
+      if (pick < 0) {
+        chosen = i;
+        break;
       }
     }
-    return sameDcAndRack;
+    String name = names.get(chosen);
+    datacenterLastContact.put(name, now);
+    return datacenterPartners.computeIfAbsent(name, k -> newPartnerSelector())
+            .select(datacenters.get(name));
   }
 
   private void sendToSameRackMember() {
-    LocalMember i = selectPartner(sameRackNodes());
+    LocalMember i = sameRackPartners.select(sameRackNodes());
     sendMembershipList(gossipManager.getMyself(), i);
   }
   
   private void sendToSameRackMemberPerNode() {
-    sendPerNodeData(gossipManager.getMyself(), selectPartner(sameRackNodes()));
+    sendPerNodeData(gossipManager.getMyself(), sameRackPerNodePartners.select(sameRackNodes()));
   }
   
   private void sendToSameRackShared() {
-    sendSharedData(gossipManager.getMyself(), selectPartner(sameRackNodes()));
+    sendSharedData(gossipManager.getMyself(), sameRackSharedPartners.select(sameRackNodes()));
   }
   
   private void differentDcMember() {
-    sendMembershipList(gossipManager.getMyself(), selectPartner(differentDataCenter()));
+    sendMembershipList(gossipManager.getMyself(), selectDifferentDataCenterPartner(differentDcPartners));
   }
   
   private void differentDcPerNode() {
-    sendPerNodeData(gossipManager.getMyself(), selectPartner(differentDataCenter()));
+    sendPerNodeData(gossipManager.getMyself(),
+            selectDifferentDataCenterPartner(differentDcPerNodePartners));
   }
   
   private void differentDcShared() {
-    sendSharedData(gossipManager.getMyself(), selectPartner(differentDataCenter()));
+    sendSharedData(gossipManager.getMyself(),
+            selectDifferentDataCenterPartner(differentDcSharedPartners));
   }
   
   private void sameDcDiffernetRackMember() {
-    sendMembershipList(gossipManager.getMyself(), selectPartner(sameDatacenterDifferentRack()));
+    sendMembershipList(gossipManager.getMyself(), sameDcPartners.select(sameDatacenterDifferentRack()));
   }
   
   private void sameDcDiffernetRackPerNode() {
-    sendPerNodeData(gossipManager.getMyself(), selectPartner(sameDatacenterDifferentRack()));
+    sendPerNodeData(gossipManager.getMyself(),
+            sameDcPerNodePartners.select(sameDatacenterDifferentRack()));
   }
   
   private void sameDcDiffernetRackShared() {
-    sendSharedData(gossipManager.getMyself(), selectPartner(sameDatacenterDifferentRack()));
+    sendSharedData(gossipManager.getMyself(),
+            sameDcSharedPartners.select(sameDatacenterDifferentRack()));
   }
   
   @Override
@@ -237,8 +304,10 @@ public class DatacenterRackAwareActiveGossiper extends AbstractActiveGossiper {
   protected void sendShutdownMessage(){
     List<LocalMember> l = gossipManager.getLiveMembers();
     int sendTo = l.size() < 3 ? 1 : l.size() / 3;
+    PartnerSelector selector = newPartnerSelector();
     for (int i = 0; i < sendTo; i++) {
-      threadService.execute(() -> sendShutdownMessage(gossipManager.getMyself(), selectPartner(l)));
+      LocalMember target = selector.select(l);
+      threadService.execute(() -> sendShutdownMessage(gossipManager.getMyself(), target));
     }
   }
 }
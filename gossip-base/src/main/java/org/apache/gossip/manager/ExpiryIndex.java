@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Orders shared and per node data by expiration time so the {@link DataReaper} only visits entries
+ * that are due. The {@link DataStore} updates it under the lock stripe of the key after every
+ * write, so the index holds an entry for the value currently in the map. Entries left behind by
+ * values that were removed are discarded when they come due.
+ */
+class ExpiryIndex {
+
+  private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingLong(e -> e.expireAt)
+          .thenComparing(e -> e.nodeId, Comparator.nullsFirst(Comparator.naturalOrder()))
+          .thenComparing(e -> e.key);
+
+  static final class Entry {
+    private final long expireAt;
+    /** null for shared data */
+    private final String nodeId;
+    private final String key;
+
+    Entry(long expireAt, String nodeId, String key) {
+      this.expireAt = expireAt;
+      this.nodeId = nodeId;
+      this.key = key;
+    }
+
+    long getExpireAt() {
+      return expireAt;
+    }
+
+    String getNodeId() {
+      return nodeId;
+    }
+
+    String getKey() {
+      return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry other = (Entry) o;
+      return expireAt == other.expireAt && Objects.equals(nodeId, other.nodeId) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(expireAt, nodeId, key);
+    }
+  }
+
+  private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+
+  /**
+   * Moves the entry of a key to the expiration of the value now stored.
+   * @param nodeId the node of per-node data, null for shared data
+   * @param previousExpireAt expiration of the value that was replaced, null if there was none
+   * @param currentExpireAt expiration of the value now stored, null if there is none
+   */
+  void update(String nodeId, String key, Long previousExpireAt, Long currentExpireAt) {
+    if (previousExpireAt != null && !previousExpireAt.equals(currentExpireAt)) {
+      entries.remove(new Entry(previousExpireAt, nodeId, key));
+    }
+    if (currentExpireAt != null) {
+      entries.add(new Entry(currentExpireAt, nodeId, key));
+    }
+  }
+
+  void remove(Entry entry) {
+    entries.remove(entry);
+  }
+
+  /**
+   * @return a live view of the entries expiring before now, earliest first. They may be stale.
+   */
+  NavigableSet<Entry> due(long now) {
+    return entries.headSet(new Entry(now, null, ""));
+  }
+
+  /**
+   * @return a live view of all entries, earliest first. They may be stale.
+   */
+  NavigableSet<Entry> entries() {
+    return entries;
+  }
+
+  /**
+   * @return the earliest expiration in the index, or null if it is empty. The entry may be stale.
+   */
+  Long nextExpiry() {
+    Entry first = entries.ceiling(new Entry(Long.MIN_VALUE, null, ""));
+    return first == null ? null : first.expireAt;
+  }
+
+  int size() {
+    return entries.size();
+  }
+}
@@ -18,28 +18,49 @@
 package org.apache.gossip.manager;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.apache.gossip.LocalMember;
 import org.apache.gossip.Member;
 import org.apache.gossip.RemoteMember;
 import org.apache.gossip.crdt.Crdt;
 import org.apache.gossip.event.GossipState;
+import org.apache.gossip.event.data.DataEvent;
 import org.apache.gossip.event.data.DataEventManager;
+import org.apache.gossip.event.data.SnapshotSubscription;
 import org.apache.gossip.event.data.UpdateNodeDataEventHandler;
 import org.apache.gossip.event.data.UpdateSharedDataEventHandler;
 import org.apache.gossip.model.Base;
+import org.apache.gossip.model.EncodedPayload;
 import org.apache.gossip.model.PerNodeDataMessage;
 import org.apache.gossip.model.Response;
 import org.apache.gossip.model.SharedDataMessage;
+import org.apache.gossip.model.ShutdownMessage;
 import org.apache.gossip.udp.Trackable;
+import org.apache.gossip.udp.UdpMemberProperties;
+import org.apache.gossip.udp.UdpMemberPropertiesRequest;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
 
 public class GossipCore implements GossipCoreConstants {
 
@@ -54,84 +75,227 @@ public class GossipCore implements GossipCoreConstants {
   }
   public static final Logger LOGGER = Logger.getLogger(GossipCore.class);
   private final GossipManager gossipManager;
-  private ConcurrentHashMap<String, LatchAndBase> requests;
+  /** outstanding requests by message id */
+  private ConcurrentHashMap<Long, LatchAndBase> requests;
+  private final MessageIdGenerator messageIds;
   private final ConcurrentHashMap<String, ConcurrentHashMap<String, PerNodeDataMessage>> perNodeData;
   private final ConcurrentHashMap<String, SharedDataMessage> sharedData;
   private final Meter messageSerdeException;
   private final Meter transmissionException;
   private final Meter transmissionSuccess;
+  private final Histogram dataBatchSize;
+  private final Timer dataBatchApply;
+  private final int dataBatchParallelThreshold;
   private final DataEventManager eventManager;
+  private final DataQuota dataQuota;
+  private final DataStore dataStore;
+  /** null unless changes are logged */
+  private final ChangeLog changeLog;
+  /** null unless shared data is kept off the heap */
+  private final OffHeapStore offHeapStore;
+  private final ConcurrentHashMap<String, Long> propertiesRequested = new ConcurrentHashMap<>();
+  private static final long PROPERTIES_REQUEST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
   
   public GossipCore(GossipManager manager, MetricRegistry metrics){
     this.gossipManager = manager;
     requests = new ConcurrentHashMap<>();
+    messageIds = new MessageIdGenerator(manager.getMyself().getId());
     perNodeData = new ConcurrentHashMap<>();
     sharedData = new ConcurrentHashMap<>();
-    eventManager = new DataEventManager(metrics);
+    dataQuota = new DataQuota(manager.getSettings(), metrics);
+    changeLog = manager.getSettings().getChangeLogCapacity() > 0
+            ? new ChangeLog(manager.getSettings().getChangeLogCapacity(), metrics) : null;
+    dataStore = new DataStore(sharedData, perNodeData, dataQuota, changeLog);
+    offHeapStore = manager.getSettings().isOffHeapSharedData()
+            ? new OffHeapStore(manager.getSettings(), metrics) : null;
+    eventManager = new DataEventManager(manager.getSettings(), metrics);
     metrics.register(PER_NODE_DATA_SIZE, (Gauge<Integer>)() -> perNodeData.size());
     metrics.register(SHARED_DATA_SIZE, (Gauge<Integer>)() ->  sharedData.size());
     metrics.register(REQUEST_SIZE, (Gauge<Integer>)() ->  requests.size());
     messageSerdeException = metrics.meter(MESSAGE_SERDE_EXCEPTION);
     transmissionException = metrics.meter(MESSAGE_TRANSMISSION_EXCEPTION);
     transmissionSuccess = metrics.meter(MESSAGE_TRANSMISSION_SUCCESS);
+    dataBatchSize = metrics.histogram(DATA_BATCH_SIZE);
+    dataBatchApply = metrics.timer(DATA_BATCH_APPLY_TIME);
+    dataBatchParallelThreshold = manager.getSettings().getDataBatchParallelThreshold();
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public void addSharedData(SharedDataMessage message) {
-    while (true){
-      SharedDataMessage previous = sharedData.putIfAbsent(message.getKey(), message);
-      if (previous == null){
-        eventManager.notifySharedData(message.getKey(), message.getPayload(), null);
-        return;
+    addSharedData(message, null, null);
+  }
+
+  /**
+   * Applies a local write whose bytes {@link #checkQuota} reserved.
+   */
+  void addSharedData(SharedDataMessage message, DataQuota.Reservation reservation) {
+    addSharedData(message, null, reservation);
+  }
+
+  /**
+   * Applies a batch of shared data, such as the content of one bulk message. Batches of at least
+   * {@link org.apache.gossip.GossipSettings#getDataBatchParallelThreshold()} messages are applied
+   * in parallel on the common fork-join pool, writes to different keys being independent. Unless
+   * data events are ordered, each handler is notified once for the batch.
+   */
+  public void addSharedData(Collection<? extends SharedDataMessage> messages) {
+    Timer.Context timer = dataBatchApply.time();
+    Queue<DataEvent> events = new ConcurrentLinkedQueue<>();
+    if (isParallel(messages)) {
+      messages.parallelStream().forEach(message -> addSharedData(message, events, null));
+    } else {
+      for (SharedDataMessage message : messages) {
+        addSharedData(message, events, null);
       }
-      if (message.getPayload() instanceof Crdt){
-        SharedDataMessage merged = new SharedDataMessage();
-        merged.setExpireAt(message.getExpireAt());
-        merged.setKey(message.getKey());
-        merged.setNodeId(message.getNodeId());
-        merged.setTimestamp(message.getTimestamp());
-        Crdt mergedCrdt = ((Crdt) previous.getPayload()).merge((Crdt) message.getPayload());
-        merged.setPayload(mergedCrdt);
-        boolean replaced = sharedData.replace(message.getKey(), previous, merged);
-        if (replaced){
-          if(!merged.getPayload().equals(previous.getPayload())) {
-            eventManager
-                    .notifySharedData(message.getKey(), merged.getPayload(), previous.getPayload());
+    }
+    eventManager.notifySharedData(new ArrayList<>(events));
+    dataBatchSize.update(messages.size());
+    timer.stop();
+  }
+
+  /**
+   * Applies a batch of per-node data, see {@link #addSharedData(Collection)}.
+   */
+  public void addPerNodeData(Collection<? extends PerNodeDataMessage> messages) {
+    Timer.Context timer = dataBatchApply.time();
+    Queue<DataEvent> events = new ConcurrentLinkedQueue<>();
+    if (isParallel(messages)) {
+      messages.parallelStream().forEach(message -> addPerNodeData(message, events, null));
+    } else {
+      for (PerNodeDataMessage message : messages) {
+        addPerNodeData(message, events, null);
+      }
+    }
+    eventManager.notifyPerNodeData(new ArrayList<>(events));
+    dataBatchSize.update(messages.size());
+    timer.stop();
+  }
+
+  private boolean isParallel(Collection<?> messages) {
+    return dataBatchParallelThreshold > 0 && messages.size() >= dataBatchParallelThreshold;
+  }
+
+  /**
+   * @param events collects the changes to notify handlers of, null to notify them right away
+   * @param reserved the quota a local write reserved, null to admit the message here
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void addSharedData(SharedDataMessage message, Collection<DataEvent> events,
+          DataQuota.Reservation reserved) {
+    DataQuota.Reservation reservation = reserved;
+    try {
+      while (true){
+        SharedDataMessage previous = sharedData.get(message.getKey());
+        if (previous == null){
+          if (reservation == null && (reservation = admitShared(message)) == null){
+            return;
           }
-          return;
+          if (dataStore.writeShared(message.getKey(), null, offHeap(message),
+                  () -> notifySharedData(message, null, events))){
+            return;
+          }
+          continue;
         }
-      } else {
-        if (previous.getTimestamp() < message.getTimestamp()){
-          boolean result = sharedData.replace(message.getKey(), previous, message);
-          if (result){
-            eventManager.notifySharedData(message.getKey(), message.getPayload(), previous.getPayload());
+        if (isCrdt(message)){
+          if (!decodes(message.getKey(), message::getPayload)){
+            return;
+          }
+          if (isDominated(message, previous)){
+            // every peer keeps resending the state we already merged
+            return;
+          }
+          if (reservation == null && (reservation = admitShared(message)) == null){
+            return;
+          }
+          SharedDataMessage merged = new SharedDataMessage();
+          merged.setExpireAt(message.getExpireAt());
+          merged.setKey(message.getKey());
+          merged.setNodeId(message.getNodeId());
+          merged.setTimestamp(message.getTimestamp());
+          Crdt mergedCrdt = ((Crdt) previous.getPayload()).merge((Crdt) message.getPayload());
+          merged.setPayload(mergedCrdt);
+          if (dataStore.writeShared(message.getKey(), previous, offHeap(merged), () -> {
+            if (!mergedCrdt.equals(previous.getPayload())) {
+              notifySharedData(merged, previous, events);
+            }
+          })){
             return;
           }
         } else {
-          return;
+          if (previous.getTimestamp() < message.getTimestamp()){
+            if (reservation == null && (reservation = admitShared(message)) == null){
+              return;
+            }
+            if (dataStore.writeShared(message.getKey(), previous, offHeap(message),
+                    () -> notifySharedData(message, previous, events))){
+              return;
+            }
+          } else {
+            return;
+          }
         }
       }
+    } finally {
+      // charged by now if it was written
+      if (reservation != null && reservation != reserved) {
+        reservation.release();
+      }
     }
   }
 
   public void addPerNodeData(PerNodeDataMessage message){
-    ConcurrentHashMap<String,PerNodeDataMessage> nodeMap = new ConcurrentHashMap<>();
-    nodeMap.put(message.getKey(), message);
-    nodeMap = perNodeData.putIfAbsent(message.getNodeId(), nodeMap);
-    if (nodeMap != null){
-      PerNodeDataMessage current = nodeMap.get(message.getKey());
-      if (current == null){
-        nodeMap.putIfAbsent(message.getKey(), message);
-        eventManager.notifyPerNodeData(message.getNodeId(), message.getKey(), message.getPayload(), null);
-      } else {
-        if (current.getTimestamp() < message.getTimestamp()){
-          nodeMap.replace(message.getKey(), current, message);
-          eventManager.notifyPerNodeData(message.getNodeId(), message.getKey(), message.getPayload(),
-                  current.getPayload());
+    addPerNodeData(message, null, null);
+  }
+
+  /**
+   * Applies a local write whose bytes {@link #checkQuota} reserved.
+   */
+  void addPerNodeData(PerNodeDataMessage message, DataQuota.Reservation reservation){
+    addPerNodeData(message, null, reservation);
+  }
+
+  /**
+   * @param events collects the changes to notify handlers of, null to notify them right away
+   * @param reserved the quota a local write reserved, null to admit the message here
+   */
+  private void addPerNodeData(PerNodeDataMessage message, Collection<DataEvent> events,
+          DataQuota.Reservation reserved){
+    if (gossipManager.getMemberReaper().isTombstoned(message.getNodeId())) {
+      // the node was removed, this is its stale data coming back
+      return;
+    }
+    DataQuota.Reservation reservation = reserved;
+    try {
+      ConcurrentHashMap<String, PerNodeDataMessage> existing = perNodeData.get(message.getNodeId());
+      PerNodeDataMessage stored = existing == null ? null : existing.get(message.getKey());
+      if ((stored == null || stored.getTimestamp() < message.getTimestamp()) && reservation == null
+              && (!decodes(message.getKey(), message::getPayload)
+                      || (reservation = dataQuota.admit(message.getNodeId(), message.getKey(),
+                              message.getNodeId(), message.getRawPayload(), message.getTimestamp(),
+                              dataStore)) == null)) {
+        return;
+      }
+      // writes to the same key may race within a parallel batch
+      while (true){
+        ConcurrentHashMap<String, PerNodeDataMessage> nodeMap = perNodeData.get(message.getNodeId());
+        PerNodeDataMessage current = nodeMap == null ? null : nodeMap.get(message.getKey());
+        if (current == null || current.getTimestamp() < message.getTimestamp()){
+          if (dataStore.writePerNode(message.getNodeId(), message.getKey(), current, message,
+                  () -> notifyPerNodeData(message, current, events))){
+            break;
+          }
+        } else {
+          break;
         }
       }
-    } else {
-      eventManager.notifyPerNodeData(message.getNodeId(), message.getKey(), message.getPayload(), null);
+    } finally {
+      // charged by now if it was written
+      if (reservation != null && reservation != reserved) {
+        reservation.release();
+      }
+    }
+    if (ShutdownMessage.PER_NODE_KEY.equals(message.getKey())) {
+      // whether sent to us or replicated, act on the notice now rather than on the member's timer
+      gossipManager.getMemberStateRefresher().shutdownNotice(message.getNodeId());
     }
   }
 
@@ -139,11 +303,220 @@ public class GossipCore implements GossipCoreConstants {
     return perNodeData;
   }
 
+  /**
+   * Finds the per-node data stored under a key on every node, visiting only the nodes that publish
+   * it. Expired values are included until they are reaped.
+   * @return node id to message, a copy
+   */
+  public Map<String, PerNodeDataMessage> findPerNodeData(String key) {
+    Map<String, PerNodeDataMessage> found = new HashMap<>();
+    for (String nodeId : dataStore.getPerNodeKeys().nodes(key)) {
+      ConcurrentHashMap<String, PerNodeDataMessage> nodeMap = perNodeData.get(nodeId);
+      PerNodeDataMessage message = nodeMap == null ? null : nodeMap.get(key);
+      if (message != null) {
+        found.put(nodeId, message);
+      }
+    }
+    return found;
+  }
+
   public ConcurrentHashMap<String, SharedDataMessage> getSharedData() {
     return sharedData;
   }
 
+  /**
+   * Reads live shared data in key order from the ordered key index. The result is a copy: each
+   * entry is the value stored when its key was visited, and later writes do not change it.
+   * @param fromKey the lowest key, null for no lower bound
+   * @param toKey the key to stop before, null for no upper bound
+   * @param afterKey the last key of the previous page, null to start at fromKey
+   * @param limit the most entries to return
+   */
+  public SortedMap<String, SharedDataMessage> scanSharedData(String fromKey, String toKey,
+          String afterKey, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive, was " + limit);
+    }
+    boolean fromInclusive = true;
+    if (afterKey != null && (fromKey == null || afterKey.compareTo(fromKey) >= 0)) {
+      fromKey = afterKey;
+      fromInclusive = false;
+    }
+    long now = gossipManager.getClock().currentTimeMillis();
+    TreeMap<String, SharedDataMessage> page = new TreeMap<>();
+    for (String key : dataStore.getSharedKeys().range(fromKey, fromInclusive, toKey)) {
+      if (page.size() == limit) {
+        break;
+      }
+      SharedDataMessage message = sharedData.get(key);
+      if (message != null && (message.getExpireAt() == null || message.getExpireAt() >= now)) {
+        page.put(key, message);
+      }
+    }
+    return Collections.unmodifiableSortedMap(page);
+  }
+
+  /**
+   * @return the number of shared data keys starting with the prefix, walked in the key index
+   */
+  public int countSharedData(String prefix) {
+    return dataStore.getSharedKeys().range(prefix, true, KeyIndex.prefixEnd(prefix)).size();
+  }
+
+  /**
+   * Decodes the payload of a message that won its timestamp check, then reserves its quota.
+   * @return null if the message must be dropped
+   */
+  private DataQuota.Reservation admitShared(SharedDataMessage message) {
+    return decodes(message.getKey(), message::getPayload)
+            ? dataQuota.admit(null, message.getKey(), message.getNodeId(), message.getRawPayload(),
+                    message.getTimestamp(), dataStore)
+            : null;
+  }
+
+  /**
+   * Decodes a payload that is about to be stored, so one that can not be decoded is dropped here
+   * instead of being stored, gossiped on and failing every later read.
+   * @param decode reads the payload, decoding it if it is still encoded
+   * @return false if the payload could not be decoded
+   */
+  private boolean decodes(String key, Runnable decode) {
+    try {
+      decode.run();
+      return true;
+    } catch (UncheckedIOException e) {
+      messageSerdeException.mark();
+      LOGGER.warn("Dropped data " + key + " with a payload that can not be decoded", e);
+      return false;
+    }
+  }
+
+  /**
+   * @return the message to store, a copy holding the payload off the heap when it qualifies
+   */
+  private SharedDataMessage offHeap(SharedDataMessage message) {
+    if (offHeapStore == null) {
+      return message;
+    }
+    Object stored = offHeapStore.store(message.getRawPayload());
+    if (stored == message.getRawPayload()) {
+      return message;
+    }
+    SharedDataMessage copy = new SharedDataMessage();
+    copy.setExpireAt(message.getExpireAt());
+    copy.setKey(message.getKey());
+    copy.setNodeId(message.getNodeId());
+    copy.setTimestamp(message.getTimestamp());
+    copy.setReplicable(message.getReplicable());
+    copy.setRawPayload(stored);
+    return copy;
+  }
+
+  /**
+   * Moves off-heap payloads out of mostly unused memory, see {@link OffHeapStore#compact}.
+   * @return the number of payloads moved
+   */
+  int compactSharedData() {
+    if (offHeapStore == null) {
+      return 0;
+    }
+    return offHeapStore.compact(sharedData.values(),
+            (previous, copy) -> dataStore.moveShared(previous.getKey(), previous, copy));
+  }
+
+  private static boolean isCrdt(SharedDataMessage message) {
+    Class<?> type = EncodedPayload.typeOf(message.getRawPayload());
+    return type != null && Crdt.class.isAssignableFrom(type);
+  }
+
+  /**
+   * @return true if merging the CRDT in the message into previous would change nothing, the
+   * expiration included; a null expiration never expires
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static boolean isDominated(SharedDataMessage message, SharedDataMessage previous) {
+    Long incomingExpireAt = message.getExpireAt();
+    Long currentExpireAt = previous.getExpireAt();
+    if (currentExpireAt != null
+            && (incomingExpireAt == null || incomingExpireAt > currentExpireAt)) {
+      return false;
+    }
+    Object current = previous.getPayload();
+    Object incoming = message.getPayload();
+    return current != null && current.getClass() == incoming.getClass()
+            && ((Crdt) incoming).isDominatedBy((Crdt) current);
+  }
+
+  /**
+   * Called with the lock of the key held, see {@link DataStore#writeShared}. Ordered events are
+   * dispatched right away so they are queued in the order of the writes.
+   */
+  private void notifySharedData(SharedDataMessage message, SharedDataMessage previous,
+          Collection<DataEvent> events) {
+    if (!eventManager.hasSharedDataSubscribers(message.getKey())) {
+      return;
+    }
+    Object oldValue = previous == null ? null : previous.getPayload();
+    if (events != null && !eventManager.isOrdered()) {
+      events.add(new DataEvent(null, message.getKey(), oldValue, message.getPayload()));
+    } else {
+      eventManager.notifySharedData(message.getKey(), message.getPayload(), oldValue);
+    }
+  }
+
+  private void notifyPerNodeData(PerNodeDataMessage message, PerNodeDataMessage previous,
+          Collection<DataEvent> events) {
+    if (!eventManager.hasPerNodeDataSubscribers(message.getKey())) {
+      return;
+    }
+    Object oldValue = previous == null ? null : previous.getPayload();
+    if (events != null && !eventManager.isOrdered()) {
+      events.add(new DataEvent(message.getNodeId(), message.getKey(), oldValue, message.getPayload()));
+    } else {
+      eventManager.notifyPerNodeData(message.getNodeId(), message.getKey(), message.getPayload(),
+              oldValue);
+    }
+  }
+
+  /**
+   * Reserves the quota of a local write before it is applied. The caller passes the reservation
+   * to the write and releases it afterwards.
+   * @param nodeId the node of per-node data, null for shared data
+   * @throws DataQuotaExceededException if the write would exceed a quota
+   */
+  DataQuota.Reservation checkQuota(String nodeId, String key, String owner, Object payload) {
+    DataQuota.Reservation reservation = dataQuota.admit(nodeId, key, owner, payload, null, dataStore);
+    if (reservation == null) {
+      throw new DataQuotaExceededException("Writing " + key + " would exceed a data quota");
+    }
+    return reservation;
+  }
+
+  /**
+   * Removes the per-node data of a node, releasing its quota.
+   */
+  void removePerNodeData(String nodeId) {
+    dataStore.removeNode(nodeId);
+  }
+
+  /**
+   * @return the change log, null unless enabled with
+   * {@link org.apache.gossip.GossipSettings#setChangeLogCapacity(int)}
+   */
+  public ChangeLog getChangeLog() {
+    return changeLog;
+  }
+
+  DataStore getDataStore() {
+    return dataStore;
+  }
+
+  DataQuota getDataQuota() {
+    return dataQuota;
+  }
+
   public void shutdown(){
+    eventManager.shutdown();
   }
 
   public void receive(Base base) {
@@ -177,6 +550,21 @@ public class GossipCore implements GossipCoreConstants {
   }
 
   public Response send(Base message, URI uri){
+    return send(message, Collections.singletonList(uri), 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Sends a blocking message to several endpoints and waits for the first response. The message is
+   * tracked once, so every receiver must answer with the same message id. Transmission errors
+   * to a single endpoint are ignored as long as one send succeeds.
+   * @param message the message to send
+   * @param uris the endpoints to send it to
+   * @param timeout how long to wait for the first response
+   * @param unit unit of the timeout
+   * @return the first response or null if none arrived in time
+   * @throws RuntimeException if data can not be serialized or no endpoint could be reached
+   */
+  public Response send(Base message, List<URI> uris, long timeout, TimeUnit unit){
     if (LOGGER.isDebugEnabled()){
       LOGGER.debug("Sending " + message);
       LOGGER.debug("Current request queue " + requests);
@@ -187,17 +575,28 @@ public class GossipCore implements GossipCoreConstants {
     if (message instanceof Trackable){
       t = (Trackable) message;
       latchAndBase = new LatchAndBase();
-      requests.put(t.getUuid() + "/" + t.getUriFrom(), latchAndBase);
+      requests.put(t.getUuid(), latchAndBase);
     } else {
       t = null;
     }
-    sendInternal(message, uri);
-    if (latchAndBase == null){
-      return null;
-    }
-    
     try {
-      boolean complete = latchAndBase.latch.await(1, TimeUnit.SECONDS);
+      RuntimeException failure = null;
+      boolean sent = false;
+      for (URI uri : uris) {
+        try {
+          sendInternal(message, uri);
+          sent = true;
+        } catch (RuntimeException ex) {
+          failure = ex;
+        }
+      }
+      if (!sent && failure != null){
+        throw failure;
+      }
+      if (latchAndBase == null){
+        return null;
+      }
+      boolean complete = latchAndBase.latch.await(timeout, unit);
       if (complete){
         return (Response) latchAndBase.base;
       } else{
@@ -207,7 +606,7 @@ public class GossipCore implements GossipCoreConstants {
       throw new RuntimeException(e);
     } finally {
       if (latchAndBase != null){
-        requests.remove(t.getUuid() + "/" + t.getUriFrom());
+        requests.remove(t.getUuid());
       }
     }
   }
@@ -226,8 +625,19 @@ public class GossipCore implements GossipCoreConstants {
     }
   }
 
-  public void handleResponse(String k, Base v) {
-    LatchAndBase latch = requests.get(k);
+  /**
+   * @return a new id for a {@link Trackable} message
+   */
+  public long nextMessageId() {
+    return messageIds.next();
+  }
+
+  public void handleResponse(long id, Base v) {
+    LatchAndBase latch = requests.get(id);
+    if (latch == null){
+      // the sender already gave up waiting, or a second receiver answered a multi-endpoint send
+      return;
+    }
     latch.base = v;
     latch.latch.countDown();
   }
@@ -246,40 +656,192 @@ public class GossipCore implements GossipCoreConstants {
     for (LocalMember i : gossipManager.getDeadMembers()) {
       if (i.getId().equals(senderMember.getId())) {
         LOGGER.debug(gossipManager.getMyself() + " contacted by dead member " + senderMember.getUri());
-        i.recordHeartbeat(senderMember.getHeartbeat());
-        i.setHeartbeat(senderMember.getHeartbeat());
+        recordHeartbeat(i, senderMember.getHeartbeat());
+        if (senderMember.getHeartbeat() > i.getHeartbeat()) {
+          i.setHeartbeat(senderMember.getHeartbeat());
+        }
+        gossipManager.getMemberStateRefresher().heartbeat(i);
         //TODO consider forcing an UP here
       }
     }
+    MemberReaper reaper = gossipManager.getMemberReaper();
+    reaper.resurrect(senderMember.getId());
+    boolean membershipChanged = false;
+    List<String> behind = new ArrayList<>();
     for (Member remoteMember : remoteList) {
       if (remoteMember.getId().equals(gossipManager.getMyself().getId())) {
         continue;
       }
+      if (reaper.isTombstoned(remoteMember.getId(), remoteMember.getHeartbeat())) {
+        continue;
+      }
+      reaper.resurrect(remoteMember.getId());
+      Map<String, String> remoteProperties = remoteMember.getProperties();
       LocalMember aNewMember = new LocalMember(remoteMember.getClusterName(),
       remoteMember.getUri(),
       remoteMember.getId(),
       remoteMember.getHeartbeat(),
-      remoteMember.getProperties(),
-      gossipManager.getSettings().getWindowSize(),
-      gossipManager.getSettings().getMinimumSamples(),
-      gossipManager.getSettings().getDistribution());
-      aNewMember.recordHeartbeat(remoteMember.getHeartbeat());
+      remoteProperties == null ? new HashMap<>() : remoteProperties,
+      gossipManager.getSettings());
+      if (remoteProperties != null) {
+        aNewMember.setPropertiesVersion(remoteMember.getPropertiesVersion());
+      } else if (remoteMember.getPropertiesVersion() > 0) {
+        behind.add(remoteMember.getId());
+      }
+      aNewMember.recordHeartbeat(gossipManager.getSettings().isRecordArrivalTime()
+              ? gossipManager.getClock().nanoTime() : remoteMember.getHeartbeat());
       Object result = gossipManager.getMembers().putIfAbsent(aNewMember, GossipState.UP);
-      if (result != null){
+      if (result == null){
+        membershipChanged = true;
+        gossipManager.getMemberStateRefresher().heartbeat(aNewMember);
+      } else {
         for (Entry<LocalMember, GossipState> localMember : gossipManager.getMembers().entrySet()){
           if (localMember.getKey().getId().equals(remoteMember.getId())){
-            localMember.getKey().recordHeartbeat(remoteMember.getHeartbeat());
-            localMember.getKey().setHeartbeat(remoteMember.getHeartbeat());
-            localMember.getKey().setProperties(remoteMember.getProperties());
+            recordHeartbeat(localMember.getKey(), remoteMember.getHeartbeat());
+            // a copy relayed late must not lower it, or the next current copy looks like a new arrival
+            if (remoteMember.getHeartbeat() > localMember.getKey().getHeartbeat()) {
+              localMember.getKey().setHeartbeat(remoteMember.getHeartbeat());
+            }
+            gossipManager.getMemberStateRefresher().heartbeat(localMember.getKey());
+            if (remoteProperties != null) {
+              membershipChanged |= updateProperties(localMember.getKey(), remoteProperties,
+                      remoteMember.getPropertiesVersion());
+            } else if (remoteMember.getPropertiesVersion() > localMember.getKey().getPropertiesVersion()) {
+              behind.add(remoteMember.getId());
+            }
           }
         }
       }
     }
+    requestMemberProperties(senderMember, behind);
+    if (membershipChanged){
+      // snapshot consumers such as the topology index key off the snapshot identity
+      gossipManager.refreshMemberSnapshots();
+    }
     if (LOGGER.isDebugEnabled()){
       debugState(senderMember, remoteList);
     }
   }
 
+  /**
+   * Takes properties at the given version unless we already have a newer version. Properties of
+   * nodes that do not version them come with version 0 and are taken whenever they differ. Once a
+   * member's properties are versioned, a copy at version 0 was relayed by such a node, may be
+   * stale, and is ignored.
+   * @return true if the properties changed
+   */
+  private boolean updateProperties(LocalMember member, Map<String, String> properties, long version) {
+    if (version < member.getPropertiesVersion()) {
+      return false;
+    }
+    member.setPropertiesVersion(version);
+    if (Objects.equals(member.getProperties(), properties)) {
+      return false;
+    }
+    member.setProperties(properties);
+    return true;
+  }
+
+  /**
+   * Asks the sender of a membership list for the properties we are behind on. A member is asked
+   * for at most once per second, the answer may still be on its way.
+   */
+  private void requestMemberProperties(RemoteMember sender, List<String> ids) {
+    long now = gossipManager.getClock().nanoTime();
+    UdpMemberPropertiesRequest request = new UdpMemberPropertiesRequest();
+    for (String id : ids) {
+      Long previous = propertiesRequested.get(id);
+      if (previous == null || now - previous > PROPERTIES_REQUEST_INTERVAL_NANOS) {
+        propertiesRequested.put(id, now);
+        request.getIds().add(id);
+      }
+    }
+    if (request.getIds().isEmpty()) {
+      return;
+    }
+    request.setUriFrom(gossipManager.getMyself().getUri().toASCIIString());
+    request.setUuid(nextMessageId());
+    sendOneWay(request, sender.getUri());
+  }
+
+  /**
+   * Answers a {@link UdpMemberPropertiesRequest} with the properties of the requested members that
+   * we know, including our own.
+   */
+  public void sendMemberProperties(UdpMemberPropertiesRequest request) {
+    UdpMemberProperties response = new UdpMemberProperties();
+    for (String id : request.getIds()) {
+      LocalMember me = gossipManager.getMyself();
+      if (me.getId().equals(id)) {
+        me.advertiseProperties();
+        response.getMembers().add(convertWithProperties(me));
+        continue;
+      }
+      for (LocalMember member : gossipManager.getMembers().keySet()) {
+        if (member.getId().equals(id)) {
+          response.getMembers().add(convertWithProperties(member));
+        }
+      }
+    }
+    if (response.getMembers().isEmpty()) {
+      return;
+    }
+    response.setUriFrom(gossipManager.getMyself().getUri().toASCIIString());
+    response.setUuid(request.getUuid());
+    try {
+      sendOneWay(response, new URI(request.getUriFrom()));
+    } catch (URISyntaxException e) {
+      LOGGER.debug("Properties request with faulty URI", e);
+    }
+  }
+
+  static org.apache.gossip.model.Member convertWithProperties(LocalMember member) {
+    org.apache.gossip.model.Member gm = new org.apache.gossip.model.Member();
+    gm.setCluster(member.getClusterName());
+    gm.setHeartbeat(member.getHeartbeat());
+    gm.setUri(member.getUri().toASCIIString());
+    gm.setId(member.getId());
+    gm.setPropertiesVersion(member.getPropertiesVersion());
+    gm.setProperties(member.getProperties());
+    return gm;
+  }
+
+  /**
+   * Applies the properties received in answer to a {@link UdpMemberPropertiesRequest}.
+   */
+  public void mergeMemberProperties(List<org.apache.gossip.model.Member> remoteMembers) {
+    boolean changed = false;
+    for (org.apache.gossip.model.Member remote : remoteMembers) {
+      if (remote.getProperties() == null || remote.getPropertiesVersion() == null) {
+        continue;
+      }
+      propertiesRequested.remove(remote.getId());
+      for (LocalMember member : gossipManager.getMembers().keySet()) {
+        if (member.getId().equals(remote.getId())) {
+          changed |= updateProperties(member, remote.getProperties(), remote.getPropertiesVersion());
+        }
+      }
+    }
+    if (changed) {
+      gossipManager.refreshMemberSnapshots();
+    }
+  }
+
+  /**
+   * Feeds a heartbeat seen for a member to its failure detector. With recordArrivalTime the detector
+   * gets our clock, and only when the heartbeat is newer than the one we know, since the same
+   * heartbeat keeps arriving through other members.
+   * @param member the member, before its heartbeat is updated
+   * @param heartbeat the heartbeat just received for it
+   */
+  public void recordHeartbeat(LocalMember member, long heartbeat) {
+    if (!gossipManager.getSettings().isRecordArrivalTime()) {
+      member.recordHeartbeat(heartbeat);
+    } else if (heartbeat > member.getHeartbeat()) {
+      member.recordHeartbeat(gossipManager.getClock().nanoTime());
+    }
+  }
+
   private void debugState(RemoteMember senderMember,
           List<Member> remoteList){
     LOGGER.warn(
@@ -295,9 +857,15 @@ public class GossipCore implements GossipCoreConstants {
   @SuppressWarnings("rawtypes")
   public Crdt merge(SharedDataMessage message) {
     for (;;){
-      SharedDataMessage previous = sharedData.putIfAbsent(message.getKey(), message);
+      SharedDataMessage previous = sharedData.get(message.getKey());
       if (previous == null){
-        return (Crdt) message.getPayload();
+        if (dataStore.writeShared(message.getKey(), null, offHeap(message), null)){
+          return (Crdt) message.getPayload();
+        }
+        continue;
+      }
+      if (isDominated(message, previous)){
+        return (Crdt) previous.getPayload();
       }
       SharedDataMessage copy = new SharedDataMessage();
       copy.setExpireAt(message.getExpireAt());
@@ -307,8 +875,7 @@ public class GossipCore implements GossipCoreConstants {
       @SuppressWarnings("unchecked")
       Crdt merged = ((Crdt) previous.getPayload()).merge((Crdt) message.getPayload());
       copy.setPayload(merged);
-      boolean replaced = sharedData.replace(message.getKey(), previous, copy);
-      if (replaced){
+      if (dataStore.writeShared(message.getKey(), previous, offHeap(copy), null)){
         return merged;
       }
     }
@@ -322,6 +889,54 @@ public class GossipCore implements GossipCoreConstants {
     eventManager.registerSharedDataSubscriber(handler);
   }
   
+  void registerPerNodeDataSubscriber(String keyPrefix, UpdateNodeDataEventHandler handler){
+    eventManager.registerPerNodeDataSubscriber(keyPrefix, handler);
+  }
+  
+  void registerSharedDataSubscriber(String keyPrefix, UpdateSharedDataEventHandler handler){
+    eventManager.registerSharedDataSubscriber(keyPrefix, handler);
+  }
+  
+  /**
+   * Subscribes to shared data changes of keys starting with the prefix, after delivering the live
+   * data stored under the prefix in pages of the key index. Returns once the stored data was
+   * delivered, on the calling thread.
+   */
+  void registerSharedDataSubscriberWithSnapshot(String keyPrefix,
+          UpdateSharedDataEventHandler handler, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive, was " + batchSize);
+    }
+    SnapshotSubscription subscription = new SnapshotSubscription(handler);
+    // registered first, so changes made while the stored data is read are held back, not missed
+    eventManager.registerSharedDataSubscription(keyPrefix, subscription);
+    try {
+      String toKey = KeyIndex.prefixEnd(keyPrefix);
+      String afterKey = null;
+      SortedMap<String, SharedDataMessage> page;
+      while (!(page = scanSharedData(keyPrefix, toKey, afterKey, batchSize)).isEmpty()) {
+        Map<String, Object> batch = new LinkedHashMap<>();
+        for (Entry<String, SharedDataMessage> entry : page.entrySet()) {
+          batch.put(entry.getKey(), entry.getValue().getPayload());
+        }
+        subscription.snapshot(batch);
+        afterKey = page.lastKey();
+      }
+      subscription.live();
+    } catch (RuntimeException ex) {
+      eventManager.unregisterSharedDataSubscription(subscription);
+      throw ex;
+    }
+  }
+  
+  void registerPerNodeDataSubscriber(Predicate<String> keyFilter, UpdateNodeDataEventHandler handler){
+    eventManager.registerPerNodeDataSubscriber(keyFilter, handler);
+  }
+  
+  void registerSharedDataSubscriber(Predicate<String> keyFilter, UpdateSharedDataEventHandler handler){
+    eventManager.registerSharedDataSubscriber(keyFilter, handler);
+  }
+  
   void unregisterPerNodeDataSubscriber(UpdateNodeDataEventHandler handler){
     eventManager.unregisterPerNodeDataSubscriber(handler);
   }
@@ -26,4 +26,6 @@ public interface GossipCoreConstants {
   String MESSAGE_SERDE_EXCEPTION = "gossip.core.message_serde_exception";
   String MESSAGE_TRANSMISSION_EXCEPTION = "gossip.core.message_transmission_exception";
   String MESSAGE_TRANSMISSION_SUCCESS = "gossip.core.message_transmission_success";
+  String DATA_BATCH_SIZE = "gossip.core.data.batch.size";
+  String DATA_BATCH_APPLY_TIME = "gossip.core.data.batch.apply";
 }
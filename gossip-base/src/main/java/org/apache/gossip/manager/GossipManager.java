@@ -40,18 +40,21 @@ import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 
 public abstract class GossipManager {
 
@@ -75,6 +78,10 @@ public abstract class GossipManager {
   
   private final GossipCore gossipCore;
   private final DataReaper dataReaper;
+  private final MemberReaper memberReaper;
+  private final JoinSnapshotService joinSnapshotService;
+  private final LeaveHandoff leaveHandoff;
+  private final List<LocalMember> startupMembers = new ArrayList<>();
   private final Clock clock;
   private final ScheduledExecutorService scheduledServiced;
   private final MetricRegistry registry;
@@ -85,6 +92,9 @@ public abstract class GossipManager {
   private final MessageHandler messageHandler;
   private final LockManager lockManager;
 
+  private volatile List<LocalMember> liveMembers = Collections.emptyList();
+  private volatile List<LocalMember> deadMembers = Collections.emptyList();
+
   public GossipManager(String cluster,
                        URI uri, String id, Map<String, String> properties, GossipSettings settings,
                        List<Member> gossipMembers, GossipListener listener, MetricRegistry registry,
@@ -93,22 +103,24 @@ public abstract class GossipManager {
     this.messageHandler = messageHandler;
 
     clock = new SystemClock();
-    me = new LocalMember(cluster, uri, id, clock.nanoTime(), properties,
-            settings.getWindowSize(), settings.getMinimumSamples(), settings.getDistribution());
+    me = new LocalMember(cluster, uri, id, clock.nanoTime(), properties, settings);
     gossipCore = new GossipCore(this, registry);
     this.lockManager = new LockManager(this, settings.getLockManagerSettings(), registry);
-    dataReaper = new DataReaper(gossipCore, clock);
+    dataReaper = new DataReaper(gossipCore, clock, registry);
     members = new ConcurrentSkipListMap<>();
     for (Member startupMember : gossipMembers) {
       if (!startupMember.equals(me)) {
         LocalMember member = new LocalMember(startupMember.getClusterName(),
                 startupMember.getUri(), startupMember.getId(),
-                clock.nanoTime(), startupMember.getProperties(), settings.getWindowSize(),
-                settings.getMinimumSamples(), settings.getDistribution());
+                clock.nanoTime(), startupMember.getProperties(), settings);
         //TODO should members start in down state?
         members.put(member, GossipState.DOWN);
+        startupMembers.add(member);
       }
     }
+    memberReaper = new MemberReaper(this, gossipCore, clock, startupMembers, registry);
+    joinSnapshotService = new JoinSnapshotService(this, gossipCore, registry);
+    leaveHandoff = new LeaveHandoff(this, gossipCore, registry);
     gossipServiceRunning = new AtomicBoolean(true);
     this.scheduledServiced = Executors.newScheduledThreadPool(1);
     this.registry = registry;
@@ -117,15 +129,21 @@ public abstract class GossipManager {
         gossipCore,
         GossipManager.buildPerNodeDataPath(this),
         GossipManager.buildSharedDataPath(this));
-    this.memberStateRefresher = new GossipMemberStateRefresher(members, settings, listener, this::findPerNodeGossipData);
+    this.memberStateRefresher = new GossipMemberStateRefresher(members, settings, listener,
+            this::findPerNodeGossipData, this::refreshMemberSnapshots, registry);
     readSavedRingState();
     readSavedDataState();
+    refreshMemberSnapshots();
   }
 
   public MessageHandler getMessageHandler() {
     return messageHandler;
   }
 
+  /**
+   * Callers that add members or change their state directly in this map must call
+   * {@link #refreshMemberSnapshots()} afterwards.
+   */
   public ConcurrentSkipListMap<LocalMember, GossipState> getMembers() {
     return members;
   }
@@ -138,11 +156,7 @@ public abstract class GossipManager {
    * @return a read only list of members found in the DOWN state.
    */
   public List<LocalMember> getDeadMembers() {
-    return Collections.unmodifiableList(
-            members.entrySet()
-                    .stream()
-                    .filter(entry -> GossipState.DOWN.equals(entry.getValue()))
-                    .map(Entry::getKey).collect(Collectors.toList()));
+    return deadMembers;
   }
 
   /**
@@ -150,11 +164,25 @@ public abstract class GossipManager {
    * @return a read only list of members found in the UP state
    */
   public List<LocalMember> getLiveMembers() {
-    return Collections.unmodifiableList(
-            members.entrySet()
-                    .stream()
-                    .filter(entry -> GossipState.UP.equals(entry.getValue()))
-                    .map(Entry::getKey).collect(Collectors.toList()));
+    return liveMembers;
+  }
+
+  /**
+   * Rebuilds the live and dead member lists from the member map. Readers get the last published
+   * lists without scanning the map, so this must run whenever a member is added or changes state.
+   */
+  public synchronized void refreshMemberSnapshots() {
+    List<LocalMember> live = new ArrayList<>();
+    List<LocalMember> dead = new ArrayList<>();
+    for (Entry<LocalMember, GossipState> entry : members.entrySet()) {
+      if (GossipState.UP.equals(entry.getValue())) {
+        live.add(entry.getKey());
+      } else if (GossipState.DOWN.equals(entry.getValue())) {
+        dead.add(entry.getKey());
+      }
+    }
+    liveMembers = Collections.unmodifiableList(Arrays.asList(live.toArray(new LocalMember[0])));
+    deadMembers = Collections.unmodifiableList(Arrays.asList(dead.toArray(new LocalMember[0])));
   }
 
   public LocalMember getMyself() {
@@ -184,9 +212,13 @@ public abstract class GossipManager {
     
     // start processing gossip messages.
     transportManager.startEndpoint();
+    if (settings.isFastJoin() && !joinSnapshotService.join(startupMembers)) {
+      LOGGER.info("No seed delivered a snapshot, joining through gossip");
+    }
     transportManager.startActiveGossiper();
     
     dataReaper.init();
+    memberReaper.init();
     if (settings.isPersistRingState()) {
       scheduledServiced.scheduleAtFixedRate(ringState, 60, 60, TimeUnit.SECONDS);
     }
@@ -202,8 +234,7 @@ public abstract class GossipManager {
       for (LocalMember l : ringState.readFromDisk()) {
         LocalMember member = new LocalMember(l.getClusterName(),
             l.getUri(), l.getId(),
-            clock.nanoTime(), l.getProperties(), settings.getWindowSize(),
-            settings.getMinimumSamples(), settings.getDistribution());
+            clock.nanoTime(), l.getProperties(), settings);
         members.putIfAbsent(member, GossipState.DOWN);
       }
     }
@@ -212,15 +243,11 @@ public abstract class GossipManager {
   private void readSavedDataState() {
     if (settings.isPersistDataState()) {
       for (Entry<String, ConcurrentHashMap<String, PerNodeDataMessage>> l : userDataState.readPerNodeFromDisk().entrySet()) {
-        for (Entry<String, PerNodeDataMessage> j : l.getValue().entrySet()) {
-          gossipCore.addPerNodeData(j.getValue());
-        }
+        gossipCore.addPerNodeData(l.getValue().values());
       }
     }
     if (settings.isPersistRingState()) {
-      for (Entry<String, SharedDataMessage> l : userDataState.readSharedDataFromDisk().entrySet()) {
-        gossipCore.addSharedData(l.getValue());
-      }
+      gossipCore.addSharedData(userDataState.readSharedDataFromDisk().values());
     }
   }
 
@@ -228,11 +255,17 @@ public abstract class GossipManager {
    * Shutdown the gossip service.
    */
   public void shutdown() {
+    if (settings.isGracefulLeave() && gossipServiceRunning.get() && !leaveHandoff.handoff()) {
+      LOGGER.warn("No peer acknowledged the data handoff before leaving");
+    }
     gossipServiceRunning.set(false);
+    // no heartbeats arrive from here on, the view of the others must not decay while stopping
+    memberStateRefresher.setDetectionEnabled(false);
     lockManager.shutdown();
     gossipCore.shutdown();
     transportManager.shutdown();
     dataReaper.close();
+    memberReaper.close();
     memberStateRefresher.shutdown();
     scheduledServiced.shutdown();
     try {
@@ -248,7 +281,13 @@ public abstract class GossipManager {
     Objects.nonNull(message.getTimestamp());
     Objects.nonNull(message.getPayload());
     message.setNodeId(me.getId());
-    gossipCore.addPerNodeData(message);
+    DataQuota.Reservation reservation = gossipCore.checkQuota(me.getId(), message.getKey(),
+            me.getId(), message.getPayload());
+    try {
+      gossipCore.addPerNodeData(message, reservation);
+    } finally {
+      reservation.release();
+    }
   }
 
   public void gossipSharedData(SharedDataMessage message){
@@ -256,7 +295,13 @@ public abstract class GossipManager {
     Objects.nonNull(message.getTimestamp());
     Objects.nonNull(message.getPayload());
     message.setNodeId(me.getId());
-    gossipCore.addSharedData(message);
+    DataQuota.Reservation reservation = gossipCore.checkQuota(null, message.getKey(), me.getId(),
+            message.getPayload());
+    try {
+      gossipCore.addSharedData(message, reservation);
+    } finally {
+      reservation.release();
+    }
   }
 
   @SuppressWarnings("rawtypes")
@@ -265,9 +310,10 @@ public abstract class GossipManager {
     if (l == null){
       return null;
     }
-    if (l.getExpireAt() < clock.currentTimeMillis()){
+    if (l.getExpireAt() != null && l.getExpireAt() < clock.currentTimeMillis()){
       return null;
     } else {
+      gossipCore.getDataQuota().touch(null, key);
       return (Crdt) l.getPayload();
     }
   }
@@ -281,7 +327,13 @@ public abstract class GossipManager {
     if (! (message.getPayload() instanceof Crdt)){
       throw new IllegalArgumentException("Not a subclass of CRDT " + message.getPayload());
     }
-    return gossipCore.merge(message);
+    DataQuota.Reservation reservation = gossipCore.checkQuota(null, message.getKey(), me.getId(),
+            message.getPayload());
+    try {
+      return gossipCore.merge(message);
+    } finally {
+      reservation.release();
+    }
   }
 
   public PerNodeDataMessage findPerNodeGossipData(String nodeId, String key){
@@ -296,26 +348,113 @@ public abstract class GossipManager {
       if (l.getExpireAt() != null && l.getExpireAt() < clock.currentTimeMillis()) {
         return null;
       }
+      gossipCore.getDataQuota().touch(nodeId, key);
       return l;
     }
   }
 
+  /**
+   * Answers which nodes publish a per-node data key, and with what values, without visiting the
+   * nodes that do not.
+   * @return node id to the live message of that node, a copy
+   */
+  public Map<String, PerNodeDataMessage> findPerNodeDataByKey(String key){
+    Map<String, PerNodeDataMessage> found = gossipCore.findPerNodeData(key);
+    long now = clock.currentTimeMillis();
+    found.values().removeIf(l -> l.getExpireAt() != null && l.getExpireAt() < now);
+    for (String nodeId : found.keySet()) {
+      gossipCore.getDataQuota().touch(nodeId, key);
+    }
+    return found;
+  }
+
   public SharedDataMessage findSharedGossipData(String key){
     SharedDataMessage l = gossipCore.getSharedData().get(key);
     if (l == null){
       return null;
     }
-    if (l.getExpireAt() < clock.currentTimeMillis()){
+    if (l.getExpireAt() != null && l.getExpireAt() < clock.currentTimeMillis()){
       return null;
     } else {
+      gossipCore.getDataQuota().touch(null, key);
       return l;
     }
   }
 
+  /**
+   * Counts the shared data keys starting with the prefix without reading their values. Data that
+   * expired but was not reaped yet is counted.
+   */
+  public int countSharedGossipDataByPrefix(String prefix){
+    return gossipCore.countSharedData(prefix);
+  }
+
+  /**
+   * @return the live shared data whose key starts with the prefix, in key order
+   */
+  public SortedMap<String, SharedDataMessage> findSharedGossipDataByPrefix(String prefix){
+    return findSharedGossipDataByPrefix(prefix, null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads one page of the shared data whose key starts with the prefix. Pass the last key of a page
+   * as afterKey to read the next one. Keys only move forward, so no key is returned twice even when
+   * the data changes between pages; keys written behind the cursor are not returned.
+   * @param afterKey the last key of the previous page, null for the first page
+   * @param limit the most entries to return
+   */
+  public SortedMap<String, SharedDataMessage> findSharedGossipDataByPrefix(String prefix,
+          String afterKey, int limit){
+    Objects.requireNonNull(prefix);
+    return gossipCore.scanSharedData(prefix, KeyIndex.prefixEnd(prefix), afterKey, limit);
+  }
+
+  /**
+   * @param fromKey the lowest key, null for no lower bound
+   * @param toKey the key to stop before, null for no upper bound
+   * @return the live shared data in the key range, in key order
+   */
+  public SortedMap<String, SharedDataMessage> findSharedGossipDataInRange(String fromKey, String toKey){
+    return findSharedGossipDataInRange(fromKey, toKey, null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads one page of the shared data in a key range, paged like
+   * {@link #findSharedGossipDataByPrefix(String, String, int)}.
+   * @param fromKey the lowest key, null for no lower bound
+   * @param toKey the key to stop before, null for no upper bound
+   * @param afterKey the last key of the previous page, null for the first page
+   * @param limit the most entries to return
+   */
+  public SortedMap<String, SharedDataMessage> findSharedGossipDataInRange(String fromKey, String toKey,
+          String afterKey, int limit){
+    return gossipCore.scanSharedData(fromKey, toKey, afterKey, limit);
+  }
+
+  /**
+   * @return the log of data changes, to poll instead of subscribing to events
+   * @throws IllegalStateException unless enabled with {@link GossipSettings#setChangeLogCapacity(int)}
+   */
+  public ChangeLog getChangeLog() {
+    ChangeLog changeLog = gossipCore.getChangeLog();
+    if (changeLog == null) {
+      throw new IllegalStateException("The change log is disabled, see change_log_capacity");
+    }
+    return changeLog;
+  }
+
   public DataReaper getDataReaper() {
     return dataReaper;
   }
 
+  public MemberReaper getMemberReaper() {
+    return memberReaper;
+  }
+
+  public JoinSnapshotService getJoinSnapshotService() {
+    return joinSnapshotService;
+  }
+
   public RingStatePersister getRingState() {
     return ringState;
   }
@@ -368,6 +507,49 @@ public abstract class GossipManager {
   public void registerSharedDataSubscriber(UpdateSharedDataEventHandler handler){
     gossipCore.registerSharedDataSubscriber(handler);
   }
+
+  /**
+   * Subscribes to per-node data changes of keys starting with the prefix only.
+   */
+  public void registerPerNodeDataSubscriber(String keyPrefix, UpdateNodeDataEventHandler handler){
+    gossipCore.registerPerNodeDataSubscriber(keyPrefix, handler);
+  }
+
+  /**
+   * Subscribes to shared data changes of keys starting with the prefix only.
+   */
+  public void registerSharedDataSubscriber(String keyPrefix, UpdateSharedDataEventHandler handler){
+    gossipCore.registerSharedDataSubscriber(keyPrefix, handler);
+  }
+
+  /**
+   * Subscribes to shared data changes of keys starting with the prefix, first delivering the live
+   * data already stored under it as changes from no value, in key order and in batches. Changes made
+   * meanwhile are delivered after the stored data, so the handler misses none and is not called
+   * concurrently until the stored data was delivered. Returns once it was.
+   * @param keyPrefix the key prefix, empty for every key
+   * @param batchSize the most keys read from the store at once
+   */
+  public void registerSharedDataSubscriberWithSnapshot(String keyPrefix,
+          UpdateSharedDataEventHandler handler, int batchSize){
+    gossipCore.registerSharedDataSubscriberWithSnapshot(keyPrefix, handler, batchSize);
+  }
+
+  /**
+   * Subscribes to per-node data changes of keys accepted by the filter, which must be cheap.
+   */
+  public void registerPerNodeDataSubscriber(Predicate<String> keyFilter,
+          UpdateNodeDataEventHandler handler){
+    gossipCore.registerPerNodeDataSubscriber(keyFilter, handler);
+  }
+
+  /**
+   * Subscribes to shared data changes of keys accepted by the filter, which must be cheap.
+   */
+  public void registerSharedDataSubscriber(Predicate<String> keyFilter,
+          UpdateSharedDataEventHandler handler){
+    gossipCore.registerSharedDataSubscriber(keyFilter, handler);
+  }
   
   public void unregisterPerNodeDataSubscriber(UpdateNodeDataEventHandler handler){
     gossipCore.unregisterPerNodeDataSubscriber(handler);
@@ -26,40 +26,79 @@ import org.apache.gossip.model.PerNodeDataMessage;
 import org.apache.gossip.model.ShutdownMessage;
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.MetricRegistry;
+
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.*;
 import java.util.function.BiFunction;
 
+/**
+ * Keeps the state of every member up to date. Instead of polling every member, a member is looked
+ * at when something happens to it: a heartbeat arrives while it is down, a shutdown notice arrives,
+ * or its timer fires. The timer is set to when phi would cross the convict threshold without further
+ * heartbeats. Heartbeats do not move the timer; when it fires for a member that kept sending
+ * heartbeats, the member is still up and the timer is set again from the fresh statistics. This way
+ * the cost follows heartbeat and timer events instead of members times ticks.
+ */
 public class GossipMemberStateRefresher {
   public static final Logger LOGGER = Logger.getLogger(GossipMemberStateRefresher.class);
 
+  private static final long TICK_MILLIS = 10;
+  private static final int WHEEL_SLOTS = 512;
+
   private final Map<LocalMember, GossipState> members;
   private final GossipSettings settings;
   private final List<GossipListener> listeners = new CopyOnWriteArrayList<>();
   private final Clock clock;
   private final BiFunction<String, String, PerNodeDataMessage> findPerNodeGossipData;
+  private final Runnable stateChangeCallback;
   private final ExecutorService listenerExecutor;
   private final ScheduledExecutorService scheduledExecutor;
   private final BlockingQueue<Runnable> workQueue;
+  private final TimerWheel<LocalMember> timers;
+  private final OrderedListenerDispatcher orderedDispatcher;
+  private volatile boolean detectionEnabled = true;
 
   public GossipMemberStateRefresher(Map<LocalMember, GossipState> members, GossipSettings settings,
                                     GossipListener listener,
-                                    BiFunction<String, String, PerNodeDataMessage> findPerNodeGossipData) {
+                                    BiFunction<String, String, PerNodeDataMessage> findPerNodeGossipData,
+                                    Runnable stateChangeCallback, MetricRegistry registry) {
     this.members = members;
     this.settings = settings;
     listeners.add(listener);
     this.findPerNodeGossipData = findPerNodeGossipData;
+    this.stateChangeCallback = stateChangeCallback;
     clock = new SystemClock();
     workQueue = new ArrayBlockingQueue<>(1024);
     listenerExecutor = new ThreadPoolExecutor(1, 20, 1, TimeUnit.SECONDS, workQueue,
             new ThreadPoolExecutor.DiscardOldestPolicy());
     scheduledExecutor = Executors.newScheduledThreadPool(1);
+    timers = new TimerWheel<>(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS), WHEEL_SLOTS, clock.nanoTime());
+    orderedDispatcher = settings.isOrderedListenerEvents()
+            ? new OrderedListenerDispatcher(listeners, settings.getListenerQueueSize(),
+                    settings.getListenerThreads(), registry)
+            : null;
   }
 
   public void init() {
-    scheduledExecutor.scheduleAtFixedRate(() -> run(), 0, 100, TimeUnit.MILLISECONDS);
+    if (orderedDispatcher != null) {
+      orderedDispatcher.start();
+    }
+    for (LocalMember member : members.keySet()) {
+      schedule(member);
+    }
+    scheduledExecutor.scheduleAtFixedRate(() -> tick(), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void tick() {
+    try {
+      for (LocalMember member : timers.advance(clock.nanoTime())) {
+        evaluate(member);
+      }
+    } catch (RuntimeException ex) {
+      LOGGER.warn("scheduled state had exception", ex);
+    }
   }
 
   public void run() {
@@ -70,30 +109,140 @@ public class GossipMemberStateRefresher {
     }
   }
 
+  /**
+   * Evaluates every member now, regardless of timers.
+   */
   public void runOnce() {
-    for (Entry<LocalMember, GossipState> entry : members.entrySet()) {
-      boolean userDown = processOptimisticShutdown(entry);
-      if (userDown)
-        continue;
-
-      Double phiMeasure = entry.getKey().detect(clock.nanoTime());
-      GossipState requiredState;
-
-      if (phiMeasure != null) {
-        requiredState = calcRequiredState(phiMeasure);
-      } else {
-        requiredState = calcRequiredStateCleanupInterval(entry.getKey(), entry.getValue());
-      }
+    for (LocalMember member : members.keySet()) {
+      evaluate(member);
+    }
+  }
+
+  /**
+   * Called after a heartbeat of the member was recorded. A member that is down is evaluated right
+   * away so it comes back up without waiting; a member that is up can only become less suspect, so
+   * it just needs a timer if it has none.
+   */
+  public synchronized void heartbeat(LocalMember member) {
+    if (!detectionEnabled) {
+      return;
+    }
+    if (members.get(member) != GossipState.UP) {
+      evaluate(member);
+    } else if (timers.deadline(member) == null) {
+      schedule(member);
+    }
+  }
 
-      if (entry.getValue() != requiredState) {
-        members.put(entry.getKey(), requiredState);
-        /* Call listeners asynchronously */
-        for (GossipListener listener: listeners)
-          listenerExecutor.execute(() -> listener.gossipEvent(entry.getKey(), requiredState));
+  /**
+   * Applies a shutdown notice as soon as it is stored, instead of on the next evaluation of the
+   * member.
+   * @param nodeId the member that announced its shutdown
+   */
+  public void shutdownNotice(String nodeId) {
+    for (LocalMember member : members.keySet()) {
+      if (member.getId().equals(nodeId)) {
+        evaluate(member);
       }
     }
   }
 
+  /**
+   * Brings the state of one member up to date and sets its next timer.
+   */
+  synchronized void evaluate(LocalMember member) {
+    GossipState current = members.get(member);
+    if (current == null) {
+      timers.cancel(member);
+      return;
+    }
+    if (processOptimisticShutdown(member)) {
+      timers.cancel(member);
+      return;
+    }
+    if (!detectionEnabled) {
+      return;
+    }
+    Double phiMeasure = member.detect(clock.nanoTime());
+    GossipState requiredState;
+    if (phiMeasure != null) {
+      requiredState = calcRequiredState(phiMeasure);
+    } else {
+      requiredState = calcRequiredStateCleanupInterval(member, current);
+    }
+    updateState(member, requiredState);
+    if (requiredState == GossipState.UP) {
+      schedule(member);
+    } else {
+      // the next heartbeat brings it back
+      timers.cancel(member);
+    }
+  }
+
+  private void schedule(LocalMember member) {
+    if (!detectionEnabled) {
+      return;
+    }
+    long now = clock.nanoTime();
+    Long deadline = member.convictionTime(now, settings.getConvictThreshold());
+    if (deadline == null) {
+      // not enough samples for phi, check the cleanup interval instead
+      deadline = now + TimeUnit.MILLISECONDS.toNanos(settings.getCleanupInterval());
+    }
+    timers.schedule(member, deadline);
+  }
+
+  /**
+   * Enables or disables the heartbeat based detection. An active gossiper that brings its own
+   * failure detector disables it and reports transitions through
+   * {@link #updateState(LocalMember, GossipState)}. Shutdown notices are processed either way.
+   */
+  public void setDetectionEnabled(boolean detectionEnabled) {
+    this.detectionEnabled = detectionEnabled;
+  }
+
+  public boolean isDetectionEnabled() {
+    return detectionEnabled;
+  }
+
+  /**
+   * Moves a member to the given state, notifying listeners and snapshot consumers if that is a change.
+   * Synchronized like {@link #evaluate(LocalMember)}, so the failure detector and the timers cannot
+   * interleave their updates and have the last event queued differ from the state in the map.
+   * @param member member to update, it must already be in the member map
+   * @param state the new state
+   * @return true if the state changed
+   */
+  public synchronized boolean updateState(LocalMember member, GossipState state) {
+    GossipState previous = members.put(member, state);
+    if (previous == state) {
+      return false;
+    }
+    member.setDownSince(state == GossipState.DOWN ? clock.nanoTime() : 0);
+    if (state == GossipState.UP) {
+      member.setLeft(false);
+    }
+    if (orderedDispatcher != null) {
+      orderedDispatcher.enqueue(member, state);
+    } else {
+      /* Call listeners asynchronously */
+      for (GossipListener listener: listeners)
+        listenerExecutor.execute(() -> listener.gossipEvent(member, state));
+    }
+    stateChangeCallback.run();
+    return true;
+  }
+
+  /**
+   * Drops what is kept about a member that was removed from the member map.
+   */
+  public void forget(LocalMember member) {
+    timers.cancel(member);
+    if (orderedDispatcher != null) {
+      orderedDispatcher.forget(member);
+    }
+  }
+
   public GossipState calcRequiredState(Double phiMeasure) {
     if (phiMeasure > settings.getConvictThreshold())
       return GossipState.DOWN;
@@ -115,21 +264,18 @@ public class GossipMemberStateRefresher {
    * If we have a special key the per-node data that means that the node has sent us
    * a pre-emptive shutdown message. We process this so node is seen down sooner
    *
-   * @param l member to consider
+   * @param member member to consider
    * @return true if node forced down
    */
-  public boolean processOptimisticShutdown(Entry<LocalMember, GossipState> l) {
-    PerNodeDataMessage m = findPerNodeGossipData.apply(l.getKey().getId(), ShutdownMessage.PER_NODE_KEY);
+  public boolean processOptimisticShutdown(LocalMember member) {
+    PerNodeDataMessage m = findPerNodeGossipData.apply(member.getId(), ShutdownMessage.PER_NODE_KEY);
     if (m == null) {
       return false;
     }
     ShutdownMessage s = (ShutdownMessage) m.getPayload();
-    if (s.getShutdownAtNanos() > l.getKey().getHeartbeat()) {
-      members.put(l.getKey(), GossipState.DOWN);
-      if (l.getValue() == GossipState.UP) {
-        for (GossipListener listener: listeners)
-          listenerExecutor.execute(() -> listener.gossipEvent(l.getKey(), GossipState.DOWN));
-      }
+    if (s.getShutdownAtNanos() > member.getHeartbeat()) {
+      member.setLeft(s.isLeft());
+      updateState(member, GossipState.DOWN);
       return true;
     }
     return false;
@@ -146,6 +292,9 @@ public class GossipMemberStateRefresher {
     } catch (InterruptedException e) {
       LOGGER.debug("Issue during shutdown", e);
     }
+    if (orderedDispatcher != null) {
+      orderedDispatcher.shutdown();
+    }
     listenerExecutor.shutdown();
     try {
       listenerExecutor.awaitTermination(5, TimeUnit.SECONDS);
@@ -154,4 +303,4 @@ public class GossipMemberStateRefresher {
     }
     listenerExecutor.shutdownNow();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.RemoteMember;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.Response;
+import org.apache.gossip.model.SharedDataMessage;
+import org.apache.gossip.udp.UdpJoinRequest;
+import org.apache.gossip.udp.UdpJoinSnapshotChunk;
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Lets a new node start from a copy of a seed's state instead of converging over many gossip rounds.
+ * The joining node pulls the snapshot chunk by chunk with request/response messages, so chunks are
+ * sized for a datagram, lost ones are asked for again, and the seed is never flooded. The seed
+ * builds a snapshot when asked for the first chunk and serves the following chunks from it, so the
+ * joining node sees a consistent state. Chunks hold up to
+ * {@link org.apache.gossip.GossipSettings#getBulkTransferSize()} entries.
+ * <p>
+ * A seed answers only at the URI it knows the sender by. A sender it does not know yet is taken
+ * into its member map by its first request, as gossip from it would be, so a later request naming
+ * that node from another URI is refused and cannot point the chunks at anyone else. Each node has
+ * at most one snapshot, reused when it asks again, and the number of snapshots held is capped.
+ */
+public class JoinSnapshotService {
+
+  public static final Logger LOGGER = Logger.getLogger(JoinSnapshotService.class);
+
+  private static final long SNAPSHOT_TTL_MILLIS = 60000;
+  private static final int ATTEMPTS = 3;
+  static final int MAX_SNAPSHOTS = 8;
+
+  private static class Snapshot {
+    private final String id;
+    private final long createdAt;
+    private final List<UdpJoinSnapshotChunk> chunks;
+
+    Snapshot(String id, long createdAt, List<UdpJoinSnapshotChunk> chunks) {
+      this.id = id;
+      this.createdAt = createdAt;
+      this.chunks = chunks;
+    }
+  }
+
+  private final GossipManager gossipManager;
+  private final GossipCore gossipCore;
+  /** by the id of the joining node */
+  private final ConcurrentHashMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+  private final Meter chunksServed;
+  private final Meter refused;
+  private final Meter chunksLoaded;
+  private final Histogram joinTime;
+
+  public JoinSnapshotService(GossipManager gossipManager, GossipCore gossipCore, MetricRegistry registry) {
+    this.gossipManager = gossipManager;
+    this.gossipCore = gossipCore;
+    chunksServed = registry.meter(name(JoinSnapshotService.class, "chunksServed"));
+    refused = registry.meter(name(JoinSnapshotService.class, "refused"));
+    chunksLoaded = registry.meter(name(JoinSnapshotService.class, "chunksLoaded"));
+    joinTime = registry.histogram(name(JoinSnapshotService.class, "join-millis"));
+  }
+
+  /**
+   * Seed side: sends the requested chunk back to the joining node.
+   */
+  public void answer(UdpJoinRequest request) {
+    long now = gossipManager.getClock().currentTimeMillis();
+    for (Entry<String, Snapshot> entry : snapshots.entrySet()) {
+      if (entry.getValue().createdAt + SNAPSHOT_TTL_MILLIS < now) {
+        snapshots.remove(entry.getKey(), entry.getValue());
+      }
+    }
+    URI destination = knownUri(request);
+    if (destination == null) {
+      refused.mark();
+      return;
+    }
+    String nodeId = request.getSender().getId();
+    Snapshot snapshot = snapshots.get(nodeId);
+    if (snapshot != null && request.getChunk() != 0 && !snapshot.id.equals(request.getSnapshotId())) {
+      return;
+    }
+    if (snapshot == null) {
+      if (request.getChunk() != 0) {
+        // expired, the joining node starts over when it gets no answer
+        return;
+      }
+      if (snapshots.size() >= MAX_SNAPSHOTS) {
+        refused.mark();
+        return;
+      }
+      String snapshotId = UUID.randomUUID().toString();
+      Snapshot built = new Snapshot(snapshotId, now, buildChunks(snapshotId, request));
+      snapshot = snapshots.putIfAbsent(nodeId, built);
+      if (snapshot == null) {
+        snapshot = built;
+      }
+    }
+    if (request.getChunk() < 0 || request.getChunk() >= snapshot.chunks.size()) {
+      return;
+    }
+    UdpJoinSnapshotChunk chunk = snapshot.chunks.get(request.getChunk());
+    UdpJoinSnapshotChunk response = new UdpJoinSnapshotChunk();
+    response.setSnapshotId(chunk.getSnapshotId());
+    response.setChunk(chunk.getChunk());
+    response.setChunkCount(chunk.getChunkCount());
+    response.setSender(chunk.getSender());
+    response.setMembers(chunk.getMembers());
+    response.setSharedData(chunk.getSharedData());
+    response.setPerNodeData(chunk.getPerNodeData());
+    response.setUuid(request.getUuid());
+    response.setUriFrom(request.getUriFrom());
+    gossipCore.sendOneWay(response, destination);
+    chunksServed.mark();
+  }
+
+  /**
+   * @return the URI the request came from if the sender is known there, or is new and taken into
+   *     the member map at that URI, else null
+   */
+  private URI knownUri(UdpJoinRequest request) {
+    org.apache.gossip.model.Member sender = request.getSender();
+    if (sender == null || sender.getId() == null || request.getUriFrom() == null
+            || sender.getId().equals(gossipManager.getMyself().getId())
+            || !gossipManager.getMyself().getClusterName().equals(sender.getCluster())) {
+      return null;
+    }
+    URI uri;
+    try {
+      uri = URI.create(request.getUriFrom());
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+    // seeds are in the member map from startup on, live or dead
+    for (LocalMember member : gossipManager.getMembers().keySet()) {
+      if (member.getId().equals(sender.getId())) {
+        return member.getUri().equals(uri) ? uri : null;
+      }
+    }
+    if (request.getChunk() != 0 || !request.getUriFrom().equals(sender.getUri())) {
+      return null;
+    }
+    RemoteMember remote = toRemoteMember(sender);
+    gossipCore.mergeLists(remote, Collections.<Member>singletonList(remote));
+    return uri;
+  }
+
+  /**
+   * @return the number of snapshots held for joining nodes
+   */
+  int snapshotCount() {
+    return snapshots.size();
+  }
+
+  private List<UdpJoinSnapshotChunk> buildChunks(String snapshotId, UdpJoinRequest request) {
+    LocalMember me = gossipManager.getMyself();
+    LocalMember destination = toLocalMember(request.getSender());
+    int chunkSize = Math.max(1, gossipManager.getSettings().getBulkTransferSize());
+    List<UdpJoinSnapshotChunk> chunks = new ArrayList<>();
+    UdpJoinSnapshotChunk chunk = new UdpJoinSnapshotChunk();
+    int entries = 0;
+    for (LocalMember member : gossipManager.getLiveMembers()) {
+      if (entries == chunkSize) {
+        chunks.add(chunk);
+        chunk = new UdpJoinSnapshotChunk();
+        entries = 0;
+      }
+      chunk.getMembers().add(GossipCore.convertWithProperties(member));
+      entries++;
+    }
+    for (SharedDataMessage message : gossipCore.getSharedData().values()) {
+      if (message.getReplicable() != null
+              && !message.getReplicable().shouldReplicate(me, destination, message)) {
+        continue;
+      }
+      if (entries == chunkSize) {
+        chunks.add(chunk);
+        chunk = new UdpJoinSnapshotChunk();
+        entries = 0;
+      }
+      chunk.getSharedData().add(copy(message));
+      entries++;
+    }
+    for (ConcurrentHashMap<String, PerNodeDataMessage> node : gossipCore.getPerNodeData().values()) {
+      for (PerNodeDataMessage message : node.values()) {
+        if (message.getReplicable() != null
+                && !message.getReplicable().shouldReplicate(me, destination, message)) {
+          continue;
+        }
+        if (entries == chunkSize) {
+          chunks.add(chunk);
+          chunk = new UdpJoinSnapshotChunk();
+          entries = 0;
+        }
+        chunk.getPerNodeData().add(copy(message));
+        entries++;
+      }
+    }
+    chunks.add(chunk);
+    me.advertiseProperties();
+    org.apache.gossip.model.Member sender = GossipCore.convertWithProperties(me);
+    for (int i = 0; i < chunks.size(); i++) {
+      chunks.get(i).setSnapshotId(snapshotId);
+      chunks.get(i).setChunk(i);
+      chunks.get(i).setChunkCount(chunks.size());
+      chunks.get(i).setSender(sender);
+    }
+    return chunks;
+  }
+
+  private static SharedDataMessage copy(SharedDataMessage original) {
+    SharedDataMessage copy = new SharedDataMessage();
+    copy.setExpireAt(original.getExpireAt());
+    copy.setKey(original.getKey());
+    copy.setNodeId(original.getNodeId());
+    copy.setTimestamp(original.getTimestamp());
+    copy.setRawPayload(original.getRawPayload());
+    copy.setReplicable(original.getReplicable());
+    return copy;
+  }
+
+  private static PerNodeDataMessage copy(PerNodeDataMessage original) {
+    PerNodeDataMessage copy = new PerNodeDataMessage();
+    copy.setExpireAt(original.getExpireAt());
+    copy.setKey(original.getKey());
+    copy.setNodeId(original.getNodeId());
+    copy.setTimestamp(original.getTimestamp());
+    copy.setRawPayload(original.getRawPayload());
+    copy.setReplicable(original.getReplicable());
+    return copy;
+  }
+
+  private LocalMember toLocalMember(org.apache.gossip.model.Member member) {
+    return new LocalMember(member.getCluster(), URI.create(member.getUri()), member.getId(),
+            member.getHeartbeat() == null ? 0 : member.getHeartbeat(),
+            member.getProperties() == null ? new HashMap<>() : member.getProperties(),
+            gossipManager.getSettings());
+  }
+
+  private static RemoteMember toRemoteMember(org.apache.gossip.model.Member member) {
+    RemoteMember remote = new RemoteMember(member.getCluster(), URI.create(member.getUri()),
+            member.getId(), member.getHeartbeat() == null ? 0 : member.getHeartbeat(),
+            member.getProperties());
+    remote.setPropertiesVersion(member.getPropertiesVersion() == null ? 0 : member.getPropertiesVersion());
+    return remote;
+  }
+
+  /**
+   * Joining side: loads a snapshot from the first seed that delivers a complete one.
+   * @param seeds the members to ask, in order
+   * @return true if a snapshot was loaded
+   */
+  public boolean join(List<LocalMember> seeds) {
+    for (LocalMember seed : seeds) {
+      long start = System.currentTimeMillis();
+      if (join(seed)) {
+        joinTime.update(System.currentTimeMillis() - start);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean join(LocalMember seed) {
+    String snapshotId = null;
+    int chunkCount = 1;
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      UdpJoinSnapshotChunk response = fetch(seed, snapshotId, chunk);
+      if (response == null) {
+        LOGGER.debug("Join from " + seed + " stopped at chunk " + chunk);
+        return false;
+      }
+      snapshotId = response.getSnapshotId();
+      chunkCount = response.getChunkCount();
+      load(response);
+    }
+    return true;
+  }
+
+  private UdpJoinSnapshotChunk fetch(LocalMember seed, String snapshotId, int chunk) {
+    LocalMember me = gossipManager.getMyself();
+    me.advertiseProperties();
+    for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+      UdpJoinRequest request = new UdpJoinRequest();
+      request.setSender(GossipCore.convertWithProperties(me));
+      request.setSnapshotId(snapshotId);
+      request.setChunk(chunk);
+      request.setUriFrom(me.getUri().toASCIIString());
+      request.setUuid(gossipCore.nextMessageId());
+      Response response = gossipCore.send(request, seed.getUri());
+      if (response instanceof UdpJoinSnapshotChunk) {
+        return (UdpJoinSnapshotChunk) response;
+      }
+    }
+    return null;
+  }
+
+  void load(UdpJoinSnapshotChunk chunk) {
+    if (chunk.getChunk() == 0 || !chunk.getMembers().isEmpty()) {
+      List<Member> members = new ArrayList<>();
+      RemoteMember sender = toRemoteMember(chunk.getSender());
+      members.add(sender);
+      for (org.apache.gossip.model.Member member : chunk.getMembers()) {
+        members.add(toRemoteMember(member));
+      }
+      gossipCore.mergeLists(sender, members);
+    }
+    gossipCore.addSharedData(chunk.getSharedData());
+    gossipCore.addPerNodeData(chunk.getPerNodeData());
+    chunksLoaded.mark();
+  }
+}
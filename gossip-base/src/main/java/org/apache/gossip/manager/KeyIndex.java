@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Keeps the shared data keys in order so prefix and range lookups do not have to visit the whole
+ * map. The {@link DataStore} updates it under the lock stripe of the key after every write and
+ * removal, so a key is in the index exactly when a value is stored under it.
+ */
+class KeyIndex {
+
+  private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+  /**
+   * @param present whether a value is currently stored under the key
+   */
+  void update(String key, boolean present) {
+    if (present) {
+      keys.add(key);
+    } else {
+      keys.remove(key);
+    }
+  }
+
+  /**
+   * @param fromKey the lowest key, null for no lower bound
+   * @param fromInclusive false to skip fromKey itself, used to continue after the last key of a page
+   * @param toKey the key to stop before, null for no upper bound
+   * @return a live view of the keys in the range
+   */
+  NavigableSet<String> range(String fromKey, boolean fromInclusive, String toKey) {
+    if (fromKey != null && toKey != null) {
+      if (fromKey.compareTo(toKey) > 0) {
+        return new ConcurrentSkipListSet<>();
+      }
+      return keys.subSet(fromKey, fromInclusive, toKey, false);
+    } else if (fromKey != null) {
+      return keys.tailSet(fromKey, fromInclusive);
+    } else if (toKey != null) {
+      return keys.headSet(toKey, false);
+    }
+    return keys;
+  }
+
+  /**
+   * @return the first key after every key starting with the prefix, null if there is none
+   */
+  static String prefixEnd(String prefix) {
+    for (int i = prefix.length() - 1; i >= 0; i--) {
+      char c = prefix.charAt(i);
+      if (c != Character.MAX_VALUE) {
+        return prefix.substring(0, i) + (char) (c + 1);
+      }
+    }
+    return null;
+  }
+
+  int size() {
+    return keys.size();
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.Response;
+import org.apache.gossip.model.SharedDataMessage;
+import org.apache.gossip.udp.UdpHandoffAck;
+import org.apache.gossip.udp.UdpHandoffMessage;
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Before a graceful leave, pushes the shared data this node wrote and its own per-node data to a few
+ * live peers and waits for them to acknowledge, so recent writes survive the node going away. A peer
+ * only gets the entries its {@link org.apache.gossip.replication.Replicable} allows, and the peers
+ * are handed off to in parallel so one that does not answer cannot use up the time of the others.
+ * The whole handoff is bounded by {@link org.apache.gossip.GossipSettings#getLeaveTimeout()}.
+ */
+class LeaveHandoff {
+
+  public static final Logger LOGGER = Logger.getLogger(LeaveHandoff.class);
+
+  static final int PEERS = 3;
+
+  private final GossipManager gossipManager;
+  private final GossipCore gossipCore;
+  private final Meter handedOff;
+  private final Meter acknowledged;
+  private final Meter timeouts;
+
+  LeaveHandoff(GossipManager gossipManager, GossipCore gossipCore, MetricRegistry registry) {
+    this.gossipManager = gossipManager;
+    this.gossipCore = gossipCore;
+    handedOff = registry.meter(name(LeaveHandoff.class, "handedOff"));
+    acknowledged = registry.meter(name(LeaveHandoff.class, "acknowledged"));
+    timeouts = registry.meter(name(LeaveHandoff.class, "timeouts"));
+  }
+
+  /**
+   * @return true if there was nothing to hand off, or at least one peer acknowledged all of the data
+   * it may receive
+   */
+  boolean handoff() {
+    long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(gossipManager.getSettings().getLeaveTimeout());
+    List<LocalMember> peers = new ArrayList<>(gossipManager.getLiveMembers());
+    Collections.shuffle(peers);
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (LocalMember peer : peers.subList(0, Math.min(PEERS, peers.size()))) {
+      List<UdpHandoffMessage> messages = buildMessages(peer);
+      // a peer that may receive none of the data does not count as having taken it
+      if (!messages.isEmpty()) {
+        tasks.add(() -> handoff(peer, messages, deadline));
+      }
+    }
+    if (tasks.isEmpty()) {
+      return !peers.isEmpty() || buildMessages(null).isEmpty();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+    try {
+      boolean delivered = false;
+      for (Future<Boolean> result : executor.invokeAll(tasks, deadline - System.nanoTime(),
+              TimeUnit.NANOSECONDS)) {
+        try {
+          delivered |= result.get();
+        } catch (CancellationException e) {
+          timeouts.mark();
+        } catch (ExecutionException e) {
+          LOGGER.debug("Handoff failed", e.getCause());
+        }
+      }
+      return delivered;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private boolean handoff(LocalMember peer, List<UdpHandoffMessage> messages, long deadline) {
+    for (UdpHandoffMessage message : messages) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        timeouts.mark();
+        return false;
+      }
+      // the ack is correlated by the uuid
+      message.setUuid(gossipCore.nextMessageId());
+      Response response = gossipCore.send(message, Collections.singletonList(peer.getUri()),
+              remaining, TimeUnit.NANOSECONDS);
+      if (!(response instanceof UdpHandoffAck)) {
+        LOGGER.debug("Handoff to " + peer + " was not acknowledged");
+        timeouts.mark();
+        return false;
+      }
+      acknowledged.mark();
+      handedOff.mark(message.getSharedData().size() + message.getPerNodeData().size());
+    }
+    return true;
+  }
+
+  /**
+   * @param peer the destination, or null for everything this node would hand off
+   */
+  private List<UdpHandoffMessage> buildMessages(LocalMember peer) {
+    LocalMember me = gossipManager.getMyself();
+    String myId = me.getId();
+    int chunkSize = Math.max(1, gossipManager.getSettings().getBulkTransferSize());
+    List<UdpHandoffMessage> messages = new ArrayList<>();
+    UdpHandoffMessage message = newMessage();
+    for (SharedDataMessage shared : gossipCore.getSharedData().values()) {
+      if (!myId.equals(shared.getNodeId()) || !replicates(me, peer, shared)) {
+        continue;
+      }
+      if (message.getSharedData().size() == chunkSize) {
+        messages.add(message);
+        message = newMessage();
+      }
+      message.getSharedData().add(shared);
+    }
+    ConcurrentHashMap<String, PerNodeDataMessage> mine = gossipCore.getPerNodeData().get(myId);
+    if (mine != null) {
+      for (PerNodeDataMessage perNode : mine.values()) {
+        if (!replicates(me, peer, perNode)) {
+          continue;
+        }
+        if (message.getSharedData().size() + message.getPerNodeData().size() >= chunkSize) {
+          messages.add(message);
+          message = newMessage();
+        }
+        message.getPerNodeData().add(perNode);
+      }
+    }
+    if (!message.getSharedData().isEmpty() || !message.getPerNodeData().isEmpty()) {
+      messages.add(message);
+    }
+    return messages;
+  }
+
+  private static boolean replicates(LocalMember me, LocalMember peer, SharedDataMessage message) {
+    return peer == null || message.getReplicable() == null
+            || message.getReplicable().shouldReplicate(me, peer, message);
+  }
+
+  private static boolean replicates(LocalMember me, LocalMember peer, PerNodeDataMessage message) {
+    return peer == null || message.getReplicable() == null
+            || message.getReplicable().shouldReplicate(me, peer, message);
+  }
+
+  private UdpHandoffMessage newMessage() {
+    UdpHandoffMessage message = new UdpHandoffMessage();
+    message.setNodeId(gossipManager.getMyself().getId());
+    message.setUriFrom(gossipManager.getMyself().getUri().toASCIIString());
+    return message;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.event.GossipState;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Removes members that have been down longer than {@link org.apache.gossip.GossipSettings#getDeadMemberReapTime()},
+ * together with their per-node data. A removed member leaves a tombstone for
+ * {@link org.apache.gossip.GossipSettings#getTombstoneTime()} so that membership lists still
+ * carrying it do not add it back. The member itself contacting us, or a heartbeat newer than the one
+ * it was removed with, lifts the tombstone. Startup members are never removed, they are how the
+ * node finds the cluster again.
+ */
+public class MemberReaper {
+
+  private static class Tombstone {
+    private final long heartbeat;
+    private final long expireAt;
+
+    Tombstone(long heartbeat, long expireAt) {
+      this.heartbeat = heartbeat;
+      this.expireAt = expireAt;
+    }
+  }
+
+  private final GossipManager gossipManager;
+  private final GossipCore gossipCore;
+  private final Clock clock;
+  private final Set<LocalMember> startupMembers;
+  private final ConcurrentHashMap<String, Tombstone> tombstones = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(1);
+  private final Meter reaped;
+
+  public MemberReaper(GossipManager gossipManager, GossipCore gossipCore, Clock clock,
+          Collection<LocalMember> startupMembers, MetricRegistry registry) {
+    this.gossipManager = gossipManager;
+    this.gossipCore = gossipCore;
+    this.clock = clock;
+    this.startupMembers = new HashSet<>(startupMembers);
+    reaped = registry.meter(name(MemberReaper.class, "reaped"));
+    registry.register(name(MemberReaper.class, "tombstones"), (Gauge<Integer>) () -> tombstones.size());
+  }
+
+  public void init() {
+    scheduledExecutor.scheduleAtFixedRate(() -> runOnce(), 5, 5, TimeUnit.SECONDS);
+  }
+
+  void runOnce() {
+    long reapMillis = gossipManager.getSettings().getDeadMemberReapTime();
+    if (reapMillis > 0) {
+      reapMembers(TimeUnit.MILLISECONDS.toNanos(reapMillis));
+    }
+    long now = clock.currentTimeMillis();
+    for (Entry<String, Tombstone> entry : tombstones.entrySet()) {
+      if (entry.getValue().expireAt < now) {
+        tombstones.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private void reapMembers(long reapNanos) {
+    long now = clock.nanoTime();
+    boolean removed = false;
+    for (LocalMember member : gossipManager.getDeadMembers()) {
+      if (startupMembers.contains(member)) {
+        continue;
+      }
+      long downSince = member.getDownSince();
+      if (downSince == 0) {
+        // down since before we watched, start counting now
+        member.setDownSince(now);
+        continue;
+      }
+      if (now - downSince < reapNanos) {
+        continue;
+      }
+      if (gossipManager.getMembers().remove(member, GossipState.DOWN)) {
+        tombstones.put(member.getId(), new Tombstone(member.getHeartbeat(),
+                clock.currentTimeMillis() + gossipManager.getSettings().getTombstoneTime()));
+        gossipCore.removePerNodeData(member.getId());
+        gossipManager.getMemberStateRefresher().forget(member);
+        reaped.mark();
+        removed = true;
+      }
+    }
+    if (removed) {
+      gossipManager.refreshMemberSnapshots();
+    }
+  }
+
+  /**
+   * @param id a member id
+   * @param heartbeat the heartbeat gossiped for it
+   * @return true if the member was removed and the heartbeat is no newer than the one it was removed
+   * with, meaning the gossip is stale
+   */
+  public boolean isTombstoned(String id, long heartbeat) {
+    Tombstone tombstone = tombstones.get(id);
+    return tombstone != null && heartbeat <= tombstone.heartbeat;
+  }
+
+  /**
+   * @return true if the member was removed and its tombstone has not expired
+   */
+  public boolean isTombstoned(String id) {
+    return tombstones.containsKey(id);
+  }
+
+  /**
+   * Lifts the tombstone of a member that turned out to be alive.
+   */
+  public void resurrect(String id) {
+    tombstones.remove(id);
+  }
+
+  public void close() {
+    scheduledExecutor.shutdown();
+    try {
+      scheduledExecutor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+
+    }
+  }
+}
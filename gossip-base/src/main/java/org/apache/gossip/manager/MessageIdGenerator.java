@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the ids of {@link org.apache.gossip.udp.Trackable} requests. The upper 16 bits are a
+ * hash of the node id, the lower 48 bits a counter starting at a random value, so that ids do not
+ * repeat across restarts of a node. Only the requesting node has to find a response by its id, so
+ * uniqueness per node is all that is needed.
+ */
+public class MessageIdGenerator {
+
+  private static final int COUNTER_BITS = 48;
+  private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+  private final long prefix;
+  private final AtomicLong counter;
+
+  public MessageIdGenerator(String nodeId) {
+    int h = nodeId.hashCode();
+    prefix = ((long) ((h ^ (h >>> 16)) & 0xFFFF)) << COUNTER_BITS;
+    counter = new AtomicLong(ThreadLocalRandom.current().nextLong() & COUNTER_MASK);
+  }
+
+  public long next() {
+    return prefix | (counter.getAndIncrement() & COUNTER_MASK);
+  }
+}
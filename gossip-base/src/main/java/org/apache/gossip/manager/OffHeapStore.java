@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.crdt.CrdtModule;
+import org.apache.gossip.model.EncodedPayload;
+import org.apache.gossip.model.LazyPayload;
+import org.apache.gossip.model.SharedDataMessage;
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+/**
+ * Keeps large shared data payloads encoded in direct memory so they do not add to the heap the
+ * garbage collector has to trace. {@link GossipCore} stores a {@link Payload} in place of the
+ * payload object; the shared data map stays the on-heap index of key, timestamp and expiration.
+ * Payloads are appended to fixed size slabs and never overwritten. A slab is released by the
+ * garbage collector once no message refers to it any more, and {@link #compact} copies the
+ * remaining payloads out of filled slabs that are mostly garbage. The slabs not yet collected are
+ * capped at {@link GossipSettings#getOffHeapMaxBytes()}; payloads that would exceed it stay on the
+ * heap. Recently read payloads are kept decoded in a small cache.
+ */
+public class OffHeapStore {
+
+  public static final Logger LOGGER = Logger.getLogger(OffHeapStore.class);
+
+  static final class Slab {
+    private final ByteBuffer buffer;
+    /** guarded by the store */
+    private int used;
+    /** set once nothing more is appended */
+    private volatile boolean full;
+
+    Slab(int capacity) {
+      buffer = ByteBuffer.allocateDirect(capacity);
+    }
+  }
+
+  /**
+   * Enqueued once its slab was collected, to give back the capacity.
+   */
+  private static final class SlabReference extends PhantomReference<Slab> {
+    private final int capacity;
+
+    SlabReference(Slab slab, ReferenceQueue<Slab> queue) {
+      super(slab, queue);
+      capacity = slab.buffer.capacity();
+    }
+  }
+
+  /**
+   * A payload stored in a slab. Written as the JSON it was encoded to.
+   */
+  @JsonSerialize(using = OffHeapStore.Serializer.class)
+  public static final class Payload implements LazyPayload {
+    private final OffHeapStore store;
+    private final Slab slab;
+    private final int offset;
+    private final int length;
+    private final Class<?> type;
+
+    Payload(OffHeapStore store, Slab slab, int offset, int length, Class<?> type) {
+      this.store = store;
+      this.slab = slab;
+      this.offset = offset;
+      this.length = length;
+      this.type = type;
+    }
+
+    @Override
+    public Object decode() {
+      return store.decode(this);
+    }
+
+    @Override
+    public Class<?> getType() {
+      return type;
+    }
+
+    @Override
+    public int getEncodedLength() {
+      return length;
+    }
+
+    InputStream open() {
+      ByteBuffer bytes = slab.buffer.duplicate();
+      bytes.limit(offset + length);
+      bytes.position(offset);
+      return new ByteBufferBackedInputStream(bytes);
+    }
+
+    @Override
+    public String toString() {
+      return "OffHeapStore.Payload [type=" + type + ", length=" + length + "]";
+    }
+  }
+
+  /**
+   * Copies the stored JSON, type information included, into the generator.
+   */
+  public static class Serializer extends StdSerializer<Payload> {
+    private static final long serialVersionUID = 1L;
+
+    public Serializer() {
+      super(Payload.class);
+    }
+
+    @Override
+    public void serialize(Payload value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+      try (JsonParser parser = value.store.mapper.getFactory().createParser(value.open())) {
+        parser.nextToken();
+        gen.copyCurrentStructure(parser);
+      }
+    }
+
+    @Override
+    public void serializeWithType(Payload value, JsonGenerator gen, SerializerProvider provider,
+            TypeSerializer typeSer) throws IOException {
+      // the stored JSON already carries the type wrapper
+      serialize(value, gen, provider);
+    }
+  }
+
+  private final ObjectMapper mapper;
+  private final int minPayloadBytes;
+  private final int slabBytes;
+  private final long maxBytes;
+  private final Map<Payload, Object> cache;
+  private final AtomicLong liveBytes = new AtomicLong();
+  private final ReferenceQueue<Slab> collected = new ReferenceQueue<>();
+  /** guarded by this, keeps the references of the slabs not yet collected reachable */
+  private final Set<SlabReference> slabs = new HashSet<>();
+  /** guarded by this, the capacity of the slabs not yet collected */
+  private long heldBytes;
+  private final Meter allocated;
+  private final Meter kept;
+  private final Meter decoded;
+  private final Meter compacted;
+  /** guarded by this */
+  private Slab current;
+  /** guarded by this, slabs filled since the last compaction */
+  private int retired;
+
+  public OffHeapStore(GossipSettings settings, MetricRegistry registry) {
+    minPayloadBytes = settings.getOffHeapMinPayloadBytes();
+    slabBytes = settings.getOffHeapSlabBytes();
+    maxBytes = settings.getOffHeapMaxBytes();
+    int cacheEntries = settings.getOffHeapCacheEntries();
+    cache = new LinkedHashMap<Payload, Object>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Payload, Object> eldest) {
+        return size() > cacheEntries;
+      }
+    };
+    // the same encoding as the messages, so stored payloads can be sent as they are
+    mapper = new ObjectMapper();
+    mapper.enableDefaultTyping();
+    mapper.registerModule(new CrdtModule());
+    mapper.configure(JsonGenerator.Feature.WRITE_NUMBERS_AS_STRINGS, false);
+    allocated = registry.meter(name(OffHeapStore.class, "allocated-bytes"));
+    decoded = registry.meter(name(OffHeapStore.class, "decoded"));
+    compacted = registry.meter(name(OffHeapStore.class, "compacted"));
+    kept = registry.meter(name(OffHeapStore.class, "kept-on-heap"));
+    registry.register(name(OffHeapStore.class, "live-bytes"), (Gauge<Long>) () -> liveBytes.get());
+    registry.register(name(OffHeapStore.class, "slab-bytes"), (Gauge<Long>) this::getSlabBytes);
+  }
+
+  /**
+   * @return an upper bound of the encoded size of a payload known without encoding it, -1 if there
+   * is none
+   */
+  static long sizeBound(Object payload) {
+    if (payload instanceof LazyPayload) {
+      return ((LazyPayload) payload).getEncodedLength();
+    }
+    if (payload instanceof String) {
+      // quoted, every character escaped at worst
+      return 6L * ((String) payload).length() + 2;
+    }
+    return -1;
+  }
+
+  /**
+   * Moves a payload off the heap when its encoding is at least the configured minimum size and the
+   * slabs have room for it. Payloads known to be smaller are not encoded.
+   * @param payload a payload object or a {@link LazyPayload}
+   * @return a {@link Payload}, or the payload itself if it stays on the heap
+   */
+  Object store(Object payload) {
+    if (payload == null || payload instanceof Payload) {
+      return payload;
+    }
+    long bound = sizeBound(payload);
+    if (bound >= 0 && bound < minPayloadBytes) {
+      return payload;
+    }
+    byte[] bytes;
+    try {
+      bytes = payload instanceof LazyPayload ? mapper.writeValueAsBytes(payload)
+              : mapper.writerFor(Object.class).writeValueAsBytes(payload);
+    } catch (IOException e) {
+      LOGGER.warn("Could not encode payload, keeping it on the heap", e);
+      return payload;
+    }
+    if (bytes.length < minPayloadBytes) {
+      return payload;
+    }
+    Payload stored = allocate(bytes, EncodedPayload.typeOf(payload));
+    if (stored == null) {
+      return payload;
+    }
+    if (!(payload instanceof LazyPayload)) {
+      cache(stored, payload);
+    }
+    return stored;
+  }
+
+  /**
+   * @return the stored payload, or null if the slabs are at their cap
+   */
+  private synchronized Payload allocate(byte[] bytes, Class<?> type) {
+    Slab slab;
+    if (bytes.length > slabBytes / 2) {
+      // large payloads get a slab of their own, released with the payload
+      slab = newSlab(bytes.length);
+      if (slab == null) {
+        return null;
+      }
+      retire(slab);
+    } else {
+      if (current == null || current.buffer.capacity() - current.used < bytes.length) {
+        Slab next = newSlab(slabBytes);
+        if (next == null) {
+          return null;
+        }
+        if (current != null) {
+          retire(current);
+        }
+        current = next;
+      }
+      slab = current;
+    }
+    int offset = slab.used;
+    ByteBuffer target = slab.buffer.duplicate();
+    target.position(offset);
+    target.put(bytes);
+    slab.used += bytes.length;
+    return new Payload(this, slab, offset, bytes.length, type);
+  }
+
+  /**
+   * @return a new slab, or null if it would take the slabs over their cap
+   */
+  private Slab newSlab(int capacity) {
+    for (Reference<? extends Slab> ref; (ref = collected.poll()) != null;) {
+      slabs.remove(ref);
+      heldBytes -= ((SlabReference) ref).capacity;
+    }
+    if (maxBytes > 0 && heldBytes + capacity > maxBytes) {
+      kept.mark();
+      return null;
+    }
+    allocated.mark(capacity);
+    Slab slab = new Slab(capacity);
+    slabs.add(new SlabReference(slab, collected));
+    heldBytes += capacity;
+    return slab;
+  }
+
+  /**
+   * @return the direct memory held by slabs that were not collected yet
+   */
+  synchronized long getSlabBytes() {
+    return heldBytes;
+  }
+
+  private void retire(Slab slab) {
+    slab.full = true;
+    retired++;
+  }
+
+  private Object decode(Payload payload) {
+    Object value;
+    synchronized (cache) {
+      value = cache.get(payload);
+    }
+    if (value != null) {
+      return value;
+    }
+    decoded.mark();
+    try (InputStream in = payload.open()) {
+      value = mapper.readValue(in, Object.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not decode off-heap payload of " + payload.type, e);
+    }
+    cache(payload, value);
+    return value;
+  }
+
+  private void cache(Payload payload, Object value) {
+    synchronized (cache) {
+      cache.put(payload, value);
+    }
+  }
+
+  /**
+   * Copies the payloads still in use out of filled slabs that are less than half in use, so that
+   * the slabs can be collected. Does nothing unless a slab was filled since the last call.
+   * @param messages the stored shared data
+   * @param replace swaps a message for its relocated copy, false if the message changed meanwhile
+   * @return the number of payloads moved
+   */
+  int compact(Collection<SharedDataMessage> messages,
+          BiPredicate<SharedDataMessage, SharedDataMessage> replace) {
+    synchronized (this) {
+      if (retired == 0) {
+        return 0;
+      }
+      retired = 0;
+    }
+    Map<Slab, Long> live = new IdentityHashMap<>();
+    long total = 0;
+    for (SharedDataMessage message : messages) {
+      if (message.getRawPayload() instanceof Payload) {
+        Payload payload = (Payload) message.getRawPayload();
+        live.merge(payload.slab, (long) payload.length, Long::sum);
+        total += payload.length;
+      }
+    }
+    liveBytes.set(total);
+    int moved = 0;
+    for (SharedDataMessage message : messages) {
+      if (!(message.getRawPayload() instanceof Payload)) {
+        continue;
+      }
+      Payload payload = (Payload) message.getRawPayload();
+      if (!payload.slab.full || live.getOrDefault(payload.slab, 0L) * 2 >= payload.slab.used) {
+        continue;
+      }
+      SharedDataMessage copy = new SharedDataMessage();
+      copy.setExpireAt(message.getExpireAt());
+      copy.setKey(message.getKey());
+      copy.setNodeId(message.getNodeId());
+      copy.setTimestamp(message.getTimestamp());
+      copy.setReplicable(message.getReplicable());
+      Payload relocated = relocate(payload);
+      if (relocated == null) {
+        break;
+      }
+      copy.setRawPayload(relocated);
+      if (replace.test(message, copy)) {
+        moved++;
+      }
+    }
+    compacted.mark(moved);
+    return moved;
+  }
+
+  /**
+   * @return the copy, or null if the slabs are at their cap
+   */
+  private Payload relocate(Payload payload) {
+    byte[] bytes = new byte[payload.length];
+    ByteBuffer source = payload.slab.buffer.duplicate();
+    source.position(payload.offset);
+    source.get(bytes);
+    Payload moved = allocate(bytes, payload.type);
+    if (moved == null) {
+      return null;
+    }
+    Object value;
+    synchronized (cache) {
+      value = cache.get(payload);
+    }
+    if (value != null) {
+      cache(moved, value);
+    }
+    return moved;
+  }
+}
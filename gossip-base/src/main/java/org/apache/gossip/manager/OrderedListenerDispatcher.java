@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.event.GossipListener;
+import org.apache.gossip.event.GossipState;
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Delivers membership events to listeners without losing them and in order per member.
+ * <ul>
+ * <li>A member has at most one pending event. A newer transition replaces the pending one, and a
+ * transition back to the state listeners last received cancels it, so UP, DOWN, UP while the
+ * listeners are busy results in nothing new for them.</li>
+ * <li>Events of one member are never delivered concurrently, events of different members may be,
+ * one per worker thread.</li>
+ * <li>{@link #enqueue(LocalMember, GossipState)} never waits, so it may be called while holding
+ * the locks of the failure detector or the state refresher, and from a listener. The queue cannot
+ * outgrow the member map, since a member has at most one pending event; a queue longer than the
+ * capacity is only reported.</li>
+ * </ul>
+ */
+class OrderedListenerDispatcher {
+
+  public static final Logger LOGGER = Logger.getLogger(OrderedListenerDispatcher.class);
+
+  private final List<GossipListener> listeners;
+  private final int capacity;
+  private final int threads;
+  private final LinkedHashMap<LocalMember, GossipState> pending = new LinkedHashMap<>();
+  private final Set<LocalMember> inFlight = new HashSet<>();
+  private final Map<LocalMember, GossipState> lastDelivered = new HashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  private final List<Thread> workers = new ArrayList<>();
+  private final Meter delivered;
+  private final Meter coalesced;
+  private final Meter overCapacity;
+  private volatile boolean running = true;
+
+  /**
+   * @param listeners the listeners to call, read on every delivery so later registrations apply
+   * @param capacity number of members with a pending event above which the queue is reported as
+   * over capacity
+   * @param threads worker threads delivering events
+   */
+  OrderedListenerDispatcher(List<GossipListener> listeners, int capacity, int threads,
+          MetricRegistry registry) {
+    this.listeners = listeners;
+    this.capacity = capacity;
+    this.threads = threads;
+    delivered = registry.meter(name(OrderedListenerDispatcher.class, "delivered"));
+    coalesced = registry.meter(name(OrderedListenerDispatcher.class, "coalesced"));
+    overCapacity = registry.meter(name(OrderedListenerDispatcher.class, "over-capacity"));
+    registry.register(name(OrderedListenerDispatcher.class, "queue-size"), (Gauge<Integer>) () -> size());
+  }
+
+  /**
+   * Starts the workers. Events queued before are kept.
+   */
+  void start() {
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(() -> work(), "gossip-listener-" + i);
+      worker.setDaemon(true);
+      workers.add(worker);
+      worker.start();
+    }
+  }
+
+  /**
+   * Queues a state change without waiting.
+   */
+  void enqueue(LocalMember member, GossipState state) {
+    lock.lock();
+    try {
+      if (!running) {
+        return;
+      }
+      if (pending.put(member, state) != null) {
+        coalesced.mark();
+      }
+      if (state == lastDelivered.get(member)) {
+        pending.remove(member);
+        coalesced.mark();
+        return;
+      }
+      if (pending.size() > capacity) {
+        overCapacity.mark();
+      }
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drops the delivery history of a member that left the member map. A pending event is still
+   * delivered.
+   */
+  void forget(LocalMember member) {
+    lock.lock();
+    try {
+      lastDelivered.remove(member);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of members with a pending event
+   */
+  int size() {
+    lock.lock();
+    try {
+      return pending.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Entry<LocalMember, GossipState> take() {
+    lock.lock();
+    try {
+      while (running) {
+        for (Entry<LocalMember, GossipState> entry : pending.entrySet()) {
+          LocalMember member = entry.getKey();
+          if (!inFlight.contains(member)) {
+            pending.remove(member);
+            inFlight.add(member);
+            lastDelivered.put(member, entry.getValue());
+            return new SimpleImmutableEntry<>(member, entry.getValue());
+          }
+        }
+        available.awaitUninterruptibly();
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void done(LocalMember member) {
+    lock.lock();
+    try {
+      inFlight.remove(member);
+      if (pending.containsKey(member)) {
+        available.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void work() {
+    Entry<LocalMember, GossipState> event;
+    while ((event = take()) != null) {
+      for (GossipListener listener : listeners) {
+        try {
+          listener.gossipEvent(event.getKey(), event.getValue());
+        } catch (RuntimeException ex) {
+          LOGGER.warn("listener failed on " + event.getKey() + " " + event.getValue(), ex);
+        }
+      }
+      delivered.mark();
+      done(event.getKey());
+    }
+  }
+
+  /**
+   * Stops the workers. Events still pending are dropped.
+   */
+  void shutdown() {
+    lock.lock();
+    try {
+      running = false;
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join(5000);
+      } catch (InterruptedException e) {
+        LOGGER.debug("Issue during shutdown", e);
+      }
+    }
+  }
+}
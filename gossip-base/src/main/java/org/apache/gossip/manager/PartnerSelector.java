@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.List;
+
+import org.apache.gossip.LocalMember;
+
+/**
+ * Chooses the member to contact next. An active gossiper keeps one selector per kind of contact
+ * (membership, per node data, a datacenter, ...) because implementations may remember what they
+ * returned before. Implementations must be thread safe and have a public no argument constructor,
+ * see {@link org.apache.gossip.GossipSettings#setPartnerSelectorClass(String)}.
+ */
+public interface PartnerSelector {
+
+  /**
+   * @param members an immutable member snapshot, usually from {@link GossipManager#getLiveMembers()}
+   * @return the member to contact or null if the list is empty
+   */
+  LocalMember select(List<LocalMember> members);
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each per-node data key to the nodes that publish it, so a lookup by key visits only those
+ * nodes. The {@link DataStore} updates it under the lock stripe of the node and key after every
+ * write and removal. The node set of a key is changed atomically, and dropped once it is empty.
+ */
+class PerNodeKeyIndex {
+
+  private final ConcurrentHashMap<String, Set<String>> nodesByKey = new ConcurrentHashMap<>();
+
+  /**
+   * @param present whether the node currently stores a value under the key
+   */
+  void update(String nodeId, String key, boolean present) {
+    if (present) {
+      nodesByKey.compute(key, (k, nodes) -> {
+        if (nodes == null) {
+          nodes = ConcurrentHashMap.newKeySet();
+        }
+        nodes.add(nodeId);
+        return nodes;
+      });
+    } else {
+      nodesByKey.computeIfPresent(key, (k, nodes) -> {
+        nodes.remove(nodeId);
+        return nodes.isEmpty() ? null : nodes;
+      });
+    }
+  }
+
+  /**
+   * @return a live view of the nodes publishing the key
+   */
+  Set<String> nodes(String key) {
+    Set<String> nodes = nodesByKey.get(key);
+    return nodes == null ? Collections.emptySet() : Collections.unmodifiableSet(nodes);
+  }
+
+  int size() {
+    return nodesByKey.size();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.gossip.LocalMember;
+
+/**
+ * Walks the members in a random order, returning each member once per epoch before starting a new
+ * epoch with a fresh shuffle. Unlike random selection this bounds the number of calls between two
+ * contacts with the same member to 2n - 1, which bounds failure detection time.
+ * 
+ * When a new member snapshot arrives mid-epoch, members that left are dropped from the rest of the
+ * epoch and members that joined are inserted at random positions in it, so the bound still holds
+ * during churn. A new snapshot with the same members does not disturb the epoch.
+ */
+public class ShuffledRoundRobinPartnerSelector implements PartnerSelector {
+
+  private List<LocalMember> source = Collections.emptyList();
+  private final List<LocalMember> order = new ArrayList<>();
+  private int position;
+
+  @Override
+  public synchronized LocalMember select(List<LocalMember> members) {
+    if (members != source) {
+      rebase(members);
+    }
+    if (position >= order.size()) {
+      order.clear();
+      order.addAll(source);
+      Collections.shuffle(order, ThreadLocalRandom.current());
+      position = 0;
+    }
+    if (order.isEmpty()) {
+      return null;
+    }
+    return order.get(position++);
+  }
+
+  private void rebase(List<LocalMember> members) {
+    Set<LocalMember> current = new HashSet<>(members);
+    Set<LocalMember> known = new HashSet<>(source);
+    List<LocalMember> remaining = new ArrayList<>();
+    for (int i = position; i < order.size(); i++) {
+      if (current.contains(order.get(i))) {
+        remaining.add(order.get(i));
+      }
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (LocalMember member : members) {
+      if (!known.contains(member)) {
+        remaining.add(random.nextInt(remaining.size() + 1), member);
+      }
+    }
+    order.clear();
+    order.addAll(remaining);
+    position = 0;
+    source = members;
+  }
+}
@@ -38,6 +38,10 @@ public class SimpleActiveGossiper extends AbstractActiveGossiper {
   private ScheduledExecutorService scheduledExecutorService;
   private final BlockingQueue<Runnable> workQueue;
   private ThreadPoolExecutor threadService;
+  private final PartnerSelector livePartners;
+  private final PartnerSelector deadPartners;
+  private final PartnerSelector perNodeDataPartners;
+  private final PartnerSelector sharedDataPartners;
   
   public SimpleActiveGossiper(GossipManager gossipManager, GossipCore gossipCore,
                               MetricRegistry registry) {
@@ -46,6 +50,10 @@ public class SimpleActiveGossiper extends AbstractActiveGossiper {
     workQueue = new ArrayBlockingQueue<Runnable>(1024);
     threadService = new ThreadPoolExecutor(1, 30, 1, TimeUnit.SECONDS, workQueue,
             new ThreadPoolExecutor.DiscardOldestPolicy());
+    livePartners = newPartnerSelector();
+    deadPartners = newPartnerSelector();
+    perNodeDataPartners = newPartnerSelector();
+    sharedDataPartners = newPartnerSelector();
   }
 
   @Override
@@ -61,11 +69,11 @@ public class SimpleActiveGossiper extends AbstractActiveGossiper {
     }, 0, gossipManager.getSettings().getGossipInterval(), TimeUnit.MILLISECONDS);
     scheduledExecutorService.scheduleAtFixedRate(
             () -> sendPerNodeData(gossipManager.getMyself(),
-                    selectPartner(gossipManager.getLiveMembers())),
+                    perNodeDataPartners.select(gossipManager.getLiveMembers())),
             0, gossipManager.getSettings().getGossipInterval(), TimeUnit.MILLISECONDS);
     scheduledExecutorService.scheduleAtFixedRate(
             () -> sendSharedData(gossipManager.getMyself(),
-                    selectPartner(gossipManager.getLiveMembers())),
+                    sharedDataPartners.select(gossipManager.getLiveMembers())),
             0, gossipManager.getSettings().getGossipInterval(), TimeUnit.MILLISECONDS);
   }
   
@@ -88,12 +96,12 @@ public class SimpleActiveGossiper extends AbstractActiveGossiper {
   }
 
   protected void sendToALiveMember(){
-    LocalMember member = selectPartner(gossipManager.getLiveMembers());
+    LocalMember member = livePartners.select(gossipManager.getLiveMembers());
     sendMembershipList(gossipManager.getMyself(), member);
   }
   
   protected void sendToDeadMember(){
-    LocalMember member = selectPartner(gossipManager.getDeadMembers());
+    LocalMember member = deadPartners.select(gossipManager.getDeadMembers());
     sendMembershipList(gossipManager.getMyself(), member);
   }
   
@@ -103,8 +111,10 @@ public class SimpleActiveGossiper extends AbstractActiveGossiper {
   protected void sendShutdownMessage(){
     List<LocalMember> l = gossipManager.getLiveMembers();
     int sendTo = l.size() < 3 ? 1 : l.size() / 2;
+    PartnerSelector selector = newPartnerSelector();
     for (int i = 0; i < sendTo; i++) {
-      threadService.execute(() -> sendShutdownMessage(gossipManager.getMyself(), selectPartner(l)));
+      LocalMember target = selector.select(l);
+      threadService.execute(() -> sendShutdownMessage(gossipManager.getMyself(), target));
     }
   }
 }
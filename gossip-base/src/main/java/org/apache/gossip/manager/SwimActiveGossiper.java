@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gossip.LocalMember;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * An active gossiper that detects failures with SWIM instead of heartbeat phi accrual. Every
+ * protocol period one member is probed, walking the live members with a
+ * {@link ShuffledRoundRobinPartnerSelector} so that each member is probed once per round. Membership changes are disseminated by piggybacking on the
+ * probe traffic, see {@link SwimFailureDetector}. A full membership list is still pushed to one
+ * member every pushPullIntervalMs so partitions heal and seeds learn everybody. Data is gossiped as
+ * in {@link SimpleActiveGossiper}.
+ * 
+ * Active gossip properties: protocolPeriodMs (1000), pingTimeoutMs (200), indirectProbes (3),
+ * suspicionTimeoutMs (5000), piggybackLimit (8), retransmitMultiplier (3), pushPullIntervalMs (30000).
+ */
+public class SwimActiveGossiper extends AbstractActiveGossiper {
+
+  private int protocolPeriodMs = 1000;
+  private int pingTimeoutMs = 200;
+  private int indirectProbes = 3;
+  private int suspicionTimeoutMs = 5000;
+  private int piggybackLimit = 8;
+  private int retransmitMultiplier = 3;
+  private int pushPullIntervalMs = 30000;
+
+  private final SwimFailureDetector failureDetector;
+  private ScheduledExecutorService scheduledExecutorService;
+  private final BlockingQueue<Runnable> workQueue;
+  private ThreadPoolExecutor threadService;
+
+  // SWIM's detection bound relies on round robin probing, whatever the configured selector
+  private final PartnerSelector probeTargets = new ShuffledRoundRobinPartnerSelector();
+  private final PartnerSelector deadPartners;
+  private final PartnerSelector pushPullPartners;
+  private final PartnerSelector perNodeDataPartners;
+  private final PartnerSelector sharedDataPartners;
+
+  public SwimActiveGossiper(GossipManager gossipManager, GossipCore gossipCore,
+          MetricRegistry registry) {
+    super(gossipManager, gossipCore, registry);
+    scheduledExecutorService = Executors.newScheduledThreadPool(2);
+    workQueue = new ArrayBlockingQueue<Runnable>(1024);
+    threadService = new ThreadPoolExecutor(1, 30, 1, TimeUnit.SECONDS, workQueue,
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+    protocolPeriodMs = intProperty("protocolPeriodMs", protocolPeriodMs);
+    pingTimeoutMs = intProperty("pingTimeoutMs", pingTimeoutMs);
+    indirectProbes = intProperty("indirectProbes", indirectProbes);
+    suspicionTimeoutMs = intProperty("suspicionTimeoutMs", suspicionTimeoutMs);
+    piggybackLimit = intProperty("piggybackLimit", piggybackLimit);
+    retransmitMultiplier = intProperty("retransmitMultiplier", retransmitMultiplier);
+    pushPullIntervalMs = intProperty("pushPullIntervalMs", pushPullIntervalMs);
+    failureDetector = new SwimFailureDetector(gossipManager, gossipCore, registry, threadService,
+            pingTimeoutMs, Math.max(pingTimeoutMs, protocolPeriodMs - pingTimeoutMs), indirectProbes,
+            suspicionTimeoutMs, piggybackLimit, retransmitMultiplier);
+    deadPartners = newPartnerSelector();
+    pushPullPartners = newPartnerSelector();
+    perNodeDataPartners = newPartnerSelector();
+    sharedDataPartners = newPartnerSelector();
+  }
+
+  private int intProperty(String name, int defaultValue) {
+    try {
+      return Integer.parseInt(gossipManager.getSettings().getActiveGossipProperties().get(name));
+    } catch (RuntimeException ex) {
+      return defaultValue;
+    }
+  }
+
+  @Override
+  public void init() {
+    super.init();
+    gossipManager.getMemberStateRefresher().setDetectionEnabled(false);
+    // probes run on the scheduler itself so a slow probe delays the next one instead of overlapping
+    scheduledExecutorService.scheduleWithFixedDelay(() -> {
+      try {
+        failureDetector.probe(probeTargets.select(gossipManager.getLiveMembers()));
+        failureDetector.expireSuspects();
+      } catch (RuntimeException ex) {
+        LOGGER.warn("Probe failed", ex);
+      }
+    }, 0, protocolPeriodMs, TimeUnit.MILLISECONDS);
+    scheduledExecutorService.scheduleAtFixedRate(
+            () -> failureDetector.ping(deadPartners.select(gossipManager.getDeadMembers())),
+            0, protocolPeriodMs, TimeUnit.MILLISECONDS);
+    scheduledExecutorService.scheduleAtFixedRate(() -> threadService.execute(() -> pushPull()),
+            0, pushPullIntervalMs, TimeUnit.MILLISECONDS);
+    scheduledExecutorService.scheduleAtFixedRate(
+            () -> sendPerNodeData(gossipManager.getMyself(),
+                    perNodeDataPartners.select(gossipManager.getLiveMembers())),
+            0, gossipManager.getSettings().getGossipInterval(), TimeUnit.MILLISECONDS);
+    scheduledExecutorService.scheduleAtFixedRate(
+            () -> sendSharedData(gossipManager.getMyself(),
+                    sharedDataPartners.select(gossipManager.getLiveMembers())),
+            0, gossipManager.getSettings().getGossipInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void shutdown() {
+    super.shutdown();
+    scheduledExecutorService.shutdown();
+    try {
+      scheduledExecutorService.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      LOGGER.debug("Issue during shutdown", e);
+    }
+    sendShutdownMessage();
+    threadService.shutdown();
+    try {
+      threadService.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      LOGGER.debug("Issue during shutdown", e);
+    }
+  }
+
+  protected void pushPull() {
+    LocalMember member = pushPullPartners.select(gossipManager.getLiveMembers());
+    if (member == null) {
+      member = deadPartners.select(gossipManager.getDeadMembers());
+    }
+    sendMembershipList(gossipManager.getMyself(), member);
+  }
+
+  /**
+   * sends an optimistic shutdown message to several clusters nodes
+   */
+  protected void sendShutdownMessage() {
+    List<LocalMember> l = gossipManager.getLiveMembers();
+    int sendTo = l.size() < 3 ? 1 : l.size() / 2;
+    PartnerSelector selector = newPartnerSelector();
+    for (int i = 0; i < sendTo; i++) {
+      LocalMember target = selector.select(l);
+      threadService.execute(() -> sendShutdownMessage(gossipManager.getMyself(), target));
+    }
+  }
+
+  public SwimFailureDetector getFailureDetector() {
+    return failureDetector;
+  }
+}
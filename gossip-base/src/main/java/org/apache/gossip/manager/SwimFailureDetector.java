@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.event.GossipState;
+import org.apache.gossip.model.Base;
+import org.apache.gossip.model.Member;
+import org.apache.gossip.model.Response;
+import org.apache.gossip.model.SwimAck;
+import org.apache.gossip.model.SwimUpdate;
+import org.apache.gossip.model.SwimUpdate.Status;
+import org.apache.gossip.udp.UdpSwimAck;
+import org.apache.gossip.udp.UdpSwimPing;
+import org.apache.gossip.udp.UdpSwimPingRequest;
+import org.apache.log4j.Logger;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * The failure detector and dissemination component of SWIM (Das, Gupta, Motivala). A member is
+ * probed with a direct ping; if no ack arrives within the ping timeout, k other members are asked to
+ * ping it on our behalf. Without any ack the member becomes suspect, and a suspect that does not
+ * refute the suspicion within the suspicion timeout is declared dead.
+ * 
+ * Alive, suspect and dead updates are ordered by incarnation numbers, which only the member itself
+ * increments to refute a suspicion. Updates are piggybacked on pings, ping requests and acks and
+ * each one is retransmitted a multiple of log(n) times.
+ * 
+ * Alive and suspect members are UP in the member map, dead members are DOWN.
+ * 
+ * Like every other message, SWIM messages carry the URI of this node in uriFrom; its id travels in
+ * the sender update.
+ */
+public class SwimFailureDetector {
+
+  public static final Logger LOGGER = Logger.getLogger(SwimFailureDetector.class);
+
+  static class MemberState {
+    private final Status status;
+    private final long incarnation;
+    private final long suspectedAt;
+
+    MemberState(Status status, long incarnation, long suspectedAt) {
+      this.status = status;
+      this.incarnation = incarnation;
+      this.suspectedAt = suspectedAt;
+    }
+
+    Status getStatus() {
+      return status;
+    }
+
+    long getIncarnation() {
+      return incarnation;
+    }
+  }
+
+  private static class Dissemination {
+    private final SwimUpdate update;
+    private int transmits;
+
+    Dissemination(SwimUpdate update) {
+      this.update = update;
+    }
+  }
+
+  private final GossipManager gossipManager;
+  private final GossipCore gossipCore;
+  private final Executor executor;
+  private final long pingTimeoutMs;
+  private final long indirectTimeoutMs;
+  private final int indirectProbes;
+  private final long suspicionTimeoutMs;
+  private final int piggybackLimit;
+  private final int retransmitMultiplier;
+  private final Map<String, MemberState> states = new ConcurrentHashMap<>();
+  private final Map<String, Dissemination> disseminations = new LinkedHashMap<>();
+  private volatile long incarnation;
+  private final Meter pings;
+  private final Meter indirectPings;
+  private final Meter suspicions;
+  private final Meter deaths;
+  private final Meter refutations;
+
+  /**
+   * @param executor runs ping requests on behalf of other members, so that the receiving thread
+   * never waits for an ack
+   * @param pingTimeoutMs how long to wait for the ack of a direct ping
+   * @param indirectTimeoutMs how long to wait for an ack forwarded by the indirect probes
+   * @param indirectProbes how many members are asked to ping a member that missed its direct ping
+   * @param suspicionTimeoutMs how long a suspect has to refute the suspicion before it is dead
+   * @param piggybackLimit the most updates piggybacked on a single message
+   * @param retransmitMultiplier an update is sent retransmitMultiplier * log2(n + 1) times
+   */
+  public SwimFailureDetector(GossipManager gossipManager, GossipCore gossipCore,
+          MetricRegistry registry, Executor executor, long pingTimeoutMs, long indirectTimeoutMs,
+          int indirectProbes, long suspicionTimeoutMs, int piggybackLimit, int retransmitMultiplier) {
+    this.gossipManager = gossipManager;
+    this.gossipCore = gossipCore;
+    this.executor = executor;
+    this.pingTimeoutMs = pingTimeoutMs;
+    this.indirectTimeoutMs = indirectTimeoutMs;
+    this.indirectProbes = indirectProbes;
+    this.suspicionTimeoutMs = suspicionTimeoutMs;
+    this.piggybackLimit = piggybackLimit;
+    this.retransmitMultiplier = retransmitMultiplier;
+    pings = registry.meter(name(SwimFailureDetector.class, "pings"));
+    indirectPings = registry.meter(name(SwimFailureDetector.class, "indirectPings"));
+    suspicions = registry.meter(name(SwimFailureDetector.class, "suspicions"));
+    deaths = registry.meter(name(SwimFailureDetector.class, "deaths"));
+    refutations = registry.meter(name(SwimFailureDetector.class, "refutations"));
+  }
+
+  /**
+   * Probes a member for one protocol period: a direct ping, then indirect pings through other live
+   * members. Blocks for at most the ping timeout plus the indirect timeout.
+   * @return true if the member acknowledged, false if it is now suspect
+   */
+  public boolean probe(LocalMember target) {
+    if (target == null) {
+      return false;
+    }
+    pings.mark();
+    if (request(newPing(target.getId()), Collections.singletonList(target.getUri()), pingTimeoutMs)) {
+      return true;
+    }
+    List<LocalMember> helpers = new ArrayList<>(gossipManager.getLiveMembers());
+    helpers.remove(target);
+    Collections.shuffle(helpers, ThreadLocalRandom.current());
+    List<URI> uris = new ArrayList<>();
+    for (int i = 0; i < helpers.size() && i < indirectProbes; i++) {
+      uris.add(helpers.get(i).getUri());
+    }
+    if (!uris.isEmpty()) {
+      indirectPings.mark();
+      UdpSwimPingRequest request = new UdpSwimPingRequest();
+      request.setUuid(gossipCore.nextMessageId());
+      request.setUriFrom(gossipManager.getMyself().getUri().toASCIIString());
+      request.setSender(self());
+      request.setTarget(convert(target));
+      request.setUpdates(piggyback(target.getId()));
+      if (request(request, uris, indirectTimeoutMs)) {
+        return true;
+      }
+    }
+    MemberState state = states.get(target.getId());
+    apply(new SwimUpdate(convert(target), Status.SUSPECT, state == null ? 0 : state.getIncarnation()));
+    return false;
+  }
+
+  /**
+   * Sends a ping without waiting for the ack. Used to reach dead members, which come back up
+   * through {@link #handleAck(SwimAck)} if they answer.
+   */
+  public void ping(LocalMember target) {
+    if (target == null) {
+      return;
+    }
+    pings.mark();
+    gossipCore.sendOneWay(newPing(target.getId()), target.getUri());
+  }
+
+  private boolean request(Base message, List<URI> uris, long timeoutMs) {
+    try {
+      Response response = gossipCore.send(message, uris, timeoutMs, TimeUnit.MILLISECONDS);
+      return response instanceof SwimAck;
+    } catch (RuntimeException ex) {
+      LOGGER.debug("Probe failed", ex);
+      return false;
+    }
+  }
+
+  UdpSwimPing newPing(String targetId) {
+    UdpSwimPing ping = new UdpSwimPing();
+    ping.setUuid(gossipCore.nextMessageId());
+    ping.setUriFrom(gossipManager.getMyself().getUri().toASCIIString());
+    ping.setSender(self());
+    ping.setUpdates(piggyback(targetId));
+    return ping;
+  }
+
+  /**
+   * Declares dead every suspect whose suspicion timeout has passed.
+   */
+  public void expireSuspects() {
+    long now = gossipManager.getClock().nanoTime();
+    for (Map.Entry<String, MemberState> entry : states.entrySet()) {
+      MemberState state = entry.getValue();
+      if (state.getStatus() == Status.SUSPECT
+              && TimeUnit.NANOSECONDS.toMillis(now - state.suspectedAt) >= suspicionTimeoutMs) {
+        LocalMember member = findMember(entry.getKey());
+        if (member != null) {
+          apply(new SwimUpdate(convert(member), Status.DEAD, state.getIncarnation()));
+        }
+      }
+    }
+  }
+
+  public void handlePing(UdpSwimPing ping) {
+    if (!contact(ping.getSender())) {
+      return;
+    }
+    applyAll(ping.getUpdates());
+    UdpSwimAck ack = new UdpSwimAck();
+    ack.setUuid(ping.getUuid());
+    ack.setUriFrom(ping.getUriFrom());
+    ack.setSender(self());
+    ack.setUpdates(piggyback(ping.getSender().getMember().getId()));
+    gossipCore.sendOneWay(ack, URI.create(ping.getSender().getMember().getUri()));
+  }
+
+  public void handlePingRequest(UdpSwimPingRequest request) {
+    if (!contact(request.getSender()) || request.getTarget() == null) {
+      return;
+    }
+    applyAll(request.getUpdates());
+    executor.execute(() -> {
+      UdpSwimPing ping = newPing(request.getTarget().getId());
+      Response response;
+      try {
+        response = gossipCore.send(ping, Collections.singletonList(URI.create(request.getTarget().getUri())),
+                pingTimeoutMs, TimeUnit.MILLISECONDS);
+      } catch (RuntimeException ex) {
+        LOGGER.debug("Indirect ping failed", ex);
+        return;
+      }
+      if (response instanceof SwimAck) {
+        UdpSwimAck forward = new UdpSwimAck();
+        forward.setUuid(request.getUuid());
+        forward.setUriFrom(request.getUriFrom());
+        forward.setSender(((SwimAck) response).getSender());
+        forward.setUpdates(piggyback(request.getSender().getMember().getId()));
+        gossipCore.sendOneWay(forward, URI.create(request.getSender().getMember().getUri()));
+      }
+    });
+  }
+
+  public void handleAck(SwimAck ack) {
+    if (contact(ack.getSender())) {
+      applyAll(ack.getUpdates());
+    }
+  }
+
+  private void applyAll(List<SwimUpdate> updates) {
+    if (updates == null) {
+      return;
+    }
+    for (SwimUpdate update : updates) {
+      apply(update);
+    }
+  }
+
+  /**
+   * Hearing from a member, directly or through a forwarded ack, proves it is reachable. It is moved
+   * UP locally even if we hold a suspicion at its current incarnation; the suspicion is piggybacked
+   * on our next message to it so it refutes with a higher incarnation.
+   * @return false if the sender is not usable, e.g. from another cluster
+   */
+  synchronized boolean contact(SwimUpdate sender) {
+    if (sender == null || sender.getMember() == null || sender.getMember().getId() == null
+            || !gossipManager.getMyself().getClusterName().equals(sender.getMember().getCluster())) {
+      return false;
+    }
+    if (sender.getMember().getId().equals(gossipManager.getMyself().getId())) {
+      return true;
+    }
+    apply(new SwimUpdate(sender.getMember(), Status.ALIVE, sender.getIncarnation()));
+    LocalMember member = findMember(sender.getMember().getId());
+    if (member == null) {
+      return true;
+    }
+    Long heartbeat = sender.getMember().getHeartbeat();
+    if (heartbeat != null && heartbeat > member.getHeartbeat()) {
+      gossipCore.recordHeartbeat(member, heartbeat);
+      member.setHeartbeat(heartbeat);
+    }
+    gossipManager.getMemberStateRefresher().updateState(member, GossipState.UP);
+    return true;
+  }
+
+  /**
+   * Applies an update if it overrides what we know about the member:
+   * alive overrides any state of a lower incarnation, suspect overrides alive of the same or a lower
+   * incarnation and suspect of a lower one, dead overrides alive and suspect of the same or a lower
+   * incarnation. An update that suspects or kills this node is refuted with a higher incarnation.
+   * @return true if the update was accepted and is now being disseminated
+   */
+  public synchronized boolean apply(SwimUpdate update) {
+    if (update == null || update.getMember() == null || update.getMember().getId() == null
+            || update.getStatus() == null) {
+      return false;
+    }
+    String id = update.getMember().getId();
+    if (id.equals(gossipManager.getMyself().getId())) {
+      if (update.getStatus() != Status.ALIVE && update.getIncarnation() >= incarnation) {
+        incarnation = update.getIncarnation() + 1;
+        refutations.mark();
+        enqueue(self());
+      }
+      return false;
+    }
+    if (!gossipManager.getMyself().getClusterName().equals(update.getMember().getCluster())) {
+      return false;
+    }
+    MemberState current = states.get(id);
+    if (current != null && !overrides(update, current)) {
+      return false;
+    }
+    LocalMember member = findMember(id);
+    if (member == null && update.getStatus() != Status.DEAD) {
+      member = addMember(update.getMember());
+    }
+    long suspectedAt = 0;
+    if (update.getStatus() == Status.SUSPECT) {
+      suspectedAt = current != null && current.getStatus() == Status.SUSPECT ? current.suspectedAt
+              : gossipManager.getClock().nanoTime();
+      if (current == null || current.getStatus() != Status.SUSPECT) {
+        suspicions.mark();
+      }
+    }
+    if (update.getStatus() == Status.DEAD) {
+      deaths.mark();
+    }
+    states.put(id, new MemberState(update.getStatus(), update.getIncarnation(), suspectedAt));
+    enqueue(update);
+    if (member != null) {
+      gossipManager.getMemberStateRefresher().updateState(member,
+              update.getStatus() == Status.DEAD ? GossipState.DOWN : GossipState.UP);
+    }
+    return true;
+  }
+
+  static boolean overrides(SwimUpdate update, MemberState current) {
+    switch (update.getStatus()) {
+    case ALIVE:
+      return update.getIncarnation() > current.getIncarnation();
+    case SUSPECT:
+      return current.getStatus() == Status.ALIVE && update.getIncarnation() >= current.getIncarnation()
+              || current.getStatus() == Status.SUSPECT && update.getIncarnation() > current.getIncarnation();
+    case DEAD:
+      return current.getStatus() != Status.DEAD && update.getIncarnation() >= current.getIncarnation();
+    default:
+      return false;
+    }
+  }
+
+  private LocalMember addMember(Member remote) {
+    LocalMember member = new LocalMember(remote.getCluster(), URI.create(remote.getUri()),
+            remote.getId(), remote.getHeartbeat() == null ? 0 : remote.getHeartbeat(),
+            remote.getProperties() == null ? new HashMap<>() : remote.getProperties(),
+            gossipManager.getSettings());
+    if (remote.getPropertiesVersion() != null) {
+      member.setPropertiesVersion(remote.getPropertiesVersion());
+    }
+    if (gossipManager.getMembers().putIfAbsent(member, GossipState.UP) == null) {
+      gossipManager.refreshMemberSnapshots();
+      return member;
+    }
+    return findMember(remote.getId());
+  }
+
+  private LocalMember findMember(String id) {
+    for (LocalMember member : gossipManager.getMembers().keySet()) {
+      if (member.getId().equals(id)) {
+        return member;
+      }
+    }
+    return null;
+  }
+
+  private synchronized void enqueue(SwimUpdate update) {
+    disseminations.remove(update.getMember().getId());
+    disseminations.put(update.getMember().getId(), new Dissemination(update));
+  }
+
+  /**
+   * Takes the updates that were sent the fewest times. When the receiver is not alive in our view
+   * our opinion about it leads the list, so it can refute.
+   * @param receiverId the member the updates are sent to
+   */
+  synchronized List<SwimUpdate> piggyback(String receiverId) {
+    List<SwimUpdate> result = new ArrayList<>();
+    MemberState receiver = states.get(receiverId);
+    LocalMember accused = receiver != null && receiver.getStatus() != Status.ALIVE
+            ? findMember(receiverId) : null;
+    if (accused != null) {
+      result.add(new SwimUpdate(convert(accused), receiver.getStatus(), receiver.getIncarnation()));
+    }
+    if (disseminations.isEmpty()) {
+      return result;
+    }
+    List<Dissemination> candidates = new ArrayList<>(disseminations.values());
+    candidates.sort(Comparator.comparingInt(d -> d.transmits));
+    int maxTransmits = retransmitMultiplier
+            * (int) Math.ceil(Math.log(gossipManager.getLiveMembers().size() + 2) / Math.log(2));
+    for (Dissemination dissemination : candidates) {
+      if (result.size() >= piggybackLimit) {
+        break;
+      }
+      if (accused != null && dissemination.update.getMember().getId().equals(receiverId)) {
+        continue;
+      }
+      result.add(dissemination.update);
+      dissemination.transmits++;
+    }
+    for (Iterator<Dissemination> it = disseminations.values().iterator(); it.hasNext();) {
+      if (it.next().transmits >= maxTransmits) {
+        it.remove();
+      }
+    }
+    return result;
+  }
+
+  synchronized int pendingUpdates() {
+    return disseminations.size();
+  }
+
+  /**
+   * @return this node as an alive update at its current incarnation
+   */
+  SwimUpdate self() {
+    LocalMember me = gossipManager.getMyself();
+    me.setHeartbeat(gossipManager.getClock().nanoTime());
+    return new SwimUpdate(convert(me), Status.ALIVE, incarnation);
+  }
+
+  public long getIncarnation() {
+    return incarnation;
+  }
+
+  /**
+   * @return what this detector knows about a member, null if it never heard of it
+   */
+  public Status getStatus(String id) {
+    MemberState state = states.get(id);
+    return state == null ? null : state.getStatus();
+  }
+
+  private static Member convert(LocalMember member) {
+    Member gm = new Member();
+    gm.setCluster(member.getClusterName());
+    gm.setHeartbeat(member.getHeartbeat());
+    gm.setUri(member.getUri().toASCIIString());
+    gm.setId(member.getId());
+    gm.setProperties(member.getProperties());
+    gm.setPropertiesVersion(member.getPropertiesVersion());
+    return gm;
+  }
+}
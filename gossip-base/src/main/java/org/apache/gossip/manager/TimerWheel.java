@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hashed timer wheel holding at most one deadline per key. Scheduling, rescheduling and
+ * cancelling are O(1); advancing touches only the slots of the ticks that passed, plus deadlines
+ * more than one rotation away, which are skipped until their round comes. Deadlines fire at most
+ * one tick late.
+ * 
+ * The wheel has no thread of its own: the owner calls {@link #advance(long)} periodically, which
+ * returns what expired.
+ */
+class TimerWheel<K> {
+
+  private static class Timeout {
+    private final long deadlineNanos;
+    private final int slot;
+
+    Timeout(long deadlineNanos, int slot) {
+      this.deadlineNanos = deadlineNanos;
+      this.slot = slot;
+    }
+  }
+
+  private final long tickNanos;
+  private final List<Set<K>> slots;
+  private final Map<K, Timeout> timeouts = new HashMap<>();
+  private long currentTick;
+
+  /**
+   * @param tickNanos the resolution of the wheel
+   * @param slotCount slots per rotation
+   * @param nowNanos the time the wheel starts at
+   */
+  TimerWheel(long tickNanos, int slotCount, long nowNanos) {
+    this.tickNanos = tickNanos;
+    slots = new ArrayList<>(slotCount);
+    for (int i = 0; i < slotCount; i++) {
+      slots.add(new HashSet<>());
+    }
+    currentTick = nowNanos / tickNanos;
+  }
+
+  private int slotOf(long tick) {
+    return (int) Math.floorMod(tick, (long) slots.size());
+  }
+
+  /**
+   * Schedules the key at the deadline, replacing any deadline it had. A deadline in the past fires
+   * on the next advance.
+   */
+  synchronized void schedule(K key, long deadlineNanos) {
+    cancel(key);
+    int slot = slotOf(Math.max(deadlineNanos / tickNanos, currentTick));
+    timeouts.put(key, new Timeout(deadlineNanos, slot));
+    slots.get(slot).add(key);
+  }
+
+  synchronized void cancel(K key) {
+    Timeout previous = timeouts.remove(key);
+    if (previous != null) {
+      slots.get(previous.slot).remove(key);
+    }
+  }
+
+  /**
+   * @return the deadline of the key or null if it is not scheduled
+   */
+  synchronized Long deadline(K key) {
+    Timeout timeout = timeouts.get(key);
+    return timeout == null ? null : timeout.deadlineNanos;
+  }
+
+  synchronized int size() {
+    return timeouts.size();
+  }
+
+  /**
+   * Moves the wheel to the given time.
+   * @return the keys whose deadline passed, they are no longer scheduled
+   */
+  synchronized List<K> advance(long nowNanos) {
+    List<K> expired = new ArrayList<>();
+    long nowTick = nowNanos / tickNanos;
+    if (nowTick < currentTick) {
+      return expired;
+    }
+    // after a long pause every slot is due once
+    long from = nowTick - currentTick >= slots.size() ? nowTick - slots.size() + 1 : currentTick;
+    for (long tick = from; tick <= nowTick; tick++) {
+      for (Iterator<K> it = slots.get(slotOf(tick)).iterator(); it.hasNext();) {
+        K key = it.next();
+        if (timeouts.get(key).deadlineNanos <= nowNanos) {
+          it.remove();
+          timeouts.remove(key);
+          expired.add(key);
+        }
+      }
+    }
+    // the current tick may still hold deadlines later within it, so it is scanned again next time
+    currentTick = nowTick;
+    return expired;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.apache.gossip.LocalMember;
+
+/**
+ * Groups live members by datacenter and rack relative to the local node. An index is immutable and
+ * is built from one live member snapshot; when {@link GossipManager#getLiveMembers()} publishes a new
+ * snapshot (membership, state or property change) a new index is built.
+ */
+class TopologyIndex {
+
+  private final List<LocalMember> source;
+  private final String datacenter;
+  private final String rack;
+  private final List<LocalMember> sameRack;
+  private final List<LocalMember> sameDatacenterDifferentRack;
+  private final List<LocalMember> differentDatacenter;
+  private final Map<String, List<LocalMember>> byOtherDatacenter;
+
+  private TopologyIndex(List<LocalMember> source, String datacenter, String rack) {
+    this.source = source;
+    this.datacenter = datacenter;
+    this.rack = rack;
+    if (datacenter == null || rack == null) {
+      sameRack = Collections.emptyList();
+      sameDatacenterDifferentRack = Collections.emptyList();
+      differentDatacenter = Collections.emptyList();
+      byOtherDatacenter = Collections.emptyMap();
+      return;
+    }
+    List<LocalMember> rackMembers = new ArrayList<>();
+    List<LocalMember> dcMembers = new ArrayList<>();
+    List<LocalMember> otherDcMembers = new ArrayList<>();
+    Map<String, List<LocalMember>> otherDcs = new HashMap<>();
+    for (LocalMember member : source) {
+      String memberDc = member.getProperties().get(DatacenterRackAwareActiveGossiper.DATACENTER);
+      if (datacenter.equals(memberDc)) {
+        if (rack.equals(member.getProperties().get(DatacenterRackAwareActiveGossiper.RACK))) {
+          rackMembers.add(member);
+        } else {
+          dcMembers.add(member);
+        }
+      } else {
+        otherDcMembers.add(member);
+        otherDcs.computeIfAbsent(memberDc, k -> new ArrayList<>()).add(member);
+      }
+    }
+    sameRack = freeze(rackMembers);
+    sameDatacenterDifferentRack = freeze(dcMembers);
+    differentDatacenter = freeze(otherDcMembers);
+    Map<String, List<LocalMember>> frozen = new HashMap<>();
+    for (Entry<String, List<LocalMember>> entry : otherDcs.entrySet()) {
+      frozen.put(entry.getKey(), freeze(entry.getValue()));
+    }
+    byOtherDatacenter = Collections.unmodifiableMap(frozen);
+  }
+
+  private static List<LocalMember> freeze(List<LocalMember> members) {
+    return Collections.unmodifiableList(Arrays.asList(members.toArray(new LocalMember[0])));
+  }
+
+  /**
+   * @param me the local member, whose datacenter and rack properties are the reference point
+   * @param liveMembers a live member snapshot from {@link GossipManager#getLiveMembers()}
+   */
+  static TopologyIndex build(LocalMember me, List<LocalMember> liveMembers) {
+    return new TopologyIndex(liveMembers,
+            me.getProperties().get(DatacenterRackAwareActiveGossiper.DATACENTER),
+            me.getProperties().get(DatacenterRackAwareActiveGossiper.RACK));
+  }
+
+  /**
+   * @return true if this index was built from the given snapshot for the given local member
+   */
+  boolean isCurrent(LocalMember me, List<LocalMember> liveMembers) {
+    return source == liveMembers
+            && Objects.equals(datacenter, me.getProperties().get(DatacenterRackAwareActiveGossiper.DATACENTER))
+            && Objects.equals(rack, me.getProperties().get(DatacenterRackAwareActiveGossiper.RACK));
+  }
+
+  List<LocalMember> sameRack() {
+    return sameRack;
+  }
+
+  List<LocalMember> sameDatacenterDifferentRack() {
+    return sameDatacenterDifferentRack;
+  }
+
+  List<LocalMember> differentDatacenter() {
+    return differentDatacenter;
+  }
+
+  /**
+   * @return live members of every datacenter other than ours, keyed by datacenter. Members without
+   * a datacenter property are under the null key.
+   */
+  Map<String, List<LocalMember>> byOtherDatacenter() {
+    return byOtherDatacenter;
+  }
+}
@@ -58,6 +58,8 @@ public class ActiveGossipMessageHandler implements MessageHandler {
               activeGossipMessage.getMembers().get(i).getId(),
               activeGossipMessage.getMembers().get(i).getHeartbeat(),
               activeGossipMessage.getMembers().get(i).getProperties());
+      Long propertiesVersion = activeGossipMessage.getMembers().get(i).getPropertiesVersion();
+      member.setPropertiesVersion(propertiesVersion == null ? 0 : propertiesVersion);
       if (i == 0) {
         senderMember = member;
       }
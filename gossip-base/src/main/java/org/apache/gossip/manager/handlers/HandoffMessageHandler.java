@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager.handlers;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.manager.GossipCore;
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.model.Base;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+import org.apache.gossip.udp.UdpHandoffAck;
+import org.apache.gossip.udp.UdpHandoffMessage;
+
+public class HandoffMessageHandler implements MessageHandler {
+
+  /**
+   * @param gossipCore context.
+   * @param gossipManager context.
+   * @param base message reference.
+   * @return boolean indicating success.
+   */
+  @Override
+  public boolean invoke(GossipCore gossipCore, GossipManager gossipManager, Base base) {
+    UdpHandoffMessage message = (UdpHandoffMessage) base;
+    URI sender = knownUri(gossipManager, message);
+    if (sender == null) {
+      return false;
+    }
+    // a leaving node hands off only what it wrote itself
+    List<SharedDataMessage> shared = new ArrayList<>();
+    for (SharedDataMessage data : message.getSharedData()) {
+      if (message.getNodeId().equals(data.getNodeId())) {
+        shared.add(data);
+      }
+    }
+    List<PerNodeDataMessage> perNode = new ArrayList<>();
+    for (PerNodeDataMessage data : message.getPerNodeData()) {
+      if (message.getNodeId().equals(data.getNodeId())) {
+        perNode.add(data);
+      }
+    }
+    gossipCore.addSharedData(shared);
+    gossipCore.addPerNodeData(perNode);
+    UdpHandoffAck ack = new UdpHandoffAck();
+    ack.setUriFrom(message.getUriFrom());
+    ack.setUuid(message.getUuid());
+    gossipCore.sendOneWay(ack, sender);
+    return true;
+  }
+
+  /**
+   * @return the uri the sender is known by, or null if it is not a member at the uri it sent from
+   */
+  private static URI knownUri(GossipManager gossipManager, UdpHandoffMessage message) {
+    if (message.getNodeId() == null || message.getUriFrom() == null) {
+      return null;
+    }
+    URI uri;
+    try {
+      uri = URI.create(message.getUriFrom());
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+    for (LocalMember member : gossipManager.getMembers().keySet()) {
+      if (member.getId().equals(message.getNodeId())) {
+        return member.getUri().equals(uri) ? uri : null;
+      }
+    }
+    return null;
+  }
+}
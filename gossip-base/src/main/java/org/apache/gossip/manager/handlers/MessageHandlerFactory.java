@@ -34,7 +34,14 @@ public class MessageHandlerFactory {
         new TypedMessageHandler(SharedDataMessage.class, new SharedDataMessageHandler()),
         new TypedMessageHandler(ActiveGossipMessage.class, new ActiveGossipMessageHandler()),
         new TypedMessageHandler(PerNodeDataBulkMessage.class, new PerNodeDataBulkMessageHandler()),
-        new TypedMessageHandler(SharedDataBulkMessage.class, new SharedDataBulkMessageHandler())
+        new TypedMessageHandler(SharedDataBulkMessage.class, new SharedDataBulkMessageHandler()),
+        new TypedMessageHandler(SwimPing.class, new SwimPingHandler()),
+        new TypedMessageHandler(SwimPingRequest.class, new SwimPingRequestHandler()),
+        new TypedMessageHandler(SwimAck.class, new SwimAckHandler()),
+        new TypedMessageHandler(MemberPropertiesRequest.class, new MemberPropertiesRequestHandler()),
+        new TypedMessageHandler(MemberProperties.class, new MemberPropertiesHandler()),
+        new TypedMessageHandler(JoinRequest.class, new JoinRequestHandler()),
+        new TypedMessageHandler(HandoffMessage.class, new HandoffMessageHandler())
     );
   }
 
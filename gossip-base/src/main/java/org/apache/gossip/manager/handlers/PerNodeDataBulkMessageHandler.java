@@ -20,7 +20,6 @@ package org.apache.gossip.manager.handlers;
 import org.apache.gossip.manager.GossipCore;
 import org.apache.gossip.manager.GossipManager;
 import org.apache.gossip.model.Base;
-import org.apache.gossip.model.PerNodeDataMessage;
 import org.apache.gossip.udp.UdpPerNodeDataBulkMessage;
 
 public class PerNodeDataBulkMessageHandler implements MessageHandler {
@@ -34,8 +33,7 @@ public class PerNodeDataBulkMessageHandler implements MessageHandler {
   @Override
   public boolean invoke(GossipCore gossipCore, GossipManager gossipManager, Base base) {
     UdpPerNodeDataBulkMessage udpMessage = (UdpPerNodeDataBulkMessage) base;
-    for (PerNodeDataMessage dataMsg: udpMessage.getMessages())
-      gossipCore.addPerNodeData(dataMsg);
+    gossipCore.addPerNodeData(udpMessage.getMessages());
     return true;
   }
 }
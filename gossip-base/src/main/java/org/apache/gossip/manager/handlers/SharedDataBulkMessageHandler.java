@@ -20,7 +20,6 @@ package org.apache.gossip.manager.handlers;
 import org.apache.gossip.manager.GossipCore;
 import org.apache.gossip.manager.GossipManager;
 import org.apache.gossip.model.Base;
-import org.apache.gossip.model.SharedDataMessage;
 import org.apache.gossip.udp.UdpSharedDataBulkMessage;
 
 public class SharedDataBulkMessageHandler implements MessageHandler{
@@ -34,8 +33,7 @@ public class SharedDataBulkMessageHandler implements MessageHandler{
   @Override
   public boolean invoke(GossipCore gossipCore, GossipManager gossipManager, Base base) {
     UdpSharedDataBulkMessage udpMessage = (UdpSharedDataBulkMessage) base;
-    for (SharedDataMessage dataMsg: udpMessage.getMessages())
-      gossipCore.addSharedData(dataMsg);
+    gossipCore.addSharedData(udpMessage.getMessages());
     return true;
   }
 }
@@ -19,9 +19,18 @@ package org.apache.gossip.model;
 
 import org.apache.gossip.udp.UdpActiveGossipMessage;
 import org.apache.gossip.udp.UdpActiveGossipOk;
+import org.apache.gossip.udp.UdpHandoffAck;
+import org.apache.gossip.udp.UdpHandoffMessage;
+import org.apache.gossip.udp.UdpJoinRequest;
+import org.apache.gossip.udp.UdpJoinSnapshotChunk;
+import org.apache.gossip.udp.UdpMemberProperties;
+import org.apache.gossip.udp.UdpMemberPropertiesRequest;
 import org.apache.gossip.udp.UdpPerNodeDataBulkMessage;
 import org.apache.gossip.udp.UdpNotAMemberFault;
 import org.apache.gossip.udp.UdpSharedDataBulkMessage;
+import org.apache.gossip.udp.UdpSwimAck;
+import org.apache.gossip.udp.UdpSwimPing;
+import org.apache.gossip.udp.UdpSwimPingRequest;
 
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -42,7 +51,16 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
         @Type(value = PerNodeDataMessage.class, name = "PerNodeDataMessage"),
         @Type(value = UdpPerNodeDataBulkMessage.class, name = "UdpPerNodeDataMessage"),
         @Type(value = SharedDataMessage.class, name = "SharedDataMessage"),
-        @Type(value = UdpSharedDataBulkMessage.class, name = "UdpSharedDataMessage")
+        @Type(value = UdpSharedDataBulkMessage.class, name = "UdpSharedDataMessage"),
+        @Type(value = UdpSwimPing.class, name = "UdpSwimPing"),
+        @Type(value = UdpSwimPingRequest.class, name = "UdpSwimPingRequest"),
+        @Type(value = UdpSwimAck.class, name = "UdpSwimAck"),
+        @Type(value = UdpMemberPropertiesRequest.class, name = "UdpMemberPropertiesRequest"),
+        @Type(value = UdpMemberProperties.class, name = "UdpMemberProperties"),
+        @Type(value = UdpJoinRequest.class, name = "UdpJoinRequest"),
+        @Type(value = UdpJoinSnapshotChunk.class, name = "UdpJoinSnapshotChunk"),
+        @Type(value = UdpHandoffMessage.class, name = "UdpHandoffMessage"),
+        @Type(value = UdpHandoffAck.class, name = "UdpHandoffAck")
         })
 public class Base {
 
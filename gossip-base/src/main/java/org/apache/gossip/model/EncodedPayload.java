@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * A shared or per-node data payload as it arrived, kept as buffered tokens together with its type
+ * id. The payload object is only built the first time {@link #decode()} is called, so gossip that
+ * loses the timestamp check never pays for it, and writing the message again copies the original
+ * encoding instead of serializing the object.
+ */
+@JsonSerialize(using = EncodedPayload.Serializer.class)
+public final class EncodedPayload implements LazyPayload {
+
+  private static final ConcurrentHashMap<String, Class<?>> TYPES = new ConcurrentHashMap<>();
+
+  private final TokenBuffer tokens;
+  private final ObjectCodec codec;
+  private final String typeId;
+  private final int encodedLength;
+  private volatile Object decoded;
+
+  private EncodedPayload(TokenBuffer tokens, ObjectCodec codec, String typeId, int encodedLength) {
+    this.tokens = tokens;
+    this.codec = codec;
+    this.typeId = typeId;
+    this.encodedLength = encodedLength;
+  }
+
+  /**
+   * @return the class name written by the sender, or null if the encoding carried none
+   */
+  public String getTypeId() {
+    return typeId;
+  }
+
+  @Override
+  public Class<?> getType() {
+    if (typeId == null) {
+      return null;
+    }
+    Class<?> type = TYPES.get(typeId);
+    if (type == null) {
+      try {
+        type = Class.forName(typeId);
+      } catch (ClassNotFoundException | LinkageError e) {
+        return null;
+      }
+      TYPES.putIfAbsent(typeId, type);
+    }
+    return type;
+  }
+
+  /**
+   * @return the length of the payload in the message it was read from, or -1 if the parser did not
+   * track offsets
+   */
+  @Override
+  public int getEncodedLength() {
+    return encodedLength;
+  }
+
+  /**
+   * @return the payload object, built on first use with the mapper that read the message
+   * @throws UncheckedIOException if the payload can not be decoded
+   */
+  @Override
+  public Object decode() {
+    Object value = decoded;
+    if (value == null) {
+      try (JsonParser parser = tokens.asParser(codec)) {
+        value = codec.readValue(parser, Object.class);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not decode payload of type " + typeId, e);
+      }
+      decoded = value;
+    }
+    return value;
+  }
+
+  /**
+   * @return the payload object for a payload that may still be encoded
+   */
+  public static Object decode(Object payload) {
+    return payload instanceof LazyPayload ? ((LazyPayload) payload).decode() : payload;
+  }
+
+  /**
+   * @return the class of a payload that may still be encoded, null if it is unknown
+   */
+  public static Class<?> typeOf(Object payload) {
+    if (payload instanceof LazyPayload) {
+      return ((LazyPayload) payload).getType();
+    }
+    return payload == null ? null : payload.getClass();
+  }
+
+  @Override
+  public String toString() {
+    return "EncodedPayload [typeId=" + typeId + "]";
+  }
+
+  /**
+   * Writes the buffered tokens as they were read, type information included.
+   */
+  public static class Serializer extends StdSerializer<EncodedPayload> {
+    private static final long serialVersionUID = 1L;
+
+    public Serializer() {
+      super(EncodedPayload.class);
+    }
+
+    @Override
+    public void serialize(EncodedPayload value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+      value.tokens.serialize(gen);
+    }
+
+    @Override
+    public void serializeWithType(EncodedPayload value, JsonGenerator gen,
+            SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+      // the buffered tokens already carry the sender's type wrapper
+      value.tokens.serialize(gen);
+    }
+  }
+
+  /**
+   * Buffers structured payloads instead of building them. Scalars are cheaper to read directly.
+   */
+  public static class Deserializer extends StdDeserializer<Object> {
+    private static final long serialVersionUID = 1L;
+
+    public Deserializer() {
+      super(Object.class);
+    }
+
+    @Override
+    public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      return deserializeWithType(p, ctxt, null);
+    }
+
+    @Override
+    public Object deserializeWithType(JsonParser p, DeserializationContext ctxt,
+            TypeDeserializer typeDeserializer) throws IOException {
+      JsonToken token = p.getCurrentToken();
+      if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+        JsonDeserializer<Object> untyped = ctxt.findContextualValueDeserializer(
+                ctxt.constructType(Object.class), null);
+        return typeDeserializer == null ? untyped.deserialize(p, ctxt)
+                : untyped.deserializeWithType(p, ctxt, typeDeserializer);
+      }
+      long start = offsetOf(p.getTokenLocation());
+      TokenBuffer tokens = new TokenBuffer(p, ctxt);
+      tokens.copyCurrentStructure(p);
+      long end = offsetOf(p.getCurrentLocation());
+      int encodedLength = start >= 0 && end >= start && end - start <= Integer.MAX_VALUE
+              ? (int) (end - start) : -1;
+      String typeId = null;
+      if (token == JsonToken.START_ARRAY && typeDeserializer != null) {
+        // default typing writes a wrapper array: [ "class name", value ]
+        try (JsonParser peek = tokens.asParser()) {
+          peek.nextToken();
+          if (peek.nextToken() == JsonToken.VALUE_STRING) {
+            typeId = peek.getText();
+          }
+        }
+      }
+      return new EncodedPayload(tokens, p.getCodec(), typeId, encodedLength);
+    }
+
+    private static long offsetOf(JsonLocation location) {
+      return location.getByteOffset() >= 0 ? location.getByteOffset() : location.getCharOffset();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data a leaving node hands to a live peer before it exits.
+ */
+public class HandoffMessage extends Base {
+
+  private String nodeId;
+  private List<SharedDataMessage> sharedData = new ArrayList<>();
+  private List<PerNodeDataMessage> perNodeData = new ArrayList<>();
+
+  public HandoffMessage(){
+
+  }
+
+  /**
+   * @return the id of the leaving node, the receiver only takes the data from a member it knows
+   */
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public void setNodeId(String nodeId) {
+    this.nodeId = nodeId;
+  }
+
+  public List<SharedDataMessage> getSharedData() {
+    return sharedData;
+  }
+
+  public void setSharedData(List<SharedDataMessage> sharedData) {
+    this.sharedData = sharedData;
+  }
+
+  public List<PerNodeDataMessage> getPerNodeData() {
+    return perNodeData;
+  }
+
+  public void setPerNodeData(List<PerNodeDataMessage> perNodeData) {
+    this.perNodeData = perNodeData;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+/**
+ * Asks a seed for one chunk of its state. The first request has no snapshot id; the answer names
+ * the snapshot the following chunks are taken from.
+ */
+public class JoinRequest extends Base {
+
+  private Member sender;
+  private String snapshotId;
+  private int chunk;
+
+  public JoinRequest(){
+
+  }
+
+  public Member getSender() {
+    return sender;
+  }
+
+  public void setSender(Member sender) {
+    this.sender = sender;
+  }
+
+  public String getSnapshotId() {
+    return snapshotId;
+  }
+
+  public void setSnapshotId(String snapshotId) {
+    this.snapshotId = snapshotId;
+  }
+
+  public int getChunk() {
+    return chunk;
+  }
+
+  public void setChunk(int chunk) {
+    this.chunk = chunk;
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One chunk of the members, shared data and per-node data a seed held when a joining node asked.
+ */
+public class JoinSnapshotChunk extends Response {
+
+  private String snapshotId;
+  private int chunk;
+  private int chunkCount;
+  private Member sender;
+  private List<Member> members = new ArrayList<>();
+  private List<SharedDataMessage> sharedData = new ArrayList<>();
+  private List<PerNodeDataMessage> perNodeData = new ArrayList<>();
+
+  public JoinSnapshotChunk(){
+
+  }
+
+  public String getSnapshotId() {
+    return snapshotId;
+  }
+
+  public void setSnapshotId(String snapshotId) {
+    this.snapshotId = snapshotId;
+  }
+
+  public int getChunk() {
+    return chunk;
+  }
+
+  public void setChunk(int chunk) {
+    this.chunk = chunk;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
+  public Member getSender() {
+    return sender;
+  }
+
+  public void setSender(Member sender) {
+    this.sender = sender;
+  }
+
+  public List<Member> getMembers() {
+    return members;
+  }
+
+  public void setMembers(List<Member> members) {
+    this.members = members;
+  }
+
+  public List<SharedDataMessage> getSharedData() {
+    return sharedData;
+  }
+
+  public void setSharedData(List<SharedDataMessage> sharedData) {
+    this.sharedData = sharedData;
+  }
+
+  public List<PerNodeDataMessage> getPerNodeData() {
+    return perNodeData;
+  }
+
+  public void setPerNodeData(List<PerNodeDataMessage> perNodeData) {
+    this.perNodeData = perNodeData;
+  }
+
+}
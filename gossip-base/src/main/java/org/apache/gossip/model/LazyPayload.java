@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+/**
+ * A data payload held in encoded form, in place of the payload object, inside a
+ * {@link SharedDataMessage} or {@link PerNodeDataMessage}. The messages decode it when the payload
+ * is read.
+ */
+public interface LazyPayload {
+
+  /**
+   * @return the payload object
+   */
+  Object decode();
+
+  /**
+   * @return the class of the payload without decoding it, or null if it is not known locally
+   */
+  Class<?> getType();
+
+  /**
+   * @return the size of the encoding in bytes, or -1 if it is not known
+   */
+  int getEncodedLength();
+}
@@ -26,6 +26,7 @@ public class Member {
   private String id;
   private Long heartbeat;
   private Map<String,String> properties;
+  private Long propertiesVersion;
   
   public Member(){
     
@@ -78,10 +79,22 @@ public class Member {
     this.properties = properties;
   }
 
+  /**
+   * @return the version of the properties, null if the sender predates versioned properties. When
+   * set, the properties may be left out.
+   */
+  public Long getPropertiesVersion() {
+    return propertiesVersion;
+  }
+
+  public void setPropertiesVersion(Long propertiesVersion) {
+    this.propertiesVersion = propertiesVersion;
+  }
+
   @Override
   public String toString() {
     return "Member [cluster=" + cluster + ", uri=" + uri + ", id=" + id + ", heartbeat="
-            + heartbeat + ", properties=" + properties + "]";
+            + heartbeat + ", properties=" + properties + ", propertiesVersion=" + propertiesVersion + "]";
   }
   
 }
@@ -19,10 +19,17 @@ package org.apache.gossip.model;
 
 import org.apache.gossip.replication.Replicable;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
 public class PerNodeDataMessage extends Base {
 
   private String nodeId;
   private String key;
+  /** the payload object, or a {@link LazyPayload} holding it encoded */
+  @JsonProperty("payload")
+  @JsonDeserialize(using = EncodedPayload.Deserializer.class)
   private Object payload;
   private Long timestamp;
   private Long expireAt;
@@ -40,12 +47,25 @@ public class PerNodeDataMessage extends Base {
   public void setKey(String key) {
     this.key = key;
   }
+  @JsonIgnore
   public Object getPayload() {
-    return payload;
+    return EncodedPayload.decode(payload);
   }
+  @JsonIgnore
   public void setPayload(Object payload) {
     this.payload = payload;
   }
+  /**
+   * @return the payload without decoding it, for copying a message or checking its type
+   */
+  @JsonIgnore
+  public Object getRawPayload() {
+    return payload;
+  }
+  @JsonIgnore
+  public void setRawPayload(Object payload) {
+    this.payload = payload;
+  }
   public Long getTimestamp() {
     return timestamp;
   }
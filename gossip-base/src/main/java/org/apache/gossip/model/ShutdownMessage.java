@@ -22,6 +22,7 @@ public class ShutdownMessage extends Message {
   public static final String PER_NODE_KEY = "gossipcore.shutdowmessage";
   private long shutdownAtNanos;
   private String nodeId;
+  private boolean left;
   
   public ShutdownMessage(){
     
@@ -43,9 +44,22 @@ public class ShutdownMessage extends Message {
     this.shutdownAtNanos = shutdownAtNanos;
   }
 
+  /**
+   * @return true if the node left the cluster on purpose after handing off its data, rather than
+   * just stopping
+   */
+  public boolean isLeft() {
+    return left;
+  }
+
+  public void setLeft(boolean left) {
+    this.left = left;
+  }
+
   @Override
   public String toString() {
-    return "ShutdownMessage [shutdownAtNanos=" + shutdownAtNanos + ", nodeId=" + nodeId + "]";
+    return "ShutdownMessage [shutdownAtNanos=" + shutdownAtNanos + ", nodeId=" + nodeId
+            + ", left=" + left + "]";
   }
   
 }
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Acknowledges a ping. The sender is always the member that was pinged, also when the ack is
+ * forwarded by the member that handled a ping request.
+ */
+public class SwimAck extends Response {
+
+  private SwimUpdate sender;
+  private List<SwimUpdate> updates = new ArrayList<>();
+
+  public SwimAck(){
+
+  }
+
+  public SwimUpdate getSender() {
+    return sender;
+  }
+
+  public void setSender(SwimUpdate sender) {
+    this.sender = sender;
+  }
+
+  public List<SwimUpdate> getUpdates() {
+    return updates;
+  }
+
+  public void setUpdates(List<SwimUpdate> updates) {
+    this.updates = updates;
+  }
+
+}
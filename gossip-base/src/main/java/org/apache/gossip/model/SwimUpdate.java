@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.model;
+
+/**
+ * A SWIM membership update about one member. Updates are piggybacked on ping, ping-req and ack
+ * messages. The incarnation is bumped only by the member itself, to refute suspicion.
+ */
+public class SwimUpdate {
+
+  public enum Status {
+    ALIVE, SUSPECT, DEAD
+  }
+
+  private Member member;
+  private Status status;
+  private long incarnation;
+
+  public SwimUpdate(){
+
+  }
+
+  public SwimUpdate(Member member, Status status, long incarnation){
+    this.member = member;
+    this.status = status;
+    this.incarnation = incarnation;
+  }
+
+  public Member getMember() {
+    return member;
+  }
+
+  public void setMember(Member member) {
+    this.member = member;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public long getIncarnation() {
+    return incarnation;
+  }
+
+  public void setIncarnation(long incarnation) {
+    this.incarnation = incarnation;
+  }
+
+  @Override
+  public String toString() {
+    return "SwimUpdate [member=" + member + ", status=" + status + ", incarnation=" + incarnation
+            + "]";
+  }
+}
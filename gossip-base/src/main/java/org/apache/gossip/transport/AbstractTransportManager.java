@@ -78,6 +78,11 @@ public abstract class AbstractTransportManager implements TransportManager {
     activeGossipThread.init();
   }
 
+  @Override
+  public AbstractActiveGossiper getActiveGossiper() {
+    return activeGossipThread;
+  }
+
   @Override
   public abstract void startEndpoint();
 }
@@ -17,6 +17,8 @@
  */
 package org.apache.gossip.transport;
 
+import org.apache.gossip.manager.AbstractActiveGossiper;
+
 import java.io.IOException;
 import java.net.URI;
 
@@ -26,6 +28,9 @@ public interface TransportManager {
   /** starts the active gossip thread responsible for reaching out to remote nodes. Not related to `startEndpoint()` */
   void startActiveGossiper();
   
+  /** the active gossiper built from the settings, or null if none is running. */
+  AbstractActiveGossiper getActiveGossiper();
+  
   /** starts the passive gossip thread that receives messages from remote nodes. Not related to `startActiveGossiper()` */
   void startEndpoint();
   
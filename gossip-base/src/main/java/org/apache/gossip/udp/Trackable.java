@@ -23,8 +23,11 @@ public interface Trackable {
   
   void setUriFrom(String uriFrom);
   
-  String getUuid();
+  /**
+   * @return the id of the request, generated by the requesting node and copied into the response
+   */
+  long getUuid();
   
-  void setUuid(String uuid);
+  void setUuid(long uuid);
   
 }
@@ -23,7 +23,7 @@ public class UdpActiveGossipOk extends ActiveGossipOk implements Trackable {
 
 
   private String uriFrom;
-  private String uuid;
+  private long uuid;
   
   public String getUriFrom() {
     return uriFrom;
@@ -33,11 +33,11 @@ public class UdpActiveGossipOk extends ActiveGossipOk implements Trackable {
     this.uriFrom = uriFrom;
   }
   
-  public String getUuid() {
+  public long getUuid() {
     return uuid;
   }
   
-  public void setUuid(String uuid) {
+  public void setUuid(long uuid) {
     this.uuid = uuid;
   }
 
@@ -25,7 +25,7 @@ public class UdpNotAMemberFault extends NotAMemberFault implements Trackable{
     
   }
   private String uriFrom;
-  private String uuid;
+  private long uuid;
   
   public String getUriFrom() {
     return uriFrom;
@@ -35,11 +35,11 @@ public class UdpNotAMemberFault extends NotAMemberFault implements Trackable{
     this.uriFrom = uriFrom;
   }
   
-  public String getUuid() {
+  public long getUuid() {
     return uuid;
   }
   
-  public void setUuid(String uuid) {
+  public void setUuid(long uuid) {
     this.uuid = uuid;
   }
   
@@ -22,7 +22,7 @@ import org.apache.gossip.model.PerNodeDataMessage;
 public class UdpPerNodeDataMessage extends PerNodeDataMessage implements Trackable {
 
   private String uriFrom;
-  private String uuid;
+  private long uuid;
   
   public String getUriFrom() {
     return uriFrom;
@@ -32,11 +32,11 @@ public class UdpPerNodeDataMessage extends PerNodeDataMessage implements Trackab
     this.uriFrom = uriFrom;
   }
   
-  public String getUuid() {
+  public long getUuid() {
     return uuid;
   }
   
-  public void setUuid(String uuid) {
+  public void setUuid(long uuid) {
     this.uuid = uuid;
   }
 
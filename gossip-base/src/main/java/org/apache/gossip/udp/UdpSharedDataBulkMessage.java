@@ -22,7 +22,7 @@ import org.apache.gossip.model.SharedDataBulkMessage;
 public class UdpSharedDataBulkMessage extends SharedDataBulkMessage implements Trackable {
 
   private String uriFrom;
-  private String uuid;
+  private long uuid;
   
   public String getUriFrom() {
     return uriFrom;
@@ -32,11 +32,11 @@ public class UdpSharedDataBulkMessage extends SharedDataBulkMessage implements T
     this.uriFrom = uriFrom;
   }
   
-  public String getUuid() {
+  public long getUuid() {
     return uuid;
   }
   
-  public void setUuid(String uuid) {
+  public void setUuid(long uuid) {
     this.uuid = uuid;
   }
 
@@ -22,7 +22,7 @@ import org.apache.gossip.model.SharedDataMessage;
 public class UdpSharedDataMessage extends SharedDataMessage implements Trackable {
 
   private String uriFrom;
-  private String uuid;
+  private long uuid;
   
   public String getUriFrom() {
     return uriFrom;
@@ -32,18 +32,18 @@ public class UdpSharedDataMessage extends SharedDataMessage implements Trackable
     this.uriFrom = uriFrom;
   }
   
-  public String getUuid() {
+  public long getUuid() {
     return uuid;
   }
   
-  public void setUuid(String uuid) {
+  public void setUuid(long uuid) {
     this.uuid = uuid;
   }
 
   @Override
   public String toString() {
     return "UdpSharedGossipDataMessage [uriFrom=" + uriFrom + ", uuid=" + uuid + ", getNodeId()="
-            + getNodeId() + ", getKey()=" + getKey() + ", getPayload()=" + getPayload()
+            + getNodeId() + ", getKey()=" + getKey() + ", getRawPayload()=" + getRawPayload()
             + ", getTimestamp()=" + getTimestamp() + ", getExpireAt()=" + getExpireAt()
             + ", getReplicable()=" + getReplicable() + "]";
   }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.manager.GossipCore;
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.manager.GossipManagerBuilder;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+
+/**
+ * Builds the single, unstarted node "me" of cluster "aCluster" that unit tests poke at directly,
+ * and the data messages they feed it.
+ */
+public final class GossipTestSupport {
+
+  public static final String CLUSTER = "aCluster";
+
+  private GossipTestSupport() {
+  }
+
+  /**
+   * @return settings that persist neither the ring nor the data
+   */
+  public static GossipSettings settings() {
+    GossipSettings settings = new GossipSettings();
+    settings.setPersistRingState(false);
+    settings.setPersistDataState(false);
+    return settings;
+  }
+
+  public static GossipManager manager(int port) {
+    return manager(port, settings());
+  }
+
+  public static GossipManager manager(int port, GossipSettings settings) {
+    return manager(port, settings, new ArrayList<>());
+  }
+
+  public static GossipManager manager(int port, GossipSettings settings, List<Member> seeds) {
+    return GossipManagerBuilder.newBuilder().id("me").cluster(CLUSTER)
+            .uri(URI.create("udp://localhost:" + port)).gossipSettings(settings)
+            .gossipMembers(seeds).registry(new MetricRegistry()).build();
+  }
+
+  public static GossipCore core(int port) {
+    return core(port, settings());
+  }
+
+  public static GossipCore core(int port, GossipSettings settings) {
+    return core(port, settings, new MetricRegistry());
+  }
+
+  public static GossipCore core(int port, GossipSettings settings, MetricRegistry registry) {
+    return new GossipCore(manager(port, settings), registry);
+  }
+
+  public static SharedDataMessage shared(String nodeId, String key, Object payload, long timestamp,
+          Long expireAt) {
+    SharedDataMessage m = new SharedDataMessage();
+    m.setNodeId(nodeId);
+    m.setKey(key);
+    m.setPayload(payload);
+    m.setTimestamp(timestamp);
+    m.setExpireAt(expireAt);
+    return m;
+  }
+
+  public static PerNodeDataMessage perNode(String nodeId, String key, Object payload,
+          long timestamp, Long expireAt) {
+    PerNodeDataMessage m = new PerNodeDataMessage();
+    m.setNodeId(nodeId);
+    m.setKey(key);
+    m.setPayload(payload);
+    m.setTimestamp(timestamp);
+    m.setExpireAt(expireAt);
+    return m;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.accrual;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the failure detectors on a 1,000 member cluster with the default settings. One
+ * refresh is what GossipMemberStateRefresher does every 100 ms and after every received packet: phi
+ * for every member. Run with mvn test-compile, then this class's main method with the test
+ * classpath; add -prof gc through the options to see allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FailureDetectorBenchmark {
+
+  @Param({ "org.apache.gossip.accrual.FailureDetector",
+          "org.apache.gossip.accrual.RingBufferFailureDetector" })
+  public String detectorClass;
+
+  @Param({ "1000" })
+  public int members;
+
+  private AccrualFailureDetector[] detectors;
+  private long now;
+
+  @Setup
+  public void setup() throws ReflectiveOperationException {
+    detectors = new AccrualFailureDetector[members];
+    now = 0;
+    for (int i = 0; i < members; i++) {
+      detectors[i] = (AccrualFailureDetector) Class.forName(detectorClass)
+              .getConstructor(long.class, int.class, String.class)
+              .newInstance(5L, 5000, "normal");
+    }
+    // fill every window so the benchmark sees a steady state cluster
+    for (int beat = 0; beat < 5000; beat++) {
+      heartbeat();
+    }
+  }
+
+  private void heartbeat() {
+    now += 1000;
+    for (int i = 0; i < detectors.length; i++) {
+      detectors[i].recordHeartbeat(now + (i * 7 + now / 1000 * 13) % 100);
+    }
+  }
+
+  @Benchmark
+  public void refresh(Blackhole blackhole) {
+    long at = now + 500;
+    for (int i = 0; i < detectors.length; i++) {
+      blackhole.consume(detectors[i].computePhiMeasure(at));
+    }
+  }
+
+  @Benchmark
+  public void heartbeatAll() {
+    heartbeat();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+            .include(FailureDetectorBenchmark.class.getSimpleName())
+            .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.accrual;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+@RunWith(JUnitPlatform.class)
+public class RingBufferFailureDetectorTest {
+
+  private void recordBoth(AccrualFailureDetector a, AccrualFailureDetector b, long now) {
+    a.recordHeartbeat(now);
+    b.recordHeartbeat(now);
+  }
+
+  @Test
+  public void agreesWithCommonsMathDetector() {
+    for (String distribution : new String[] { "normal", "exponential" }) {
+      FailureDetector reference = new FailureDetector(5, 100, distribution);
+      RingBufferFailureDetector detector = new RingBufferFailureDetector(5, 100, distribution);
+      Random random = new Random(1);
+      long now = 1000;
+      // more heartbeats than the window so eviction and the periodic recompute are exercised
+      for (int i = 0; i < 550; i++) {
+        now += 900 + random.nextInt(200);
+        recordBoth(reference, detector, now);
+      }
+      for (long delta = 0; delta < 1300; delta += 50) {
+        double expected = reference.computePhiMeasure(now + delta);
+        double actual = detector.computePhiMeasure(now + delta);
+        Assert.assertEquals(distribution + " at " + delta, expected, actual,
+                Math.max(0.05, expected * 0.05));
+      }
+    }
+  }
+
+  @Test
+  public void phiAtMeanIsHalfProbability() {
+    RingBufferFailureDetector detector = new RingBufferFailureDetector(1, 1000, "normal");
+    for (int i = 0; i <= 10; i++) {
+      detector.recordHeartbeat(i * 100 + (i % 2) * 10);
+    }
+    Assert.assertEquals(-Math.log10(0.5), detector.computePhiMeasure(1000 + 100), 0.01);
+  }
+
+  @Test
+  public void checkMinimumSamples() {
+    int minimumSamples = 5;
+    RingBufferFailureDetector detector = new RingBufferFailureDetector(minimumSamples, 1000, "normal");
+    for (int i = 0; i < minimumSamples + 1; i++) {
+      Assert.assertNull(detector.computePhiMeasure(100));
+      Assert.assertTrue(Double.isNaN(detector.phi(100)));
+      detector.recordHeartbeat(i);
+    }
+    Assert.assertNotNull(detector.computePhiMeasure(100));
+  }
+
+  @Test
+  public void oldHeartbeatsAreIgnored() {
+    RingBufferFailureDetector detector = new RingBufferFailureDetector(1, 10, "normal");
+    detector.recordHeartbeat(100);
+    detector.recordHeartbeat(200);
+    double phi = detector.phi(250);
+    detector.recordHeartbeat(150);
+    detector.recordHeartbeat(200);
+    Assert.assertEquals(phi, detector.phi(250), 0.0);
+  }
+
+  @Test
+  public void phiGrowsWithSilence() {
+    RingBufferFailureDetector detector = new RingBufferFailureDetector(5, 1000, "normal");
+    for (int i = 0; i < 100; i++) {
+      detector.recordHeartbeat(i * 100 + (i % 3) * 5);
+    }
+    double previous = 0;
+    for (long now = 9900; now < 11000; now += 10) {
+      double phi = detector.phi(now);
+      Assert.assertTrue(phi >= previous);
+      previous = phi;
+    }
+    Assert.assertTrue(previous > new org.apache.gossip.GossipSettings().getConvictThreshold());
+  }
+
+  @Test
+  public void convictionTimeIsWherePhiCrossesTheThreshold() {
+    RingBufferFailureDetector detector = new RingBufferFailureDetector(5, 100, "exponential");
+    long now = 0;
+    for (int i = 0; i < 20; i++) {
+      now += 1000;
+      detector.recordHeartbeat(now);
+    }
+    Assert.assertNull(new RingBufferFailureDetector(5, 100, "normal").convictionTime(now, 10));
+    long conviction = detector.convictionTime(now, 10);
+    Assert.assertTrue(detector.computePhiMeasure(conviction) > 10);
+    Assert.assertTrue(detector.computePhiMeasure(conviction - (conviction - now) / 32) <= 10);
+    Assert.assertEquals(Long.valueOf(conviction), detector.convictionTime(conviction, 10));
+  }
+}
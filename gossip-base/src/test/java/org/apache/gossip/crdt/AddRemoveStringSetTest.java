@@ -129,6 +129,18 @@ public abstract class AddRemoveStringSetTest<SetType extends CrdtAddRemoveSet<St
     Assert.assertEquals(set1.merge(set2).value(), mergedSet);
   }
 
+  @Test
+  public void abstractDominatedTest(){
+    SetType set = construct(sampleSet);
+    SetType added = set.add("25");
+    Assert.assertTrue(set.isDominatedBy(added));
+    Assert.assertTrue(added.isDominatedBy(added.merge(set)));
+    Assert.assertFalse(added.isDominatedBy(set));
+    SetType removed = added.remove("4");
+    Assert.assertTrue(added.isDominatedBy(removed));
+    Assert.assertFalse(removed.isDominatedBy(added));
+  }
+
   @Test
   public void abstractOptimizeTest(){
     Assert.assertEquals(construct(sampleSet).value(), sampleSet);
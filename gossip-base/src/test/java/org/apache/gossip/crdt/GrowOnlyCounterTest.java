@@ -51,4 +51,23 @@ public class GrowOnlyCounterTest {
     gCounter3 = gCounter3.merge(gCounter2);
     Assert.assertEquals(6, (long) gCounter3.value());
   }
+  
+  @Test
+  public void dominatedTest() {
+    Map<String, Long> node1Counter = new HashMap<>();
+    node1Counter.put("1", 3L);
+    Map<String, Long> node2Counter = new HashMap<>();
+    node2Counter.put("1", 2L);
+    node2Counter.put("2", 1L);
+    
+    GrowOnlyCounter gCounter1 = new GrowOnlyCounter(node1Counter);
+    GrowOnlyCounter gCounter2 = new GrowOnlyCounter(node2Counter);
+    
+    // a higher total is not enough, every node's count has to be covered
+    Assert.assertFalse(gCounter1.isDominatedBy(gCounter2));
+    Assert.assertFalse(gCounter2.isDominatedBy(gCounter1));
+    GrowOnlyCounter merged = gCounter1.merge(gCounter2);
+    Assert.assertTrue(gCounter1.isDominatedBy(merged));
+    Assert.assertTrue(gCounter2.isDominatedBy(merged));
+  }
 }
@@ -35,4 +35,12 @@ public class GrowOnlySetTest {
     Assert.assertEquals(new GrowOnlySet<>(Arrays.asList("a", "b", "d")), 
             a.merge("a", over, CrdtBiFunctionMerge::applyStatic));
   }
+
+  @Test
+  public void dominatedTest(){
+    GrowOnlySet<String> gset = new GrowOnlySet<>(Arrays.asList("a", "b"));
+    GrowOnlySet<String> over = new GrowOnlySet<>(Arrays.asList("b", "d"));
+    Assert.assertTrue(gset.isDominatedBy(gset.merge(over)));
+    Assert.assertFalse(gset.isDominatedBy(over));
+  }
 }
@@ -98,6 +98,17 @@ public class PNCounterTest {
     Assert.assertEquals(14, (long) counter.value());
   }
 
+  @Test
+  public void dominatedTest() {
+    PNCounter counter1 = new PNCounter(mockManagers.get(0));
+    PNCounter counter2 = new PNCounter(mockManagers.get(1));
+    counter1 = new PNCounter(counter1, new PNCounter.Builder(mockManagers.get(0)).decrement(3L));
+    counter2 = counter2.merge(counter1);
+    Assert.assertTrue(counter1.isDominatedBy(counter2));
+    counter1 = new PNCounter(counter1, new PNCounter.Builder(mockManagers.get(0)).decrement(1L));
+    Assert.assertFalse(counter1.isDominatedBy(counter2));
+  }
+
   @Test
   public void networkLikeOperations() {
     PNCounter counter1 = new PNCounter(mockManagers.get(0));
@@ -61,6 +61,14 @@ public class TwoPhaseSetTest {
     Assert.assertTrue(set.optimize().getAdded().size() < set.getAdded().size());
   }
 
+  @Test
+  public void dominatedTest(){
+    TwoPhaseSet<String> set = new TwoPhaseSet<>(sampleSet);
+    TwoPhaseSet<String> removed = set.remove("b");
+    Assert.assertTrue(set.isDominatedBy(removed));
+    Assert.assertFalse(removed.isDominatedBy(set));
+  }
+
   @Test
   public void immutabilityTest(){
     TwoPhaseSet<String> set = new TwoPhaseSet<>(sampleSet);
@@ -24,6 +24,10 @@ import org.junit.Test;
 import org.junit.platform.runner.JUnitPlatform;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -156,6 +160,40 @@ public class DataEventManagerTest {
     
   }
   
+  // Only handlers whose prefix or filter matches the key are scheduled
+  @Test
+  public void filteredSharedDataEventHandlerTest() throws InterruptedException {
+    DataEventManager eventManager = new DataEventManager(new MetricRegistry());
+    List<String> locks = Collections.synchronizedList(new ArrayList<>());
+    List<String> filtered = Collections.synchronizedList(new ArrayList<>());
+    Semaphore done = new Semaphore(0);
+    UpdateSharedDataEventHandler lockHandler = (key, oldValue, newValue) -> {
+      locks.add(key);
+      done.release();
+    };
+    eventManager.registerSharedDataSubscriber("lock/", lockHandler);
+    eventManager.registerSharedDataSubscriber("lock/a", lockHandler);
+    eventManager.registerSharedDataSubscriber(key -> key.endsWith("!"), (key, oldValue, newValue) -> {
+      filtered.add(key);
+      done.release();
+    });
+    Assert.assertEquals(3, eventManager.getSharedDataSubscribersSize());
+    Assert.assertTrue(eventManager.hasSharedDataSubscribers("lock/b"));
+    Assert.assertFalse(eventManager.hasSharedDataSubscribers("lock"));
+    Assert.assertFalse(eventManager.hasSharedDataSubscribers("other"));
+
+    eventManager.notifySharedData(Arrays.asList(new DataEvent(null, "lock/a", null, 1),
+            new DataEvent(null, "other", null, 2), new DataEvent(null, "other!", null, 3),
+            new DataEvent(null, "lock/b", null, 4)));
+    Assert.assertTrue(done.tryAcquire(3, 2, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("lock/a", "lock/b"), locks);
+    Assert.assertEquals(Arrays.asList("other!"), filtered);
+
+    eventManager.unregisterSharedDataSubscriber(lockHandler);
+    Assert.assertEquals(1, eventManager.getSharedDataSubscribersSize());
+    Assert.assertFalse(eventManager.hasSharedDataSubscribers("lock/a"));
+  }
+  
   private void resetData() {
     receivedNodeId = null;
     receivedKey = null;
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.event.data;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(JUnitPlatform.class)
+public class OrderedDataEventDispatcherTest {
+
+  private static class RecordingHandler implements UpdateSharedDataEventHandler {
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release;
+
+    RecordingHandler(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void onUpdate(String key, Object oldValue, Object newValue) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      events.add(key + " " + oldValue + "->" + newValue);
+    }
+  }
+
+  private static OrderedDataEventDispatcher<UpdateSharedDataEventHandler> dispatcher(int lanes,
+          int capacity, MetricRegistry registry) {
+    return new OrderedDataEventDispatcher<>("shared",
+            (handler, event) -> handler.onUpdate(event.getKey(), event.getOldValue(), event.getNewValue()),
+            lanes, capacity, registry);
+  }
+
+  private static DataEvent event(String key, Object oldValue, Object newValue) {
+    return new DataEvent(null, key, oldValue, newValue);
+  }
+
+  private static void await(RecordingHandler handler, int events) throws InterruptedException {
+    for (int i = 0; i < 500 && handler.events.size() < events; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static void drain(OrderedDataEventDispatcher<?> dispatcher) throws InterruptedException {
+    for (int i = 0; i < 500 && dispatcher.size() > 0; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void pendingChangesOfAKeyCoalesce() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingHandler handler = new RecordingHandler(release);
+    List<UpdateSharedDataEventHandler> handlers = Collections.singletonList(handler);
+    MetricRegistry registry = new MetricRegistry();
+    OrderedDataEventDispatcher<UpdateSharedDataEventHandler> dispatcher = dispatcher(1, 10, registry);
+    dispatcher.dispatch(event("a", null, 1), handlers);
+    // wait until the lane holds the first event
+    drain(dispatcher);
+    dispatcher.dispatch(event("a", 1, 2), handlers);
+    dispatcher.dispatch(event("b", null, 1), handlers);
+    dispatcher.dispatch(event("a", 2, 3), handlers);
+    dispatcher.dispatch(event("a", 3, 4), handlers);
+    Assert.assertEquals(2, dispatcher.size());
+    release.countDown();
+    await(handler, 3);
+    Thread.sleep(50);
+    Assert.assertEquals(Arrays.asList("a null->1", "a 1->4", "b null->1"), handler.events);
+    Assert.assertEquals(2, registry.meter(
+            MetricRegistry.name(OrderedDataEventDispatcher.class, "shared", "coalesced")).getCount());
+    Assert.assertEquals(0, registry.getGauges().get(
+            MetricRegistry.name(OrderedDataEventDispatcher.class, "shared", "lane-0", "depth")).getValue());
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void fullLaneNeverBlocksNorDrops() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingHandler handler = new RecordingHandler(release);
+    List<UpdateSharedDataEventHandler> handlers = Collections.singletonList(handler);
+    MetricRegistry registry = new MetricRegistry();
+    OrderedDataEventDispatcher<UpdateSharedDataEventHandler> dispatcher = dispatcher(1, 1, registry);
+    dispatcher.dispatch(event("a", null, 1), handlers);
+    drain(dispatcher);
+    dispatcher.dispatch(event("b", null, 1), handlers);
+    // returns at once although the lane is over its capacity
+    dispatcher.dispatch(event("c", null, 1), handlers);
+    Assert.assertEquals(2, dispatcher.size());
+    Assert.assertEquals(1, registry.meter(
+            MetricRegistry.name(OrderedDataEventDispatcher.class, "shared", "over-capacity")).getCount());
+    release.countDown();
+    await(handler, 3);
+    Assert.assertEquals(Arrays.asList("a null->1", "b null->1", "c null->1"), handler.events);
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void eventsOfAKeyStayInOrder() throws InterruptedException {
+    Map<String, List<Integer>> seen = new HashMap<>();
+    UpdateSharedDataEventHandler handler = (key, oldValue, newValue) -> {
+      synchronized (seen) {
+        seen.computeIfAbsent(key, k -> new ArrayList<>()).add((Integer) newValue);
+      }
+    };
+    List<UpdateSharedDataEventHandler> handlers = Collections.singletonList(handler);
+    OrderedDataEventDispatcher<UpdateSharedDataEventHandler> dispatcher =
+            dispatcher(4, 4, new MetricRegistry());
+    for (int round = 0; round < 200; round++) {
+      for (int k = 0; k < 20; k++) {
+        dispatcher.dispatch(event("k" + k, round - 1, round), handlers);
+      }
+    }
+    drain(dispatcher);
+    Thread.sleep(50);
+    dispatcher.shutdown();
+    synchronized (seen) {
+      Assert.assertEquals(20, seen.size());
+      for (List<Integer> values : seen.values()) {
+        for (int i = 1; i < values.size(); i++) {
+          Assert.assertTrue(values.get(i - 1) < values.get(i));
+        }
+        Assert.assertEquals(Integer.valueOf(199), values.get(values.size() - 1));
+      }
+    }
+  }
+}
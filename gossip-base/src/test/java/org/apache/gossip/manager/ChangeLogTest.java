@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.perNode;
+import static org.apache.gossip.GossipTestSupport.settings;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class ChangeLogTest {
+
+  private static GossipSettings smallLog() {
+    GossipSettings settings = settings();
+    settings.setChangeLogCapacity(8);
+    return settings;
+  }
+
+  @Test
+  public void logsWritesAndRemovalsInSequence() {
+    GossipCore core = core(9450, smallLog());
+    long now = System.currentTimeMillis();
+    core.addSharedData(shared("n", "a", "1", 1, Long.MAX_VALUE));
+    core.addSharedData(shared("n", "a", "2", 2, Long.MAX_VALUE));
+    // older than the stored value, not accepted and not logged
+    core.addSharedData(shared("n", "a", "0", 0, Long.MAX_VALUE));
+    core.addSharedData(shared("n", "b", "1", 1, now - 1));
+    core.addPerNodeData(perNode("n", "a", "x", 5, Long.MAX_VALUE));
+    core.getDataStore().expire(now, reaped -> { });
+
+    ChangeLog.Batch batch = core.getChangeLog().poll(0, 100);
+    Assert.assertFalse(batch.isOverflow());
+    Assert.assertEquals(5, batch.getNextSequence());
+    List<ChangeLog.Change> changes = batch.getChanges();
+    Assert.assertEquals(5, changes.size());
+    Assert.assertNull(changes.get(0).getPrevious());
+    Assert.assertEquals("1", ((SharedDataMessage) changes.get(0).getCurrent()).getPayload());
+    Assert.assertSame(changes.get(0).getCurrent(), changes.get(1).getPrevious());
+    Assert.assertEquals(2, changes.get(1).getTimestamp());
+    Assert.assertEquals("n", changes.get(3).getNodeId());
+    Assert.assertNull(changes.get(2).getNodeId());
+    // the expired shared value is logged as removed
+    Assert.assertEquals("b", changes.get(4).getKey());
+    Assert.assertNull(changes.get(4).getCurrent());
+    Assert.assertEquals(4, changes.get(4).getSequence());
+
+    ChangeLog.Batch paged = core.getChangeLog().poll(1, 2);
+    Assert.assertEquals(2, paged.getChanges().size());
+    Assert.assertEquals(3, paged.getNextSequence());
+  }
+
+  @Test
+  public void tellsConsumersThatFellBehindToStartOver() {
+    GossipCore core = core(9451, smallLog());
+    for (int i = 0; i < 20; i++) {
+      core.addSharedData(shared("n", "k", "" + i, i, Long.MAX_VALUE));
+    }
+    ChangeLog log = core.getChangeLog();
+    Assert.assertEquals(8, log.capacity());
+    Assert.assertEquals(20, log.headSequence());
+    ChangeLog.Batch batch = log.poll(5, 10);
+    Assert.assertTrue(batch.isOverflow());
+    Assert.assertTrue(batch.getChanges().isEmpty());
+    Assert.assertEquals(20, batch.getNextSequence());
+
+    ChangeLog.Batch recent = log.poll(12, 10);
+    Assert.assertFalse(recent.isOverflow());
+    Assert.assertEquals(8, recent.getChanges().size());
+    Assert.assertEquals("19", ((SharedDataMessage) recent.getChanges().get(7).getCurrent()).getPayload());
+    Assert.assertTrue(log.poll(20, 10).getChanges().isEmpty());
+  }
+}
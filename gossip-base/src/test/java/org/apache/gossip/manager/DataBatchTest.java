@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.perNode;
+import static org.apache.gossip.GossipTestSupport.settings;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class DataBatchTest {
+
+  private static GossipSettings batched(boolean orderedEvents) {
+    GossipSettings settings = settings();
+    settings.setDataBatchParallelThreshold(8);
+    settings.setOrderedDataEvents(orderedEvents);
+    return settings;
+  }
+
+  @Test
+  public void appliesSharedDataBatchesAndNotifiesEveryChange() throws InterruptedException {
+    MetricRegistry registry = new MetricRegistry();
+    GossipCore core = core(9420, batched(false), registry);
+    Set<String> seen = ConcurrentHashMap.newKeySet();
+    CountDownLatch latch = new CountDownLatch(100);
+    core.registerSharedDataSubscriber((key, oldValue, newValue) -> {
+      seen.add(key + "=" + newValue);
+      latch.countDown();
+    });
+    List<SharedDataMessage> batch = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      batch.add(shared("n", "k" + i, "v" + i, 1, Long.MAX_VALUE));
+    }
+    core.addSharedData(batch);
+    Assert.assertEquals(100, core.getSharedData().size());
+    Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    Assert.assertTrue(seen.contains("k42=v42"));
+    Assert.assertEquals(1, registry.histogram(GossipCoreConstants.DATA_BATCH_SIZE).getCount());
+    Assert.assertEquals(1, registry.timer(GossipCoreConstants.DATA_BATCH_APPLY_TIME).getCount());
+  }
+
+  @Test
+  public void keepsTheNewestPerNodeValueWithinABatch() {
+    GossipCore core = core(9421, batched(false), new MetricRegistry());
+    List<PerNodeDataMessage> batch = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      batch.add(perNode("n", "k" + (i % 5), i, i, Long.MAX_VALUE));
+    }
+    core.addPerNodeData(batch);
+    for (int k = 0; k < 5; k++) {
+      Assert.assertEquals(45 + k, core.getPerNodeData().get("n").get("k" + k).getPayload());
+    }
+  }
+
+  @Test
+  public void orderedEventsOfAKeyFollowTheWrites() throws InterruptedException {
+    GossipCore core = core(9422, batched(true), new MetricRegistry());
+    List<Object[]> events = Collections.synchronizedList(new ArrayList<>());
+    core.registerSharedDataSubscriber((key, oldValue, newValue) ->
+            events.add(new Object[] { oldValue, newValue }));
+    List<SharedDataMessage> batch = new ArrayList<>();
+    for (int i = 0; i < 400; i++) {
+      batch.add(shared("n", "k", i, i, Long.MAX_VALUE));
+    }
+    Collections.shuffle(batch, new Random(1));
+    // applied in parallel, the writes of the key race
+    core.addSharedData(batch);
+    Assert.assertEquals(399, core.getSharedData().get("k").getPayload());
+    for (int i = 0; i < 500 && !lastIs(events, 399); i++) {
+      Thread.sleep(10);
+    }
+    synchronized (events) {
+      Assert.assertNull(events.get(0)[0]);
+      for (int i = 1; i < events.size(); i++) {
+        // each event starts from the value the one before ended at
+        Assert.assertEquals(events.get(i - 1)[1], events.get(i)[0]);
+      }
+      Assert.assertEquals(399, events.get(events.size() - 1)[1]);
+    }
+    core.shutdown();
+  }
+
+  private static boolean lastIs(List<Object[]> events, Object value) {
+    synchronized (events) {
+      return !events.isEmpty() && value.equals(events.get(events.size() - 1)[1]);
+    }
+  }
+}
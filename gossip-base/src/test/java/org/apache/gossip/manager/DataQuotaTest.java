@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.manager;
+import static org.apache.gossip.GossipTestSupport.perNode;
+import static org.apache.gossip.GossipTestSupport.settings;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class DataQuotaTest {
+
+  private static final String VALUE = "0123456789";
+
+  /** a payload that takes a while to size, so concurrent writes are all being admitted at once */
+  public static class SlowPayload {
+    public String getValue() throws InterruptedException {
+      Thread.sleep(50);
+      return VALUE;
+    }
+  }
+
+  @Test
+  public void accountsWritesReplacementsAndRemovals() {
+    long now = System.currentTimeMillis();
+    GossipSettings settings = settings();
+    settings.setMaxDataBytes(Long.MAX_VALUE);
+    GossipCore core = core(9400, settings);
+    DataQuota quota = core.getDataQuota();
+    long size = quota.sizeOf("a", VALUE);
+    core.addSharedData(shared("n1", "a", VALUE, now, Long.MAX_VALUE));
+    core.addPerNodeData(perNode("n1", "a", VALUE, now, Long.MAX_VALUE));
+    Assert.assertEquals(2 * size, quota.getBytes());
+    Assert.assertEquals(2 * size, quota.getBytes("n1"));
+    core.addSharedData(shared("n2", "a", VALUE, now + 1, Long.MAX_VALUE));
+    Assert.assertEquals(2 * size, quota.getBytes());
+    Assert.assertEquals(size, quota.getBytes("n1"));
+    Assert.assertEquals(size, quota.getBytes("n2"));
+    core.removePerNodeData("n1");
+    Assert.assertEquals(size, quota.getBytes());
+    core.addSharedData(shared("n1", "b", VALUE, now, 1L));
+    core.getDataStore().expire(System.currentTimeMillis(), e -> { });
+    Assert.assertEquals(size, quota.getBytes());
+  }
+
+  @Test
+  public void nothingIsAccountedWithoutACap() {
+    long now = System.currentTimeMillis();
+    GossipCore core = core(9409);
+    core.addSharedData(shared("n1", "a", VALUE, now, Long.MAX_VALUE));
+    core.addPerNodeData(perNode("n1", "a", VALUE, now, Long.MAX_VALUE));
+    Assert.assertEquals(0, core.getDataQuota().getBytes());
+  }
+
+  @Test
+  public void refusesWritesOverNodeAndPrefixQuotas() {
+    long now = System.currentTimeMillis();
+    GossipSettings settings = settings();
+    long size = core(9401).getDataQuota().sizeOf("k1", VALUE);
+    settings.setMaxDataBytesPerNode(2 * size);
+    settings.getDataPrefixQuotas().put("p", size);
+    GossipManager gm = manager(9402, settings);
+    gm.gossipPerNodeData(perNode(null, "k1", VALUE, now, Long.MAX_VALUE));
+    gm.gossipPerNodeData(perNode(null, "k2", VALUE, now, Long.MAX_VALUE));
+    try {
+      gm.gossipPerNodeData(perNode(null, "k3", VALUE, now, Long.MAX_VALUE));
+      Assert.fail("the node quota should be full");
+    } catch (DataQuotaExceededException expected) {
+    }
+    Assert.assertNull(gm.findPerNodeGossipData("me", "k3"));
+    // replacing a key only counts the difference
+    gm.gossipPerNodeData(perNode(null, "k2", VALUE, now, Long.MAX_VALUE));
+
+    GossipCore core = new GossipCore(gm, new MetricRegistry());
+    core.addSharedData(shared("other", "p1", VALUE, now, Long.MAX_VALUE));
+    core.addSharedData(shared("other", "p2", VALUE, now, Long.MAX_VALUE));
+    Assert.assertNotNull(core.getSharedData().get("p1"));
+    Assert.assertNull(core.getSharedData().get("p2"));
+    Assert.assertEquals(size, core.getDataQuota().getPrefixBytes("p"));
+  }
+
+  @Test
+  public void totalCapEvictsEarliestExpiring() {
+    long now = System.currentTimeMillis();
+    long size = core(9403).getDataQuota().sizeOf("a", VALUE);
+    GossipSettings settings = settings();
+    settings.setMaxDataBytes(2 * size);
+    settings.setDataEvictionPolicy("earliest_expiring");
+    GossipCore core = core(9404, settings);
+    core.addSharedData(shared("n", "a", VALUE, now, now + 20000));
+    core.addSharedData(shared("n", "b", VALUE, now, now + 10000));
+    core.addSharedData(shared("n", "c", VALUE, now, now + 30000));
+    Assert.assertNull(core.getSharedData().get("b"));
+    Assert.assertNotNull(core.getSharedData().get("a"));
+    Assert.assertNotNull(core.getSharedData().get("c"));
+    Assert.assertEquals(2 * size, core.getDataQuota().getBytes());
+  }
+
+  @Test
+  public void evictedValuesGossipedBackAreRefused() {
+    long now = System.currentTimeMillis();
+    long size = core(9398).getDataQuota().sizeOf("a", VALUE);
+    GossipSettings settings = settings();
+    settings.setMaxDataBytes(2 * size);
+    settings.setDataEvictionPolicy("earliest_expiring");
+    GossipCore core = core(9399, settings);
+    SharedDataMessage b = shared("n", "b", VALUE, now, now + 10000);
+    core.addSharedData(b);
+    core.addSharedData(shared("n", "a", VALUE, now, now + 20000));
+    core.addSharedData(shared("n", "c", VALUE, now, now + 30000));
+    Assert.assertNull(core.getSharedData().get("b"));
+    // a peer sends it again: it would evict a in turn
+    core.addSharedData(b);
+    Assert.assertNull(core.getSharedData().get("b"));
+    Assert.assertNotNull(core.getSharedData().get("a"));
+    SharedDataMessage newer = shared("n", "b", VALUE, now + 1, now + 40000);
+    core.addSharedData(newer);
+    Assert.assertSame(newer, core.getSharedData().get("b"));
+  }
+
+  @Test
+  public void totalCapEvictsLeastRecentlyUsed() {
+    long now = System.currentTimeMillis();
+    long size = core(9405).getDataQuota().sizeOf("a", VALUE);
+    GossipSettings settings = settings();
+    settings.setMaxDataBytes(2 * size);
+    settings.setDataEvictionPolicy("lru");
+    GossipManager gm = manager(9406, settings);
+    gm.gossipSharedData(shared(null, "a", VALUE, now, Long.MAX_VALUE));
+    gm.gossipSharedData(shared(null, "b", VALUE, now, Long.MAX_VALUE));
+    Assert.assertNotNull(gm.findSharedGossipData("a"));
+    gm.gossipSharedData(shared(null, "c", VALUE, now, Long.MAX_VALUE));
+    Assert.assertNotNull(gm.findSharedGossipData("a"));
+    Assert.assertNull(gm.findSharedGossipData("b"));
+    Assert.assertNotNull(gm.findSharedGossipData("c"));
+  }
+
+  @Test
+  public void totalCapWithoutEvictionRefuses() {
+    long now = System.currentTimeMillis();
+    long size = core(9407).getDataQuota().sizeOf("a", VALUE);
+    GossipSettings settings = settings();
+    settings.setMaxDataBytes(size);
+    GossipCore core = core(9408, settings);
+    core.addSharedData(shared("n", "a", VALUE, now, Long.MAX_VALUE));
+    core.addSharedData(shared("n", "b", VALUE, now, Long.MAX_VALUE));
+    Assert.assertNotNull(core.getSharedData().get("a"));
+    Assert.assertNull(core.getSharedData().get("b"));
+  }
+
+  @Test
+  public void concurrentWritesStayUnderTheCap() throws InterruptedException {
+    long now = System.currentTimeMillis();
+    long size = core(9442).getDataQuota().sizeOf("k0", new SlowPayload());
+    GossipSettings settings = settings();
+    settings.setMaxDataBytes(3 * size);
+    GossipCore core = core(9443, settings);
+    List<Thread> writers = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      SharedDataMessage message = shared("n", "k" + i, new SlowPayload(), now, Long.MAX_VALUE);
+      writers.add(new Thread(() -> core.addSharedData(message)));
+    }
+    for (Thread writer : writers) {
+      writer.start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    Assert.assertTrue(core.getSharedData().size() <= 3);
+    Assert.assertEquals(core.getSharedData().size() * size, core.getDataQuota().getBytes());
+  }
+}
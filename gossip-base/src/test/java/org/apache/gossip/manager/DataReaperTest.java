@@ -54,6 +54,25 @@ public class DataReaperTest {
     gm.shutdown();
   }
 
+  @Test
+  public void testIndexedReap() throws InterruptedException {
+    GossipSettings settings = new GossipSettings();
+    settings.setPersistRingState(false);
+    settings.setPersistDataState(false);
+    settings.setTransportManagerClass("org.apache.gossip.transport.UnitTestTransportManager");
+    settings.setProtocolManagerClass("org.apache.gossip.protocol.UnitTestProtocolManager");
+    GossipManager gm = GossipManagerBuilder.newBuilder().cluster("abc").gossipSettings(settings)
+            .id(myId).uri(URI.create("udp://localhost:6001")).registry(registry).build();
+    gm.gossipPerNodeData(perNodeDatum(key, value));
+    gm.gossipSharedData(sharedDatum(key, value));
+    assertDataIsAtCorrectValue(gm);
+    Thread.sleep(10);
+    Assert.assertEquals(2, gm.getDataReaper().runOnce());
+    assertDataIsRemoved(gm);
+    Assert.assertEquals(2, registry.meter(MetricRegistry.name(DataReaper.class, "reaped")).getCount());
+    Assert.assertEquals(2, registry.histogram(MetricRegistry.name(DataReaper.class, "lag-millis")).getCount());
+  }
+
   private void assertDataIsAtCorrectValue(GossipManager gm){
     Assert.assertEquals(value, gm.findPerNodeGossipData(myId, key).getPayload());
     Assert.assertEquals(1, registry.getGauges().get(GossipCoreConstants.PER_NODE_DATA_SIZE).getValue());
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.gossip.GossipTestSupport.perNode;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class DataStoreTest {
+
+  private final ConcurrentHashMap<String, SharedDataMessage> shared = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, PerNodeDataMessage>> perNode =
+          new ConcurrentHashMap<>();
+  private final ChangeLog changeLog = new ChangeLog(16, new MetricRegistry());
+  private final DataStore store = new DataStore(shared, perNode,
+          new DataQuota(new GossipSettings(), new MetricRegistry()), changeLog);
+
+  private void putShared(String key, Long expireAt) {
+    SharedDataMessage m = shared(null, key, key, 1, expireAt);
+    Assert.assertTrue(store.writeShared(key, shared.get(key), m, null));
+  }
+
+  private void putPerNode(String nodeId, String key, Long expireAt) {
+    PerNodeDataMessage m = perNode(nodeId, key, null, 1, expireAt);
+    ConcurrentHashMap<String, PerNodeDataMessage> nodeMap = perNode.get(nodeId);
+    Assert.assertTrue(store.writePerNode(nodeId, key, nodeMap == null ? null : nodeMap.get(key), m,
+            null));
+  }
+
+  @Test
+  public void expiresOnlyDueEntries() {
+    putShared("a", 100L);
+    putShared("b", 300L);
+    putShared("forever", null);
+    putPerNode("n1", "a", 150L);
+    putPerNode("n2", "a", 400L);
+    Assert.assertEquals(4, store.getExpiryIndex().size());
+
+    List<Long> reaped = new ArrayList<>();
+    Assert.assertEquals(2, store.expire(200, reaped::add));
+    Assert.assertEquals(2, reaped.size());
+    Assert.assertTrue(reaped.contains(100L) && reaped.contains(150L));
+    Assert.assertFalse(shared.containsKey("a"));
+    Assert.assertFalse(perNode.get("n1").containsKey("a"));
+    Assert.assertTrue(shared.containsKey("b"));
+    Assert.assertTrue(shared.containsKey("forever"));
+    Assert.assertEquals(Long.valueOf(300), store.getExpiryIndex().nextExpiry());
+    Assert.assertEquals(2, store.getExpiryIndex().size());
+  }
+
+  @Test
+  public void replacementMovesTheEntry() {
+    putShared("a", 100L);
+    putShared("a", 500L);
+    Assert.assertEquals(1, store.getExpiryIndex().size());
+    Assert.assertEquals(0, store.expire(200, e -> { }));
+    Assert.assertTrue(shared.containsKey("a"));
+    Assert.assertEquals(1, store.expire(501, e -> { }));
+    Assert.assertTrue(shared.isEmpty());
+    Assert.assertNull(store.getExpiryIndex().nextExpiry());
+  }
+
+  @Test
+  public void entriesOfRemovedValuesAreDroppedWhenDue() {
+    putShared("a", 100L);
+    Assert.assertTrue(store.remove(null, "a", null) >= 0);
+    Assert.assertEquals(1, store.getExpiryIndex().size());
+    Assert.assertEquals(0, store.expire(200, e -> { }));
+    Assert.assertEquals(0, store.getExpiryIndex().size());
+
+    putPerNode("n1", "a", 100L);
+    store.removeNode("n1");
+    Assert.assertEquals(0, store.getPerNodeKeys().size());
+    Assert.assertEquals(0, store.expire(200, e -> { }));
+    Assert.assertEquals(0, store.getExpiryIndex().size());
+  }
+
+  @Test
+  public void logsTheValueEachWriteReplaced() {
+    SharedDataMessage a = shared(null, "k", "k", 1, Long.MAX_VALUE);
+    SharedDataMessage b = shared(null, "k", "k", 1, Long.MAX_VALUE);
+    SharedDataMessage c = shared(null, "k", "k", 1, Long.MAX_VALUE);
+    Assert.assertTrue(store.writeShared("k", null, a, null));
+    Assert.assertTrue(store.writeShared("k", a, b, null));
+    // a writer that read a before b replaced it loses, and logs nothing
+    Assert.assertFalse(store.writeShared("k", a, c, null));
+    Assert.assertTrue(store.writeShared("k", b, c, null));
+    List<ChangeLog.Change> changes = changeLog.poll(0, 10).getChanges();
+    Assert.assertEquals(3, changes.size());
+    Assert.assertSame(a, changes.get(1).getPrevious());
+    Assert.assertSame(b, changes.get(1).getCurrent());
+    Assert.assertSame(b, changes.get(2).getPrevious());
+    Assert.assertSame(c, changes.get(2).getCurrent());
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnitPlatform.class)
+public class ExpiryIndexTest {
+
+  private final ExpiryIndex index = new ExpiryIndex();
+
+  private static List<String> keys(Iterable<ExpiryIndex.Entry> entries) {
+    List<String> keys = new ArrayList<>();
+    for (ExpiryIndex.Entry entry : entries) {
+      keys.add((entry.getNodeId() == null ? "" : entry.getNodeId() + "/") + entry.getKey());
+    }
+    return keys;
+  }
+
+  @Test
+  public void yieldsOnlyDueEntriesInOrder() {
+    index.update(null, "b", null, 300L);
+    index.update(null, "a", null, 100L);
+    index.update(null, "forever", null, null);
+    index.update("n1", "a", null, 150L);
+    index.update("n2", "a", null, 400L);
+    Assert.assertEquals(4, index.size());
+    Assert.assertEquals(Long.valueOf(100), index.nextExpiry());
+    List<String> due = keys(index.due(200));
+    Assert.assertEquals(2, due.size());
+    Assert.assertEquals("a", due.get(0));
+    Assert.assertEquals("n1/a", due.get(1));
+  }
+
+  @Test
+  public void replacementMovesTheEntry() {
+    index.update(null, "a", null, 100L);
+    index.update(null, "a", 100L, 500L);
+    Assert.assertEquals(1, index.size());
+    Assert.assertTrue(index.due(200).isEmpty());
+    Assert.assertEquals(Long.valueOf(500), index.nextExpiry());
+    // a value that no longer expires leaves no entry
+    index.update(null, "a", 500L, null);
+    Assert.assertNull(index.nextExpiry());
+  }
+
+  @Test
+  public void removedEntriesAreGone() {
+    index.update(null, "a", null, 100L);
+    index.remove(index.due(200).first());
+    Assert.assertEquals(0, index.size());
+    Assert.assertNull(index.nextExpiry());
+  }
+}
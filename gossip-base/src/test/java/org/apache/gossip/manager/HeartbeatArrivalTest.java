@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.RemoteMember;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.manager;
+import static org.apache.gossip.GossipTestSupport.settings;
+
+@RunWith(JUnitPlatform.class)
+public class HeartbeatArrivalTest {
+
+  private GossipManager build(boolean recordArrivalTime) {
+    GossipSettings settings = settings();
+    settings.setMinimumSamples(1);
+    settings.setRecordArrivalTime(recordArrivalTime);
+    return manager(9300, settings);
+  }
+
+  private void gossip(GossipCore gossipCore, long heartbeat) {
+    RemoteMember sender = new RemoteMember("aCluster", URI.create("udp://localhost:9301"), "a",
+            heartbeat, new HashMap<>());
+    List<Member> remote = Collections.singletonList(sender);
+    gossipCore.mergeLists(sender, remote);
+  }
+
+  private LocalMember member(GossipManager gossipManager) {
+    return gossipManager.getMembers().firstKey();
+  }
+
+  @Test
+  public void arrivalTimeIgnoresTheRemoteClock() {
+    GossipManager gossipManager = build(true);
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    // a remote clock far behind ours would look long dead to a detector fed with heartbeats
+    gossip(gossipCore, 1000);
+    gossip(gossipCore, 2000);
+    gossip(gossipCore, 2000);
+    gossip(gossipCore, 3000);
+    Double phi = member(gossipManager).detect(gossipManager.getClock().nanoTime());
+    Assert.assertNotNull(phi);
+    Assert.assertTrue(phi < gossipManager.getSettings().getConvictThreshold());
+  }
+
+  @Test
+  public void staleRelayedHeartbeatDoesNotLowerTheKnownOne() {
+    GossipManager gossipManager = build(true);
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    gossip(gossipCore, 1000);
+    gossip(gossipCore, 3000);
+    gossip(gossipCore, 2000);
+    Assert.assertEquals(3000, member(gossipManager).getHeartbeat());
+    gossip(gossipCore, 3000);
+    Assert.assertEquals(3000, member(gossipManager).getHeartbeat());
+    gossip(gossipCore, 4000);
+    Assert.assertEquals(4000, member(gossipManager).getHeartbeat());
+  }
+
+  @Test
+  public void heartbeatValuesAreUsedByDefault() {
+    GossipManager gossipManager = build(false);
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    gossip(gossipCore, 1000);
+    gossip(gossipCore, 2000);
+    gossip(gossipCore, 3000);
+    Double phi = member(gossipManager).detect(gossipManager.getClock().nanoTime());
+    Assert.assertTrue(phi > gossipManager.getSettings().getConvictThreshold());
+  }
+
+  @Test
+  public void roundTripIsSmoothed() {
+    LocalMember member = new LocalMember("aCluster", URI.create("udp://localhost:9302"), "b", 0,
+            new HashMap<>(), new GossipSettings());
+    Assert.assertEquals(0, member.getRoundTripTime());
+    member.recordRoundTrip(800);
+    Assert.assertEquals(800, member.getRoundTripTime());
+    Assert.assertEquals(400, member.getRoundTripVariation());
+    member.recordRoundTrip(1600);
+    Assert.assertEquals(900, member.getRoundTripTime());
+    Assert.assertEquals(500, member.getRoundTripVariation());
+  }
+}
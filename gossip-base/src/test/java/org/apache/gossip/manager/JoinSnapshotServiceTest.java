@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.GossipTestSupport;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.RemoteMember;
+import org.apache.gossip.udp.UdpJoinRequest;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.settings;
+
+@RunWith(JUnitPlatform.class)
+public class JoinSnapshotServiceTest {
+
+  private static final int SEEDS = JoinSnapshotService.MAX_SNAPSHOTS + 1;
+
+  private GossipManager manager() {
+    List<Member> seeds = new ArrayList<>();
+    for (int i = 0; i < SEEDS; i++) {
+      seeds.add(new RemoteMember("aCluster", URI.create("udp://localhost:" + (9481 + i)), "s" + i));
+    }
+    return GossipTestSupport.manager(9480, settings(), seeds);
+  }
+
+  private UdpJoinRequest request(String id, String uri) {
+    UdpJoinRequest request = new UdpJoinRequest();
+    request.setSender(new org.apache.gossip.model.Member("aCluster", uri, id, 1L));
+    request.setUriFrom(uri);
+    request.setChunk(0);
+    return request;
+  }
+
+  private static boolean knows(GossipManager gm, String id, String uri) {
+    for (LocalMember member : gm.getMembers().keySet()) {
+      if (member.getId().equals(id) && member.getUri().equals(URI.create(uri))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void answersNodesOnlyAtTheUriTheyAreKnownBy() {
+    GossipManager gm = manager();
+    JoinSnapshotService service = gm.getJoinSnapshotService();
+    // a known id does not make another URI a destination
+    service.answer(request("s0", "udp://victim:9000"));
+    Assert.assertEquals(0, service.snapshotCount());
+
+    // a new node is taken into the member map at the URI it asks from
+    service.answer(request("new", "udp://localhost:9479"));
+    Assert.assertEquals(1, service.snapshotCount());
+    Assert.assertTrue(knows(gm, "new", "udp://localhost:9479"));
+    service.answer(request("new", "udp://victim:9000"));
+    Assert.assertFalse(knows(gm, "new", "udp://victim:9000"));
+
+    UdpJoinRequest forged = request("forged", "udp://localhost:9478");
+    forged.setUriFrom("udp://victim:9000");
+    service.answer(forged);
+    UdpJoinRequest otherCluster = request("other", "udp://localhost:9477");
+    otherCluster.getSender().setCluster("otherCluster");
+    service.answer(otherCluster);
+    Assert.assertEquals(1, service.snapshotCount());
+    Assert.assertFalse(knows(gm, "forged", "udp://victim:9000"));
+    Assert.assertFalse(knows(gm, "other", "udp://localhost:9477"));
+  }
+
+  @Test
+  public void retriesReuseTheSnapshotAndTheCountIsCapped() {
+    GossipManager gm = manager();
+    JoinSnapshotService service = gm.getJoinSnapshotService();
+    for (int attempt = 0; attempt < 3; attempt++) {
+      service.answer(request("s0", "udp://localhost:9481"));
+    }
+    Assert.assertEquals(1, service.snapshotCount());
+    for (int i = 0; i < SEEDS; i++) {
+      service.answer(request("s" + i, "udp://localhost:" + (9481 + i)));
+    }
+    Assert.assertEquals(JoinSnapshotService.MAX_SNAPSHOTS, service.snapshotCount());
+  }
+}
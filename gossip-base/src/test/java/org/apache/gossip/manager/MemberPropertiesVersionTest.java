@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.RemoteMember;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.gossip.GossipTestSupport.manager;
+
+@RunWith(JUnitPlatform.class)
+public class MemberPropertiesVersionTest {
+
+  private GossipManager build() {
+    return manager(9310);
+  }
+
+  private void gossip(GossipCore gossipCore, Map<String, String> properties, long version) {
+    RemoteMember sender = new RemoteMember("aCluster", URI.create("udp://localhost:9311"), "a",
+            System.nanoTime(), properties);
+    sender.setPropertiesVersion(version);
+    gossipCore.mergeLists(sender, Collections.<Member>singletonList(sender));
+  }
+
+  private static org.apache.gossip.model.Member answer(Map<String, String> properties, long version) {
+    org.apache.gossip.model.Member member = new org.apache.gossip.model.Member("aCluster",
+            "udp://localhost:9311", "a", System.nanoTime());
+    member.setProperties(properties);
+    member.setPropertiesVersion(version);
+    return member;
+  }
+
+  @Test
+  public void versionOnlyGossipKeepsProperties() {
+    GossipManager gossipManager = build();
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    gossip(gossipCore, Collections.singletonMap("rack", "r1"), 5);
+    LocalMember member = gossipManager.getMembers().firstKey();
+    Map<String, String> properties = member.getProperties();
+    Assert.assertEquals(5, member.getPropertiesVersion());
+    gossip(gossipCore, null, 5);
+    Assert.assertSame(properties, member.getProperties());
+    // behind: the properties are requested, not dropped
+    gossip(gossipCore, null, 6);
+    Assert.assertSame(properties, member.getProperties());
+    Assert.assertEquals(5, member.getPropertiesVersion());
+  }
+
+  @Test
+  public void fetchedPropertiesApplyOnlyWhenNewer() {
+    GossipManager gossipManager = build();
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    gossip(gossipCore, null, 7);
+    LocalMember member = gossipManager.getMembers().firstKey();
+    Assert.assertTrue(member.getProperties().isEmpty());
+    Assert.assertEquals(0, member.getPropertiesVersion());
+    gossipCore.mergeMemberProperties(Collections.singletonList(
+            answer(Collections.singletonMap("rack", "r2"), 7)));
+    Assert.assertEquals("r2", member.getProperties().get("rack"));
+    Assert.assertEquals(7, member.getPropertiesVersion());
+    gossipCore.mergeMemberProperties(Collections.singletonList(
+            answer(Collections.singletonMap("rack", "old"), 6)));
+    Assert.assertEquals("r2", member.getProperties().get("rack"));
+    Assert.assertEquals("r2", gossipManager.getLiveMembers().get(0).getProperties().get("rack"));
+  }
+
+  @Test
+  public void unversionedPropertiesAreTaken() {
+    GossipManager gossipManager = build();
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    gossip(gossipCore, Collections.singletonMap("rack", "r1"), 0);
+    gossip(gossipCore, Collections.singletonMap("rack", "r2"), 0);
+    Assert.assertEquals("r2", gossipManager.getMembers().firstKey().getProperties().get("rack"));
+    // relayed by an older node after the properties were versioned
+    gossip(gossipCore, Collections.singletonMap("rack", "r3"), 4);
+    gossip(gossipCore, Collections.singletonMap("rack", "r2"), 0);
+    Assert.assertEquals("r3", gossipManager.getMembers().firstKey().getProperties().get("rack"));
+    Assert.assertEquals(4, gossipManager.getMembers().firstKey().getPropertiesVersion());
+  }
+
+  @Test
+  public void onlyUnversionedPropertiesAreGossiped() {
+    GossipManager gossipManager = build();
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    AbstractActiveGossiper gossiper = new AbstractActiveGossiper(gossipManager, gossipCore,
+            new MetricRegistry()) { };
+    gossip(gossipCore, Collections.singletonMap("rack", "r1"), 0);
+    LocalMember member = gossipManager.getMembers().firstKey();
+    Assert.assertEquals("r1", gossiper.convert(member).getProperties().get("rack"));
+    gossip(gossipCore, Collections.singletonMap("rack", "r2"), 3);
+    Assert.assertNull(gossiper.convert(member).getProperties());
+    Assert.assertEquals(Long.valueOf(3), gossiper.convert(member).getPropertiesVersion());
+  }
+
+  @Test
+  public void localChangesRaiseTheVersion() {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("rack", "r1");
+    LocalMember me = new LocalMember("aCluster", URI.create("udp://localhost:9312"), "me", 0,
+            properties, new GossipSettings());
+    long first = me.advertiseProperties();
+    Assert.assertTrue(first > 0);
+    Assert.assertEquals(first, me.advertiseProperties());
+    properties.put("rack", "r2");
+    Assert.assertEquals(first + 1, me.advertiseProperties());
+    Assert.assertEquals(first + 1, me.advertiseProperties());
+  }
+}
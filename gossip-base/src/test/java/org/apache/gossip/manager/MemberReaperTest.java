@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.RemoteMember;
+import org.apache.gossip.event.GossipState;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.manager;
+import static org.apache.gossip.GossipTestSupport.settings;
+
+@RunWith(JUnitPlatform.class)
+public class MemberReaperTest {
+
+  private GossipManager build(List<Member> seeds) {
+    GossipSettings settings = settings();
+    settings.setDeadMemberReapTime(1000);
+    return manager(9320, settings, seeds);
+  }
+
+  private RemoteMember remote(String id, int port, long heartbeat) {
+    return new RemoteMember("aCluster", URI.create("udp://localhost:" + port), id, heartbeat,
+            new HashMap<>());
+  }
+
+  private LocalMember find(GossipManager gossipManager, String id) {
+    for (LocalMember member : gossipManager.getMembers().keySet()) {
+      if (member.getId().equals(id)) {
+        return member;
+      }
+    }
+    return null;
+  }
+
+  private void killLongAgo(GossipManager gossipManager, LocalMember member) {
+    gossipManager.getMemberStateRefresher().updateState(member, GossipState.DOWN);
+    member.setDownSince(member.getDownSince() - 2000000000L);
+  }
+
+  @Test
+  public void longDeadMembersAreRemovedAndStayRemoved() {
+    GossipManager gossipManager = build(new ArrayList<>());
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    RemoteMember sender = remote("sender", 9321, 1);
+    gossipCore.mergeLists(sender, Arrays.asList(sender, remote("ghost", 9322, 100)));
+    LocalMember ghost = find(gossipManager, "ghost");
+    killLongAgo(gossipManager, ghost);
+    gossipManager.getMemberReaper().runOnce();
+    Assert.assertNull(find(gossipManager, "ghost"));
+    Assert.assertTrue(gossipManager.getDeadMembers().isEmpty());
+    Assert.assertEquals(1, gossipManager.getRegistry()
+            .meter(MetricRegistry.name(MemberReaper.class, "reaped")).getCount());
+
+    // stale gossip still carrying the ghost does not add it back
+    gossipCore.mergeLists(sender, Arrays.asList(sender, remote("ghost", 9322, 100)));
+    Assert.assertNull(find(gossipManager, "ghost"));
+    // a newer heartbeat means it is alive after all
+    gossipCore.mergeLists(sender, Arrays.asList(sender, remote("ghost", 9322, 101)));
+    Assert.assertNotNull(find(gossipManager, "ghost"));
+  }
+
+  @Test
+  public void recentlyDeadAndStartupMembersStay() {
+    List<Member> seeds = new ArrayList<>();
+    seeds.add(remote("seed", 9323, 1));
+    GossipManager gossipManager = build(seeds);
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    RemoteMember sender = remote("sender", 9324, 1);
+    gossipCore.mergeLists(sender, Collections.singletonList(sender));
+    gossipManager.getMemberStateRefresher().updateState(find(gossipManager, "sender"), GossipState.DOWN);
+    killLongAgo(gossipManager, find(gossipManager, "seed"));
+    gossipManager.getMemberReaper().runOnce();
+    Assert.assertNotNull(find(gossipManager, "sender"));
+    Assert.assertNotNull(find(gossipManager, "seed"));
+  }
+
+  @Test
+  public void perNodeDataOfRemovedMembersIsDropped() {
+    GossipManager gossipManager = build(new ArrayList<>());
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    MemberReaper reaper = new MemberReaper(gossipManager, gossipCore, gossipManager.getClock(),
+            Collections.emptyList(), new MetricRegistry());
+    RemoteMember ghost = remote("ghost", 9325, 1);
+    gossipCore.mergeLists(ghost, Collections.singletonList(ghost));
+    PerNodeDataMessage data = new PerNodeDataMessage();
+    data.setNodeId("ghost");
+    data.setKey("a");
+    data.setPayload("b");
+    data.setTimestamp(1L);
+    data.setExpireAt(Long.MAX_VALUE);
+    gossipCore.addPerNodeData(data);
+    Assert.assertTrue(gossipCore.getPerNodeData().containsKey("ghost"));
+    killLongAgo(gossipManager, find(gossipManager, "ghost"));
+    reaper.runOnce();
+    Assert.assertFalse(gossipCore.getPerNodeData().containsKey("ghost"));
+    Assert.assertTrue(reaper.isTombstoned("ghost"));
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.event.GossipState;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.manager;
+import static org.apache.gossip.GossipTestSupport.settings;
+
+@RunWith(JUnitPlatform.class)
+public class MemberSnapshotTest {
+
+  private LocalMember member(String id, int port, long heartbeat) {
+    return new LocalMember("aCluster", URI.create("udp://localhost:" + port), id, heartbeat,
+            new HashMap<>(), 1000, 1, "normal");
+  }
+
+  private GossipManager build(List<Member> seeds) {
+    return manager(9000, settings(), seeds);
+  }
+
+  @Test
+  public void snapshotsAreReusedUntilRefreshed() {
+    List<Member> seeds = new ArrayList<>();
+    seeds.add(member("seed", 9001, System.nanoTime()));
+    GossipManager gossipManager = build(seeds);
+    List<LocalMember> dead = gossipManager.getDeadMembers();
+    Assert.assertEquals(1, dead.size());
+    Assert.assertTrue(dead == gossipManager.getDeadMembers());
+    Assert.assertTrue(gossipManager.getLiveMembers().isEmpty());
+
+    LocalMember added = member("added", 9002, System.nanoTime());
+    gossipManager.getMembers().put(added, GossipState.UP);
+    Assert.assertTrue(gossipManager.getLiveMembers().isEmpty());
+    gossipManager.refreshMemberSnapshots();
+    Assert.assertEquals(1, gossipManager.getLiveMembers().size());
+    Assert.assertEquals("added", gossipManager.getLiveMembers().get(0).getId());
+    Assert.assertEquals(dead, gossipManager.getDeadMembers());
+  }
+
+  @Test
+  public void refresherPublishesStateChanges() {
+    GossipManager gossipManager = build(new ArrayList<>());
+    // a heartbeat of zero is older than the cleanup interval, so the refresher will convict it
+    gossipManager.getMembers().put(member("stale", 9003, 0), GossipState.UP);
+    gossipManager.refreshMemberSnapshots();
+    Assert.assertEquals(1, gossipManager.getLiveMembers().size());
+    gossipManager.getMemberStateRefresher().runOnce();
+    Assert.assertTrue(gossipManager.getLiveMembers().isEmpty());
+    Assert.assertEquals(1, gossipManager.getDeadMembers().size());
+  }
+
+  @Test
+  public void snapshotsAreReadOnly() {
+    GossipManager gossipManager = build(new ArrayList<>());
+    gossipManager.getMembers().put(member("a", 9004, System.nanoTime()), GossipState.UP);
+    gossipManager.refreshMemberSnapshots();
+    try {
+      gossipManager.getLiveMembers().clear();
+      Assert.fail("snapshot should not be modifiable");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.crdt.GrowOnlySet;
+import org.apache.gossip.model.LazyPayload;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.settings;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class OffHeapStoreTest {
+
+  private static GossipSettings offHeap() {
+    GossipSettings settings = settings();
+    settings.setOffHeapSharedData(true);
+    settings.setOffHeapMinPayloadBytes(20);
+    settings.setOffHeapSlabBytes(256);
+    settings.setOffHeapCacheEntries(1);
+    return settings;
+  }
+
+  @Test
+  public void keepsLargePayloadsOffHeap() {
+    GossipCore core = core(9410, offHeap());
+    GrowOnlySet<String> set = new GrowOnlySet<>(Arrays.asList("a", "b", "c", "d", "e"));
+    core.addSharedData(shared("n", "set", set, 1, Long.MAX_VALUE));
+    core.addSharedData(shared("n", "small", "x", 1, Long.MAX_VALUE));
+    SharedDataMessage stored = core.getSharedData().get("set");
+    Assert.assertTrue(stored.getRawPayload() instanceof OffHeapStore.Payload);
+    Assert.assertEquals(GrowOnlySet.class, ((OffHeapStore.Payload) stored.getRawPayload()).getType());
+    Assert.assertEquals("x", core.getSharedData().get("small").getRawPayload());
+
+    // pushes the set out of the decoded cache, so it has to be read back from the slab
+    core.addSharedData(shared("n", "other", "0123456789012345678901234567890123456789", 1,
+            Long.MAX_VALUE));
+    Assert.assertEquals(set, stored.getPayload());
+
+    // merging reads the stored set and stores the result off the heap again
+    core.addSharedData(shared("n", "set", new GrowOnlySet<>(Arrays.asList("f")), 2,
+            Long.MAX_VALUE));
+    SharedDataMessage merged = core.getSharedData().get("set");
+    Assert.assertTrue(merged.getRawPayload() instanceof OffHeapStore.Payload);
+    Assert.assertEquals(6, ((GrowOnlySet<?>) merged.getPayload()).value().size());
+  }
+
+  @Test
+  public void slabsAreCappedAndPayloadsOverTheCapStayOnTheHeap() {
+    GossipSettings settings = new GossipSettings();
+    settings.setOffHeapMinPayloadBytes(20);
+    settings.setOffHeapSlabBytes(256);
+    settings.setOffHeapMaxBytes(512);
+    MetricRegistry registry = new MetricRegistry();
+    OffHeapStore store = new OffHeapStore(settings, registry);
+    List<Object> stored = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      stored.add(store.store("0123456789012345678901234567890123456789" + i));
+    }
+    Assert.assertTrue(stored.get(0) instanceof OffHeapStore.Payload);
+    Assert.assertEquals("0123456789012345678901234567890123456789" + 19, stored.get(19));
+    Assert.assertEquals(512, store.getSlabBytes());
+    Assert.assertTrue(registry.meter(MetricRegistry.name(OffHeapStore.class, "kept-on-heap")).getCount() > 0);
+  }
+
+  @Test
+  public void receivedPayloadsAreSizedByTheirEncoding() throws IOException {
+    GossipSettings settings = new GossipSettings();
+    settings.setOffHeapMinPayloadBytes(40);
+    OffHeapStore store = new OffHeapStore(settings, new MetricRegistry());
+    String json = GossipManager.metdataObjectMapper.writeValueAsString(
+            shared("n", "k", new ArrayList<>(Arrays.asList("a")), 1, Long.MAX_VALUE));
+    String payload = "[\"java.util.ArrayList\",[\"a\"]]";
+    Assert.assertTrue(json.contains(payload));
+    SharedDataMessage received = GossipManager.metdataObjectMapper.readValue(json, SharedDataMessage.class);
+    LazyPayload encoded = (LazyPayload) received.getRawPayload();
+    Assert.assertEquals(payload.length(), encoded.getEncodedLength());
+    Assert.assertSame(encoded, store.store(encoded));
+  }
+
+  @Test
+  public void compactionMovesPayloadsOutOfSparseSlabs() {
+    GossipCore core = core(9411, offHeap());
+    String value = "0123456789012345678901234567890123456789";
+    core.addSharedData(shared("n", "kept", value, 1, Long.MAX_VALUE));
+    for (int i = 0; i < 20; i++) {
+      core.addSharedData(shared("n", "replaced", value + i, i + 1, Long.MAX_VALUE));
+    }
+    SharedDataMessage before = core.getSharedData().get("kept");
+    Assert.assertTrue(core.compactSharedData() > 0);
+    SharedDataMessage after = core.getSharedData().get("kept");
+    Assert.assertNotSame(before, after);
+    Assert.assertTrue(after.getRawPayload() instanceof OffHeapStore.Payload);
+    Assert.assertEquals(value, after.getPayload());
+    Assert.assertEquals(value + 19, core.getSharedData().get("replaced").getPayload());
+  }
+}
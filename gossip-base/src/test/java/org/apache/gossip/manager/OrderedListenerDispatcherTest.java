@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipSettings;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.Member;
+import org.apache.gossip.event.GossipListener;
+import org.apache.gossip.event.GossipState;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnitPlatform.class)
+public class OrderedListenerDispatcherTest {
+
+  private static LocalMember member(int port) {
+    return new LocalMember("aCluster", URI.create("udp://localhost:" + port), "" + port,
+            System.nanoTime(), new HashMap<>(), 1000, 1, "normal");
+  }
+
+  private static class RecordingListener implements GossipListener {
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release;
+
+    RecordingListener(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void gossipEvent(Member member, GossipState state) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      events.add(member.getId() + " " + state);
+    }
+  }
+
+  private static void await(RecordingListener listener, int events) throws InterruptedException {
+    for (int i = 0; i < 500 && listener.events.size() < events; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static GossipState last(List<GossipState> states) {
+    return states.isEmpty() ? null : states.get(states.size() - 1);
+  }
+
+  @Test
+  public void supersededTransitionsCoalesce() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingListener listener = new RecordingListener(release);
+    MetricRegistry registry = new MetricRegistry();
+    OrderedListenerDispatcher dispatcher = new OrderedListenerDispatcher(
+            Arrays.asList(listener), 10, 1, registry);
+    dispatcher.start();
+    LocalMember a = member(20001);
+    LocalMember b = member(20002);
+    dispatcher.enqueue(a, GossipState.DOWN);
+    // wait until the worker holds the first event
+    for (int i = 0; i < 500 && dispatcher.size() > 0; i++) {
+      Thread.sleep(10);
+    }
+    dispatcher.enqueue(a, GossipState.UP);
+    dispatcher.enqueue(b, GossipState.UP);
+    dispatcher.enqueue(a, GossipState.DOWN);
+    dispatcher.enqueue(b, GossipState.DOWN);
+    Assert.assertEquals(1, dispatcher.size());
+    release.countDown();
+    await(listener, 2);
+    Thread.sleep(50);
+    Assert.assertEquals(Arrays.asList("20001 DOWN", "20002 DOWN"), listener.events);
+    Assert.assertEquals(3, registry.meter(MetricRegistry.name(OrderedListenerDispatcher.class, "coalesced")).getCount());
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void fullQueueNeverBlocksNorDrops() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingListener listener = new RecordingListener(release);
+    MetricRegistry registry = new MetricRegistry();
+    OrderedListenerDispatcher dispatcher = new OrderedListenerDispatcher(
+            Arrays.asList(listener), 1, 1, registry);
+    dispatcher.start();
+    dispatcher.enqueue(member(20011), GossipState.DOWN);
+    for (int i = 0; i < 500 && dispatcher.size() > 0; i++) {
+      Thread.sleep(10);
+    }
+    // the worker is stuck in the listener, the caller still returns at once
+    dispatcher.enqueue(member(20012), GossipState.DOWN);
+    dispatcher.enqueue(member(20013), GossipState.DOWN);
+    Assert.assertEquals(2, dispatcher.size());
+    Assert.assertEquals(1, registry.meter(
+            MetricRegistry.name(OrderedListenerDispatcher.class, "over-capacity")).getCount());
+    release.countDown();
+    await(listener, 3);
+    Assert.assertEquals(Arrays.asList("20011 DOWN", "20012 DOWN", "20013 DOWN"), listener.events);
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void listenerChangingStateDoesNotDeadlock() throws InterruptedException {
+    List<String> events = new CopyOnWriteArrayList<>();
+    LocalMember other = member(20021);
+    OrderedListenerDispatcher[] holder = new OrderedListenerDispatcher[1];
+    GossipListener listener = (member, state) -> {
+      events.add(member.getId() + " " + state);
+      if (state == GossipState.DOWN) {
+        // a listener reacting with another transition, from the worker thread
+        holder[0].enqueue(other, GossipState.DOWN);
+        holder[0].enqueue((LocalMember) member, GossipState.UP);
+      }
+    };
+    holder[0] = new OrderedListenerDispatcher(Arrays.asList(listener), 1, 1, new MetricRegistry());
+    holder[0].start();
+    holder[0].enqueue(member(20022), GossipState.DOWN);
+    for (int i = 0; i < 500 && events.size() < 4; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(Arrays.asList("20022 DOWN", "20021 DOWN", "20022 UP"), events.subList(0, 3));
+    holder[0].shutdown();
+  }
+
+  @Test
+  public void eventsOfAMemberStayInOrder() throws InterruptedException {
+    Map<String, List<GossipState>> seen = new HashMap<>();
+    GossipListener listener = (member, state) -> {
+      synchronized (seen) {
+        seen.computeIfAbsent(member.getId(), k -> new ArrayList<>()).add(state);
+      }
+    };
+    OrderedListenerDispatcher dispatcher = new OrderedListenerDispatcher(
+            Arrays.asList(listener), 4, 4, new MetricRegistry());
+    dispatcher.start();
+    List<LocalMember> members = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      members.add(member(20100 + i));
+    }
+    for (int round = 0; round < 200; round++) {
+      for (LocalMember m : members) {
+        dispatcher.enqueue(m, round % 2 == 0 ? GossipState.DOWN : GossipState.UP);
+      }
+    }
+    for (int i = 0; i < 500 && dispatcher.size() > 0; i++) {
+      Thread.sleep(10);
+    }
+    dispatcher.shutdown();
+    synchronized (seen) {
+      Assert.assertEquals(20, seen.size());
+      for (List<GossipState> states : seen.values()) {
+        for (int i = 1; i < states.size(); i++) {
+          Assert.assertNotEquals(states.get(i - 1), states.get(i));
+        }
+        // the last transition was to UP
+        Assert.assertEquals(GossipState.UP, states.get(states.size() - 1));
+      }
+    }
+  }
+
+  @Test
+  public void concurrentUpdatesEndAtTheStateInTheMap() throws InterruptedException {
+    GossipSettings settings = new GossipSettings();
+    settings.setOrderedListenerEvents(true);
+    LocalMember member = member(20200);
+    // stalls between storing a DOWN and queueing its event
+    Map<LocalMember, GossipState> members = new ConcurrentHashMap<LocalMember, GossipState>() {
+      @Override
+      public GossipState put(LocalMember key, GossipState value) {
+        GossipState previous = super.put(key, value);
+        if (value == GossipState.DOWN) {
+          try {
+            Thread.sleep(200);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return previous;
+      }
+    };
+    members.put(member, GossipState.UP);
+    List<GossipState> seen = new CopyOnWriteArrayList<>();
+    GossipMemberStateRefresher refresher = new GossipMemberStateRefresher(members, settings,
+            (m, state) -> seen.add(state), (nodeId, key) -> null, () -> { }, new MetricRegistry());
+    refresher.init();
+    Thread down = new Thread(() -> refresher.updateState(member, GossipState.DOWN));
+    down.start();
+    Thread.sleep(50);
+    refresher.updateState(member, GossipState.UP);
+    down.join();
+    for (int i = 0; i < 500 && last(seen) != members.get(member); i++) {
+      Thread.sleep(10);
+    }
+    refresher.shutdown();
+    Assert.assertEquals(members.get(member), last(seen));
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.perNode;
+
+@RunWith(JUnitPlatform.class)
+public class PerNodeDataByKeyTest {
+
+  @Test
+  public void findsTheNodesPublishingAKey() {
+    GossipCore core = core(9440);
+    core.addPerNodeData(perNode("a", "service", "a:1", 1, Long.MAX_VALUE));
+    core.addPerNodeData(perNode("b", "service", "b:1", 1, Long.MAX_VALUE));
+    core.addPerNodeData(perNode("b", "service", "b:2", 2, Long.MAX_VALUE));
+    core.addPerNodeData(perNode("c", "other", "c:1", 1, Long.MAX_VALUE));
+    Map<String, PerNodeDataMessage> found = core.findPerNodeData("service");
+    Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), found.keySet());
+    Assert.assertEquals("b:2", found.get("b").getPayload());
+    Assert.assertTrue(core.findPerNodeData("missing").isEmpty());
+  }
+
+  @Test
+  public void dropsReapedAndRemovedNodes() {
+    GossipCore core = core(9441);
+    long now = System.currentTimeMillis();
+    core.addPerNodeData(perNode("a", "service", "a:1", 1, now - 1));
+    core.addPerNodeData(perNode("b", "service", "b:1", 1, Long.MAX_VALUE));
+    core.addPerNodeData(perNode("c", "service", "c:1", 1, Long.MAX_VALUE));
+    core.getDataStore().expire(now, reaped -> { });
+    Assert.assertEquals(new HashSet<>(Arrays.asList("b", "c")), core.findPerNodeData("service").keySet());
+    core.removePerNodeData("b");
+    Assert.assertEquals(new HashSet<>(Arrays.asList("c")), core.findPerNodeData("service").keySet());
+    core.removePerNodeData("c");
+    Assert.assertEquals(0, core.getDataStore().getPerNodeKeys().size());
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.crdt.GrowOnlySet;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class SharedCrdtMergeTest {
+
+  private SharedDataMessage set(Long expireAt, String... elements) {
+    return shared("n", "set", new GrowOnlySet<>(Arrays.asList(elements)), 1, expireAt);
+  }
+
+  @SuppressWarnings("unchecked")
+  private GrowOnlySet<String> stored(GossipCore core) {
+    return (GrowOnlySet<String>) core.getSharedData().get("set").getPayload();
+  }
+
+  @Test
+  public void resentStateWithoutExpiryIsSkipped() {
+    GossipCore core = core(9490);
+    core.addSharedData(set(null, "a", "b"));
+    SharedDataMessage stored = core.getSharedData().get("set");
+    core.addSharedData(set(null, "a"));
+    Assert.assertSame(stored, core.getSharedData().get("set"));
+    core.addSharedData(set(null, "c"));
+    Assert.assertEquals(3, stored(core).value().size());
+  }
+
+  @Test
+  public void noExpiryOutlastsAnyExpiry() {
+    GossipCore core = core(9491);
+    core.addSharedData(set(Long.MAX_VALUE - 1, "a"));
+    // the same state, but it never expires
+    core.addSharedData(set(null, "a"));
+    Assert.assertNull(core.getSharedData().get("set").getExpireAt());
+    // a finite expiry does not shorten a state that never expires
+    SharedDataMessage stored = core.getSharedData().get("set");
+    core.addSharedData(set(Long.MAX_VALUE, "a"));
+    Assert.assertSame(stored, core.getSharedData().get("set"));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.manager;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class SharedDataScanTest {
+
+  @Test
+  public void findsKeysByPrefixAndRange() {
+    GossipManager gm = manager(9430);
+    for (String key : Arrays.asList("lock/b", "lock/a", "lock0", "lock", "other/a", "lock/c")) {
+      gm.gossipSharedData(shared("n", key, key, 1, Long.MAX_VALUE));
+    }
+    Assert.assertEquals(Arrays.asList("lock/a", "lock/b", "lock/c"),
+            new ArrayList<>(gm.findSharedGossipDataByPrefix("lock/").keySet()));
+    Assert.assertEquals(Arrays.asList("lock", "lock/a", "lock/b"),
+            new ArrayList<>(gm.findSharedGossipDataInRange("lock", "lock/c").keySet()));
+    Assert.assertEquals(6, gm.findSharedGossipDataByPrefix("").size());
+    Assert.assertEquals(3, gm.countSharedGossipDataByPrefix("lock/"));
+    Assert.assertEquals(6, gm.countSharedGossipDataByPrefix(""));
+    Assert.assertTrue(gm.findSharedGossipDataInRange("z", "a").isEmpty());
+  }
+
+  @Test
+  public void pagesMoveForwardWhileDataChanges() {
+    GossipManager gm = manager(9431);
+    for (int i = 0; i < 10; i++) {
+      gm.gossipSharedData(shared("n", "ns/" + i, i, 1, Long.MAX_VALUE));
+    }
+    List<String> seen = new ArrayList<>();
+    String after = null;
+    SortedMap<String, SharedDataMessage> page;
+    while (!(page = gm.findSharedGossipDataByPrefix("ns/", after, 3)).isEmpty()) {
+      Assert.assertTrue(page.size() <= 3);
+      seen.addAll(page.keySet());
+      after = page.lastKey();
+      if (seen.size() == 3) {
+        // behind the cursor, never returned
+        gm.gossipSharedData(shared("n", "ns/0a", "0a", 1, Long.MAX_VALUE));
+      }
+    }
+    Assert.assertEquals(10, seen.size());
+    Assert.assertFalse(seen.contains("ns/0a"));
+  }
+
+  @Test
+  public void leavesOutExpiredAndRemovedKeys() {
+    GossipCore core = core(9432);
+    long now = System.currentTimeMillis();
+    core.addSharedData(shared("n", "ns/old", "old", 1, now - 1));
+    core.addSharedData(shared("n", "ns/new", "new", 1, Long.MAX_VALUE));
+    Assert.assertEquals(Arrays.asList("ns/new"),
+            new ArrayList<>(core.scanSharedData("ns/", "ns0", null, 10).keySet()));
+    Assert.assertEquals(2, core.getDataStore().getSharedKeys().size());
+    core.getDataStore().expire(now, reaped -> { });
+    Assert.assertEquals(1, core.getDataStore().getSharedKeys().size());
+    Assert.assertEquals(1, core.getSharedData().size());
+  }
+
+  @Test
+  public void prefixEndIsTheFirstKeyPastThePrefix() {
+    Assert.assertEquals("lock0", KeyIndex.prefixEnd("lock/"));
+    Assert.assertEquals("b", KeyIndex.prefixEnd("a\uffff"));
+    Assert.assertNull(KeyIndex.prefixEnd(""));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.LocalMember;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(JUnitPlatform.class)
+public class ShuffledRoundRobinPartnerSelectorTest {
+
+  private List<LocalMember> members(int first, int count) {
+    List<LocalMember> members = new ArrayList<>();
+    for (int i = first; i < first + count; i++) {
+      members.add(new LocalMember("aCluster", URI.create("udp://localhost:" + (9200 + i)), i + "",
+              System.nanoTime(), new HashMap<>(), 1000, 1, "normal"));
+    }
+    return Collections.unmodifiableList(members);
+  }
+
+  @Test
+  public void everyMemberOncePerEpoch() {
+    PartnerSelector selector = new ShuffledRoundRobinPartnerSelector();
+    List<LocalMember> members = members(0, 10);
+    for (int epoch = 0; epoch < 3; epoch++) {
+      Set<LocalMember> seen = new HashSet<>();
+      for (int i = 0; i < members.size(); i++) {
+        Assert.assertTrue(seen.add(selector.select(members)));
+      }
+      Assert.assertEquals(new HashSet<>(members), seen);
+    }
+  }
+
+  @Test
+  public void emptyListSelectsNobody() {
+    PartnerSelector selector = new ShuffledRoundRobinPartnerSelector();
+    Assert.assertNull(selector.select(Collections.emptyList()));
+    Assert.assertNotNull(selector.select(members(0, 1)));
+  }
+
+  @Test
+  public void membershipChangeKeepsTheEpoch() {
+    PartnerSelector selector = new ShuffledRoundRobinPartnerSelector();
+    List<LocalMember> members = members(0, 6);
+    Set<LocalMember> seen = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      seen.add(selector.select(members));
+    }
+    // a new snapshot drops one unvisited member and adds a new one
+    List<LocalMember> changed = new ArrayList<>(members);
+    LocalMember removed = null;
+    for (LocalMember member : members) {
+      if (!seen.contains(member)) {
+        removed = member;
+        break;
+      }
+    }
+    changed.remove(removed);
+    changed.addAll(members(6, 1));
+    for (int i = 0; i < 3; i++) {
+      LocalMember selected = selector.select(changed);
+      Assert.assertNotEquals(removed, selected);
+      Assert.assertTrue(seen.add(selected));
+    }
+    Assert.assertEquals(6, seen.size());
+    Assert.assertTrue(seen.contains(changed.get(changed.size() - 1)));
+  }
+
+  @Test
+  public void equalSnapshotDoesNotRestartTheEpoch() {
+    PartnerSelector selector = new ShuffledRoundRobinPartnerSelector();
+    List<LocalMember> members = members(0, 4);
+    Set<LocalMember> seen = new HashSet<>();
+    seen.add(selector.select(members));
+    seen.add(selector.select(members));
+    List<LocalMember> copy = new ArrayList<>(members);
+    seen.add(selector.select(copy));
+    seen.add(selector.select(copy));
+    Assert.assertEquals(4, seen.size());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.event.data.DataEventManager;
+import org.apache.gossip.event.data.SnapshotSubscription;
+import org.apache.gossip.event.data.UpdateSharedDataEventHandler;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.apache.gossip.GossipTestSupport.manager;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class SnapshotSubscribeTest {
+
+  @Test
+  public void deliversStoredDataThenChanges() throws InterruptedException {
+    GossipManager gm = manager(9460);
+    gm.gossipSharedData(shared("n", "ns/b", "b1", 1, Long.MAX_VALUE));
+    gm.gossipSharedData(shared("n", "ns/a", "a1", 1, Long.MAX_VALUE));
+    gm.gossipSharedData(shared("n", "other", "o1", 1, Long.MAX_VALUE));
+    gm.gossipSharedData(shared("n", "ns/c", "c1", 1, Long.MAX_VALUE));
+    List<String> events = new CopyOnWriteArrayList<>();
+    UpdateSharedDataEventHandler handler =
+            (key, oldValue, newValue) -> events.add(key + " " + oldValue + "->" + newValue);
+    gm.registerSharedDataSubscriberWithSnapshot("ns/", handler, 2);
+    Assert.assertEquals(Arrays.asList("ns/a null->a1", "ns/b null->b1", "ns/c null->c1"), events);
+
+    gm.gossipSharedData(shared("n", "ns/a", "a2", 2, Long.MAX_VALUE));
+    gm.gossipSharedData(shared("n", "other", "o2", 2, Long.MAX_VALUE));
+    for (int i = 0; i < 500 && events.size() < 4; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("ns/a a1->a2", events.get(3));
+
+    gm.unregisterSharedDataSubscriber(handler);
+    gm.gossipSharedData(shared("n", "ns/a", "a3", 3, Long.MAX_VALUE));
+    Thread.sleep(100);
+    Assert.assertEquals(4, events.size());
+  }
+
+  @Test
+  public void changesMadeDuringTheSnapshotAreNeitherMissedNorReplayed() {
+    List<String> events = new ArrayList<>();
+    UpdateSharedDataEventHandler handler =
+            (key, oldValue, newValue) -> events.add(key + " " + oldValue + "->" + newValue);
+    SnapshotSubscription subscription = new SnapshotSubscription(handler);
+    // made before the snapshot read the key
+    subscription.onUpdate("a", "a0", "a1");
+    subscription.onUpdate("a", "a1", "a2");
+    Map<String, Object> batch = new LinkedHashMap<>();
+    batch.put("a", "a2");
+    batch.put("b", "b1");
+    subscription.snapshot(batch);
+    // made after
+    subscription.onUpdate("b", "b1", "b2");
+    subscription.onUpdate("c", null, "c1");
+    Assert.assertEquals(Arrays.asList("a null->a2", "b null->b1"), events);
+    subscription.live();
+    subscription.onUpdate("a", "a2", "a3");
+    Assert.assertEquals(Arrays.asList("a null->a2", "b null->b1", "b b1->b2", "c null->c1",
+            "a a2->a3"), events);
+  }
+
+  @Test
+  public void unregisteringTheHandlerRemovesItsSubscriptions() {
+    DataEventManager manager = new DataEventManager(new MetricRegistry());
+    UpdateSharedDataEventHandler handler = (key, oldValue, newValue) -> { };
+    manager.registerSharedDataSubscription("a", new SnapshotSubscription(handler));
+    manager.registerSharedDataSubscription("b", new SnapshotSubscription(handler));
+    Assert.assertEquals(2, manager.getSharedDataSubscribersSize());
+    manager.unregisterSharedDataSubscriber(handler);
+    Assert.assertEquals(0, manager.getSharedDataSubscribersSize());
+
+    SnapshotSubscription subscription = new SnapshotSubscription(handler);
+    manager.registerSharedDataSubscription("a", subscription);
+    manager.unregisterSharedDataSubscription(subscription);
+    Assert.assertEquals(0, manager.getSharedDataSubscribersSize());
+    manager.shutdown();
+  }
+}
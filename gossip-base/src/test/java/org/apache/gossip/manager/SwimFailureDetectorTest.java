@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.LocalMember;
+import org.apache.gossip.event.GossipState;
+import org.apache.gossip.model.Member;
+import org.apache.gossip.model.SwimUpdate;
+import org.apache.gossip.model.SwimUpdate.Status;
+import org.apache.gossip.udp.UdpSwimPing;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.manager;
+
+@RunWith(JUnitPlatform.class)
+public class SwimFailureDetectorTest {
+
+  private GossipManager gossipManager;
+
+  private SwimFailureDetector build(long suspicionTimeoutMs, int retransmitMultiplier) {
+    gossipManager = manager(9100);
+    GossipCore gossipCore = new GossipCore(gossipManager, new MetricRegistry());
+    return new SwimFailureDetector(gossipManager, gossipCore, new MetricRegistry(), Runnable::run,
+            10, 10, 3, suspicionTimeoutMs, 8, retransmitMultiplier);
+  }
+
+  private SwimUpdate update(String id, int port, Status status, long incarnation) {
+    Member member = new Member("aCluster", "udp://localhost:" + port, id, System.nanoTime());
+    member.setProperties(new HashMap<>());
+    return new SwimUpdate(member, status, incarnation);
+  }
+
+  private GossipState state(String id) {
+    for (LocalMember member : gossipManager.getMembers().keySet()) {
+      if (member.getId().equals(id)) {
+        return gossipManager.getMembers().get(member);
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void updatesFollowIncarnationPrecedence() {
+    SwimFailureDetector detector = build(5000, 3);
+    Assert.assertTrue(detector.apply(update("a", 9101, Status.ALIVE, 0)));
+    Assert.assertEquals(GossipState.UP, state("a"));
+    Assert.assertEquals(1, gossipManager.getLiveMembers().size());
+
+    Assert.assertTrue(detector.apply(update("a", 9101, Status.SUSPECT, 0)));
+    Assert.assertEquals(GossipState.UP, state("a"));
+    Assert.assertFalse(detector.apply(update("a", 9101, Status.SUSPECT, 0)));
+    Assert.assertFalse(detector.apply(update("a", 9101, Status.ALIVE, 0)));
+    Assert.assertTrue(detector.apply(update("a", 9101, Status.ALIVE, 1)));
+    Assert.assertEquals(Status.ALIVE, detector.getStatus("a"));
+
+    Assert.assertTrue(detector.apply(update("a", 9101, Status.DEAD, 1)));
+    Assert.assertEquals(GossipState.DOWN, state("a"));
+    Assert.assertEquals(1, gossipManager.getDeadMembers().size());
+    Assert.assertFalse(detector.apply(update("a", 9101, Status.SUSPECT, 5)));
+    Assert.assertFalse(detector.apply(update("a", 9101, Status.ALIVE, 1)));
+    Assert.assertTrue(detector.apply(update("a", 9101, Status.ALIVE, 2)));
+    Assert.assertEquals(GossipState.UP, state("a"));
+  }
+
+  @Test
+  public void suspicionOfSelfIsRefuted() {
+    SwimFailureDetector detector = build(5000, 3);
+    Assert.assertEquals(0, detector.getIncarnation());
+    detector.apply(update("me", 9100, Status.SUSPECT, 0));
+    Assert.assertEquals(1, detector.getIncarnation());
+    List<SwimUpdate> updates = detector.piggyback("other");
+    Assert.assertEquals(1, updates.size());
+    Assert.assertEquals("me", updates.get(0).getMember().getId());
+    Assert.assertEquals(Status.ALIVE, updates.get(0).getStatus());
+    Assert.assertEquals(1, updates.get(0).getIncarnation());
+    // an old accusation does not bump the incarnation again
+    detector.apply(update("me", 9100, Status.DEAD, 0));
+    Assert.assertEquals(1, detector.getIncarnation());
+  }
+
+  @Test
+  public void expiredSuspectsAreDeclaredDead() {
+    SwimFailureDetector detector = build(0, 3);
+    detector.apply(update("a", 9102, Status.SUSPECT, 3));
+    Assert.assertEquals(GossipState.UP, state("a"));
+    detector.expireSuspects();
+    Assert.assertEquals(Status.DEAD, detector.getStatus("a"));
+    Assert.assertEquals(GossipState.DOWN, state("a"));
+  }
+
+  @Test
+  public void updatesStopAfterRetransmitLimit() {
+    SwimFailureDetector detector = build(5000, 1);
+    detector.apply(update("a", 9103, Status.ALIVE, 0));
+    detector.apply(update("a", 9103, Status.ALIVE, 1));
+    Assert.assertEquals(1, detector.pendingUpdates());
+    // one live member: the update goes out ceil(log2(3)) = 2 times
+    Assert.assertEquals(1, detector.piggyback("b").size());
+    Assert.assertEquals(1, detector.piggyback("b").size());
+    Assert.assertEquals(0, detector.pendingUpdates());
+    Assert.assertTrue(detector.piggyback("b").isEmpty());
+  }
+
+  @Test
+  public void pingsCarryTheSenderUriAndId() {
+    SwimFailureDetector detector = build(5000, 3);
+    UdpSwimPing ping = detector.newPing("a");
+    Assert.assertEquals(URI.create("udp://localhost:9100"), URI.create(ping.getUriFrom()));
+    Assert.assertEquals("me", ping.getSender().getMember().getId());
+  }
+
+  @Test
+  public void accusationIsSentToTheAccused() {
+    SwimFailureDetector detector = build(5000, 3);
+    detector.apply(update("a", 9104, Status.SUSPECT, 2));
+    List<SwimUpdate> updates = detector.piggyback("a");
+    Assert.assertEquals(1, updates.size());
+    Assert.assertEquals(Status.SUSPECT, updates.get(0).getStatus());
+    Assert.assertEquals(2, updates.get(0).getIncarnation());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnitPlatform.class)
+public class TimerWheelTest {
+
+  @Test
+  public void firesOnlyPassedDeadlines() {
+    TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+    wheel.schedule("a", 25);
+    wheel.schedule("b", 45);
+    Assert.assertTrue(wheel.advance(20).isEmpty());
+    Assert.assertEquals(Collections.singletonList("a"), wheel.advance(30));
+    Assert.assertEquals(1, wheel.size());
+    Assert.assertEquals(Collections.singletonList("b"), wheel.advance(50));
+    Assert.assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void rescheduleReplacesDeadline() {
+    TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+    wheel.schedule("a", 25);
+    wheel.schedule("a", 65);
+    Assert.assertEquals(Long.valueOf(65), wheel.deadline("a"));
+    Assert.assertTrue(wheel.advance(40).isEmpty());
+    Assert.assertEquals(Collections.singletonList("a"), wheel.advance(70));
+    Assert.assertNull(wheel.deadline("a"));
+  }
+
+  @Test
+  public void cancelledNeverFires() {
+    TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+    wheel.schedule("a", 25);
+    wheel.cancel("a");
+    Assert.assertTrue(wheel.advance(100).isEmpty());
+  }
+
+  @Test
+  public void deadlinesBeyondOneRotationWaitForTheirRound() {
+    TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+    // same slot as 25, one rotation later
+    wheel.schedule("far", 105);
+    wheel.schedule("near", 25);
+    Assert.assertEquals(Collections.singletonList("near"), wheel.advance(30));
+    Assert.assertTrue(wheel.advance(90).isEmpty());
+    Assert.assertEquals(Collections.singletonList("far"), wheel.advance(110));
+  }
+
+  @Test
+  public void pastDeadlinesAndLongPausesFire() {
+    TimerWheel<String> wheel = new TimerWheel<>(10, 8, 100);
+    wheel.schedule("late", 50);
+    wheel.schedule("x", 130);
+    wheel.schedule("y", 170);
+    List<String> expired = wheel.advance(1000);
+    Collections.sort(expired);
+    Assert.assertEquals(Arrays.asList("late", "x", "y"), expired);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import org.apache.gossip.LocalMember;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(JUnitPlatform.class)
+public class TopologyIndexTest {
+
+  private static int port = 10000;
+
+  private LocalMember member(String id, String dc, String rack) {
+    Map<String, String> props = new HashMap<>();
+    if (dc != null) {
+      props.put(DatacenterRackAwareActiveGossiper.DATACENTER, dc);
+    }
+    if (rack != null) {
+      props.put(DatacenterRackAwareActiveGossiper.RACK, rack);
+    }
+    return new LocalMember("aCluster", URI.create("udp://localhost:" + port++), id,
+            System.nanoTime(), props, 1000, 1, "normal");
+  }
+
+  @Test
+  public void groupsByDatacenterAndRack() {
+    LocalMember me = member("me", "dc1", "r1");
+    List<LocalMember> live = new ArrayList<>();
+    live.add(member("a", "dc1", "r1"));
+    live.add(member("b", "dc1", "r2"));
+    live.add(member("c", "dc2", "r1"));
+    live.add(member("d", "dc3", "r1"));
+    live.add(member("e", "dc3", "r2"));
+    live.add(member("f", null, null));
+    TopologyIndex index = TopologyIndex.build(me, live);
+    Assert.assertEquals(1, index.sameRack().size());
+    Assert.assertEquals("a", index.sameRack().get(0).getId());
+    Assert.assertEquals(1, index.sameDatacenterDifferentRack().size());
+    Assert.assertEquals("b", index.sameDatacenterDifferentRack().get(0).getId());
+    Assert.assertEquals(4, index.differentDatacenter().size());
+    Assert.assertEquals(1, index.byOtherDatacenter().get("dc2").size());
+    Assert.assertEquals(2, index.byOtherDatacenter().get("dc3").size());
+    Assert.assertEquals(1, index.byOtherDatacenter().get(null).size());
+  }
+
+  @Test
+  public void emptyWithoutLocalTopology() {
+    LocalMember me = member("me", "dc1", null);
+    List<LocalMember> live = new ArrayList<>();
+    live.add(member("a", "dc1", "r1"));
+    TopologyIndex index = TopologyIndex.build(me, live);
+    Assert.assertTrue(index.sameRack().isEmpty());
+    Assert.assertTrue(index.differentDatacenter().isEmpty());
+    Assert.assertTrue(index.byOtherDatacenter().isEmpty());
+  }
+
+  @Test
+  public void currentOnlyForSameSnapshotAndLocation() {
+    LocalMember me = member("me", "dc1", "r1");
+    List<LocalMember> live = new ArrayList<>();
+    live.add(member("a", "dc1", "r1"));
+    TopologyIndex index = TopologyIndex.build(me, live);
+    Assert.assertTrue(index.isCurrent(me, live));
+    Assert.assertFalse(index.isCurrent(me, new ArrayList<>(live)));
+    me.getProperties().put(DatacenterRackAwareActiveGossiper.RACK, "r2");
+    Assert.assertFalse(index.isCurrent(me, live));
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.apache.gossip.GossipTestSupport.core;
+import static org.apache.gossip.GossipTestSupport.perNode;
+import static org.apache.gossip.GossipTestSupport.settings;
+import static org.apache.gossip.GossipTestSupport.shared;
+import static org.apache.gossip.manager.GossipCoreConstants.MESSAGE_SERDE_EXCEPTION;
+
+@RunWith(JUnitPlatform.class)
+public class UndecodablePayloadTest {
+
+  private final MetricRegistry registry = new MetricRegistry();
+
+  /**
+   * @return the message as read from the wire, with its payload naming a class we do not have
+   */
+  private static <T> T received(T message, Class<T> type) throws IOException {
+    String json = GossipManager.metdataObjectMapper.writeValueAsString(message)
+            .replace("java.util.ArrayList", "org.apache.gossip.NoSuchPayload");
+    return GossipManager.metdataObjectMapper.readValue(json, type);
+  }
+
+  private SharedDataMessage sharedList(long timestamp, boolean decodable) throws IOException {
+    SharedDataMessage m = shared("n", "k", new ArrayList<>(Arrays.asList("a")), timestamp,
+            Long.MAX_VALUE);
+    return decodable ? m : received(m, SharedDataMessage.class);
+  }
+
+  private PerNodeDataMessage perNodeList(long timestamp, boolean decodable) throws IOException {
+    PerNodeDataMessage m = perNode("n", "k", new ArrayList<>(Arrays.asList("a")), timestamp,
+            Long.MAX_VALUE);
+    return decodable ? m : received(m, PerNodeDataMessage.class);
+  }
+
+  private long dropped() {
+    return registry.meter(MESSAGE_SERDE_EXCEPTION).getCount();
+  }
+
+  @Test
+  public void undecodableSharedDataIsDroppedWhenItWins() throws IOException {
+    GossipCore core = core(9470, settings(), registry);
+    core.addSharedData(sharedList(2, false));
+    Assert.assertNull(core.getSharedData().get("k"));
+    Assert.assertEquals(1, dropped());
+
+    core.addSharedData(sharedList(2, true));
+    SharedDataMessage stored = core.getSharedData().get("k");
+    Assert.assertEquals(Arrays.asList("a"), stored.getPayload());
+    // losing the timestamp check, it is never decoded
+    core.addSharedData(sharedList(1, false));
+    Assert.assertEquals(1, dropped());
+    core.addSharedData(sharedList(3, false));
+    Assert.assertSame(stored, core.getSharedData().get("k"));
+    Assert.assertEquals(2, dropped());
+  }
+
+  @Test
+  public void undecodablePerNodeDataIsDroppedWhenItWins() throws IOException {
+    GossipCore core = core(9471, settings(), registry);
+    core.addPerNodeData(perNodeList(2, false));
+    Assert.assertTrue(core.findPerNodeData("k").isEmpty());
+    Assert.assertEquals(1, dropped());
+
+    core.addPerNodeData(perNodeList(2, true));
+    core.addPerNodeData(perNodeList(1, false));
+    core.addPerNodeData(perNodeList(3, false));
+    Assert.assertEquals(Arrays.asList("a"), core.findPerNodeData("k").get("n").getPayload());
+    Assert.assertEquals(2, dropped());
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip.manager.handlers;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.gossip.GossipTestSupport;
+import org.apache.gossip.Member;
+import org.apache.gossip.RemoteMember;
+import org.apache.gossip.manager.GossipCore;
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.udp.UdpHandoffMessage;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.gossip.GossipTestSupport.perNode;
+import static org.apache.gossip.GossipTestSupport.settings;
+import static org.apache.gossip.GossipTestSupport.shared;
+
+@RunWith(JUnitPlatform.class)
+public class HandoffMessageHandlerTest {
+
+  private static UdpHandoffMessage handoff(String nodeId, String uriFrom) {
+    UdpHandoffMessage message = new UdpHandoffMessage();
+    message.setNodeId(nodeId);
+    message.setUriFrom(uriFrom);
+    message.getSharedData().add(shared(nodeId, "mine", "a", 1L, Long.MAX_VALUE));
+    message.getSharedData().add(shared("other", "theirs", "b", 1L, Long.MAX_VALUE));
+    message.getPerNodeData().add(perNode(nodeId, "state", "draining", 1L, Long.MAX_VALUE));
+    message.getPerNodeData().add(perNode("other", "state", "up", 1L, Long.MAX_VALUE));
+    return message;
+  }
+
+  @Test
+  public void takesDataOnlyFromAMemberAtItsUri() {
+    List<Member> seeds = Collections.singletonList(
+            new RemoteMember("aCluster", URI.create("udp://localhost:9493"), "leaver"));
+    GossipManager gm = GossipTestSupport.manager(9492, settings(), seeds);
+    GossipCore core = new GossipCore(gm, new MetricRegistry());
+    HandoffMessageHandler handler = new HandoffMessageHandler();
+
+    Assert.assertFalse(handler.invoke(core, gm, handoff("stranger", "udp://localhost:9494")));
+    Assert.assertFalse(handler.invoke(core, gm, handoff("leaver", "udp://victim:9000")));
+    Assert.assertFalse(handler.invoke(core, gm, handoff("leaver", "not a uri")));
+    Assert.assertTrue(core.getSharedData().isEmpty());
+    Assert.assertTrue(core.getPerNodeData().isEmpty());
+
+    Assert.assertTrue(handler.invoke(core, gm, handoff("leaver", "udp://localhost:9493")));
+    Assert.assertEquals("a", core.getSharedData().get("mine").getPayload());
+    Assert.assertNull(core.getSharedData().get("theirs"));
+    Assert.assertEquals("draining", core.getPerNodeData().get("leaver").get("state").getPayload());
+    Assert.assertNull(core.getPerNodeData().get("other"));
+  }
+}
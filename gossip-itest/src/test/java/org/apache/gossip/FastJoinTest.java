@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip;
+
+import com.codahale.metrics.MetricRegistry;
+import io.teknek.tunit.TUnit;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.manager.GossipManagerBuilder;
+import org.apache.gossip.manager.JoinSnapshotService;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.Assert;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class FastJoinTest {
+
+  private GossipSettings settings(boolean fastJoin) {
+    GossipSettings settings = new GossipSettings();
+    settings.setPersistRingState(false);
+    settings.setPersistDataState(false);
+    settings.setFastJoin(fastJoin);
+    return settings;
+  }
+
+  private GossipManager start(String cluster, int i, List<Member> startupMembers, boolean fastJoin)
+          throws URISyntaxException {
+    GossipManager gossipService = GossipManagerBuilder.newBuilder()
+            .cluster(cluster)
+            .uri(new URI("udp://127.0.0.1:" + (30500 + i)))
+            .id(i + "")
+            .gossipMembers(startupMembers)
+            .gossipSettings(settings(fastJoin))
+            .build();
+    gossipService.init();
+    return gossipService;
+  }
+
+  @Test
+  public void joiningNodeLoadsTheSeedState() throws URISyntaxException {
+    String cluster = UUID.randomUUID().toString();
+    List<Member> startupMembers = new ArrayList<>();
+    startupMembers.add(new RemoteMember(cluster, new URI("udp://127.0.0.1:30501"), "1"));
+    List<GossipManager> clients = new ArrayList<>();
+    try {
+      GossipManager seed = start(cluster, 1, startupMembers, false);
+      clients.add(seed);
+      clients.add(start(cluster, 2, startupMembers, false));
+      TUnit.assertThat(() -> seed.getLiveMembers().size()).afterWaitingAtMost(20, TimeUnit.SECONDS)
+              .isEqualTo(1);
+      // several chunks worth of shared data
+      int keys = 250;
+      for (int k = 0; k < keys; k++) {
+        SharedDataMessage message = new SharedDataMessage();
+        message.setKey("key" + k);
+        message.setPayload("value" + k);
+        message.setTimestamp(System.currentTimeMillis());
+        message.setExpireAt(Long.MAX_VALUE);
+        seed.gossipSharedData(message);
+      }
+      PerNodeDataMessage perNode = new PerNodeDataMessage();
+      perNode.setKey("role");
+      perNode.setPayload("seed");
+      perNode.setTimestamp(System.currentTimeMillis());
+      perNode.setExpireAt(Long.MAX_VALUE);
+      seed.gossipPerNodeData(perNode);
+
+      GossipManager joiner = start(cluster, 3, startupMembers, true);
+      clients.add(joiner);
+      // loaded during init, before any gossip round
+      for (int k = 0; k < keys; k++) {
+        Assert.assertEquals("value" + k, joiner.findSharedGossipData("key" + k).getPayload());
+      }
+      Assert.assertEquals("seed", joiner.findPerNodeGossipData("1", "role").getPayload());
+      Assert.assertEquals(2, joiner.getMembers().size());
+      Assert.assertEquals(3, joiner.getRegistry().meter(MetricRegistry.name(JoinSnapshotService.class, "chunksLoaded")).getCount());
+    } finally {
+      for (GossipManager client : clients) {
+        client.shutdown();
+      }
+    }
+  }
+}
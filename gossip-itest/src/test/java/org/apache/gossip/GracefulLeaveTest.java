@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip;
+
+import io.teknek.tunit.TUnit;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gossip.event.GossipState;
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.manager.GossipManagerBuilder;
+import org.apache.gossip.model.PerNodeDataMessage;
+import org.apache.gossip.model.SharedDataMessage;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class GracefulLeaveTest {
+
+  private GossipManager start(String cluster, int i, List<Member> startupMembers, int gossipInterval)
+          throws URISyntaxException {
+    GossipSettings settings = new GossipSettings();
+    settings.setPersistRingState(false);
+    settings.setPersistDataState(false);
+    settings.setGracefulLeave(true);
+    settings.setGossipInterval(gossipInterval);
+    GossipManager gossipService = GossipManagerBuilder.newBuilder()
+            .cluster(cluster)
+            .uri(new URI("udp://127.0.0.1:" + (30600 + i)))
+            .id(i + "")
+            .gossipMembers(startupMembers)
+            .gossipSettings(settings)
+            .build();
+    gossipService.init();
+    return gossipService;
+  }
+
+  private static LocalMember find(GossipManager gossipManager, String id) {
+    for (LocalMember member : gossipManager.getMembers().keySet()) {
+      if (member.getId().equals(id)) {
+        return member;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void leavingNodeHandsOffItsData() throws URISyntaxException {
+    String cluster = UUID.randomUUID().toString();
+    List<Member> startupMembers = new ArrayList<>();
+    startupMembers.add(new RemoteMember(cluster, new URI("udp://127.0.0.1:30601"), "1"));
+    List<GossipManager> clients = new ArrayList<>();
+    try {
+      clients.add(start(cluster, 1, startupMembers, 10));
+      clients.add(start(cluster, 2, startupMembers, 10));
+      // gossips once at startup and then not before shutdown, so only the handoff carries its data
+      GossipManager leaver = start(cluster, 3, startupMembers, 600000);
+      TUnit.assertThat(() -> leaver.getLiveMembers().size()).afterWaitingAtMost(20, TimeUnit.SECONDS)
+              .isEqualTo(2);
+      TUnit.assertThat(() -> clients.get(0).getLiveMembers().size())
+              .afterWaitingAtMost(20, TimeUnit.SECONDS).isEqualTo(2);
+
+      SharedDataMessage shared = new SharedDataMessage();
+      shared.setKey("recent");
+      shared.setPayload("write");
+      shared.setTimestamp(System.currentTimeMillis());
+      shared.setExpireAt(Long.MAX_VALUE);
+      leaver.gossipSharedData(shared);
+      PerNodeDataMessage perNode = new PerNodeDataMessage();
+      perNode.setKey("state");
+      perNode.setPayload("draining");
+      perNode.setTimestamp(System.currentTimeMillis());
+      perNode.setExpireAt(Long.MAX_VALUE);
+      leaver.gossipPerNodeData(perNode);
+      leaver.shutdown();
+
+      for (GossipManager client : clients) {
+        TUnit.assertThat(() -> {
+          SharedDataMessage m = client.findSharedGossipData("recent");
+          return m == null ? null : m.getPayload();
+        }).afterWaitingAtMost(10, TimeUnit.SECONDS).isEqualTo("write");
+        TUnit.assertThat(() -> {
+          PerNodeDataMessage m = client.findPerNodeGossipData("3", "state");
+          return m == null ? null : m.getPayload();
+        }).afterWaitingAtMost(10, TimeUnit.SECONDS).isEqualTo("draining");
+        TUnit.assertThat(() -> {
+          LocalMember member = find(client, "3");
+          return member != null && client.getMembers().get(member) == GossipState.DOWN
+                  && member.hasLeft();
+        }).afterWaitingAtMost(10, TimeUnit.SECONDS).isEqualTo(true);
+      }
+    } finally {
+      for (GossipManager client : clients) {
+        client.shutdown();
+      }
+    }
+  }
+}
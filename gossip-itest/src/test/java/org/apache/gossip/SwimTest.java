@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.gossip;
+
+import io.teknek.tunit.TUnit;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.manager.GossipManagerBuilder;
+import org.apache.gossip.manager.SwimActiveGossiper;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class SwimTest {
+
+  private GossipSettings swimSettings() {
+    GossipSettings settings = new GossipSettings();
+    settings.setPersistRingState(false);
+    settings.setPersistDataState(false);
+    settings.setActiveGossipClass(SwimActiveGossiper.class.getName());
+    Map<String, String> props = new HashMap<>();
+    props.put("protocolPeriodMs", "200");
+    props.put("pingTimeoutMs", "50");
+    props.put("suspicionTimeoutMs", "1000");
+    props.put("pushPullIntervalMs", "2000");
+    settings.setActiveGossipProperties(props);
+    return settings;
+  }
+
+  private int total(List<GossipManager> clients, boolean live) {
+    int total = 0;
+    for (GossipManager client : clients) {
+      total += live ? client.getLiveMembers().size() : client.getDeadMembers().size();
+    }
+    return total;
+  }
+
+  @Test
+  public void membersConvergeAndFailuresAreDetected() throws URISyntaxException {
+    GossipSettings settings = swimSettings();
+    String cluster = UUID.randomUUID().toString();
+    int seedNodes = 2;
+    List<Member> startupMembers = new ArrayList<>();
+    for (int i = 1; i < seedNodes + 1; ++i) {
+      URI uri = new URI("udp://" + "127.0.0.1" + ":" + (30400 + i));
+      startupMembers.add(new RemoteMember(cluster, uri, i + ""));
+    }
+    final List<GossipManager> clients = Collections.synchronizedList(new ArrayList<>());
+    final int clusterMembers = 5;
+    for (int i = 1; i < clusterMembers + 1; ++i) {
+      URI uri = new URI("udp://" + "127.0.0.1" + ":" + (30400 + i));
+      GossipManager gossipService = GossipManagerBuilder.newBuilder()
+              .cluster(cluster)
+              .uri(uri)
+              .id(i + "")
+              .gossipMembers(startupMembers)
+              .gossipSettings(settings)
+              .build();
+      clients.add(gossipService);
+      gossipService.init();
+    }
+    try {
+      TUnit.assertThat(() -> total(clients, true)).afterWaitingAtMost(30, TimeUnit.SECONDS)
+              .isEqualTo(20);
+
+      GossipManager stopped = clients.remove(clusterMembers - 1);
+      stopped.shutdown();
+      TUnit.assertThat(() -> total(clients, true)).afterWaitingAtMost(30, TimeUnit.SECONDS)
+              .isEqualTo(12);
+      TUnit.assertThat(() -> total(clients, false)).afterWaitingAtMost(30, TimeUnit.SECONDS)
+              .isEqualTo(4);
+
+      // the restarted member refutes its death with a higher incarnation
+      GossipManager restarted = GossipManagerBuilder.newBuilder()
+              .cluster(cluster)
+              .uri(stopped.getMyself().getUri())
+              .id(stopped.getMyself().getId())
+              .gossipMembers(startupMembers)
+              .gossipSettings(settings)
+              .build();
+      clients.add(restarted);
+      restarted.init();
+      TUnit.assertThat(() -> total(clients, true)).afterWaitingAtMost(30, TimeUnit.SECONDS)
+              .isEqualTo(20);
+    } finally {
+      for (GossipManager client : clients) {
+        client.shutdown();
+      }
+    }
+  }
+}
@@ -28,7 +28,10 @@ import org.apache.gossip.crdt.OrSet;
 import org.apache.gossip.crdt.TwoPhaseSet;
 import org.apache.gossip.manager.GossipManager;
 import org.apache.gossip.manager.GossipManagerBuilder;
+import org.apache.gossip.model.EncodedPayload;
+import org.apache.gossip.model.SharedDataMessage;
 import org.apache.gossip.protocol.ProtocolManager;
+import org.apache.gossip.udp.UdpSharedDataBulkMessage;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -147,4 +150,37 @@ public class JacksonTest {
       Assert.assertEquals(a.getMapOfThings(), b.getMapOfThings()); // concerned about that one, so explicit check.
     }
   }
+
+  private static SharedDataMessage sharedDatum(String key, Object payload) {
+    SharedDataMessage m = new SharedDataMessage();
+    m.setKey(key);
+    m.setNodeId("foo");
+    m.setPayload(payload);
+    m.setTimestamp(1L);
+    m.setExpireAt(Long.MAX_VALUE);
+    return m;
+  }
+
+  @Test
+  public void payloadsAreDecodedOnFirstRead() throws Exception {
+    ProtocolManager mgr = new JacksonProtocolManager(simpleSettings(new GossipSettings()), "foo", new MetricRegistry());
+    OrSet<String> set = new OrSet<>("1", "2", "3").remove("2");
+    UdpSharedDataBulkMessage message = new UdpSharedDataBulkMessage();
+    message.setUuid(1L);
+    message.setUriFrom("udp://localhost:1");
+    message.addMessage(sharedDatum("set", set));
+    message.addMessage(sharedDatum("string", "value"));
+
+    UdpSharedDataBulkMessage read = (UdpSharedDataBulkMessage) mgr.read(mgr.write(message));
+    SharedDataMessage readSet = read.getMessages().get(0);
+    Assert.assertTrue(readSet.getRawPayload() instanceof EncodedPayload);
+    Assert.assertEquals(OrSet.class, EncodedPayload.typeOf(readSet.getRawPayload()));
+    Assert.assertEquals("value", read.getMessages().get(1).getRawPayload());
+
+    // written again without being decoded, the encoding is passed along as it was
+    UdpSharedDataBulkMessage forwarded = (UdpSharedDataBulkMessage) mgr.read(mgr.write(read));
+    Assert.assertEquals(set, forwarded.getMessages().get(0).getPayload());
+    Assert.assertEquals(set, readSet.getPayload());
+    Assert.assertSame(readSet.getPayload(), readSet.getPayload());
+  }
 }
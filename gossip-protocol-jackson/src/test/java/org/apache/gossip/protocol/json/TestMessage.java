@@ -33,7 +33,7 @@ import java.util.Objects;
 class TestMessage extends Base implements Trackable {
   private String unique;
   private String from;
-  private String uuid;
+  private long uuid;
   private String derivedField;
   private Subclass otherThing;
   private float floatValue;
@@ -48,13 +48,13 @@ class TestMessage extends Base implements Trackable {
   TestMessage(String unique) {
     this.unique = unique;
     from = Integer.toHexString(unique.hashCode());
-    uuid = Integer.toHexString(from.hashCode());
-    derivedField = Integer.toHexString(uuid.hashCode());
+    uuid = from.hashCode();
+    derivedField = Integer.toHexString(Long.hashCode(uuid));
     otherThing = new Subclass(Integer.toHexString(derivedField.hashCode()));
     floatValue = (float) unique.hashCode() / (float) from.hashCode();
-    doubleValue = (double) uuid.hashCode() / (double) derivedField.hashCode();
+    doubleValue = (double) uuid / (double) derivedField.hashCode();
     arrayOfThings = new Object[]{
-        this.unique, from, uuid, derivedField, otherThing, floatValue, doubleValue
+        this.unique, from, Long.toHexString(uuid), derivedField, otherThing, floatValue, doubleValue
     };
 
     String curThing = unique;
@@ -77,12 +77,12 @@ class TestMessage extends Base implements Trackable {
   }
 
   @Override
-  public String getUuid() {
+  public long getUuid() {
     return uuid;
   }
 
   @Override
-  public void setUuid(String uuid) {
+  public void setUuid(long uuid) {
     this.uuid = uuid;
   }
 
@@ -93,7 +93,7 @@ class TestMessage extends Base implements Trackable {
     TestMessage that = (TestMessage) o;
     return Objects.equals(unique, that.unique) &&
         Objects.equals(from, that.from) &&
-        Objects.equals(getUuid(), that.getUuid()) &&
+        getUuid() == that.getUuid() &&
         Objects.equals(derivedField, that.derivedField) &&
         Objects.equals(floatValue, that.floatValue) &&
         Objects.equals(doubleValue, that.doubleValue) &&
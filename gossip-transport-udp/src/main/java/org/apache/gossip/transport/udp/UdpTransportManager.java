@@ -73,8 +73,6 @@ public class UdpTransportManager extends AbstractTransportManager implements Run
         try {
           Base message = gossipManager.getProtocolManager().read(buf);
           gossipCore.receive(message);
-          //TODO this is suspect
-          gossipManager.getMemberStateRefresher().run();
         } catch (RuntimeException ex) {//TODO trap json exception
           LOGGER.error("Unable to process message", ex);
         }